@@ -21,9 +21,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +36,9 @@ public class ChromeCommandExecutor implements CommandExecutor {
   private static final int MAX_START_RETRIES = 5;
   private static final String[] ELEMENT_ID_ARG = new String[] {"id"};
   private static final String[] NO_ARGS = new String[] {};
+  // How long to wait for the extension before checking that Chrome is still alive
+  private static final long ALIVE_CHECK_INTERVAL = 500;
+  private static final long STOP_TIMEOUT = 5000;
 
   private final ChromeBinary binary;
 
@@ -41,7 +46,9 @@ public class ChromeCommandExecutor implements CommandExecutor {
   private volatile boolean listen = false;
   ListeningThread listeningThread;
   private Map<DriverCommand, String[]> commands;
-  
+  private final Map<DriverCommand, Latency> latencies =
+      new ConcurrentHashMap<DriverCommand, Latency>();
+
   /**
    * Creates a new ChromeCommandExecutor which listens on a free TCP port.
    * Doesn't return until the TCP port is connected to.
@@ -120,19 +127,59 @@ public class ChromeCommandExecutor implements CommandExecutor {
   }
   
   /**
-   * Executes the passed command
+   * Returns how many times the given command has been executed
+   * @param command the command to look up
+   * @return how many times the command has been executed
+   */
+  public long getCommandCount(DriverCommand command) {
+    Latency latency = latencies.get(command);
+    return latency == null ? 0 : latency.count.get();
+  }
+
+  /**
+   * Returns the mean time taken for Chrome to respond to the given command
+   * @param command the command to look up
+   * @return the mean latency in milliseconds, or 0 if the command has not
+   *     been executed
+   */
+  public long getAverageLatency(DriverCommand command) {
+    Latency latency = latencies.get(command);
+    if (latency == null || latency.count.get() == 0) {
+      return 0;
+    }
+    return TimeUnit.NANOSECONDS.toMillis(latency.totalNanos.get() / latency.count.get());
+  }
+
+  /**
+   * Executes the passed command. The extension holds a single request open
+   * at a time, and answers each command on the next request it sends, so
+   * commands are executed one after another: callers on other threads wait
+   * for the command in flight to be answered.
    * @param command command to execute
    * @return response to command
    * @throws IllegalStateException if no socket was present
    */
-  public Response execute(Command command) throws IOException {
+  public synchronized Response execute(Command command) throws IOException {
     // Chrome doesn't support sessions yet, so just send a canned response.
     if (DriverCommand.NEW_SESSION.equals(command.getName())) {
       return createCannedNewSessionResponse();
-    } else {
-      sendCommand(command);
-      return handleResponse();
     }
+
+    long start = System.nanoTime();
+    sendCommand(command);
+    Response response = handleResponse();
+    recordLatency(command.getName(), System.nanoTime() - start);
+    return response;
+  }
+
+  private void recordLatency(DriverCommand command, long nanos) {
+    Latency latency = latencies.get(command);
+    if (latency == null) {
+      latency = new Latency();
+      latencies.put(command, latency);
+    }
+    latency.count.incrementAndGet();
+    latency.totalNanos.addAndGet(nanos);
   }
 
   /**
@@ -183,7 +230,7 @@ public class ChromeCommandExecutor implements CommandExecutor {
       socket.getOutputStream().flush();
     } finally {
       socket.close();
-      listeningThread.sockets.remove(socket);
+      listeningThread.remove(socket);
     }
   }
   
@@ -279,15 +326,24 @@ public class ChromeCommandExecutor implements CommandExecutor {
   }
 
   private Socket getOldestSocket() {
+    ListeningThread listener = listeningThread;
+    if (listener == null) {
+      throw new IllegalStateException("Not listening for Chrome");
+    }
+
     Socket socket;
-    // Peek, rather than poll, so that if it all goes horribly wrong, we can
-    // just close all sockets in the queue, not having to worry about the
-    // current ones.
-    while ((socket = listeningThread.sockets.peek()) == null) {
-      if (!binary.isRunning()) {
-        throw new ChromeNotRunningException("Chrome is no longer running!");
+    try {
+      while ((socket = listener.awaitOldest(ALIVE_CHECK_INTERVAL)) == null) {
+        if (!binary.isRunning()) {
+          throw new ChromeNotRunningException("Chrome is no longer running!");
+        }
+        if (!listener.isAlive()) {
+          throw new IllegalStateException("Stopped listening for Chrome");
+        }
       }
-      Thread.yield();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(e);
     }
     return socket;
   }
@@ -341,18 +397,52 @@ public class ChromeCommandExecutor implements CommandExecutor {
     }
   }
 
+  private static class Latency {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+  }
+
   /**
    * Thread which, when spawned, accepts all sockets on its ServerSocket and
    * queues them up
    */
   private class ListeningThread extends Thread {
     private boolean isListening = false;
-    private Queue<Socket> sockets = new ConcurrentLinkedQueue<Socket>();
+    // Guarded by itself. Waiters are notified whenever a socket is added.
+    private final LinkedList<Socket> sockets = new LinkedList<Socket>();
     private ServerSocket serverSocket;
     private volatile boolean hasClient = false;
 
     ListeningThread(ServerSocket serverSocket) {
+      super("ChromeCommandExecutor listener");
       this.serverSocket = serverSocket;
+      setDaemon(true);
+    }
+
+    /**
+     * Waits for a socket to be queued, and returns the oldest one without
+     * removing it from the queue, so that if it all goes horribly wrong, we
+     * can just close all sockets in the queue, not having to worry about the
+     * current ones.
+     * @param timeoutMillis how long to wait for a socket
+     * @return the oldest queued socket, or null if none arrived in time
+     */
+    Socket awaitOldest(long timeoutMillis) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      synchronized (sockets) {
+        long remaining = timeoutMillis;
+        while (sockets.isEmpty() && remaining > 0) {
+          sockets.wait(remaining);
+          remaining = deadline - System.currentTimeMillis();
+        }
+        return sockets.peek();
+      }
+    }
+
+    void remove(Socket socket) {
+      synchronized (sockets) {
+        sockets.remove(socket);
+      }
     }
 
     @Override
@@ -372,7 +462,10 @@ public class ChromeCommandExecutor implements CommandExecutor {
             //Use browser sending a GET to sniff the URL we need to talk to,
             //so we ignore any GET requests, but queue up any others,
             //which we assume to be POSTs from the extension
-            sockets.add(acceptedSocket);
+            synchronized (sockets) {
+              sockets.add(acceptedSocket);
+              sockets.notifyAll();
+            }
             hasClient = true;
           } else {
             //The browser, rather than extension, is visiting the page
@@ -406,26 +499,28 @@ public class ChromeCommandExecutor implements CommandExecutor {
         throw new WebDriverException(e);
       } finally {
         try {
-          if (!serverSocket.isClosed()) {
-            serverSocket.close();
-            while (!serverSocket.isClosed()) {
-              Thread.yield();
-            }
-          }
+          // Closing the socket wakes the thread blocked in accept()
+          serverSocket.close();
+          join(STOP_TIMEOUT);
         } catch (IOException e) {
           LOG.log(Level.FINE, "I/O error while closing the server socket", e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
         }
       }
     }
 
     private void closeCurrentSockets() {
-      for (Socket socket : sockets) {
-        try {
-          socket.close();
-          sockets.remove(socket);
-        } catch (IOException e) {
-          //Nothing we can sanely do here
+      synchronized (sockets) {
+        for (Socket socket : sockets) {
+          try {
+            socket.close();
+          } catch (IOException e) {
+            //Nothing we can sanely do here
+          }
         }
+        sockets.clear();
+        sockets.notifyAll();
       }
     }
   }
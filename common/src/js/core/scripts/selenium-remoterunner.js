@@ -192,9 +192,19 @@ objectExtend(RemoteRunner.prototype, {
         this.requiresCallBack = true;
         this.commandNode = null;
         this.xmlHttpForCommandsAndResults = null;
+        this.batch = null;
+        this.batchResults = null;
     },
 
     nextCommand : function() {
+        if (this.batch) {
+            var next = this._nextCommandInBatch();
+            if (next) {
+                // run it straight away, without asking the server
+                setTimeout(fnBind(this.continueTestAtCurrentCommand, this), 0);
+                return next;
+            }
+        }
         var urlParms = "";
         if (postResult == "START") {
             urlParms += "seleniumStart=true";
@@ -297,6 +307,8 @@ objectExtend(RemoteRunner.prototype, {
                     setTimeout(fnBind(function() {
                         sendToRC("RETRY", "retry=true", fnBind(this._HandleHttpResponse, this), this.xmlHttpForCommandsAndResults, true);
                     }, this), 1000);
+                } else if (command.command == 'batch') {
+                    this._startBatch(command.target);
                 } else {
                     this.currentCommand = command;
                     this.continueTestAtCurrentCommand();
@@ -313,6 +325,44 @@ objectExtend(RemoteRunner.prototype, {
         }
     },
 
+    // A batch is a list of commands, one per line, which are run in order without any
+    // further requests to the server.  Their results are posted back together, once
+    // they have all run or as soon as one of them fails.
+    _startBatch : function(encodedCommands) {
+        var lines = encodedCommands.split("\n");
+        this.batch = [];
+        this.batchResults = [];
+        for (var i = 0; i < lines.length; i++) {
+            if (lines[i]) {
+                this.batch.push(this._createCommandFromRequest(lines[i]));
+            }
+        }
+        if (this.batch.length == 0) {
+            // the server rejects an empty batch itself, with the same error
+            this.batch = null;
+            postResult = "ERROR: batch has no commands";
+            this.continueTest();
+            return;
+        }
+        this.currentCommand = this.batch.shift();
+        this.continueTestAtCurrentCommand();
+    },
+
+    _nextCommandInBatch : function() {
+        if (postResult != "OK" && postResult.substr(0, 3) != "OK,") {
+            // leave the failure to be posted as the result of the whole batch
+            this.batch = null;
+            return null;
+        }
+        this.batchResults.push(postResult.replace(/([,\\])/g, '\\$1'));
+        if (this.batch.length == 0) {
+            postResult = "OK," + this.batchResults.join(",");
+            this.batch = null;
+            return null;
+        }
+        return this.batch.shift();
+    },
+
     _extractCommand : function(xmlHttp) {
         var command, text, json;
         text = command = xmlHttp.responseText;
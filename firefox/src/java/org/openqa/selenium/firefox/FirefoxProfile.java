@@ -36,10 +36,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
+import java.net.URL;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
@@ -52,6 +55,10 @@ import javax.xml.xpath.XPathFactory;
 public class FirefoxProfile {
   private static final String EXTENSION_NAME = "fxdriver@googlecode.com";
   private static final String EM_NAMESPACE_URI = "http://www.mozilla.org/2004/em-rdf#";
+  // Extensions on the classpath can't change, so each is unzipped once, keyed by its URL, and
+  // copied from there into every profile it is added to.
+  private static final ConcurrentMap<String, File> unzippedExtensions =
+      new ConcurrentHashMap<String, File>();
   private File profileDir;
   private File extensionsDir;
   private File userPrefs;
@@ -118,15 +125,15 @@ public class FirefoxProfile {
       }
 
       // Try and load it from the classpath
-      InputStream resource = loadResourcesUsing.getResourceAsStream(loadFrom);
+      URL resource = loadResourcesUsing.getResource(loadFrom);
       if (resource == null && !loadFrom.startsWith("/")) {
-        resource = loadResourcesUsing.getResourceAsStream("/" + loadFrom);
+        resource = loadResourcesUsing.getResource("/" + loadFrom);
       }
       if (resource == null) {
-        resource = FirefoxProfile.class.getResourceAsStream(loadFrom);
+        resource = FirefoxProfile.class.getResource(loadFrom);
       }
       if (resource == null && !loadFrom.startsWith("/")) {
-        resource = FirefoxProfile.class.getResourceAsStream("/" + loadFrom);
+        resource = FirefoxProfile.class.getResource("/" + loadFrom);
       }
       if (resource == null) {
         throw new FileNotFoundException("Cannot locate resource with name: " + loadFrom);
@@ -134,7 +141,7 @@ public class FirefoxProfile {
 
       File root;
       if (FileHandler.isZipped(loadFrom)) {
-        root = FileHandler.unzip(resource);
+        root = unzipOnce(resource);
       } else {
         throw new WebDriverException("Will only install zipped extensions for now");
       }
@@ -143,6 +150,23 @@ public class FirefoxProfile {
       return root;
     }
 
+  private static File unzipOnce(URL resource) throws IOException {
+    String key = resource.toExternalForm();
+    File root = unzippedExtensions.get(key);
+    if (root != null && root.isDirectory()) {
+      return root;
+    }
+
+    InputStream in = resource.openStream();
+    try {
+      root = FileHandler.unzip(in);
+    } finally {
+      in.close();
+    }
+    unzippedExtensions.put(key, root);
+    return root;
+  }
+
   /**
    * Attempt to add an extension to install into this instance.
    *
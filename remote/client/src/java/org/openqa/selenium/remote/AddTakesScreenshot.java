@@ -21,6 +21,7 @@ import java.lang.reflect.Method;
 
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.internal.Base64Encoder;
 
 // Deliberately package level visibility
 class AddTakesScreenshot implements AugmenterProvider {
@@ -33,8 +34,17 @@ class AddTakesScreenshot implements AugmenterProvider {
     // The only method on TakesScreenshot is the one to take a screenshot
     return new InterfaceImplementation() {
       public Object invoke(ExecuteMethod executeMethod, Method method, Object... args) {
-        String base64 = (String) executeMethod.execute(DriverCommand.SCREENSHOT, null);
-        return ((OutputType<?>) args[0]).convertFromBase64Png(base64);
+        Object screenshot = executeMethod.execute(DriverCommand.SCREENSHOT, null);
+        OutputType<?> outputType = (OutputType<?>) args[0];
+
+        // Servers that can send the raw image will have done so
+        if (screenshot instanceof byte[]) {
+          if (outputType == OutputType.BYTES) {
+            return screenshot;
+          }
+          return outputType.convertFromBase64Png(new Base64Encoder().encode((byte[]) screenshot));
+        }
+        return outputType.convertFromBase64Png((String) screenshot);
       }
     };
   }
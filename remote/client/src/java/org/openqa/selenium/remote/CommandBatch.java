@@ -0,0 +1,134 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a series of commands and sends them to the remote server in a
+ * single round trip. Commands are run in the order they were added, and the
+ * batch stops at the first command that fails.
+ *
+ * <p>A command may refer to an element found by an earlier command in the
+ * same batch by using the value returned by {@link #elementFrom(int)} as an
+ * element id:
+ *
+ * <pre>
+ * CommandBatch batch = driver.batch();
+ * int link = batch.add(DriverCommand.FIND_ELEMENT, ImmutableMap.of("using", "id", "value", "go"));
+ * batch.add(DriverCommand.GET_ELEMENT_TEXT, ImmutableMap.of("id", batch.elementFrom(link)));
+ * List&lt;Response&gt; responses = batch.execute();
+ * </pre>
+ */
+public class CommandBatch {
+
+  private final RemoteWebDriver driver;
+  private final List<Command> commands = new ArrayList<Command>();
+
+  CommandBatch(RemoteWebDriver driver) {
+    this.driver = driver;
+  }
+
+  /**
+   * Adds a command to the batch.
+   *
+   * @return The index of the command within the batch.
+   */
+  public int add(DriverCommand command, Map<String, ?> parameters) {
+    if (command == DriverCommand.BATCH) {
+      throw new IllegalArgumentException("Batches may not be nested");
+    }
+    commands.add(new Command(driver.getSessionId(), command, parameters));
+    return commands.size() - 1;
+  }
+
+  public int add(DriverCommand command) {
+    return add(command, ImmutableMap.<String, Object>of());
+  }
+
+  /**
+   * @param index The index of an earlier command that found a single element.
+   * @return A reference that stands in for that element's id.
+   */
+  public String elementFrom(int index) {
+    checkIndex(index);
+    return "$" + index;
+  }
+
+  /**
+   * @param index The index of an earlier command that found a list of
+   *     elements.
+   * @param position The position of the element in that list.
+   * @return A reference that stands in for that element's id.
+   */
+  public String elementFrom(int index, int position) {
+    checkIndex(index);
+    if (position < 0) {
+      throw new IllegalArgumentException("Position must not be negative: " + position);
+    }
+    return "$" + index + "." + position;
+  }
+
+  public int size() {
+    return commands.size();
+  }
+
+  /**
+   * Sends every command added so far to the server.
+   *
+   * @return The response to each command, in the order the commands were
+   *     added.
+   * @throws RuntimeException The exception matching the first command that
+   *     failed.
+   */
+  public List<Response> execute() {
+    if (commands.isEmpty()) {
+      return new ArrayList<Response>();
+    }
+
+    Response batchResponse = driver.execute(DriverCommand.BATCH,
+        ImmutableMap.of("commands", new ArrayList<Command>(commands)));
+    List<?> rawResponses = (List<?>) batchResponse.getValue();
+
+    List<Response> responses = new ArrayList<Response>(rawResponses.size());
+    for (Object raw : rawResponses) {
+      Map<?, ?> rawResponse = (Map<?, ?>) raw;
+
+      Response response = new Response();
+      Object sessionId = rawResponse.get("sessionId");
+      response.setSessionId(sessionId == null ? null : String.valueOf(sessionId));
+      Object status = rawResponse.get("status");
+      response.setStatus(status == null ? ErrorCodes.SUCCESS : ((Number) status).intValue());
+      response.setValue(rawResponse.get("value"));
+
+      driver.getErrorHandler().throwIfResponseFailed(response);
+      responses.add(response);
+    }
+    return responses;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= commands.size()) {
+      throw new IllegalArgumentException("No command has been added at index " + index);
+    }
+  }
+}
@@ -23,21 +23,41 @@ import com.google.common.collect.ImmutableMap;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.openqa.selenium.remote.internal.PooledConnectionManager;
+
 import static org.openqa.selenium.remote.DriverCommand.*;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Sends commands to a remote server over HTTP. All executors share a single pool of keep-alive
+ * connections, so an instance may safely be used from several threads at once. The pool can be
+ * tuned with the "webdriver.remote.max_connections_per_host",
+ * "webdriver.remote.max_connections" and "webdriver.remote.idle_timeout" (in milliseconds)
+ * system properties.
+ */
 public class HttpCommandExecutor implements CommandExecutor {
 
+  private static final PooledConnectionManager connectionManager = new PooledConnectionManager(
+      Integer.getInteger("webdriver.remote.max_connections_per_host", 20),
+      Integer.getInteger("webdriver.remote.max_connections", 200),
+      Long.getLong("webdriver.remote.idle_timeout", 30000));
+
   private final String remotePath;
 
   private enum HttpVerb {
@@ -63,8 +83,8 @@ public class HttpCommandExecutor implements CommandExecutor {
     public abstract HttpMethod createMethod(String url);
   }
 
-  private Map<DriverCommand, CommandInfo> nameToUrl;
-  private HttpClient client;
+  private final Map<DriverCommand, CommandInfo> nameToUrl;
+  private final HttpClient client;
 
   public HttpCommandExecutor(URL addressOfRemoteServer) throws Exception {
     if (addressOfRemoteServer == null) {
@@ -78,7 +98,7 @@ public class HttpCommandExecutor implements CommandExecutor {
     this.remotePath = addressOfRemoteServer.getPath();
 
     URI uri = new URI(addressOfRemoteServer.toString(), false);
-    client = new HttpClient();
+    client = new HttpClient(connectionManager);
     client.getHostConfiguration().setHost(uri);
 
     nameToUrl = ImmutableMap.<DriverCommand, CommandInfo>builder()
@@ -134,6 +154,7 @@ public class HttpCommandExecutor implements CommandExecutor {
         .put(GET_ELEMENT_VALUE_OF_CSS_PROPERTY,
              get("/session/:sessionId/element/:id/css/:propertyName"))
         .put(IMPLICITLY_WAIT, post("/session/:sessionId/timeouts/implicit_wait"))
+        .put(BATCH, post("/session/:sessionId/batch"))
         .build();
   }
 
@@ -146,31 +167,81 @@ public class HttpCommandExecutor implements CommandExecutor {
     }
   }
 
+  /**
+   * @return The connection pool shared by all executors, for inspecting its usage.
+   */
+  public PooledConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
   public Response execute(Command command) throws Exception {
     CommandInfo info = nameToUrl.get(command.getName());
     HttpMethod httpMethod = info.getMethod(remotePath, command);
 
-    httpMethod.addRequestHeader("Accept", "application/json, image/png");
+    httpMethod.addRequestHeader("Accept", acceptFor(command));
 
-    String payload = new BeanToJsonConverter().convert(command.getParameters());
+    Object parameters = command.getParameters();
+    if (command.getName() == BATCH) {
+      parameters = ImmutableMap.of("commands", describeBatch(command));
+    }
+    String payload = new BeanToJsonConverter().convert(parameters);
 
     if (httpMethod instanceof PostMethod) {
       ((PostMethod) httpMethod)
           .setRequestEntity(new StringRequestEntity(payload, "application/json", "UTF-8"));
     }
 
-    client.executeMethod(httpMethod);
-
-    // TODO: SimonStewart: 2008-04-25: This is really shabby
-    if (isRedirect(httpMethod)) {
-      Header newLocation = httpMethod.getResponseHeader("location");
-      httpMethod = new GetMethod(newLocation.getValue());
-      httpMethod.setFollowRedirects(true);
-      httpMethod.addRequestHeader("Accept", "application/json, image/png");
+    try {
       client.executeMethod(httpMethod);
+
+      // TODO: SimonStewart: 2008-04-25: This is really shabby
+      if (isRedirect(httpMethod)) {
+        Header newLocation = httpMethod.getResponseHeader("location");
+        // Hand the connection back to the pool so that the redirect can reuse it
+        httpMethod.releaseConnection();
+        httpMethod = new GetMethod(newLocation.getValue());
+        httpMethod.setFollowRedirects(true);
+        httpMethod.addRequestHeader("Accept", acceptFor(command));
+        client.executeMethod(httpMethod);
+      }
+
+      return createResponse(httpMethod);
+    } finally {
+      httpMethod.releaseConnection();
     }
+  }
 
-    return createResponse(httpMethod);
+  /**
+   * Asks for screenshots as a raw PNG rather than Base64 encoded in JSON. The
+   * server only sends one to clients that list image/png first.
+   */
+  private static String acceptFor(Command command) {
+    return command.getName() == SCREENSHOT
+        ? "image/png, application/json" : "application/json, image/png";
+  }
+
+  /**
+   * Describes each command of a batch by the HTTP method and path it would
+   * have been sent to on its own, so that the server can route it the same
+   * way.
+   */
+  private List<Map<String, Object>> describeBatch(Command batch) {
+    List<?> commands = (List<?>) batch.getParameters().get("commands");
+    List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>(commands.size());
+    for (Object toDescribe : commands) {
+      Command command = (Command) toDescribe;
+      CommandInfo info = nameToUrl.get(command.getName());
+      if (info == null || command.getName() == BATCH) {
+        throw new IllegalArgumentException("Cannot batch command: " + command.getName());
+      }
+
+      Map<String, Object> entry = new HashMap<String, Object>();
+      entry.put("method", info.verb.name());
+      entry.put("path", info.getPath(command));
+      entry.put("parameters", command.getParameters());
+      entries.add(entry);
+    }
+    return entries;
   }
 
   private Response createResponse(HttpMethod httpMethod) throws Exception {
@@ -179,7 +250,13 @@ public class HttpCommandExecutor implements CommandExecutor {
     Header header = httpMethod.getResponseHeader("Content-Type");
 
     if (header != null && header.getValue().startsWith("application/json")) {
-      response = new JsonToBeanConverter().convert(Response.class, httpMethod.getResponseBodyAsString());
+      String charset = httpMethod instanceof HttpMethodBase
+          ? ((HttpMethodBase) httpMethod).getResponseCharSet() : "UTF-8";
+      Reader reader = new InputStreamReader(httpMethod.getResponseBodyAsStream(), charset);
+      response = new JsonToBeanConverter().convert(Response.class, reader);
+      if (response == null) {
+        response = new Response();
+      }
     } else {
       response = new Response();
 
@@ -246,33 +323,48 @@ public class HttpCommandExecutor implements CommandExecutor {
 
   private static class CommandInfo {
 
-    private final String url;
+    // The non-empty segments of the url, split once up front
+    private final String[] segments;
+    // Name of the parameter at each position, or null for a literal segment
+    private final String[] parameters;
     private final HttpVerb verb;
 
     public CommandInfo(String url, HttpVerb verb) {
-      this.url = url;
+      List<String> parts = new ArrayList<String>();
+      for (String part : url.split("/")) {
+        if (part.length() != 0) {
+          parts.add(part);
+        }
+      }
+      this.segments = parts.toArray(new String[parts.size()]);
+      this.parameters = new String[segments.length];
+      for (int i = 0; i < segments.length; i++) {
+        if (segments[i].startsWith(":")) {
+          parameters[i] = segments[i].substring(1);
+        }
+      }
       this.verb = verb;
     }
 
     public HttpMethod getMethod(String base, Command command) {
-      StringBuilder urlBuilder = new StringBuilder(base);
-      for (String part : url.split("/")) {
-        if (part.length() == 0) {
-          continue;
-        }
+      return verb.createMethod(base + getPath(command));
+    }
 
+    public String getPath(Command command) {
+      StringBuilder urlBuilder = new StringBuilder();
+      for (int i = 0; i < segments.length; i++) {
         urlBuilder.append("/");
-        if (part.startsWith(":")) {
-          String value = get(part.substring(1), command);
+        if (parameters[i] == null) {
+          urlBuilder.append(segments[i]);
+        } else {
+          String value = get(parameters[i], command);
           if (value != null) {
-            urlBuilder.append(get(part.substring(1), command));
+            urlBuilder.append(value);
           }
-        } else {
-          urlBuilder.append(part);
         }
       }
 
-      return verb.createMethod(urlBuilder.toString());
+      return urlBuilder.toString();
     }
 
     private String get(String propertyName, Command command) {
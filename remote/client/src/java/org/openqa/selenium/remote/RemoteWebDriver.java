@@ -133,6 +133,18 @@ public class RemoteWebDriver implements WebDriver, JavascriptExecutor,
     return capabilities;
   }
 
+  protected SessionId getSessionId() {
+    return sessionId;
+  }
+
+  /**
+   * @return A new, empty batch of commands to run against this session in a
+   *     single round trip.
+   */
+  public CommandBatch batch() {
+    return new CommandBatch(this);
+  }
+
   public void get(String url) {
     execute(DriverCommand.GET, ImmutableMap.of("url", url));
   }
@@ -0,0 +1,166 @@
+/*
+Copyright 2009 WebDriver committers
+Copyright 2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.internal;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe pool of keep-alive connections which records how often a
+ * connection could be reused, how often a new one had to be opened and how
+ * often a caller had to wait because the per-host or total cap was reached.
+ * Connections that sit idle for longer than the configured timeout are
+ * closed by a background daemon thread.
+ */
+public class PooledConnectionManager extends MultiThreadedHttpConnectionManager {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong waits = new AtomicLong();
+  private final AtomicLong waitTime = new AtomicLong();
+  private final AtomicInteger leased = new AtomicInteger();
+  // The superclass only reports how many connections exist, not how many are handed out
+  private final ConcurrentMap<String, AtomicInteger> leasedPerHost =
+      new ConcurrentHashMap<String, AtomicInteger>();
+  private final IdleConnectionTimeoutThread idleReaper;
+
+  public PooledConnectionManager(int maxConnectionsPerHost, int maxTotalConnections,
+      long idleTimeoutInMillis) {
+    getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    getParams().setMaxTotalConnections(maxTotalConnections);
+    getParams().setStaleCheckingEnabled(true);
+
+    if (idleTimeoutInMillis > 0) {
+      idleReaper = new IdleConnectionTimeoutThread();
+      idleReaper.setName("webdriver-idle-connection-reaper");
+      idleReaper.setDaemon(true);
+      idleReaper.setConnectionTimeout(idleTimeoutInMillis);
+      idleReaper.setTimeoutInterval(Math.max(1000, idleTimeoutInMillis / 2));
+      idleReaper.addConnectionManager(this);
+      idleReaper.start();
+    } else {
+      idleReaper = null;
+    }
+  }
+
+  @Override
+  public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+      throws ConnectionPoolTimeoutException {
+    boolean saturated = isSaturated(hostConfiguration);
+    long start = System.currentTimeMillis();
+
+    HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+
+    if (saturated) {
+      waits.incrementAndGet();
+      waitTime.addAndGet(System.currentTimeMillis() - start);
+    }
+    // A connection handed back from the free list is still open; a fresh one
+    // is only opened once the method is executed.
+    if (connection.isOpen()) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    leased.incrementAndGet();
+    leasedFor(hostConfiguration.getHost(), hostConfiguration.getPort()).incrementAndGet();
+    return connection;
+  }
+
+  @Override
+  public void releaseConnection(HttpConnection connection) {
+    leased.decrementAndGet();
+    leasedFor(connection.getHost(), connection.getPort()).decrementAndGet();
+    super.releaseConnection(connection);
+  }
+
+  private boolean isSaturated(HostConfiguration hostConfiguration) {
+    int leasedForHost = leasedFor(hostConfiguration.getHost(), hostConfiguration.getPort()).get();
+    return leasedForHost >= getParams().getMaxConnectionsPerHost(hostConfiguration)
+           || leased.get() >= getParams().getMaxTotalConnections();
+  }
+
+  private AtomicInteger leasedFor(String host, int port) {
+    String key = host + ":" + port;
+    AtomicInteger count = leasedPerHost.get(key);
+    if (count == null) {
+      AtomicInteger existing = leasedPerHost.putIfAbsent(key, new AtomicInteger());
+      count = existing == null ? leasedPerHost.get(key) : existing;
+    }
+    return count;
+  }
+
+  /**
+   * @return The number of connections currently handed out to callers.
+   */
+  public int getLeasedConnections() {
+    return leased.get();
+  }
+
+  /**
+   * @return The number of times an already open connection was reused.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of times a new connection had to be opened.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of times a caller found the pool exhausted and had to
+   *     wait for a connection to be released.
+   */
+  public long getWaits() {
+    return waits.get();
+  }
+
+  /**
+   * @return The total time, in milliseconds, spent waiting for a connection.
+   */
+  public long getWaitTimeInMillis() {
+    return waitTime.get();
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (idleReaper != null) {
+      idleReaper.shutdown();
+    }
+    super.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[pool: %d open, %d in use, %d hits, %d misses, %d waits (%dms)]",
+        getConnectionsInPool(), getLeasedConnections(), getHits(), getMisses(), getWaits(),
+        getWaitTimeInMillis());
+  }
+}
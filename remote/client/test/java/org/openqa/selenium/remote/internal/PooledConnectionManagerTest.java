@@ -0,0 +1,96 @@
+/*
+Copyright 2009 WebDriver committers
+Copyright 2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.internal;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class PooledConnectionManagerTest extends TestCase {
+  private Server server;
+  private String url;
+  private PooledConnectionManager manager;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new Server(0);
+    server.setHandler(new AbstractHandler() {
+      public void handle(String target, HttpServletRequest request, HttpServletResponse response,
+          int dispatch) throws IOException {
+        response.setContentType("text/plain");
+        response.getWriter().write("pong");
+        ((Request) request).setHandled(true);
+      }
+    });
+    server.start();
+    url = "http://localhost:" + server.getConnectors()[0].getLocalPort() + "/ping";
+    manager = new PooledConnectionManager(2, 10, 0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    manager.shutdown();
+    server.stop();
+  }
+
+  public void testShouldReuseAKeptAliveConnectionForSequentialRequests() throws Exception {
+    HttpClient client = new HttpClient(manager);
+
+    for (int i = 0; i < 3; i++) {
+      GetMethod method = new GetMethod(url);
+      try {
+        assertEquals(200, client.executeMethod(method));
+        assertEquals("pong", method.getResponseBodyAsString());
+      } finally {
+        method.releaseConnection();
+      }
+    }
+
+    assertEquals(1, manager.getMisses());
+    assertEquals(2, manager.getHits());
+    assertEquals(0, manager.getWaits());
+    assertEquals(1, manager.getConnectionsInPool());
+  }
+
+  public void testShouldOpenANewConnectionWhileTheFirstIsStillInUse() throws Exception {
+    HttpClient client = new HttpClient(manager);
+
+    GetMethod first = new GetMethod(url);
+    GetMethod second = new GetMethod(url);
+    try {
+      client.executeMethod(first);
+      client.executeMethod(second);
+    } finally {
+      first.releaseConnection();
+      second.releaseConnection();
+    }
+
+    assertEquals(2, manager.getMisses());
+    assertEquals(0, manager.getHits());
+    assertEquals(0, manager.getLeasedConnections());
+  }
+}
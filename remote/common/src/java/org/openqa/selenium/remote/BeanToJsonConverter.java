@@ -24,9 +24,10 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.openqa.selenium.WebDriverException;
 
-import java.beans.BeanInfo;
-import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -42,6 +43,8 @@ import java.util.Map;
 public class BeanToJsonConverter {
 
   private static final int MAX_DEPTH = 5;
+  private static final char[] BASE64_CHARS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
 
   /**
    * Convert an object that may or may not be a JSONArray or JSONObject into
@@ -55,13 +58,33 @@ public class BeanToJsonConverter {
     if (object == null)
       return null;
 
+    StringWriter writer = new StringWriter();
     try {
-      Object converted = convertObject(object, MAX_DEPTH);
-      if (converted instanceof JSONObject || converted instanceof JSONArray) {
-        return converted.toString();
-      }
+      write(object, writer);
+    } catch (IOException e) {
+      // Cannot happen when writing to a StringWriter
+      throw new WebDriverException("Unable to convert: " + object, e);
+    }
+    return writer.toString();
+  }
 
-      return String.valueOf(object);
+  /**
+   * Write the JSON representation of an object straight to a Writer, without
+   * building an intermediate tree or String. Objects that are not converted
+   * to a JSON object or array are written using their string value, as
+   * {@link #convert(Object)} does.
+   *
+   * @param object which needs conversion
+   * @param writer to write the JSON representation to
+   */
+  public void write(Object object, Writer writer) throws IOException {
+    if (object == null)
+      return;
+
+    try {
+      if (!writeObject(object, writer, MAX_DEPTH, false)) {
+        writer.write(String.valueOf(object));
+      }
     } catch (JSONException e) {
       throw new WebDriverException("Unable to convert: " + object, e);
     }
@@ -114,82 +137,176 @@ public class BeanToJsonConverter {
     return toReturn;
   }
 
+  /**
+   * Writes the JSON form of toConvert if it maps onto a JSON object or array.
+   *
+   * @return whether anything was written.
+   */
   @SuppressWarnings({"unchecked"})
-  private Object convertObject(Object toConvert, int maxDepth) throws JSONException {
-    if (toConvert == null)
-      return null;
-
-    if (toConvert instanceof Boolean ||
-        toConvert instanceof CharSequence ||
-        toConvert instanceof Number) {
-      return toConvert;
-    }
-
-    if (toConvert.getClass().isEnum() || toConvert instanceof Enum) {
-      return toConvert.toString();
-    }
-
+  private boolean writeObject(Object toConvert, Writer writer, int maxDepth, boolean keepNulls)
+      throws IOException, JSONException {
     if (toConvert instanceof Map) {
-      JSONObject converted = new JSONObject();
-      for (Object objectEntry : ((Map) toConvert).entrySet()) {
-        Map.Entry<String, Object> entry = (Map.Entry) objectEntry;
-        converted.put(entry.getKey(), convertObject(entry.getValue(), maxDepth - 1));
-      }
-      return converted;
+      writeMap((Map<Object, Object>) toConvert, writer, maxDepth - 1, keepNulls);
+      return true;
     }
 
-    if (toConvert instanceof JSONObject) {
-      return toConvert;
+    if (toConvert instanceof JSONObject || toConvert instanceof JSONArray) {
+      writer.write(toConvert.toString());
+      return true;
     }
 
     if (toConvert instanceof Collection) {
-      JSONArray array = new JSONArray();
+      writer.write('[');
+      boolean first = true;
       for (Object o : (Collection) toConvert) {
-        array.put(convertObject(o, maxDepth - 1));
+        first = writeSeparator(writer, first);
+        writeValue(o, writer, maxDepth - 1, keepNulls);
       }
-      return array;
+      writer.write(']');
+      return true;
+    }
+
+    if (toConvert instanceof byte[]) {
+      writeBase64((byte[]) toConvert, writer);
+      return true;
     }
 
     if (toConvert.getClass().isArray()) {
-      JSONArray converted = new JSONArray();
+      writer.write('[');
       int length = Array.getLength(toConvert);
       for (int i = 0; i < length; i++) {
-        converted.put(convertObject(Array.get(toConvert, i), maxDepth - 1));
+        writeSeparator(writer, i == 0);
+        writeValue(Array.get(toConvert, i), writer, maxDepth - 1, keepNulls);
       }
-      return converted;
+      writer.write(']');
+      return true;
     }
 
     if (toConvert instanceof SessionId) {
-      JSONObject converted = new JSONObject();
-      converted.put("value", toConvert.toString());
-      return converted;
+      writer.write("{\"value\":");
+      writer.write(JSONObject.quote(toConvert.toString()));
+      writer.write('}');
+      return true;
     }
 
     if (toConvert instanceof Capabilities) {
-      return new JSONObject(((Capabilities) toConvert).asMap());
+      writeMap(((Capabilities) toConvert).asMap(), writer, maxDepth - 1, true);
+      return true;
     }
 
     if (toConvert instanceof ProxyPac) {
-      return new JSONObject(((ProxyPac) toConvert).asMap());
+      writeMap(((ProxyPac) toConvert).asMap(), writer, maxDepth - 1, true);
+      return true;
+    }
+
+    if (!isBean(toConvert)) {
+      return false;
     }
 
     try {
-      return mapObject(toConvert, maxDepth - 1);
-    } catch(Exception e) {
+      return mapObject(toConvert, writer, maxDepth - 1);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
       throw new WebDriverException(e);
     }
   }
 
-  private Object mapObject(Object toConvert, int maxDepth) throws Exception {
+  private void writeValue(Object value, Writer writer, int maxDepth, boolean keepNulls)
+      throws IOException, JSONException {
+    if (value == null) {
+      writer.write("null");
+    } else if (value instanceof Boolean) {
+      writer.write(value.toString());
+    } else if (value instanceof Number) {
+      writer.write(JSONObject.numberToString((Number) value));
+    } else if (value instanceof CharSequence ||
+               value.getClass().isEnum() || value instanceof Enum) {
+      writer.write(JSONObject.quote(value.toString()));
+    } else if (!writeObject(value, writer, maxDepth, keepNulls)) {
+      // The bean was nested too deeply to be mapped
+      writer.write("null");
+    }
+  }
+
+  /**
+   * @return whether writeValue can only write the value as null, because it is
+   * a bean nested too deeply to be mapped. A JSONObject left such values out.
+   */
+  private boolean isTooDeep(Object value, int maxDepth) {
+    return value != null && maxDepth - 1 == 0 && isBean(value);
+  }
+
+  private static boolean isBean(Object o) {
+    return !(o instanceof Map || o instanceof JSONObject || o instanceof JSONArray ||
+        o instanceof Collection || o.getClass().isArray() ||
+        o instanceof SessionId || o instanceof Capabilities || o instanceof ProxyPac ||
+        o instanceof Boolean || o instanceof CharSequence || o instanceof Number ||
+        o.getClass().isEnum() || o instanceof Enum);
+  }
+
+  /**
+   * Writes binary data, such as a PNG screenshot, as a Base64 string without
+   * first building the whole string in memory.
+   */
+  private void writeBase64(byte[] data, Writer writer) throws IOException {
+    char[] chunk = new char[4 * 1024];
+    int used = 0;
+    writer.write('"');
+    for (int i = 0; i < data.length; i += 3) {
+      int remaining = Math.min(3, data.length - i);
+      int bits = (data[i] & 0xff) << 16
+          | (remaining > 1 ? (data[i + 1] & 0xff) << 8 : 0)
+          | (remaining > 2 ? data[i + 2] & 0xff : 0);
+      chunk[used++] = BASE64_CHARS[(bits >> 18) & 0x3f];
+      chunk[used++] = BASE64_CHARS[(bits >> 12) & 0x3f];
+      chunk[used++] = remaining > 1 ? BASE64_CHARS[(bits >> 6) & 0x3f] : '=';
+      chunk[used++] = remaining > 2 ? BASE64_CHARS[bits & 0x3f] : '=';
+      if (used == chunk.length) {
+        writer.write(chunk, 0, used);
+        used = 0;
+      }
+    }
+    writer.write(chunk, 0, used);
+    writer.write('"');
+  }
+
+  private void writeMap(Map<?, ?> map, Writer writer, int maxDepth, boolean keepNulls)
+      throws IOException, JSONException {
+    writer.write('{');
+    boolean first = true;
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      // A JSONObject silently drops null values, so only keep them when asked
+      if ((entry.getValue() == null && !keepNulls) || isTooDeep(entry.getValue(), maxDepth)) {
+        continue;
+      }
+      first = writeSeparator(writer, first);
+      writer.write(JSONObject.quote(String.valueOf(entry.getKey())));
+      writer.write(':');
+      writeValue(entry.getValue(), writer, maxDepth, keepNulls);
+    }
+    writer.write('}');
+  }
+
+  private boolean writeSeparator(Writer writer, boolean first) throws IOException {
+    if (!first) {
+      writer.write(',');
+    }
+    return false;
+  }
+
+  private boolean mapObject(Object toConvert, Writer writer, int maxDepth) throws Exception {
     if (maxDepth == 0)
-        return null;
+        return false;
 
     // Raw object via reflection? Nope, not needed
-    JSONObject mapped = new JSONObject();
-    BeanInfo beanInfo = Introspector.getBeanInfo(toConvert.getClass());
-    for (PropertyDescriptor pd : beanInfo.getPropertyDescriptors()) {
+    writer.write('{');
+    boolean first = true;
+    for (PropertyDescriptor pd : PropertyMunger.getPropertyDescriptors(toConvert.getClass())) {
       if ("class".equals(pd.getName())) {
-        mapped.put("class", toConvert.getClass().getName());
+        first = writeSeparator(writer, first);
+        writer.write("\"class\":");
+        writer.write(JSONObject.quote(toConvert.getClass().getName()));
         continue;
       }
 
@@ -197,11 +314,16 @@ public class BeanToJsonConverter {
       if (readMethod == null)
         continue;
 
-      readMethod.setAccessible(true);
-
       Object result = readMethod.invoke(toConvert);
-      mapped.put(pd.getName(), convertObject(result, maxDepth - 1));
+      if (result == null || isTooDeep(result, maxDepth - 1)) {
+        continue;
+      }
+      first = writeSeparator(writer, first);
+      writer.write(JSONObject.quote(pd.getName()));
+      writer.write(':');
+      writeValue(result, writer, maxDepth - 1, false);
     }
-    return mapped;
+    writer.write('}');
+    return true;
   }
 }
@@ -96,7 +96,9 @@ public enum DriverCommand {
 
   SCREENSHOT("screenshot"),
   DISMISS_ALERT("dismissAlert"),
-  IMPLICITLY_WAIT("implicitlyWait");
+  IMPLICITLY_WAIT("implicitlyWait"),
+
+  BATCH("batch");
 
   private final String commandName;
 
@@ -0,0 +1,282 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON text from a stream straight into Maps, Lists, Strings, Longs,
+ * Doubles, Booleans and nulls, the same shapes that the
+ * {@link JsonToBeanConverter} produces, without building an org.json tree
+ * first.
+ */
+class JsonParser {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private final StringBuilder scratch = new StringBuilder();
+
+  public JsonParser(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * @return The single value held in the stream, or null if the stream is
+   *     empty.
+   */
+  public Object parse() throws IOException, JSONException {
+    if (skipWhitespace() == -1) {
+      return null;
+    }
+
+    Object value = readValue();
+    if (skipWhitespace() != -1) {
+      throw error("Unexpected content after the end of the value");
+    }
+    return value;
+  }
+
+  private Object readValue() throws IOException, JSONException {
+    int c = skipWhitespace();
+    switch (c) {
+      case '{':
+        position++;
+        return readObject();
+
+      case '[':
+        position++;
+        return readArray();
+
+      case '"':
+      case '\'':
+        position++;
+        return readString((char) c);
+
+      case -1:
+        throw error("Unexpected end of input");
+
+      default:
+        return readLiteral();
+    }
+  }
+
+  private Map<String, Object> readObject() throws IOException, JSONException {
+    Map<String, Object> map = new HashMap<String, Object>();
+    if (skipWhitespace() == '}') {
+      position++;
+      return map;
+    }
+
+    while (true) {
+      int c = skipWhitespace();
+      String key;
+      if (c == '"' || c == '\'') {
+        position++;
+        key = readString((char) c);
+      } else {
+        key = String.valueOf(readLiteral());
+      }
+
+      expect(':');
+      map.put(key, readValue());
+
+      c = skipWhitespace();
+      position++;
+      if (c == '}') {
+        return map;
+      } else if (c != ',') {
+        throw error("Expected ',' or '}'");
+      }
+    }
+  }
+
+  private List<Object> readArray() throws IOException, JSONException {
+    List<Object> list = new ArrayList<Object>();
+    if (skipWhitespace() == ']') {
+      position++;
+      return list;
+    }
+
+    while (true) {
+      list.add(readValue());
+
+      int c = skipWhitespace();
+      position++;
+      if (c == ']') {
+        return list;
+      } else if (c != ',') {
+        throw error("Expected ',' or ']'");
+      }
+    }
+  }
+
+  private String readString(char quote) throws IOException, JSONException {
+    scratch.setLength(0);
+    while (true) {
+      if (!fill()) {
+        throw error("Unterminated string");
+      }
+
+      // Copy runs of ordinary characters in one go
+      int start = position;
+      while (position < limit && buffer[position] != quote && buffer[position] != '\\') {
+        position++;
+      }
+      scratch.append(buffer, start, position - start);
+      if (position == limit) {
+        continue;
+      }
+
+      char c = buffer[position++];
+      if (c == quote) {
+        return scratch.toString();
+      }
+      scratch.append(readEscape());
+    }
+  }
+
+  private char readEscape() throws IOException, JSONException {
+    int c = next();
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 't':
+        return '\t';
+      case 'n':
+        return '\n';
+      case 'f':
+        return '\f';
+      case 'r':
+        return '\r';
+      case 'u':
+        char[] hex = new char[4];
+        for (int i = 0; i < hex.length; i++) {
+          int digit = next();
+          if (digit == -1) {
+            throw error("Unterminated unicode escape");
+          }
+          hex[i] = (char) digit;
+        }
+        try {
+          return (char) Integer.parseInt(new String(hex), 16);
+        } catch (NumberFormatException e) {
+          throw error("Illegal unicode escape");
+        }
+      case -1:
+        throw error("Unterminated string");
+      default:
+        return (char) c;
+    }
+  }
+
+  private Object readLiteral() throws IOException, JSONException {
+    scratch.setLength(0);
+    while (fill()) {
+      char c = buffer[position];
+      if (c == ',' || c == ':' || c == ']' || c == '}' || c == '/' || Character.isWhitespace(c)) {
+        break;
+      }
+      scratch.append(c);
+      position++;
+    }
+
+    String literal = scratch.toString();
+    if (literal.length() == 0) {
+      throw error("Missing value");
+    }
+    if ("true".equalsIgnoreCase(literal)) {
+      return Boolean.TRUE;
+    }
+    if ("false".equalsIgnoreCase(literal)) {
+      return Boolean.FALSE;
+    }
+    if ("null".equalsIgnoreCase(literal)) {
+      return null;
+    }
+
+    char first = literal.charAt(0);
+    if ((first >= '0' && first <= '9') || first == '-' || first == '.' || first == '+') {
+      try {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1
+            && literal.indexOf('E') == -1) {
+          return Long.valueOf(literal.charAt(0) == '+' ? literal.substring(1) : literal);
+        }
+        return Double.valueOf(literal);
+      } catch (NumberFormatException e) {
+        try {
+          return Double.valueOf(literal);
+        } catch (NumberFormatException ignored) {
+          // Fall through and treat it as an unquoted string, as org.json does
+        }
+      }
+    }
+    return literal;
+  }
+
+  private void expect(char expected) throws IOException, JSONException {
+    if (skipWhitespace() != expected) {
+      throw error("Expected '" + expected + "'");
+    }
+    position++;
+  }
+
+  private int skipWhitespace() throws IOException {
+    while (fill()) {
+      if (!Character.isWhitespace(buffer[position])) {
+        return buffer[position];
+      }
+      position++;
+    }
+    return -1;
+  }
+
+  private int next() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return buffer[position++];
+  }
+
+  private boolean fill() throws IOException {
+    if (position < limit) {
+      return true;
+    }
+    limit = reader.read(buffer, 0, buffer.length);
+    position = 0;
+    if (limit <= 0) {
+      limit = 0;
+      return false;
+    }
+    return true;
+  }
+
+  private JSONException error(String message) {
+    return new JSONException(message);
+  }
+}
@@ -21,8 +21,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.io.Reader;
+import java.io.StringReader;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
@@ -36,12 +37,29 @@ import static java.util.Collections.unmodifiableSet;
 
 public class JsonToBeanConverter {
 
+  /**
+   * Read a {@link Response}, a Map, a List or a simple bean directly from a
+   * stream of JSON, without first building the whole document as a String
+   * or as an org.json tree.
+   */
+  public <T> T convert(Class<T> clazz, Reader reader) throws Exception {
+    return convertParsed(clazz, new JsonParser(reader).parse());
+  }
+
   @SuppressWarnings("unchecked")
   public <T> T convert(Class<T> clazz, Object text) throws Exception {
     if (text == null) {
       return null;
     }
 
+    if (text instanceof String && canBeStreamed(clazz) && ((String) text).startsWith("{")) {
+      try {
+        return convert(clazz, new StringReader((String) text));
+      } catch (JSONException e) {
+        // Fall through and let org.json have a go
+      }
+    }
+
     if (String.class.equals(clazz)) {
       return (T) text;
     }
@@ -230,9 +248,93 @@ public class JsonToBeanConverter {
     return toConvert;
   }
 
+  private boolean canBeStreamed(Class<?> clazz) {
+    return Response.class.equals(clazz) || Map.class.isAssignableFrom(clazz);
+  }
+
+  /**
+   * Convert a value read by the {@link JsonParser}, which is already made up
+   * of plain Maps, Lists, Strings, Numbers and Booleans.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T convertParsed(Class<T> clazz, Object value) throws Exception {
+    if (value == null) {
+      return null;
+    }
+
+    if (value instanceof Map) {
+      if (Map.class.isAssignableFrom(clazz) || Object.class.equals(clazz)) {
+        return (T) value;
+      }
+      if (Command.class.equals(clazz) || SessionId.class.equals(clazz)
+          || Capabilities.class.equals(clazz) || ProxyPac.class.equals(clazz)) {
+        return convert(clazz, new JSONObject((Map) value).toString());
+      }
+      return populateBean(clazz, (Map<String, Object>) value);
+    }
+
+    if (value instanceof Number) {
+      return (T) convertNumber(clazz, (Number) value);
+    }
+
+    if (value instanceof String && isEnum(clazz, value)) {
+      return (T) convertEnum(clazz, value);
+    }
+
+    return (T) value;
+  }
+
+  private Object convertNumber(Class<?> clazz, Number number) {
+    if (Integer.class.equals(clazz) || int.class.equals(clazz)) {
+      return number.intValue();
+    }
+    if (Short.class.equals(clazz) || short.class.equals(clazz)) {
+      return number.shortValue();
+    }
+    if (Byte.class.equals(clazz) || byte.class.equals(clazz)) {
+      return number.byteValue();
+    }
+    if (Float.class.equals(clazz) || float.class.equals(clazz)) {
+      return number.floatValue();
+    }
+    if (Double.class.equals(clazz) || double.class.equals(clazz)) {
+      return number.doubleValue();
+    }
+    if (Long.class.equals(clazz) || long.class.equals(clazz)) {
+      return number.longValue();
+    }
+    return number;
+  }
+
+  private <T> T populateBean(Class<T> clazz, Map<String, Object> toConvert) throws Exception {
+    T t = clazz.newInstance();
+    for (PropertyDescriptor property : PropertyMunger.getPropertyDescriptors(clazz)) {
+      if (!toConvert.containsKey(property.getName()))
+        continue;
+
+      Method write = property.getWriteMethod();
+      if (write == null) {
+        continue;
+      }
+
+      Object value = toConvert.get(property.getName());
+      Class<?> type = write.getParameterTypes()[0];
+
+      try {
+        write.invoke(t, convertParsed(type, value));
+      } catch (Exception e) {
+        throw new Exception(
+            String.format("Property name: %s -> %s on class %s", property.getName(), value, type),
+            e);
+      }
+    }
+
+    return t;
+  }
+
   public <T> T convertBean(Class<T> clazz, JSONObject toConvert) throws Exception {
     T t = clazz.newInstance();
-    PropertyDescriptor[] allProperties = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
+    PropertyDescriptor[] allProperties = PropertyMunger.getPropertyDescriptors(clazz);
     for (PropertyDescriptor property : allProperties) {
       if (!toConvert.has(property.getName()))
         continue;
@@ -17,17 +17,44 @@ limitations under the License.
 
 package org.openqa.selenium.remote;
 
-import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class PropertyMunger {
 
-  public static Object get(String name, Object on) throws Exception {
-    BeanInfo info = Introspector.getBeanInfo(on.getClass());
+  private static final ConcurrentMap<Class<?>, PropertyDescriptor[]> descriptors =
+      new ConcurrentHashMap<Class<?>, PropertyDescriptor[]>();
 
-    PropertyDescriptor[] properties = info.getPropertyDescriptors();
+  /**
+   * Look up the bean properties of a class, introspecting it only the first
+   * time it is seen. Callers must not modify the returned array.
+   */
+  public static PropertyDescriptor[] getPropertyDescriptors(Class<?> clazz)
+      throws IntrospectionException {
+    PropertyDescriptor[] properties = descriptors.get(clazz);
+    if (properties == null) {
+      properties = Introspector.getBeanInfo(clazz).getPropertyDescriptors();
+      for (PropertyDescriptor property : properties) {
+        Method readMethod = property.getReadMethod();
+        if (readMethod != null) {
+          try {
+            readMethod.setAccessible(true);
+          } catch (SecurityException e) {
+            // Fine. Public getters on public classes can still be called
+          }
+        }
+      }
+      descriptors.putIfAbsent(clazz, properties);
+    }
+    return properties;
+  }
+
+  public static Object get(String name, Object on) throws Exception {
+    PropertyDescriptor[] properties = getPropertyDescriptors(on.getClass());
     for (PropertyDescriptor property : properties) {
       if (property.getName().equals(name)) {
         Object result = property.getReadMethod().invoke(on);
@@ -39,8 +66,7 @@ public class PropertyMunger {
   }
 
   public static void set(String name, Object on, Object value) throws Exception {
-    BeanInfo info = Introspector.getBeanInfo(on.getClass());
-    PropertyDescriptor[] properties = info.getPropertyDescriptors();
+    PropertyDescriptor[] properties = getPropertyDescriptors(on.getClass());
     for (PropertyDescriptor property : properties) {
       if (property.getName().equals(name)) {
         Method writeMethod = property.getWriteMethod();
@@ -24,8 +24,11 @@ import static org.hamcrest.Matchers.is;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.openqa.selenium.internal.Base64Encoder;
 
 import java.awt.*;
+import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -59,6 +62,17 @@ public class BeanToJsonConverterTest extends TestCase {
     assertThat((String) converted.get("foo"), is("bar"));
   }
 
+  public void testShouldLeaveOutBeansNestedTooDeeplyToConvert() throws Exception {
+    String json = new BeanToJsonConverter().convert(new NestedBean(1));
+
+    assertEquals(-1, json.indexOf("null"));
+    JSONObject bean = new JSONObject(json);
+    while (bean.has("child")) {
+      bean = bean.getJSONObject("child");
+    }
+    assertTrue(bean.getInt("depth") > 1);
+  }
+
   public void testShouldConvertArrays() throws Exception {
     String json = new BeanToJsonConverter().convert(new BeanWithArray());
 
@@ -159,6 +173,37 @@ public class BeanToJsonConverterTest extends TestCase {
     assertEquals("alpha", converted.getString("key"));
   }
 
+  public void testShouldWriteTheSameJsonToAWriterAsItReturnsAsAString() throws Exception {
+    Map<String, Object> toConvert = new HashMap<String, Object>();
+    toConvert.put("bean", new SimpleBean());
+    toConvert.put("session", new SessionId("id"));
+    toConvert.put("number", 2.0);
+
+    StringWriter writer = new StringWriter();
+    new BeanToJsonConverter().write(toConvert, writer);
+
+    assertEquals(new BeanToJsonConverter().convert(toConvert), writer.toString());
+    JSONObject converted = new JSONObject(writer.toString());
+    assertThat(converted.getJSONObject("session").getString("value"), is("id"));
+    assertThat(converted.getInt("number"), is(2));
+  }
+
+  public void testShouldConvertBinaryDataToABase64String() throws JSONException {
+    byte[] data = new byte[5000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    Response response = new Response();
+    response.setValue(data);
+
+    JSONObject converted = new JSONObject(new BeanToJsonConverter().convert(response));
+
+    byte[] decoded = new Base64Encoder().decode(converted.getString("value"));
+    assertTrue(Arrays.equals(data, decoded));
+    assertEquals("[\"AQI=\"]",
+        new BeanToJsonConverter().convert(Arrays.asList(new byte[] {1, 2})));
+  }
+
   public void testShouldConvertAProxyPacProperly() throws JSONException {
     ProxyPac pac = new ProxyPac();
     pac.map("*/selenium/*").toProxy("http://localhost:8080/selenium-server");
@@ -188,6 +233,22 @@ public class BeanToJsonConverterTest extends TestCase {
     }
   }
 
+  public static class NestedBean {
+    private final int depth;
+
+    public NestedBean(int depth) {
+      this.depth = depth;
+    }
+
+    public int getDepth() {
+      return depth;
+    }
+
+    public NestedBean getChild() {
+      return new NestedBean(depth + 1);
+    }
+  }
+
   private static class BeanWithArray {
 
     public String[] getNames() {
@@ -26,6 +26,7 @@ import org.openqa.selenium.Platform;
 
 import junit.framework.TestCase;
 
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Collections;
@@ -266,6 +267,37 @@ public class JsonToBeanConverterTest extends TestCase {
     assertEquals(source.toString(), derived.toString());
   }
 
+  @SuppressWarnings("unchecked")
+  public void testShouldReadAResponseFromAStream() throws Exception {
+    String json = "{\"sessionId\":\"sess\",\"status\":7,\"value\":"
+        + "[{\"ELEMENT\":\"1\"},{\"ELEMENT\":\"2\",\"x\":1.5}, null, \"a \\\"quoted\\\" \\u00e9\"]}";
+
+    Response response = new JsonToBeanConverter().convert(Response.class, new StringReader(json));
+
+    assertEquals("sess", response.getSessionId());
+    assertEquals(7, response.getStatus());
+    List<Object> value = (List<Object>) response.getValue();
+    assertEquals(4, value.size());
+    assertEquals("1", ((Map) value.get(0)).get("ELEMENT"));
+    assertEquals(1.5, ((Map) value.get(1)).get("x"));
+    assertNull(value.get(2));
+    assertEquals("a \"quoted\" \u00e9", value.get(3));
+  }
+
+  public void testShouldReadNestedBeansFromAStream() throws Exception {
+    String json = "{\"name\":\"frank\",\"bean\":{\"value\":\"lots\"}}";
+
+    ContainingBean bean =
+        new JsonToBeanConverter().convert(ContainingBean.class, new StringReader(json));
+
+    assertThat(bean.getName(), is("frank"));
+    assertThat(bean.getBean().getValue(), is("lots"));
+  }
+
+  public void testShouldReturnNullWhenReadingAnEmptyStream() throws Exception {
+    assertNull(new JsonToBeanConverter().convert(Map.class, new StringReader("  ")));
+  }
+
   public static class SimpleBean {
 
     private String value;
@@ -31,6 +31,10 @@ import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -49,6 +53,12 @@ import org.openqa.jetty.log.LogFactory;
  * to enhance performance or allow temporary testing without modifying
  * the certificate store.
  * 
+ * Certificates for hostnames can also be served from memory alone,
+ * through {@link #getCachedCertificateForHostname}, which keeps the most
+ * recently used ones and never touches the keystore or the disk.  RSA key
+ * pairs can be generated ahead of need by a background thread, see
+ * {@link #setSpareRSAKeyPairs}.
+ * 
  ***************************************************************************************
  * Copyright (c) 2007, Information Security Partners, LLC
  * All rights reserved.
@@ -91,6 +101,21 @@ public class KeyStoreManager {
 	
 	private SecureRandom _sr;
 	
+	private int _hostCertificateCacheSize = 256;
+	private final LinkedHashMap<String, KeyStore.PrivateKeyEntry> _hostCertificates =
+		new LinkedHashMap<String, KeyStore.PrivateKeyEntry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, KeyStore.PrivateKeyEntry> eldest)
+			{
+				return size() > _hostCertificateCacheSize;
+			}
+		};
+	
+	private BlockingQueue<KeyPair> _spareRSAKeyPairs;
+	private Thread _spareRSAKeyPairGenerator;
+	
 	
 	
 	
@@ -101,7 +126,9 @@ public class KeyStoreManager {
     public KeyStoreManager(File root) {
         this.root = root;
 
-		Security.insertProviderAt(new BouncyCastleProvider(), 2);
+		// Certificates are signed with the "BC" provider by name, so it goes last, where
+		// it cannot take over algorithms such as ECDH from the JSSE's own providers.
+		Security.addProvider(new BouncyCastleProvider());
 		
 		_sr = new SecureRandom();
 		
@@ -597,6 +624,66 @@ public class KeyStoreManager {
 		
 	}
 
+	/**
+	 * Returns a standard SSL server certificate for a hostname, issued by the CA,
+	 * with its private key.  Nothing is added to the keystore or written to disk:
+	 * the most recently used certificates are kept in memory, up to the cache size,
+	 * and one that has been dropped is generated again with a new key pair.
+	 * 
+	 * @param hostname
+	 * @return the private key, with the certificate as its chain
+	 * @throws CertificateParsingException
+	 * @throws InvalidKeyException
+	 * @throws CertificateExpiredException
+	 * @throws CertificateNotYetValidException
+	 * @throws SignatureException
+	 * @throws CertificateException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws KeyStoreException
+	 * @throws UnrecoverableKeyException
+	 */
+	public synchronized KeyStore.PrivateKeyEntry getCachedCertificateForHostname(String hostname) throws CertificateParsingException, InvalidKeyException, CertificateExpiredException, CertificateNotYetValidException, SignatureException, CertificateException, NoSuchAlgorithmException, NoSuchProviderException, KeyStoreException, UnrecoverableKeyException
+	{
+		KeyStore.PrivateKeyEntry entry = _hostCertificates.get(hostname);
+		
+		if(entry == null) {
+			
+			KeyPair kp = nextRSAKeyPair();
+			
+			X509Certificate newCert = CertificateCreator.generateStdSSLServerCertificate(kp.getPublic(),
+																						 getSigningCert(),
+																						 getSigningPrivateKey(),
+																						 getSubjectForHostname(hostname));
+			
+			entry = new KeyStore.PrivateKeyEntry(kp.getPrivate(), new Certificate[] {newCert});
+			
+			_hostCertificates.put(hostname, entry);
+		}
+		return entry;
+	}
+	
+	/**
+	 * The most certificates {@link #getCachedCertificateForHostname} keeps in memory.
+	 * @param size
+	 */
+	public synchronized void setHostCertificateCacheSize(int size)
+	{
+		_hostCertificateCacheSize = size;
+	}
+	
+	/**
+	 * Keeps up to count RSA key pairs generated ahead of need by a background
+	 * thread, so that a certificate for a new hostname only has to be signed.
+	 * Zero stops generating them.
+	 * @param count
+	 */
+	public synchronized void setSpareRSAKeyPairs(int count)
+	{
+		_spareRSAKeyPairs = count > 0 ? new ArrayBlockingQueue<KeyPair>(count) : null;
+		topUpSpareRSAKeyPairs();
+	}
+
 	private String getSubjectForHostname(String hostname) {
 		//String subject = "C=USA, ST=WA, L=Seattle, O=Cybervillains, OU=CertificationAutority, CN=" + hostname + ", EmailAddress=evilRoot@cybervillains.com";
 		String subject = "CN=" + hostname + ", OU=Test, O=CyberVillainsCA, L=Seattle, S=Washington, C=US";
@@ -663,12 +750,81 @@ public class KeyStoreManager {
 	 */
 	public KeyPair getRSAKeyPair()
 	{
-		KeyPair kp = _rsaKpg.generateKeyPair();
+		KeyPair kp = nextRSAKeyPair();
 		rememberKeyPair(kp);
 		return kp;
 		
 	}
 	
+	/**
+	 * Takes a spare RSA key pair if there is one, or generates one.
+	 * @return
+	 */
+	private KeyPair nextRSAKeyPair()
+	{
+		KeyPair kp = null;
+		synchronized(this)
+		{
+			if(_spareRSAKeyPairs != null)
+			{
+				kp = _spareRSAKeyPairs.poll();
+				topUpSpareRSAKeyPairs();
+			}
+		}
+		if(kp == null)
+		{
+			kp = _rsaKpg.generateKeyPair();
+		}
+		return kp;
+	}
+	
+	/**
+	 * Starts the background thread generating spare key pairs, unless it is
+	 * already running or there are all the spares wanted.
+	 */
+	private synchronized void topUpSpareRSAKeyPairs()
+	{
+		if(_spareRSAKeyPairs == null || _spareRSAKeyPairGenerator != null
+				|| _spareRSAKeyPairs.remainingCapacity() == 0)
+		{
+			return;
+		}
+		_spareRSAKeyPairGenerator = new Thread("Spare RSA key pair generator")
+		{
+			public void run()
+			{
+				KeyPairGenerator kpg;
+				try
+				{
+					// KeyPairGenerators are not thread safe, so this thread has its own
+					kpg = KeyPairGenerator.getInstance(RSA_KEYGEN_ALGO);
+					kpg.initialize(1024, new SecureRandom());
+				}
+				catch(NoSuchAlgorithmException e)
+				{
+					log.error("Could not generate spare key pairs", e);
+					return;
+				}
+				while(true)
+				{
+					BlockingQueue<KeyPair> spares;
+					synchronized(KeyStoreManager.this)
+					{
+						spares = _spareRSAKeyPairs;
+						if(spares == null || spares.remainingCapacity() == 0)
+						{
+							_spareRSAKeyPairGenerator = null;
+							return;
+						}
+					}
+					spares.offer(kpg.generateKeyPair());
+				}
+			}
+		};
+		_spareRSAKeyPairGenerator.setDaemon(true);
+		_spareRSAKeyPairGenerator.start();
+	}
+	
 	/**
 	 * Generate a DSA Key Pair
 	 * @return
@@ -17,6 +17,9 @@ package org.openqa.jetty.http;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.openqa.jetty.util.GatheringOutput;
 
 /* ---------------------------------------------------------------- */
 /** HTTP Chunking OutputStream.
@@ -146,6 +149,17 @@ public class ChunkingOutputStream
                 _buf[--i]=(byte)('a'-10+d);
             chunk=chunk/16;
         }
+        if (_chunking && _out instanceof GatheringOutput)
+        {
+            // Send the chunk header, content and CRLF in one write
+            ((GatheringOutput)_out).write(new ByteBuffer[]{
+                ByteBuffer.wrap(_buf,i,10-i+1),
+                ByteBuffer.wrap(b,offset,length),
+                ByteBuffer.wrap(__CRLF)});
+            _out.flush();
+            return;
+        }
+        
         if (_chunking)
             _out.write(_buf,i,10-i+1);
         _out.write(b,offset,length);
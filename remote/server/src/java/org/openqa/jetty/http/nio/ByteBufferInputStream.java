@@ -87,9 +87,12 @@ public class ByteBufferInputStream extends InputStream
      */
     public synchronized int available() throws IOException
     {
-        if (!waitForContent())
-            return -1;
-         return _buffer.remaining();
+        // Must not block: the listener asks between requests whether the
+        // next one has already arrived.
+        int available=_buffer==null?0:_buffer.remaining();
+        for (int i=0;i<LazyList.size(_buffers);i++)
+            available+=((ByteBuffer)LazyList.get(_buffers,i)).remaining();
+        return available;
     }
 
     /* ------------------------------------------------------------------------------- */
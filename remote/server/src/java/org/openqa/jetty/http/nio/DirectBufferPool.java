@@ -0,0 +1,148 @@
+// ========================================================================
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+// ========================================================================
+
+package org.openqa.jetty.http.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/* ------------------------------------------------------------------------------- */
+/** Direct ByteBuffer Pool.
+ * Pool of direct buffers of a fixed size, shared by the connections of
+ * a listener.  Direct buffers are expensive to allocate and are not
+ * reclaimed promptly by the garbage collector, so connections borrow
+ * one while they are writing a response and return it when they go
+ * idle.  At most poolSize idle buffers are kept; when the pool is empty
+ * a new buffer is allocated and the exhaustion is counted.
+ * <p>
+ * The pool also keeps the output statistics of its listener: the bytes
+ * copied through pooled buffers, and the spills, which are writes too
+ * big for a buffer that went to the channel straight from the heap.
+ */
+public class DirectBufferPool
+{
+    private final int _bufferSize;
+    private final int _poolSize;
+    private final ArrayList<ByteBuffer> _buffers;
+
+    private long _bytesBuffered;
+    private long _exhaustions;
+    private long _spills;
+
+    /* ------------------------------------------------------------------------------- */
+    /** Constructor.
+     * @param bufferSize The capacity of each buffer.
+     * @param poolSize The maximum number of idle buffers kept.
+     */
+    public DirectBufferPool(int bufferSize, int poolSize)
+    {
+        _bufferSize=bufferSize;
+        _poolSize=poolSize;
+        _buffers=new ArrayList<ByteBuffer>(poolSize);
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    public int getBufferSize()
+    {
+        return _bufferSize;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    public int getPoolSize()
+    {
+        return _poolSize;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /** Get a cleared buffer from the pool, or a new one if the pool is empty.
+     */
+    public synchronized ByteBuffer getBuffer()
+    {
+        if (_buffers.size()>0)
+        {
+            ByteBuffer buffer=_buffers.remove(_buffers.size()-1);
+            buffer.clear();
+            return buffer;
+        }
+        _exhaustions++;
+        return ByteBuffer.allocateDirect(_bufferSize);
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /** Return a buffer to the pool.  Buffers of the wrong size and
+     * buffers beyond the pool size are left to the garbage collector.
+     */
+    public synchronized void returnBuffer(ByteBuffer buffer)
+    {
+        if (buffer!=null &&
+            buffer.isDirect() &&
+            buffer.capacity()==_bufferSize &&
+            _buffers.size()<_poolSize)
+            _buffers.add(buffer);
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @return The number of idle buffers in the pool.
+     */
+    public synchronized int getIdleBuffers()
+    {
+        return _buffers.size();
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    synchronized void buffered(int bytes)
+    {
+        _bytesBuffered+=bytes;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    synchronized void spilled()
+    {
+        _spills++;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @return The number of bytes written through pooled buffers.
+     */
+    public synchronized long getBytesBuffered()
+    {
+        return _bytesBuffered;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @return The number of times a buffer was needed when the pool was empty.
+     */
+    public synchronized long getExhaustions()
+    {
+        return _exhaustions;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @return The number of writes too big for a pooled buffer.
+     */
+    public synchronized long getSpills()
+    {
+        return _spills;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    public synchronized void statsReset()
+    {
+        _bytesBuffered=0;
+        _exhaustions=0;
+        _spills=0;
+    }
+}
@@ -40,6 +40,11 @@ import org.openqa.jetty.util.ThreadPool;
 
 /* ------------------------------------------------------------------------------- */
 /**  EXPERIMENTAL NIO listener!
+ * 
+ * Connections are only given a thread from the pool while they have a
+ * request to handle.  Idle connections, including persistent connections
+ * waiting for their next request, are parked on the selector, and are
+ * closed once they have been idle for longer than the max idle time.
  * 
  * @version $Revision: 1.6 $
  * @author gregw
@@ -53,6 +58,7 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
     private int _bufferReserve= 512;
     private int _sslPort;
     private int _lingerTimeSecs=5;
+    private int _outputBufferPoolSize=32;
     private HttpHandler _handler;
     
     private transient HttpServer _server;
@@ -60,6 +66,8 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
     private transient ServerSocketChannel _acceptChannel;
     private transient Selector _selector;
     private transient SelectorThread _selectorThread;
+    private transient DirectBufferPool _outputBufferPool;
+    private transient long _nextSweep=0;
     private transient boolean _isLow=false;
     private transient boolean _isOut=false;
     private transient long _warned=0;
@@ -332,6 +340,34 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
         return _lingerTimeSecs;
     }
     
+    /* ------------------------------------------------------------ */
+    /** Set the number of idle direct buffers kept for writing responses.
+     * Each connection borrows one while it is writing and returns it
+     * when it goes idle.
+     * @param size The maximum number of idle buffers kept.
+     */
+    public void setOutputBufferPoolSize(int size)
+    {
+        _outputBufferPoolSize=size;
+    }
+    
+    /* ------------------------------------------------------------ */
+    public int getOutputBufferPoolSize()
+    {
+        return _outputBufferPoolSize;
+    }
+    
+    /* ------------------------------------------------------------ */
+    /** 
+     * @return The pool of direct buffers used to write responses, which
+     * also keeps the listener's counts of bytes buffered, pool exhaustions
+     * and spills; or null if the listener has not been started.
+     */
+    public DirectBufferPool getOutputBufferPool()
+    {
+        return _outputBufferPool;
+    }
+    
     /* ------------------------------------------------------------ */
     public void setHttpHandler(HttpHandler handler)
     {
@@ -365,6 +401,8 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
         // with listeners on anonymous ports
         _address= (InetSocketAddress)_acceptChannel.socket().getLocalSocketAddress();
 
+        _outputBufferPool= new DirectBufferPool(_bufferSize,_outputBufferPoolSize);
+
         // create a selector;
         _selector= Selector.open();
 
@@ -392,6 +430,27 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
     }
 
 
+    /* ------------------------------------------------------------ */
+    /** Close a connection for which no thread could be found, rather
+     * than leave it waiting for one with nothing left to dispatch it.
+     */
+    protected void stopJob(Thread thread, Object job)
+    {
+        if (thread==null && job instanceof Connection)
+        {
+            try
+            {
+                ((Connection)job).close();
+            }
+            catch (Exception e)
+            {
+                LogSupport.ignore(log, e);
+            }
+        }
+        super.stopJob(thread, job);
+    }
+
+
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
@@ -411,19 +470,27 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
                     SelectionKey key= null;
                     try
                     {
-                        _selector.select();
+                        _selector.select(getSelectTimeoutMs());
                         Iterator iter= _selector.selectedKeys().iterator();
 
+                        boolean deferred=false;
                         while (iter.hasNext())
                         {
                             key= (SelectionKey)iter.next();
-                            if (key.isAcceptable())
-                                doAccept(key);
-                            if (key.isReadable())
-                                doRead(key);
+                            if (key.isAcceptable() && !doAccept(key))
+                                deferred=true;
+                            else if (key.isReadable() && !doRead(key))
+                                deferred=true;
                             key= null;
                             iter.remove();
                         }
+                        
+                        doSweep();
+                        
+                        // Keys left unhandled for lack of threads are
+                        // selected again at once, so back off rather than spin.
+                        if (deferred)
+                            Thread.sleep(100);
                     }
                     catch (Exception e)
                     {
@@ -447,6 +514,8 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
                 {
                     LogSupport.ignore(log, e);
                 }
+                if (_selector != null)
+                    closeConnections();
                 try
                 {
                     if (_selector != null)
@@ -464,11 +533,85 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
         }
 
         /* ------------------------------------------------------------ */
-        void doAccept(SelectionKey key)
+        /** Close every connection, so that clients holding persistent
+         * connections see the listener go away.
+         */
+        void closeConnections()
+        {
+            Iterator iter=_selector.keys().iterator();
+            while (iter.hasNext())
+            {
+                Object attachment=((SelectionKey)iter.next()).attachment();
+                if (attachment instanceof Connection)
+                {
+                    try
+                    {
+                        ((Connection)attachment).close();
+                    }
+                    catch (Exception e)
+                    {
+                        LogSupport.ignore(log, e);
+                    }
+                }
+            }
+        }
+        
+        /* ------------------------------------------------------------ */
+        long getSelectTimeoutMs()
+        {
+            int maxIdle=getMaxIdleTimeMs();
+            if (maxIdle<=0)
+                return 0;
+            return Math.min(maxIdle,1000);
+        }
+        
+        /* ------------------------------------------------------------ */
+        /** Close the connections which have been idle for longer than
+         * the max idle time.  Idle connections have no thread to time
+         * them out, so the selector thread checks them about once a second.
+         */
+        void doSweep()
+        {
+            int maxIdle=getMaxIdleTimeMs();
+            long now=System.currentTimeMillis();
+            if (maxIdle<=0 || now<_nextSweep)
+                return;
+            _nextSweep=now+getSelectTimeoutMs();
+            
+            Iterator iter=_selector.keys().iterator();
+            while (iter.hasNext())
+            {
+                SelectionKey key=(SelectionKey)iter.next();
+                Object attachment=key.attachment();
+                if (attachment instanceof Connection)
+                {
+                    Connection connection=(Connection)attachment;
+                    if (key.isValid() && connection.getIdleTimeMs(now)>maxIdle)
+                    {
+                        try
+                        {
+                            if (log.isDebugEnabled())
+                                log.debug("Closing idle connection "+connection);
+                            connection.close();
+                        }
+                        catch (IOException e)
+                        {
+                            LogSupport.ignore(log, e);
+                        }
+                    }
+                }
+            }
+        }
+        
+        /* ------------------------------------------------------------ */
+        /**
+         * @return false if the connection was left to be accepted later.
+         */
+        boolean doAccept(SelectionKey key)
             throws IOException, InterruptedException
         {            
             if (isLowOnResources())
-                return;
+                return false;
                 
             ServerSocketChannel server = (ServerSocketChannel) key.channel();
             SocketChannel channel = server.accept();
@@ -492,16 +635,20 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
 
             Connection connection=new Connection(channel,readKey, SocketChannelListener.this);
             readKey.attach(connection);
+            return true;
         }
 
         /* ------------------------------------------------------------ */
-        void doRead(SelectionKey key) 
+        /**
+         * @return false if the connection was left to be read later.
+         */
+        boolean doRead(SelectionKey key) 
             throws IOException
         {
             Connection connection = (Connection)key.attachment();
             if (connection._idle && isOutOfResources())
                 // Don't handle idle connections if out of resources.
-                return;
+                return false;
             ByteBuffer buf= connection._in.getBuffer();
             int count = ((SocketChannel)key.channel()).read(buf);
             if (count<0)
@@ -513,6 +660,7 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
                 buf.flip();
                 connection.write(buf);
             }
+            return true;
         }   
 
         void doStop()
@@ -532,6 +680,7 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
       implements Runnable
     {
         boolean _idle=true;
+        long _idleSince=System.currentTimeMillis();
         SocketChannel _channel;
         SelectionKey _key;
         ByteBufferInputStream _in;
@@ -543,7 +692,7 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
             super(listener,
                          channel.socket().getInetAddress(),
                          new ByteBufferInputStream(listener.getBufferSize()),
-                         new SocketChannelOutputStream(channel,listener.getBufferSize()),
+                         new SocketChannelOutputStream(channel,listener.getOutputBufferPool()),
                          channel);
             _channel=channel;
             _key=key;
@@ -555,45 +704,61 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
         
 
         /* ------------------------------------------------------------------------------- */
+        /** Write bytes read from the channel.
+         * If the connection is idle and the bytes start a request, a
+         * thread is taken from the pool to handle it.
+         */
         void write(ByteBuffer buf)
         {
-            if (!_idle)
-                _in.write(buf);
-            else
+            synchronized(this)
             {
-                boolean written=false;
+                // The handling thread checks for more input and goes idle
+                // under the same lock, so these bytes are either seen by
+                // it or dispatched below.
+                if (!_idle)
+                {
+                    _in.write(buf);
+                    return;
+                }
+                _idleSince=System.currentTimeMillis();
+            }
+            
+            boolean written=false;
+            
+            // Is there any actual content there?
+            for (int i=buf.position();i<buf.limit();i++)
+            {
+                byte b = buf.get(i);
                 
-                // Is there any actual content there?
-                for (int i=buf.position();i<buf.limit();i++)
+                if (b>' ')
                 {
-                    byte b = buf.get(i);
-                    
-                    if (b>' ')
+                    buf.position(i);
+                
+                    try
                     {
-                        buf.position(i);
-                    
-                        try
+                        written=true;
+                        _in.write(buf);
+                        synchronized(this)
                         {
-                            written=true;
-                            _in.write(buf);
-                            _listener.run(this);
                             _idle=false;
                         }
-                        catch(InterruptedException e)
-                        {
-                            LogSupport.ignore(log, e);
-                        }
-                        finally
-                        {
-                            i=buf.limit();
-                        }
+                        _listener.run(this);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        LogSupport.ignore(log, e);
+                        goIdle();
+                    }
+                    finally
+                    {
+                        i=buf.limit();
                     }
                 }
-                
-                if (!written)
-                {
-                    _in.recycle(buf);
-                }
+            }
+            
+            if (!written)
+            {
+                _in.recycle(buf);
             }
         }
         
@@ -602,16 +767,18 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
          */
         public void run()
         {
+            boolean idle=false;
             try
             {
                 associateThread();
-                while (_in!=null && _in.available()>0 && _listener.isStarted())
+                while (hasNext())
                 {
                     if (handleNext())
                         recycle();
                     else
                         destroy();
                 }
+                idle=true;
             }
             catch(IOException e)
             {
@@ -620,11 +787,64 @@ public class SocketChannelListener extends ThreadPool implements HttpListener
                 destroy();
             }
             finally
+            {
+                // Once idle the connection may already be handled by
+                // another thread, so this one must not touch it again.
+                if (!idle)
+                {
+                    disassociateThread();
+                    goIdle();
+                }
+            }
+        }
+        
+        /* ------------------------------------------------------------------------------- */
+        /** Check, without blocking, for another request to handle.
+         * If there is none the handling thread is disassociated and the
+         * connection goes idle, leaving the selector to dispatch it again
+         * when more bytes arrive.
+         */
+        private synchronized boolean hasNext()
+            throws IOException
+        {
+            if (_in!=null && _listener!=null && _listener.isStarted() &&
+                getInputStream().getInputStream().available()>0)
+                return true;
+            disassociateThread();
+            goIdle();
+            return false;
+        }
+        
+        /* ------------------------------------------------------------------------------- */
+        private synchronized void goIdle()
+        {
+            if (!_idle)
             {
                 _idle=true;
-                disassociateThread();
+                _idleSince=System.currentTimeMillis();
             }
         }
+        
+        /* ------------------------------------------------------------------------------- */
+        /**
+         * @return How long the connection has been idle at the given time,
+         * or -1 if it is handling a request.
+         */
+        synchronized long getIdleTimeMs(long now)
+        {
+            return _idle?now-_idleSince:-1;
+        }
+
+        /* ------------------------------------------------------------------------------- */
+        /** Recycle the connection between requests, returning the output
+         * buffer to the pool while the connection waits for the next one.
+         */
+        protected void recycle()
+        {
+            super.recycle();
+            if (_out!=null)
+                _out.releaseBuffer();
+        }
 
         /* ------------------------------------------------------------------------------- */
         public synchronized void close()
@@ -24,6 +24,7 @@ import java.nio.channels.SocketChannel;
 
 import org.apache.commons.logging.Log;
 import org.openqa.jetty.log.LogFactory;
+import org.openqa.jetty.util.GatheringOutput;
 import org.openqa.jetty.util.LogSupport;
 
 /* ------------------------------------------------------------------------------- */
@@ -31,17 +32,24 @@ import org.openqa.jetty.util.LogSupport;
  * Blocking output stream on non-blocking SocketChannel.  Makes the 
  * assumption that writes will rarely need to block.
  * All writes flush to the channel, and no additional buffering is done.
+ * Writes are copied through a direct buffer borrowed from the listener's
+ * DirectBufferPool, which is returned by releaseBuffer() when the
+ * connection goes idle.  Writes too big for the buffer are written
+ * straight from the heap.
  * @version $Revision: 1.4 $
  * @author gregw
  */
 public class SocketChannelOutputStream extends OutputStream
+    implements GatheringOutput
 {
     private static Log log= LogFactory.getLog(SocketChannelOutputStream.class);
     
     ByteBuffer _buffer;
     ByteBuffer _flush;
+    ByteBuffer[] _gather;
     SocketChannel _channel;
     Selector _selector;
+    DirectBufferPool _pool;
     
     /* ------------------------------------------------------------------------------- */
     /** Constructor.
@@ -49,9 +57,40 @@ public class SocketChannelOutputStream extends OutputStream
      */
     public SocketChannelOutputStream(SocketChannel channel,
                                                                              int bufferSize)
+    {
+        this(channel,new DirectBufferPool(bufferSize,1));
+    }
+    
+    /* ------------------------------------------------------------------------------- */
+    /** Constructor.
+     * @param channel The channel to write to.
+     * @param pool The pool to borrow a direct buffer from.
+     */
+    public SocketChannelOutputStream(SocketChannel channel,
+                                     DirectBufferPool pool)
     {
         _channel=channel;
-        _buffer=ByteBuffer.allocateDirect(bufferSize);
+        _pool=pool;
+    }
+    
+    /* ------------------------------------------------------------------------------- */
+    private ByteBuffer getBuffer()
+    {
+        if (_buffer==null)
+            _buffer=_pool.getBuffer();
+        _buffer.clear();
+        return _buffer;
+    }
+    
+    /* ------------------------------------------------------------------------------- */
+    /** Return the direct buffer to the pool until the next write.
+     */
+    public void releaseBuffer()
+    {
+        if (_buffer!=null && _pool!=null)
+            _pool.returnBuffer(_buffer);
+        _buffer=null;
+        _flush=null;
     }
 
     /* ------------------------------------------------------------------------------- */
@@ -60,10 +99,11 @@ public class SocketChannelOutputStream extends OutputStream
      */
     public void write(int b) throws IOException
     {
-        _buffer.clear();
-        _buffer.put((byte)b);
-        _buffer.flip();
-        _flush=_buffer;
+        ByteBuffer buffer=getBuffer();
+        buffer.put((byte)b);
+        buffer.flip();
+        _pool.buffered(1);
+        _flush=buffer;
         flushBuffer();
     }
 
@@ -91,14 +131,18 @@ public class SocketChannelOutputStream extends OutputStream
      */
     public void write(byte[] buf, int offset, int length) throws IOException
     {
-        if (length>_buffer.capacity())
+        if (length>_pool.getBufferSize())
+        {
+            _pool.spilled();
             _flush=ByteBuffer.wrap(buf,offset,length);
+        }
         else
          {
-             _buffer.clear();
-             _buffer.put(buf,offset,length);
-             _buffer.flip();
-             _flush=_buffer;
+             ByteBuffer buffer=getBuffer();
+             buffer.put(buf,offset,length);
+             buffer.flip();
+             _pool.buffered(length);
+             _flush=buffer;
          }
          flushBuffer();
     }
@@ -109,16 +153,37 @@ public class SocketChannelOutputStream extends OutputStream
      */
     public void write(byte[] buf) throws IOException
     {
-        if (buf.length>_buffer.capacity())
-            _flush=ByteBuffer.wrap(buf);
+        write(buf,0,buf.length);
+    }
+    
+    /* ------------------------------------------------------------------------------- */
+    /** Write several buffers with one write to the channel.
+     * If they fit they are copied together into the direct buffer,
+     * otherwise they are written with a gathering write.
+     * @see org.openqa.jetty.util.GatheringOutput#write(java.nio.ByteBuffer[])
+     */
+    public void write(ByteBuffer[] buffers) throws IOException
+    {
+        long length=0;
+        for (int i=0;i<buffers.length;i++)
+            length+=buffers[i].remaining();
+        
+        if (length>_pool.getBufferSize())
+        {
+            _pool.spilled();
+            _gather=buffers;
+            flushGather(length);
+        }
         else
-         {
-             _buffer.clear();
-             _buffer.put(buf);
-             _buffer.flip();
-             _flush=_buffer;
-         }
-         flushBuffer();
+        {
+            ByteBuffer buffer=getBuffer();
+            for (int i=0;i<buffers.length;i++)
+                buffer.put(buffers[i]);
+            buffer.flip();
+            _pool.buffered((int)length);
+            _flush=buffer;
+            flushBuffer();
+        }
     }
 
 
@@ -138,31 +203,62 @@ public class SocketChannelOutputStream extends OutputStream
                 if (len<0)
                     throw new IOException("EOF");
                 if (len==0)
-                {
-                    // still full.  need to  block until it is writable.
-                    if (_selector==null)
-                     {
-                            _selector=Selector.open();
-                            _channel.register(_selector,SelectionKey.OP_WRITE);
-                     }
+                    waitUntilWritable();
+            }
+        }
+    }
 
-                     _selector.select();
+    /* ------------------------------------------------------------------------------- */
+    private void flushGather(long length) throws IOException
+    {
+        try
+        {
+            while (length>0)
+            {
+                long len=_channel.write(_gather);
+                if (len<0)
+                    throw new IOException("EOF");
+                if (len==0)
+                {
+                    // write channel full.  Try letting other threads have a go.
+                    Thread.yield();
+                    len=_channel.write(_gather);
+                    if (len<0)
+                        throw new IOException("EOF");
+                    if (len==0)
+                        waitUntilWritable();
                 }
+                length-=len;
             }
         }
+        finally
+        {
+            _gather=null;
+        }
     }
-
+    
+    /* ------------------------------------------------------------------------------- */
+    private void waitUntilWritable() throws IOException
+    {
+        // still full.  need to  block until it is writable.
+        if (_selector==null)
+        {
+            _selector=Selector.open();
+            _channel.register(_selector,SelectionKey.OP_WRITE);
+        }
+        _selector.select();
+    }
+    
     /* ------------------------------------------------------------------------------- */
     public void destroy()
     {
+        releaseBuffer();
         if (_selector!=null)
         {
             try{_selector.close();}
             catch(IOException e){ LogSupport.ignore(log,e);}
             _selector=null;
-            _buffer=null;
-            _flush=null;
-            _channel=null;
         }
+        _channel=null;
     }
 }
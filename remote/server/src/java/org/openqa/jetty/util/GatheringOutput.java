@@ -0,0 +1,34 @@
+// ========================================================================
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+// ========================================================================
+
+package org.openqa.jetty.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/* ------------------------------------------------------------ */
+/** Gathering Output.
+ * Implemented by output streams which can write several buffers
+ * in a single operation, so that callers which would otherwise make
+ * one write per buffer (eg a chunk header, its content and its
+ * trailing CRLF) can hand them over together.
+ */
+public interface GatheringOutput
+{
+    /* ------------------------------------------------------------ */
+    /** Write the remaining bytes of all the buffers, in order.
+     * @param buffers The buffers to write.
+     * @exception IOException
+     */
+    public void write(ByteBuffer[] buffers)
+        throws IOException;
+}
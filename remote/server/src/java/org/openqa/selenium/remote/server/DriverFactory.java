@@ -23,12 +23,60 @@ import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.remote.Capabilities;
 
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Creates the driver best matching a set of capabilities.
+ *
+ * <p>If the "webdriver.remote.warm_pool_size" system property is greater than
+ * 0, up to that many ready instances of each driver class that has been asked
+ * for are kept, so that a new session does not have to wait for a browser to
+ * start. The pool is refilled in the background. Only newly started drivers
+ * go into the pool: a driver handed back through {@link #release(WebDriver)}
+ * is always quit, since the WebDriver API cannot clear everything a session
+ * leaves behind in a browser, such as other sites' cookies, storage and the
+ * cache. The InternetExplorerDriver must be used on the thread that created
+ * it, so it is never pooled.
+ */
 public class DriverFactory {
+  private static final String UNPOOLABLE = "org.openqa.selenium.ie.InternetExplorerDriver";
+
   private Map<Capabilities, Class<? extends WebDriver>> capabilitiesToDriver =
       new ConcurrentHashMap<Capabilities, Class<? extends WebDriver>>();
 
+  private final int poolSize;
+  private final ConcurrentMap<Class<? extends WebDriver>, BlockingQueue<WebDriver>> pools =
+      new ConcurrentHashMap<Class<? extends WebDriver>, BlockingQueue<WebDriver>>();
+  // Instances being started in the background, per class, so the pool isn't overfilled
+  private final ConcurrentMap<Class<? extends WebDriver>, AtomicInteger> starting =
+      new ConcurrentHashMap<Class<? extends WebDriver>, AtomicInteger>();
+  private ExecutorService warmer;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong warmUps = new AtomicLong();
+  private final AtomicLong warmUpTime = new AtomicLong();
+
+  public DriverFactory() {
+    this(Integer.getInteger("webdriver.remote.warm_pool_size", 0));
+  }
+
+  /**
+   * @param poolSize The number of ready instances to keep of each driver
+   *     class, or 0 to start a new driver for every session.
+   */
+  public DriverFactory(int poolSize) {
+    this.poolSize = poolSize;
+  }
+
   public void registerDriver(Capabilities capabilities, Class<? extends WebDriver> implementation) {
     capabilitiesToDriver.put(capabilities, implementation);
   }
@@ -75,6 +123,168 @@ public class DriverFactory {
   public WebDriver newInstance(Capabilities capabilities) {
     Class<? extends WebDriver> clazz = getBestMatchFor(capabilities);
 
+    if (!isPooled(clazz)) {
+      return create(clazz);
+    }
+
+    WebDriver driver = poolFor(clazz).poll();
+    if (driver != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      driver = timedCreate(clazz);
+    }
+    refill(clazz);
+    return driver;
+  }
+
+  /**
+   * Starts filling the pool for the driver best matching the given
+   * capabilities ahead of the first session that asks for it.
+   */
+  public void warmUp(Capabilities capabilities) {
+    Class<? extends WebDriver> clazz = getBestMatchFor(capabilities);
+    if (isPooled(clazz)) {
+      refill(clazz);
+    }
+  }
+
+  /**
+   * Hands back a driver that is no longer needed. The driver is quit rather
+   * than put back into the pool, which is only ever filled with new drivers.
+   */
+  public void release(WebDriver driver) {
+    driver.quit();
+  }
+
+  /**
+   * Quits every driver waiting in the pool and stops refilling it.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      if (warmer != null) {
+        warmer.shutdownNow();
+        warmer = null;
+      }
+    }
+    for (BlockingQueue<WebDriver> pool : pools.values()) {
+      WebDriver driver;
+      while ((driver = pool.poll()) != null) {
+        quietlyQuit(driver);
+      }
+    }
+  }
+
+  /**
+   * @return The number of ready drivers waiting in the pool.
+   */
+  public int getPoolDepth() {
+    int depth = 0;
+    for (BlockingQueue<WebDriver> pool : pools.values()) {
+      depth += pool.size();
+    }
+    return depth;
+  }
+
+  public long getPoolHits() {
+    return hits.get();
+  }
+
+  public long getPoolMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return The average time, in milliseconds, taken to start a pooled driver.
+   */
+  public long getAverageWarmUpTime() {
+    long count = warmUps.get();
+    return count == 0 ? 0 : warmUpTime.get() / count;
+  }
+
+  private boolean isPooled(Class<? extends WebDriver> clazz) {
+    return poolSize > 0 && clazz != null && !UNPOOLABLE.equals(clazz.getName());
+  }
+
+  private BlockingQueue<WebDriver> poolFor(Class<? extends WebDriver> clazz) {
+    BlockingQueue<WebDriver> pool = pools.get(clazz);
+    if (pool == null) {
+      pools.putIfAbsent(clazz, new LinkedBlockingQueue<WebDriver>(poolSize));
+      pool = pools.get(clazz);
+    }
+    return pool;
+  }
+
+  private AtomicInteger startingFor(Class<? extends WebDriver> clazz) {
+    AtomicInteger count = starting.get(clazz);
+    if (count == null) {
+      starting.putIfAbsent(clazz, new AtomicInteger());
+      count = starting.get(clazz);
+    }
+    return count;
+  }
+
+  private void refill(final Class<? extends WebDriver> clazz) {
+    final BlockingQueue<WebDriver> pool = poolFor(clazz);
+    final AtomicInteger inProgress = startingFor(clazz);
+    ExecutorService executor = getWarmer();
+
+    while (true) {
+      int current = inProgress.get();
+      if (pool.size() + current >= poolSize) {
+        return;
+      }
+      if (!inProgress.compareAndSet(current, current + 1)) {
+        continue;
+      }
+
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            WebDriver driver = timedCreate(clazz);
+            if (!pool.offer(driver)) {
+              quietlyQuit(driver);
+            }
+          } catch (RuntimeException e) {
+            // Leave the slot empty. The next session will start its own driver.
+          } finally {
+            inProgress.decrementAndGet();
+          }
+        }
+      });
+    }
+  }
+
+  private synchronized ExecutorService getWarmer() {
+    if (warmer == null) {
+      warmer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "webdriver-warm-pool");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return warmer;
+  }
+
+  private WebDriver timedCreate(Class<? extends WebDriver> clazz) {
+    long start = System.currentTimeMillis();
+    WebDriver driver = create(clazz);
+    warmUpTime.addAndGet(System.currentTimeMillis() - start);
+    warmUps.incrementAndGet();
+    return driver;
+  }
+
+  private void quietlyQuit(WebDriver driver) {
+    try {
+      driver.quit();
+    } catch (RuntimeException e) {
+      // Nothing more we can do
+    }
+  }
+
+  private WebDriver create(Class<? extends WebDriver> clazz) {
     try {
       return clazz.newInstance();
     } catch (InstantiationException e) {
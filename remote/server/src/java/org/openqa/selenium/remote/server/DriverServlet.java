@@ -58,6 +58,7 @@ import org.openqa.selenium.remote.server.handler.GetElementValue;
 import org.openqa.selenium.remote.server.handler.GetMouseSpeed;
 import org.openqa.selenium.remote.server.handler.GetPageSource;
 import org.openqa.selenium.remote.server.handler.GetSessionCapabilities;
+import org.openqa.selenium.remote.server.handler.GetStatus;
 import org.openqa.selenium.remote.server.handler.GetTagName;
 import org.openqa.selenium.remote.server.handler.GetTitle;
 import org.openqa.selenium.remote.server.handler.GoBack;
@@ -74,36 +75,49 @@ import org.openqa.selenium.remote.server.handler.SwitchToFrame;
 import org.openqa.selenium.remote.server.handler.SwitchToWindow;
 import org.openqa.selenium.remote.server.handler.ToggleElement;
 import org.openqa.selenium.remote.server.handler.ElementEquality;
+import org.openqa.selenium.remote.server.handler.ExecuteBatch;
 import org.openqa.selenium.remote.server.renderer.EmptyResult;
 import org.openqa.selenium.remote.server.renderer.ForwardResult;
 import org.openqa.selenium.remote.server.renderer.JsonErrorExceptionResult;
 import org.openqa.selenium.remote.server.renderer.JsonResult;
+import org.openqa.selenium.remote.server.renderer.PngResult;
 import org.openqa.selenium.remote.server.renderer.RedirectResult;
 import org.openqa.selenium.remote.server.rest.Handler;
 import org.openqa.selenium.remote.server.rest.ResultConfig;
 import org.openqa.selenium.remote.server.rest.ResultType;
+import org.openqa.selenium.remote.server.rest.Router;
 import org.openqa.selenium.remote.server.rest.UrlMapper;
 
 public class DriverServlet extends HttpServlet {
   private UrlMapper getMapper;
   private UrlMapper postMapper;
   private UrlMapper deleteMapper;
+  private DriverSessions driverSessions;
 
   @Override
   public void init() throws ServletException {
     super.init();
 
-    DriverSessions driverSessions = new DriverSessions();
+    driverSessions = new DriverSessions();
 
     ServletLogTo logger = new ServletLogTo();
 
     setupMappings(driverSessions, logger);
   }
 
+  @Override
+  public void destroy() {
+    if (driverSessions != null) {
+      driverSessions.shutdown();
+    }
+    super.destroy();
+  }
+
   private void setupMappings(DriverSessions driverSessions, ServletLogTo logger) {
-    getMapper = new UrlMapper(driverSessions, logger);
-    postMapper = new UrlMapper(driverSessions, logger);
-    deleteMapper = new UrlMapper(driverSessions, logger);
+    Router router = new MapperRouter();
+    getMapper = new UrlMapper(driverSessions, logger, router);
+    postMapper = new UrlMapper(driverSessions, logger, router);
+    deleteMapper = new UrlMapper(driverSessions, logger, router);
 
     getMapper.addGlobalHandler(ResultType.EXCEPTION,
                                new JsonErrorExceptionResult(":exception", ":response"));
@@ -114,6 +128,8 @@ public class DriverServlet extends HttpServlet {
 
     postMapper.bind("/config/drivers", AddConfig.class).on(ResultType.SUCCESS, new EmptyResult());
 
+    getMapper.bind("/status", GetStatus.class).on(ResultType.SUCCESS, new JsonResult(":response"));
+
     postMapper.bind("/session", NewSession.class)
         .on(ResultType.SUCCESS, new RedirectResult("/session/:sessionId"));
     getMapper.bind("/session/:sessionId", GetSessionCapabilities.class)
@@ -147,7 +163,8 @@ public class DriverServlet extends HttpServlet {
         .on(ResultType.SUCCESS, new JsonResult(":response"));
 
     getMapper.bind("/session/:sessionId/screenshot", CaptureScreenshot.class)
-        .on(ResultType.SUCCESS, new JsonResult(":response"));
+        .on(ResultType.SUCCESS, new JsonResult(":response"))
+        .on(ResultType.SUCCESS, new PngResult(":response"), "image/png");
 
     getMapper.bind("/session/:sessionId/title", GetTitle.class)
         .on(ResultType.SUCCESS, new JsonResult(":response"));
@@ -235,6 +252,9 @@ public class DriverServlet extends HttpServlet {
 
     postMapper.bind("/session/:sessionId/timeouts/implicit_wait", ImplicitlyWait.class)
         .on(ResultType.SUCCESS, new EmptyResult());
+
+    postMapper.bind("/session/:sessionId/batch", ExecuteBatch.class)
+        .on(ResultType.SUCCESS, new JsonResult(":response"));
   }
 
   protected ResultConfig addNewGetMapping(String path, Class<? extends Handler> implementationClass) {
@@ -249,6 +269,21 @@ public class DriverServlet extends HttpServlet {
     return deleteMapper.bind(path, implementationClass);
   }
 
+  /**
+   * @return The mapper holding the routes for the given HTTP verb, or null if
+   *     the verb is not supported.
+   */
+  UrlMapper getMapper(String httpMethod) {
+    if ("GET".equals(httpMethod)) {
+      return getMapper;
+    } else if ("POST".equals(httpMethod)) {
+      return postMapper;
+    } else if ("DELETE".equals(httpMethod)) {
+      return deleteMapper;
+    }
+    return null;
+  }
+
   @Override
   protected void doGet(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException {
@@ -284,6 +319,13 @@ public class DriverServlet extends HttpServlet {
     }
   }
 
+  private class MapperRouter implements Router {
+    public ResultConfig getConfig(String httpMethod, String url) throws Exception {
+      UrlMapper mapper = getMapper(httpMethod);
+      return mapper == null ? null : mapper.getConfig(url);
+    }
+  }
+
   private class ServletLogTo implements LogTo {
     public void log(String message) {
       DriverServlet.this.log(message);
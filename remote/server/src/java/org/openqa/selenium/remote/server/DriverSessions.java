@@ -19,19 +19,58 @@ package org.openqa.selenium.remote.server;
 
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.remote.Capabilities;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.SessionId;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The live sessions of a server. The following system properties control how
+ * many there may be and how long they may sit unused:
+ *
+ * <ul>
+ * <li>"webdriver.remote.max_sessions": the most sessions of any one browser
+ *     that may be open at once. 0, the default, means there is no limit.
+ * <li>"webdriver.remote.session_queue_timeout": how long, in milliseconds, a
+ *     new session may wait for another of the same browser to close once the
+ *     limit is reached. 0, the default, rejects it straight away.
+ * <li>"webdriver.remote.session_idle_timeout": how long, in milliseconds, a
+ *     session may go without a command before its browser is quit. Defaults
+ *     to 30 minutes; 0 never quits idle sessions.
+ * </ul>
+ */
 public class DriverSessions {
   private final DriverFactory factory;
 
   private final Map<SessionId, Session> sessionIdToDriver =
       new ConcurrentHashMap<SessionId, Session>();
+  private final Map<SessionId, Semaphore> sessionIdToPermits =
+      new ConcurrentHashMap<SessionId, Semaphore>();
+  private final ConcurrentMap<String, Semaphore> browserToPermits =
+      new ConcurrentHashMap<String, Semaphore>();
+
+  private final int maxSessionsPerBrowser;
+  private final long queueTimeout;
+  private final long idleTimeout;
+
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong reaped = new AtomicLong();
+  private ScheduledExecutorService reaper;
 
   private static Map<Capabilities, String> defaultDrivers = new HashMap<Capabilities, String>() {{
     put(DesiredCapabilities.chrome(), "org.openqa.selenium.chrome.ChromeDriver");
@@ -45,7 +84,17 @@ public class DriverSessions {
   }
 
   protected DriverSessions(Platform runningOn, DriverFactory factory) {
+    this(runningOn, factory, Integer.getInteger("webdriver.remote.max_sessions", 0),
+        Long.getLong("webdriver.remote.session_queue_timeout", 0),
+        Long.getLong("webdriver.remote.session_idle_timeout", TimeUnit.MINUTES.toMillis(30)));
+  }
+
+  protected DriverSessions(Platform runningOn, DriverFactory factory, int maxSessionsPerBrowser,
+      long queueTimeout, long idleTimeout) {
     this.factory = factory;
+    this.maxSessionsPerBrowser = maxSessionsPerBrowser;
+    this.queueTimeout = queueTimeout;
+    this.idleTimeout = idleTimeout;
     registerDefaults(runningOn);
   }
 
@@ -73,10 +122,26 @@ public class DriverSessions {
   }
 
   public SessionId newSession(Capabilities desiredCapabilities) throws Exception {
-    Session session = new Session(factory, desiredCapabilities);
-    
-    SessionId sessionId = new SessionId(String.valueOf(System.currentTimeMillis()));
+    Semaphore permits = acquirePermit(desiredCapabilities);
+
+    Session session;
+    try {
+      session = new Session(factory, desiredCapabilities);
+    } catch (Exception e) {
+      release(permits);
+      throw e;
+    } catch (Error e) {
+      release(permits);
+      throw e;
+    }
+
+    SessionId sessionId = new SessionId(UUID.randomUUID().toString());
+    if (permits != null) {
+      sessionIdToPermits.put(sessionId, permits);
+    }
     sessionIdToDriver.put(sessionId, session);
+    created.incrementAndGet();
+    startReaper();
     return sessionId;
   }
   
@@ -84,8 +149,157 @@ public class DriverSessions {
     return sessionIdToDriver.get(sessionId);
   }
 
+  /**
+   * Forgets the session and stops its thread. The browser is expected to have
+   * been released already.
+   */
   public void deleteSession(SessionId sessionId) {
-    sessionIdToDriver.remove(sessionId);
+    Session session = remove(sessionId);
+    if (session != null) {
+      session.close(false);
+    }
+  }
+
+  /**
+   * Quits the browser of every session which has gone without a command for
+   * longer than the idle timeout.
+   */
+  public void reapIdleSessions() {
+    if (idleTimeout <= 0) {
+      return;
+    }
+
+    for (Map.Entry<SessionId, Session> entry : sessionIdToDriver.entrySet()) {
+      if (entry.getValue().getIdleTime() > idleTimeout) {
+        Session session = remove(entry.getKey());
+        if (session != null) {
+          reaped.incrementAndGet();
+          session.close(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops reaping idle sessions and quits the browser of every session,
+   * including any waiting in the factory's pool.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      if (reaper != null) {
+        reaper.shutdownNow();
+        reaper = null;
+      }
+    }
+
+    for (SessionId sessionId : sessionIdToDriver.keySet()) {
+      Session session = remove(sessionId);
+      if (session != null) {
+        session.close(true);
+      }
+    }
+    factory.shutdown();
+  }
+
+  public DriverFactory getDriverFactory() {
+    return factory;
+  }
+
+  public int getLiveSessionCount() {
+    return sessionIdToDriver.size();
+  }
+
+  /**
+   * @return The number of new sessions waiting for another session to close.
+   */
+  public int getQueuedSessionCount() {
+    return queued.get();
+  }
+
+  public long getCreatedSessionCount() {
+    return created.get();
+  }
+
+  /**
+   * @return The number of new sessions turned away because too many sessions
+   *     were already open.
+   */
+  public long getRejectedSessionCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return The number of sessions closed because they sat idle for too long.
+   */
+  public long getReapedSessionCount() {
+    return reaped.get();
+  }
+
+  private Session remove(SessionId sessionId) {
+    Session session = sessionIdToDriver.remove(sessionId);
+    release(sessionIdToPermits.remove(sessionId));
+    return session;
+  }
+
+  private Semaphore acquirePermit(Capabilities desiredCapabilities) throws InterruptedException {
+    if (maxSessionsPerBrowser <= 0) {
+      return null;
+    }
+
+    String browser = String.valueOf(desiredCapabilities.getBrowserName());
+    Semaphore permits = browserToPermits.get(browser);
+    if (permits == null) {
+      browserToPermits.putIfAbsent(browser, new Semaphore(maxSessionsPerBrowser, true));
+      permits = browserToPermits.get(browser);
+    }
+
+    if (permits.tryAcquire()) {
+      return permits;
+    }
+
+    queued.incrementAndGet();
+    try {
+      if (queueTimeout > 0 && permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+        return permits;
+      }
+    } finally {
+      queued.decrementAndGet();
+    }
+
+    rejected.incrementAndGet();
+    throw new WebDriverException(String.format(
+        "Unable to start a new %s session: %d sessions are already open", browser,
+        maxSessionsPerBrowser));
+  }
+
+  private void release(Semaphore permits) {
+    if (permits != null) {
+      permits.release();
+    }
+  }
+
+  private synchronized void startReaper() {
+    if (reaper != null || idleTimeout <= 0) {
+      return;
+    }
+
+    reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "webdriver-session-reaper");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    long interval = Math.max(1000, Math.min(idleTimeout / 2, TimeUnit.MINUTES.toMillis(1)));
+    reaper.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          reapIdleSessions();
+        } catch (RuntimeException e) {
+          // Keep reaping on the next run
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
   }
 
   public void registerDriver(Capabilities capabilities, Class<? extends WebDriver> implementation) {
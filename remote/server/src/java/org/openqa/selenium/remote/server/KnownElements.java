@@ -17,62 +17,279 @@ limitations under the License.
 
 package org.openqa.selenium.remote.server;
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.RenderedWebElement;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.internal.WrapsElement;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.HashMap;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * The elements that have been handed out to the client of a session, keyed by
+ * the id the client uses to refer to them. At most "webdriver.remote.max_elements"
+ * elements (default 10000) are kept; beyond that the least recently used one
+ * is dropped. All elements are dropped when the page changes. Looking up an
+ * element that has been dropped throws a {@link StaleElementReferenceException}.
+ */
 public class KnownElements {
 
-  private Map<String, WebElement> elements = new HashMap<String, WebElement>();
+  private static final int DEFAULT_MAX_ELEMENTS =
+      Integer.getInteger("webdriver.remote.max_elements", 10000);
+
+  private final int maxElements;
+  private final Map<String, WebElement> elements;
   private int nextId;
+  // Ids below this were handed out before the page last changed
+  private int firstIdOnPage;
+  private long evicted;
+  private long invalidated;
+  private long staleLookups;
+
+  public KnownElements() {
+    this(DEFAULT_MAX_ELEMENTS);
+  }
+
+  public KnownElements(int maxElements) {
+    if (maxElements < 1) {
+      throw new IllegalArgumentException("Must be able to hold at least one element");
+    }
+    this.maxElements = maxElements;
+    this.elements = new LinkedHashMap<String, WebElement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, WebElement> eldest) {
+        if (size() > KnownElements.this.maxElements) {
+          evicted++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
 
-  public String add(WebElement element) {
+  public synchronized String add(WebElement element) {
     String id = getNextId();
-    elements.put(id, proxyElement(element, id));
+    elements.put(id, wrap(element, id));
     return id;
   }
 
-  public WebElement get(String elementId) {
-    return elements.get(elementId);
+  /**
+   * @return The element with the given id, or null if no element was ever
+   *     given that id.
+   * @throws StaleElementReferenceException If the element has been dropped
+   *     because the page changed or too many elements were held.
+   */
+  public synchronized WebElement get(String elementId) {
+    WebElement element = elements.get(elementId);
+    if (element != null) {
+      return element;
+    }
+
+    int id = parseId(elementId);
+    if (id < 0 || id >= nextId) {
+      return null;
+    }
+
+    staleLookups++;
+    if (id < firstIdOnPage) {
+      throw new StaleElementReferenceException(
+          "Element " + elementId + " belongs to a page that is no longer loaded");
+    }
+    throw new StaleElementReferenceException(
+        "Element " + elementId + " is no longer held by the server");
+  }
+
+  /**
+   * Drops every element, since none of them can be used once the browser has
+   * loaded a new page.
+   */
+  public synchronized void pageChanged() {
+    invalidated += elements.size();
+    elements.clear();
+    firstIdOnPage = nextId;
+  }
+
+  /**
+   * @return The number of elements currently held.
+   */
+  public synchronized int getLiveCount() {
+    return elements.size();
+  }
+
+  /**
+   * @return The number of elements dropped to stay within the size limit.
+   */
+  public synchronized long getEvictedCount() {
+    return evicted;
+  }
+
+  /**
+   * @return The number of elements dropped because the page changed.
+   */
+  public synchronized long getInvalidatedCount() {
+    return invalidated;
+  }
+
+  /**
+   * @return The number of lookups for an element that had been dropped.
+   */
+  public synchronized long getStaleLookupCount() {
+    return staleLookups;
   }
 
-  // WebDriver is single threaded. Expect only a single thread at a time to access this
   private String getNextId() {
     return String.valueOf(nextId++);
   }
 
-  private WebElement proxyElement(final WebElement element, final String id) {
-    InvocationHandler handler = new InvocationHandler() {
-      public Object invoke(Object object, Method method, Object[] objects) throws Throwable {
-        if ("getId".equals(method.getName())) {
-          return id;
-        } else if ("getWrappedElement".equals(method.getName())) {
-          return element;
-        } else {
-          return method.invoke(element, objects);
-        }
-      }
-    };
+  private int parseId(String elementId) {
+    if (elementId == null) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(elementId);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
 
-    Class[] proxyThese;
+  private WebElement wrap(WebElement element, String id) {
     if (element instanceof RenderedWebElement) {
-      proxyThese = new Class[]{RenderedWebElement.class, ProxiedElement.class};
-    } else {
-      proxyThese = new Class[]{WebElement.class, ProxiedElement.class};
+      return new RenderedKnownElement((RenderedWebElement) element, id);
     }
-
-    return (WebElement) Proxy.newProxyInstance(element.getClass().getClassLoader(),
-                                               proxyThese,
-                                               handler);
+    return new KnownElement(element, id);
   }
 
   public interface ProxiedElement extends WrapsElement {
     String getId();
   }
+
+  private static class KnownElement implements WebElement, ProxiedElement {
+    private final WebElement element;
+    private final String id;
+
+    public KnownElement(WebElement element, String id) {
+      this.element = element;
+      this.id = id;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public WebElement getWrappedElement() {
+      return element;
+    }
+
+    public void click() {
+      element.click();
+    }
+
+    public void submit() {
+      element.submit();
+    }
+
+    public String getValue() {
+      return element.getValue();
+    }
+
+    public void sendKeys(CharSequence... keysToSend) {
+      element.sendKeys(keysToSend);
+    }
+
+    public void clear() {
+      element.clear();
+    }
+
+    public String getTagName() {
+      return element.getTagName();
+    }
+
+    public String getAttribute(String name) {
+      return element.getAttribute(name);
+    }
+
+    public boolean toggle() {
+      return element.toggle();
+    }
+
+    public boolean isSelected() {
+      return element.isSelected();
+    }
+
+    public void setSelected() {
+      element.setSelected();
+    }
+
+    public boolean isEnabled() {
+      return element.isEnabled();
+    }
+
+    public String getText() {
+      return element.getText();
+    }
+
+    public List<WebElement> findElements(By by) {
+      return element.findElements(by);
+    }
+
+    public WebElement findElement(By by) {
+      return element.findElement(by);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return element.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+      return element.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return element.toString();
+    }
+  }
+
+  private static class RenderedKnownElement extends KnownElement implements RenderedWebElement {
+    private final RenderedWebElement element;
+
+    public RenderedKnownElement(RenderedWebElement element, String id) {
+      super(element, id);
+      this.element = element;
+    }
+
+    public boolean isDisplayed() {
+      return element.isDisplayed();
+    }
+
+    public Point getLocation() {
+      return element.getLocation();
+    }
+
+    public Dimension getSize() {
+      return element.getSize();
+    }
+
+    public void hover() {
+      element.hover();
+    }
+
+    public void dragAndDropBy(int moveRightBy, int moveDownBy) {
+      element.dragAndDropBy(moveRightBy, moveDownBy);
+    }
+
+    public void dragAndDropOn(RenderedWebElement element) {
+      this.element.dragAndDropOn(element);
+    }
+
+    public String getValueOfCssProperty(String propertyName) {
+      return element.getValueOfCssProperty(propertyName);
+    }
+  }
 }
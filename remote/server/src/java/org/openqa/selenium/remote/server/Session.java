@@ -27,20 +27,25 @@ import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.events.EventFiringWebDriver;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Session {
+  private final DriverFactory factory;
   private final WebDriver driver;
   private KnownElements knownElements = new KnownElements();
   private Capabilities capabilities;
-  private Executor executor;
-  private volatile String base64EncodedImage;
+  private ExecutorService executor;
+  private volatile Callable<byte[]> screenshot;
+  private volatile long lastAccessTime = System.currentTimeMillis();
+  private final AtomicInteger commandsInFlight = new AtomicInteger();
 
   public Session(final DriverFactory factory, final Capabilities capabilities) throws Exception {
+    this.factory = factory;
     executor = new ThreadPoolExecutor(1, 1,
                                     600L, TimeUnit.SECONDS,
                                     new LinkedBlockingQueue<Runnable>());
@@ -59,13 +64,72 @@ public class Session {
         return driver;
       }
     });
-    execute(createBrowser);
+    try {
+      execute(createBrowser);
+    } catch (Exception e) {
+      // Don't leave the thread behind if the browser could not be started
+      executor.shutdown();
+      throw e;
+    }
     this.driver = createBrowser.get();
   }
 
   public <X> X execute(FutureTask<X> future) throws Exception {
-    executor.execute(future);
-    return future.get();
+    commandsInFlight.incrementAndGet();
+    lastAccessTime = System.currentTimeMillis();
+    try {
+      executor.execute(future);
+      return future.get();
+    } finally {
+      lastAccessTime = System.currentTimeMillis();
+      commandsInFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return How long, in milliseconds, since a command last ran against this
+   *     session, or 0 if a command is running now.
+   */
+  public long getIdleTime() {
+    if (commandsInFlight.get() > 0) {
+      return 0;
+    }
+    return System.currentTimeMillis() - lastAccessTime;
+  }
+
+  /**
+   * Hands the browser back to the factory, which quits it. Must be called on
+   * this session's thread.
+   */
+  public void releaseDriver() {
+    WebDriver rawDriver = driver;
+    if (driver instanceof EventFiringWebDriver) {
+      rawDriver = ((EventFiringWebDriver) driver).getWrappedDriver();
+    }
+    factory.release(rawDriver);
+  }
+
+  /**
+   * Releases the browser, if requested, and stops the thread that commands for
+   * this session run on. Only call this with releaseDriver set from a thread
+   * other than that one.
+   */
+  public void close(boolean releaseDriver) {
+    if (releaseDriver) {
+      FutureTask<Void> release = new FutureTask<Void>(new Callable<Void>() {
+        public Void call() {
+          releaseDriver();
+          return null;
+        }
+      });
+      try {
+        executor.execute(release);
+        release.get(60, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        // The browser may already be gone. Carry on and release the thread.
+      }
+    }
+    executor.shutdown();
   }
 
   public WebDriver getDriver() {
@@ -83,14 +147,31 @@ public class Session {
     return capabilities;
   }
 
-  public void attachScreenshot(String base64EncodedImage) {
-    this.base64EncodedImage = base64EncodedImage;
+  /**
+   * @param capture Takes a PNG of the screen after a command failed. It is only
+   *     called if the screenshot is asked for, so that errors nobody reports
+   *     don't each pay for capturing and compressing the screen.
+   */
+  public void attachScreenshot(Callable<byte[]> capture) {
+    this.screenshot = capture;
   }
 
-  public String getAndClearScreenshot() {
-    String temp = this.base64EncodedImage;
-    base64EncodedImage = null;
-    return temp;
+  /**
+   * @return The screen after the last command that failed, or null if there
+   *     is none or it could not be captured.
+   */
+  public byte[] getAndClearScreenshot() {
+    Callable<byte[]> capture = this.screenshot;
+    screenshot = null;
+    if (capture == null) {
+      return null;
+    }
+    try {
+      return capture.call();
+    } catch (Exception e) {
+      // Alright. No screen shot.
+      return null;
+    }
   }
 
   private void describe(WebDriver instance, Capabilities capabilities) {
@@ -17,7 +17,6 @@ limitations under the License.
 
 package org.openqa.selenium.remote.server;
 
-import org.apache.commons.codec.binary.Base64;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
@@ -25,6 +24,7 @@ import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Callable;
 
 import javax.imageio.ImageIO;
 
@@ -38,22 +38,30 @@ public class SnapshotScreenListener extends AbstractWebDriverEventListener {
 
   @Override
   public void onException(Throwable throwable, WebDriver driver) {
-    String encoded;
-    try {
-      workAroundD3dBugInVista();
+    if (GraphicsEnvironment.isHeadless()) {
+      return;
+    }
 
-      Rectangle size = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
-      BufferedImage image = new Robot().createScreenCapture(size);
+    // The screen is only captured if the error is reported, which happens
+    // straight after the failed command
+    session.attachScreenshot(new Callable<byte[]>() {
+      public byte[] call() {
+        try {
+          workAroundD3dBugInVista();
 
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      ImageIO.write(image, "png", outputStream);
-      encoded = new String(Base64.encodeBase64(outputStream.toByteArray()), "UTF-8");
+          Rectangle size = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+          BufferedImage image = new Robot().createScreenCapture(size);
 
-      session.attachScreenshot(encoded);
-    } catch (Throwable e) {
-      System.out.println("e = " + e);
-      // Alright. No screen shot. Propogate the original exception
-    }
+          // Keep the compressed image; it is only Base64 encoded if an error is sent
+          ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+          ImageIO.write(image, "png", outputStream);
+          return outputStream.toByteArray();
+        } catch (Throwable e) {
+          // Alright. No screen shot. The original exception is still reported
+          return null;
+        }
+      }
+    });
   }
 
   private void workAroundD3dBugInVista() {
@@ -24,7 +24,7 @@ import org.openqa.selenium.remote.Response;
 import org.openqa.selenium.remote.server.DriverSessions;
 import org.openqa.selenium.remote.server.rest.ResultType;
 
-import static org.openqa.selenium.OutputType.BASE64;
+import static org.openqa.selenium.OutputType.BYTES;
 
 public class CaptureScreenshot extends WebDriverHandler {
 
@@ -39,7 +39,9 @@ public class CaptureScreenshot extends WebDriverHandler {
 
     WebDriver driver = unwrap(getDriver());
 
-    response.setValue(((TakesScreenshot) driver).getScreenshotAs(BASE64));
+    // Kept as raw PNG bytes. They are sent as they are to clients preferring
+    // image/png, and only Base64 encoded when written out as JSON.
+    response.setValue(((TakesScreenshot) driver).getScreenshotAs(BYTES));
     return ResultType.SUCCESS;
   }
 
@@ -59,4 +61,4 @@ public class CaptureScreenshot extends WebDriverHandler {
   public String toString() {
     return "[take screenshot]";
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
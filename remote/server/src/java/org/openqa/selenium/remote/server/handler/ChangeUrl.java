@@ -37,6 +37,7 @@ public class ChangeUrl extends WebDriverHandler implements JsonParametersAware {
 
   public ResultType call() throws Exception {
     getDriver().get(url);
+    getKnownElements().pageChanged();
 
     return ResultType.SUCCESS;
   }
@@ -32,7 +32,7 @@ public class DeleteSession extends WebDriverHandler {
   }
 
   public ResultType call() throws Exception {
-    getDriver().quit();
+    sessions.get(getRealSessionId()).releaseDriver();
     sessions.deleteSession(getRealSessionId());
 
     return ResultType.SUCCESS;
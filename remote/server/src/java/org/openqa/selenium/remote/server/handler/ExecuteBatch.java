@@ -0,0 +1,279 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server.handler;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.internal.Base64Encoder;
+import org.openqa.selenium.remote.BeanToJsonConverter;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.PropertyMunger;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.DriverSessions;
+import org.openqa.selenium.remote.server.JsonParametersAware;
+import org.openqa.selenium.remote.server.rest.Handler;
+import org.openqa.selenium.remote.server.rest.ResultConfig;
+import org.openqa.selenium.remote.server.rest.ResultType;
+import org.openqa.selenium.remote.server.rest.Router;
+import org.openqa.selenium.remote.server.rest.RouterAware;
+import org.openqa.selenium.remote.server.rest.UrlTemplate;
+import org.json.JSONObject;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an ordered list of commands against a session in a single request.
+ * Each command is described by the HTTP method, path and parameters it would
+ * have been sent with on its own, and is routed to the same handler. All the
+ * commands run in one task on the session's thread.
+ *
+ * <p>An element id of the form "$n" refers to the element found by the n-th
+ * command of the batch, and "$n.m" to the m-th element of the list found by
+ * the n-th command. Such references may be used as path segments or as the
+ * value of an "id", "other" or "ELEMENT" parameter.
+ *
+ * <p>The batch stops at the first command that fails; the response to that
+ * command describes the error, and no further commands are run.
+ */
+public class ExecuteBatch extends WebDriverHandler implements JsonParametersAware, RouterAware {
+
+  private static final String[] REFERENCE_KEYS = {"id", "other", "ELEMENT"};
+
+  private final ErrorCodes errorCodes = new ErrorCodes();
+  private Router router;
+  private List<Map<String, Object>> commands;
+  private Response response;
+
+  public ExecuteBatch(DriverSessions sessions) {
+    super(sessions);
+  }
+
+  public void setRouter(Router router) {
+    this.router = router;
+  }
+
+  @SuppressWarnings("unchecked")
+  public void setJsonParameters(Map<String, Object> allParameters) throws Exception {
+    commands = (List<Map<String, Object>>) allParameters.get("commands");
+  }
+
+  public ResultType call() throws Exception {
+    if (router == null) {
+      throw new IllegalStateException("Batches cannot be routed on this server");
+    }
+
+    List<Response> responses = new ArrayList<Response>();
+    if (commands != null) {
+      for (Map<String, Object> command : commands) {
+        Response result = runCommand(command, responses);
+        responses.add(result);
+        if (result.getStatus() != ErrorCodes.SUCCESS) {
+          break;
+        }
+      }
+    }
+
+    response = newResponse();
+    response.setValue(responses);
+    return ResultType.SUCCESS;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Response runCommand(Map<String, Object> command, List<Response> previous) {
+    WebDriverHandler handler = null;
+    try {
+      String method = String.valueOf(command.get("method"));
+      String path = resolvePath(String.valueOf(command.get("path")), previous);
+
+      ResultConfig config = router.getConfig(method, path);
+      Handler found = config == null ? null : config.getHandler(path);
+      if (!(found instanceof WebDriverHandler)) {
+        throw new WebDriverException("Cannot run in a batch: " + method + " " + path);
+      }
+      handler = (WebDriverHandler) found;
+      if (!sessionId.equals(handler.getRealSessionId())) {
+        throw new WebDriverException("A batch may only run commands against its own session");
+      }
+
+      Map<String, Object> parameters = (Map<String, Object>) command.get("parameters");
+      if (handler instanceof JsonParametersAware && parameters != null) {
+        ((JsonParametersAware) handler).setJsonParameters(
+            (Map<String, Object>) resolve(parameters, previous));
+      }
+
+      // We are already running on the session's thread, so call the handler
+      // directly rather than queueing it behind ourselves.
+      handler.call();
+
+      Response result = responseOf(handler);
+      return result == null ? newResponse() : result;
+    } catch (Exception e) {
+      Throwable toUse = e;
+      if (e instanceof UndeclaredThrowableException && e.getCause() != null
+          && e.getCause().getCause() != null) {
+        toUse = e.getCause().getCause();
+      }
+      return errorResponse(toUse, handler);
+    }
+  }
+
+  private Response errorResponse(Throwable e, WebDriverHandler handler) {
+    Response error = newResponse();
+    error.setStatus(errorCodes.toStatusCode(e));
+    try {
+      JSONObject value = new JSONObject(new BeanToJsonConverter().convert(e));
+      byte[] screen = handler == null ? null : handler.getScreenshot();
+      if (screen != null) {
+        value.put("screen", new Base64Encoder().encode(screen));
+      }
+      error.setValue(value);
+    } catch (Exception ignored) {
+      error.setValue(e.getMessage());
+    }
+    return error;
+  }
+
+  private Response responseOf(Handler handler) throws Exception {
+    for (PropertyDescriptor property : PropertyMunger.getPropertyDescriptors(handler.getClass())) {
+      Method readMethod = property.getReadMethod();
+      if ("response".equals(property.getName()) && readMethod != null
+          && Response.class.isAssignableFrom(readMethod.getReturnType())) {
+        return (Response) readMethod.invoke(handler);
+      }
+    }
+    return null;
+  }
+
+  private String resolvePath(String path, List<Response> previous) throws Exception {
+    // The servlet container decodes the path of a normal request; do the same
+    String[] segments = UrlTemplate.split(URLDecoder.decode(path, "UTF-8"));
+    StringBuilder resolved = new StringBuilder();
+    for (int i = 0; i < segments.length; i++) {
+      if (i > 0) {
+        resolved.append("/");
+      }
+      resolved.append(resolveReference(segments[i], previous));
+    }
+    return resolved.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object resolve(Object value, List<Response> previous) {
+    if (value instanceof Map) {
+      Map<String, Object> resolved = new HashMap<String, Object>();
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        Object toResolve = entry.getValue();
+        if (toResolve instanceof String && isReferenceKey(entry.getKey())) {
+          resolved.put(entry.getKey(), resolveReference((String) toResolve, previous));
+        } else {
+          resolved.put(entry.getKey(), resolve(toResolve, previous));
+        }
+      }
+      return resolved;
+    }
+
+    if (value instanceof List) {
+      List<Object> resolved = new ArrayList<Object>();
+      for (Object element : (List<?>) value) {
+        resolved.add(resolve(element, previous));
+      }
+      return resolved;
+    }
+
+    return value;
+  }
+
+  private boolean isReferenceKey(String key) {
+    for (String referenceKey : REFERENCE_KEYS) {
+      if (referenceKey.equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return The id of the element referred to, or the value itself if it is
+   *     not a reference to an earlier command.
+   */
+  static String resolveReference(String value, List<Response> previous) {
+    if (value.length() < 2 || value.charAt(0) != '$') {
+      return value;
+    }
+
+    int dot = value.indexOf('.');
+    int index;
+    int position = -1;
+    try {
+      if (dot == -1) {
+        index = Integer.parseInt(value.substring(1));
+      } else {
+        index = Integer.parseInt(value.substring(1, dot));
+        position = Integer.parseInt(value.substring(dot + 1));
+      }
+    } catch (NumberFormatException e) {
+      return value;
+    }
+
+    if (index < 0 || index >= previous.size()) {
+      throw new IllegalArgumentException("No earlier command in the batch for: " + value);
+    }
+
+    Object found = previous.get(index).getValue();
+    if (position != -1) {
+      found = elementAt(found, position, value);
+    }
+    if (!(found instanceof Map) || !((Map<?, ?>) found).containsKey("ELEMENT")) {
+      throw new IllegalArgumentException("Command did not return an element: " + value);
+    }
+    return String.valueOf(((Map<?, ?>) found).get("ELEMENT"));
+  }
+
+  private static Object elementAt(Object found, int position, String reference) {
+    if (!(found instanceof Collection)) {
+      throw new IllegalArgumentException("Command did not return a list: " + reference);
+    }
+
+    Collection<?> elements = (Collection<?>) found;
+    if (position < 0 || position >= elements.size()) {
+      throw new IllegalArgumentException("No element at that position: " + reference);
+    }
+    Iterator<?> iterator = elements.iterator();
+    for (int i = 0; i < position; i++) {
+      iterator.next();
+    }
+    return iterator.next();
+  }
+
+  public Response getResponse() {
+    return response;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[batch: %d commands]", commands == null ? 0 : commands.size());
+  }
+}
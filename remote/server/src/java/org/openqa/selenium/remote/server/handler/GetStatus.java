@@ -0,0 +1,70 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server.handler;
+
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.DriverFactory;
+import org.openqa.selenium.remote.server.DriverSessions;
+import org.openqa.selenium.remote.server.rest.Handler;
+import org.openqa.selenium.remote.server.rest.ResultType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reports how many sessions the server is running, waiting to start and has
+ * closed for being idle, and how well the pool of ready drivers is doing.
+ */
+public class GetStatus implements Handler {
+  private final DriverSessions sessions;
+  private Response response;
+
+  public GetStatus(DriverSessions sessions) {
+    this.sessions = sessions;
+  }
+
+  public ResultType handle() throws Exception {
+    Map<String, Object> status = new HashMap<String, Object>();
+    status.put("live", sessions.getLiveSessionCount());
+    status.put("queued", sessions.getQueuedSessionCount());
+    status.put("created", sessions.getCreatedSessionCount());
+    status.put("rejected", sessions.getRejectedSessionCount());
+    status.put("reaped", sessions.getReapedSessionCount());
+
+    DriverFactory factory = sessions.getDriverFactory();
+    Map<String, Object> pool = new HashMap<String, Object>();
+    pool.put("depth", factory.getPoolDepth());
+    pool.put("hits", factory.getPoolHits());
+    pool.put("misses", factory.getPoolMisses());
+    pool.put("averageWarmUpTime", factory.getAverageWarmUpTime());
+    status.put("pool", pool);
+
+    response = new Response();
+    response.setValue(status);
+    return ResultType.SUCCESS;
+  }
+
+  public Response getResponse() {
+    return response;
+  }
+
+  @Override
+  public String toString() {
+    return "[status]";
+  }
+}
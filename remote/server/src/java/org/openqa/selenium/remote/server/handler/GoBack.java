@@ -28,6 +28,7 @@ public class GoBack extends WebDriverHandler {
 
   public ResultType call() throws Exception {
     getDriver().navigate().back();
+    getKnownElements().pageChanged();
 
     return ResultType.SUCCESS;
   }
@@ -28,6 +28,7 @@ public class GoForward extends WebDriverHandler {
 
   public ResultType call() throws Exception {
     getDriver().navigate().forward();
+    getKnownElements().pageChanged();
 
     return ResultType.SUCCESS;
   }
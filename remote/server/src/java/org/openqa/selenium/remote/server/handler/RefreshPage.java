@@ -30,6 +30,7 @@ public class RefreshPage extends WebDriverHandler {
 
   public ResultType call() throws Exception {
     getDriver().navigate().refresh();
+    getKnownElements().pageChanged();
 
     return ResultType.SUCCESS;
   }
@@ -59,7 +59,7 @@ public abstract class WebDriverHandler implements Handler, Callable<ResultType>
     return sessionId.toString();
   }
 
-  public String getScreenshot() {
+  public byte[] getScreenshot() {
     Session session = sessions.get(sessionId);
     return session != null ? session.getAndClearScreenshot() : null;
   }
@@ -17,6 +17,7 @@ limitations under the License.
 
 package org.openqa.selenium.remote.server.renderer;
 
+import org.openqa.selenium.internal.Base64Encoder;
 import org.openqa.selenium.remote.BeanToJsonConverter;
 import org.openqa.selenium.remote.ErrorCodes;
 import org.openqa.selenium.remote.Response;
@@ -46,7 +47,11 @@ public class JsonErrorExceptionResult extends ErrorJsonResult {
     if (e != null) {
       String raw = new BeanToJsonConverter().convert(e);
       JSONObject error = new JSONObject(raw);
-      error.put("screen", request.getAttribute("screen"));
+      Object screen = request.getAttribute("screen");
+      if (screen instanceof byte[]) {
+        screen = new Base64Encoder().encode((byte[]) screen);
+      }
+      error.put("screen", screen);
       res.setValue(error);
     }
 
@@ -23,8 +23,9 @@ import org.openqa.selenium.remote.server.rest.Renderer;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class JsonResult implements Renderer {
 
@@ -42,15 +43,18 @@ public class JsonResult implements Renderer {
       throws Exception {
     Object result = request.getAttribute(propertyName);
 
-    String json = new BeanToJsonConverter().convert(result);
-    byte[] data = Charset.forName("utf-8").encode(json).array();
-
-    int length = json == null ? 0 : data.length;
-
-    response.setContentLength(length);
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
-    response.getOutputStream().write(data);
-    response.getOutputStream().flush();
+    if (result == null) {
+      response.setContentLength(0);
+      response.getOutputStream().flush();
+      return;
+    }
+
+    // Stream the JSON straight to the client rather than building it in memory first
+    Writer writer = new BufferedWriter(
+        new OutputStreamWriter(response.getOutputStream(), "UTF-8"), 8192);
+    new BeanToJsonConverter().write(result, writer);
+    writer.flush();
   }
 }
@@ -0,0 +1,60 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server.renderer;
+
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.rest.Handler;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends the PNG held as the value of a {@link Response} as the raw body of the
+ * reply, rather than Base64 encoding it into JSON, to clients that list
+ * image/png first in their Accept header. Clients that list it after JSON,
+ * and anything other than a PNG, get JSON.
+ */
+public class PngResult extends JsonResult {
+
+  public PngResult(String propertyName) {
+    super(propertyName);
+  }
+
+  @Override
+  public void render(HttpServletRequest request, HttpServletResponse response, Handler handler)
+      throws Exception {
+    Object result = request.getAttribute(propertyName);
+    Object value = result instanceof Response ? ((Response) result).getValue() : null;
+    if (!(value instanceof byte[]) || !prefersPng(request.getHeader("Accept"))) {
+      super.render(request, response, handler);
+      return;
+    }
+
+    byte[] png = (byte[]) value;
+    response.setContentType("image/png");
+    response.setContentLength(png.length);
+    ServletOutputStream out = response.getOutputStream();
+    out.write(png);
+    out.flush();
+  }
+
+  private static boolean prefersPng(String accept) {
+    return accept != null && "image/png".equals(accept.split("[,;]")[0].trim());
+  }
+}
@@ -35,7 +35,7 @@ public class Result {
 
     String[] types = contentType.split("[,;]");
     for (String type : types) {
-      if (mimeType.equals(type)) {
+      if (mimeType.equals(type.trim())) {
         return true;
       }
     }
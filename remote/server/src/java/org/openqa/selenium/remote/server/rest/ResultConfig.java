@@ -27,8 +27,6 @@ import org.openqa.selenium.remote.server.handler.WebDriverHandler;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.beans.BeanInfo;
-import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.io.BufferedReader;
 import java.lang.reflect.Constructor;
@@ -43,30 +41,46 @@ import java.util.concurrent.FutureTask;
 
 public class ResultConfig {
 
-  private final String[] sections;
+  private final UrlTemplate template;
   private final Class<? extends Handler> handlerClazz;
   private final DriverSessions sessions;
   private final Map<ResultType, Set<Result>> resultToRender =
       new HashMap<ResultType, Set<Result>>();
   private final LogTo logger;
+  private final Router router;
 
   public ResultConfig(String url, Class<? extends Handler> handlerClazz, DriverSessions sessions, LogTo logger) {
+    this(url, handlerClazz, sessions, logger, null);
+  }
+
+  public ResultConfig(String url, Class<? extends Handler> handlerClazz, DriverSessions sessions,
+      LogTo logger, Router router) {
     this.logger = logger;
+    this.router = router;
     if (url == null || handlerClazz == null) {
       throw new IllegalArgumentException("You must specify the handler and the url");
     }
 
-    sections = url.split("/");
+    template = new UrlTemplate(url);
     this.handlerClazz = handlerClazz;
     this.sessions = sessions;
   }
 
+  public UrlTemplate getTemplate() {
+    return template;
+  }
+
   public Handler getHandler(String url) throws Exception {
-    if (!isFor(url)) {
+    String[] parts = UrlTemplate.split(url);
+    if (!template.matches(parts)) {
       return null;
     }
 
-    return populate(createInstance(handlerClazz), url);
+    Handler handler = createInstance(handlerClazz);
+    if (handler instanceof RouterAware) {
+      ((RouterAware) handler).setRouter(router);
+    }
+    return populate(handler, parts);
   }
 
   private Handler createInstance(Class<? extends Handler> handlerClazz) throws Exception {
@@ -80,30 +94,21 @@ public class ResultConfig {
   }
 
   public boolean isFor(String urlToMatch) {
-    String[] allParts = urlToMatch.split("/");
-
-    if (sections.length != allParts.length) {
-      return false;
-    }
-
-    for (int i = 0; i < sections.length; i++) {
-      if (!(sections[i].startsWith(":") || sections[i].equals(allParts[i]))) {
-        return false;
-      }
-    }
-
-    return true;
+    return template.matches(UrlTemplate.split(urlToMatch));
   }
 
   protected Handler populate(Handler handler, String pathString) {
-    String[] strings = pathString.split("/");
+    return populate(handler, UrlTemplate.split(pathString));
+  }
 
-    for (int i = 0; i < sections.length; i++) {
-      if (!sections[i].startsWith(":")) {
+  private Handler populate(Handler handler, String[] parts) {
+    for (int i = 0; i < template.size(); i++) {
+      String placeholder = template.getPlaceholder(i);
+      if (placeholder == null) {
         continue;
       }
       try {
-        PropertyMunger.set(sections[i].substring(1), handler, strings[i]);
+        PropertyMunger.set(placeholder, handler, parts[i]);
       } catch (Exception e) {
         throw new WebDriverException(e);
       }
@@ -190,14 +195,11 @@ public class ResultConfig {
   @SuppressWarnings("unchecked")
   private void setJsonParameters(HttpServletRequest request, Handler handler) throws Exception {
     BufferedReader reader = request.getReader();
-    StringBuilder builder = new StringBuilder();
-    for (String line = reader.readLine(); line != null; line=reader.readLine())
-      builder.append(line);
-
-    String raw = builder.toString();
-    if (raw.length() > 0) {
+    reader.mark(1);
+    if (reader.read() != -1) {
+      reader.reset();
       Map<String, Object> parameters = (Map<String, Object>) new JsonToBeanConverter()
-          .convert(HashMap.class, builder.toString());
+          .convert(HashMap.class, reader);
 
       ((JsonParametersAware) handler).setJsonParameters(parameters);
     }
@@ -205,8 +207,7 @@ public class ResultConfig {
 
   protected void addHandlerAttributesToRequest(HttpServletRequest request, Handler handler)
       throws Exception {
-    BeanInfo info = Introspector.getBeanInfo(handler.getClass());
-    PropertyDescriptor[] properties = info.getPropertyDescriptors();
+    PropertyDescriptor[] properties = PropertyMunger.getPropertyDescriptors(handler.getClass());
     for (PropertyDescriptor property : properties) {
       Method readMethod = property.getReadMethod();
       if (readMethod == null) {
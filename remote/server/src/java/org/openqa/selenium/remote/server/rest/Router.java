@@ -0,0 +1,31 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server.rest;
+
+/**
+ * Finds the config bound to a url for any of the HTTP verbs the server
+ * understands.
+ */
+public interface Router {
+
+  /**
+   * @return The config bound to the url for the given HTTP method, or null if
+   *     there is none.
+   */
+  ResultConfig getConfig(String httpMethod, String url) throws Exception;
+}
@@ -20,26 +20,45 @@ package org.openqa.selenium.remote.server.rest;
 import org.openqa.selenium.remote.server.DriverSessions;
 import org.openqa.selenium.remote.server.LogTo;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Maps the urls for a single HTTP verb to their {@link ResultConfig}s. Bound
+ * urls are kept in a trie of path segments, so a url is routed by walking it
+ * once rather than by testing every config in turn. Literal segments take
+ * precedence over placeholders when both would match.
+ */
 public class UrlMapper {
 
   private Map<ResultType, Renderer> globals = new LinkedHashMap<ResultType, Renderer>();
   private Set<ResultConfig> configs = new LinkedHashSet<ResultConfig>();
+  private final Node root = new Node();
   private final DriverSessions sessions;
   private LogTo logger;
+  private final Router router;
 
   public UrlMapper(DriverSessions sessions, LogTo logger) {
+    this(sessions, logger, null);
+  }
+
+  /**
+   * @param router Handed to every {@link RouterAware} handler created by this
+   *     mapper. May be null.
+   */
+  public UrlMapper(DriverSessions sessions, LogTo logger, Router router) {
     this.sessions = sessions;
     this.logger = logger;
+    this.router = router;
   }
 
   public ResultConfig bind(String url, Class<? extends Handler> handlerClazz) {
-    ResultConfig config = new ResultConfig(url, handlerClazz, sessions, logger);
+    ResultConfig config = new ResultConfig(url, handlerClazz, sessions, logger, router);
     configs.add(config);
+    root.add(config, 0);
     for (Map.Entry<ResultType, Renderer> entry : globals.entrySet()) {
       config.on(entry.getKey(), entry.getValue());
     }
@@ -47,13 +66,7 @@ public class UrlMapper {
   }
 
   public ResultConfig getConfig(String url) throws Exception {
-    for (ResultConfig config : configs) {
-      if (config.isFor(url)) {
-        return config;
-      }
-    }
-
-    return null;
+    return root.find(UrlTemplate.split(url), 0);
   }
 
   public void addGlobalHandler(ResultType type, Renderer renderer) {
@@ -63,4 +76,53 @@ public class UrlMapper {
       config.on(type, renderer);
     }
   }
+
+  private static class Node {
+    private final Map<String, Node> literals = new HashMap<String, Node>();
+    private Node placeholder;
+    private ResultConfig config;
+
+    public void add(ResultConfig toAdd, int depth) {
+      UrlTemplate template = toAdd.getTemplate();
+      if (depth == template.size()) {
+        // As with a linear scan, the first config bound to a url wins
+        if (config == null) {
+          config = toAdd;
+        }
+        return;
+      }
+
+      Node next;
+      if (template.getPlaceholder(depth) != null) {
+        if (placeholder == null) {
+          placeholder = new Node();
+        }
+        next = placeholder;
+      } else {
+        String segment = template.getSegment(depth);
+        next = literals.get(segment);
+        if (next == null) {
+          next = new Node();
+          literals.put(segment, next);
+        }
+      }
+      next.add(toAdd, depth + 1);
+    }
+
+    public ResultConfig find(String[] parts, int depth) {
+      if (depth == parts.length) {
+        return config;
+      }
+
+      Node literal = literals.get(parts[depth]);
+      if (literal != null) {
+        ResultConfig found = literal.find(parts, depth + 1);
+        if (found != null) {
+          return found;
+        }
+      }
+
+      return placeholder == null ? null : placeholder.find(parts, depth + 1);
+    }
+  }
 }
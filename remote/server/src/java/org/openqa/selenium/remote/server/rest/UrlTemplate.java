@@ -0,0 +1,96 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A url such as "/session/:sessionId/element/:id", split into its segments
+ * once so that incoming paths can be matched without re-parsing the template.
+ */
+public class UrlTemplate {
+
+  private final String[] segments;
+  // Name of the placeholder at each position, or null for a literal segment
+  private final String[] placeholders;
+
+  public UrlTemplate(String template) {
+    segments = split(template);
+    placeholders = new String[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      if (segments[i].startsWith(":")) {
+        placeholders[i] = segments[i].substring(1);
+      }
+    }
+  }
+
+  public int size() {
+    return segments.length;
+  }
+
+  public String getSegment(int index) {
+    return segments[index];
+  }
+
+  /**
+   * @return The name of the placeholder at the given index, or null if the
+   *     segment is a literal.
+   */
+  public String getPlaceholder(int index) {
+    return placeholders[index];
+  }
+
+  public boolean matches(String[] parts) {
+    if (parts.length != segments.length) {
+      return false;
+    }
+
+    for (int i = 0; i < segments.length; i++) {
+      if (placeholders[i] == null && !segments[i].equals(parts[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Splits a path on "/" the same way that {@code path.split("/")} does,
+   * without compiling a regular expression each time.
+   */
+  public static String[] split(String path) {
+    if (path.indexOf('/') == -1) {
+      return new String[] {path};
+    }
+
+    List<String> parts = new ArrayList<String>();
+    int start = 0;
+    int index;
+    while ((index = path.indexOf('/', start)) != -1) {
+      parts.add(path.substring(start, index));
+      start = index + 1;
+    }
+    parts.add(path.substring(start));
+
+    int size = parts.size();
+    while (size > 0 && parts.get(size - 1).length() == 0) {
+      size--;
+    }
+    return parts.subList(0, size).toArray(new String[size]);
+  }
+}
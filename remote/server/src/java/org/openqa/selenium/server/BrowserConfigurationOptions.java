@@ -1,8 +1,8 @@
 package org.openqa.selenium.server;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.thoughtworks.selenium.SeleniumException;
 import org.openqa.selenium.remote.JsonToBeanConverter;
@@ -10,7 +10,8 @@ import org.openqa.selenium.remote.ProxyPac;
 
 public class BrowserConfigurationOptions {
 
-    private Map<String,String> options = new HashMap<String,String>();
+    // Sorted, so that equal options always serialize the same way
+    private Map<String,String> options = new TreeMap<String,String>();
     private boolean hasOptions = false;
     
     public BrowserConfigurationOptions(String browserConfiguration) {
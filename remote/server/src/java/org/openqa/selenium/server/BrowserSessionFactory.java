@@ -6,16 +6,30 @@ import org.openqa.jetty.log.LogFactory;
 import org.openqa.selenium.server.browserlaunchers.BrowserLauncher;
 import org.openqa.selenium.server.browserlaunchers.BrowserLauncherFactory;
 import org.openqa.selenium.server.browserlaunchers.InvalidBrowserExecutableException;
+import org.openqa.selenium.server.commands.CaptureNetworkTrafficCommand;
 import org.openqa.selenium.server.log.LoggingManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages browser sessions, their creation, and their closure.
@@ -23,6 +37,11 @@ import java.util.UUID;
  * Maintains a cache of unused and available browser sessions in case
  * the server is reusing sessions.  Also manages the creation and
  * finalization of all browser sessions.
+ * <p/>
+ * When the browser session pool size is set, that many idle browsers are
+ * kept launched ahead of demand for each browser string and base URL that
+ * has been asked for.  An available browser is checked to still be alive
+ * before it is handed out, and is replaced if it is not.
  *
  * @author jbevan@google.com (Jennifer Bevan)
  */
@@ -30,13 +49,27 @@ public class BrowserSessionFactory {
 
     private static final long DEFAULT_CLEANUP_INTERVAL = 300000; // 5 minutes.
     private static final long DEFAULT_MAX_IDLE_SESSION_TIME = 600000; // 10 minutes
+    private static final long HEALTH_CHECK_TIMEOUT = 10000; // 10 seconds
+    private static final int LAUNCH_LATENCY_SAMPLES = 1000;
 
     private static Log LOGGER = LogFactory.getLog(BrowserSessionFactory.class);
 
-    // cached, unused, already-launched browser sessions.
+    // cached, unused, already-launched browser sessions.  Add and remove
+    // them with makeAvailable() and takeAvailable(), which keep the index
+    // by browser string and base URL in step.
     protected final Set<BrowserSessionInfo> availableSessions =
             Collections.synchronizedSet(new HashSet<BrowserSessionInfo>());
 
+    // available sessions by browser string, base URL, user extensions and
+    // browser configuration, oldest first.
+    // Guarded by availableSessions.
+    private final Map<String, LinkedList<BrowserSessionInfo>> availableByBrowserAndUrl =
+            new HashMap<String, LinkedList<BrowserSessionInfo>>();
+
+    // number of sessions being launched ahead of demand, by browser string
+    // and base URL.  Guarded by availableSessions.
+    private final Map<String, Integer> pendingWarmUps = new HashMap<String, Integer>();
+
     // active browser sessions.
     protected final Set<BrowserSessionInfo> activeSessions =
             Collections.synchronizedSet(new HashSet<BrowserSessionInfo>());
@@ -45,6 +78,13 @@ public class BrowserSessionFactory {
     private final Timer cleanupTimer;
     private final long maxIdleSessionTime;
     private final boolean doCleanup;
+    private ExecutorService warmUpExecutor;
+    private volatile boolean warmUpStopped;
+
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private final AtomicLong unhealthySessions = new AtomicLong();
+    private final LaunchLatencies launchLatencies = new LaunchLatencies(LAUNCH_LATENCY_SAMPLES);
 
     public BrowserSessionFactory(BrowserLauncherFactory blf) {
         this(blf, DEFAULT_CLEANUP_INTERVAL, DEFAULT_MAX_IDLE_SESSION_TIME, true);
@@ -107,15 +147,24 @@ public class BrowserSessionFactory {
 
         BrowserSessionInfo sessionInfo = null;
         browserString = validateBrowserString(browserString, configuration);
+        // launching fills in defaults, so sessions are pooled by what was asked for
+        String requestedConfiguration = serialize(browserConfigurations);
 
         if (configuration.getProxyInjectionModeArg()) {
             InjectionHelper.setBrowserSideLogEnabled(configuration.isBrowserSideLogEnabled());
             InjectionHelper.init();
         }
 
-        if (useCached) {
+        boolean pooling = configuration.getBrowserSessionPoolSize() > 0;
+        if (useCached || pooling) {
             LOGGER.info("grabbing available session...");
-            sessionInfo = grabAvailableSession(browserString, startURL);
+            sessionInfo = grabHealthyAvailableSession(browserString, startURL, extensionJs,
+                    browserConfigurations);
+            if (null == sessionInfo) {
+                poolMisses.incrementAndGet();
+            } else {
+                poolHits.incrementAndGet();
+            }
         }
 
         // couldn't find one in the cache, or not reusing sessions.
@@ -125,6 +174,11 @@ public class BrowserSessionFactory {
                     browserConfigurations, ensureClean, configuration);
         }
 
+        if (pooling) {
+            warmUpSessions(browserString, startURL, extensionJs, browserConfigurations,
+                    requestedConfiguration, ensureClean, configuration);
+        }
+
         assert null != sessionInfo;
         if (false/*ensureClean*/) {
             // need to add this to the launcher API.
@@ -139,6 +193,7 @@ public class BrowserSessionFactory {
      * Active and available but inactive sessions are ended.
      */
     protected void endAllBrowserSessions(RemoteControlConfiguration configuration) {
+        stopWarmingUp();
         boolean done = false;
         Set<BrowserSessionInfo> allSessions = new HashSet<BrowserSessionInfo>();
         while (!done) {
@@ -207,9 +262,10 @@ public class BrowserSessionFactory {
                     }
                     // mark what time this session was ended
                     sessionInfo.lastClosedAt = System.currentTimeMillis();
-                    availableSessions.add(sessionInfo);
+                    makeAvailable(sessionInfo);
                 }
             } finally {
+                CaptureNetworkTrafficCommand.endSession(sessionId);
                 try {
                     LoggingManager.perSessionLogHandler().clearSessionLogRecords(sessionId);
                 } catch (IOException ex) {
@@ -225,7 +281,7 @@ public class BrowserSessionFactory {
             sessionInfo = lookupInfoBySessionId(sessionId, availableSessions);
             if (null != sessionInfo && (forceClose || !configuration.reuseBrowserSessions())) {
                 try {
-                    availableSessions.remove(sessionInfo);
+                    takeAvailable(sessionInfo);
                     shutdownBrowserAndClearSessionData(sessionInfo);
                 } finally {
                     try {
@@ -243,7 +299,7 @@ public class BrowserSessionFactory {
 
     /**
      * Shuts down this browser session's launcher and clears out its session
-     * data (if session is not null).
+     * data (if session is not null) and captured network traffic.
      *
      * @param sessionInfo the browser session to end.
      */
@@ -254,6 +310,7 @@ public class BrowserSessionFactory {
             if (null != sessionInfo.session) {
                 FrameGroupCommandQueueSet.clearQueueSet(sessionInfo.sessionId);
             }
+            CaptureNetworkTrafficCommand.endSession(sessionInfo.sessionId);
         }
     }
 
@@ -296,11 +353,30 @@ public class BrowserSessionFactory {
      */
     protected BrowserSessionInfo grabAvailableSession(String browserString,
                                                       String baseUrl) {
+        return grabAvailableSession(browserString, baseUrl, null, null);
+    }
+
+    /**
+     * Retrieves an available, unused session from the cache which was
+     * launched with the same user extensions and browser configuration.
+     *
+     * @param browserString the necessary browser for a suitable session
+     * @param baseUrl       the necessary baseUrl for a suitable session
+     * @param extensionJs   the necessary per-session user extension Javascript
+     * @param browserConfigurations the necessary browser configuration options
+     * @return the session info of the cached session, null if none found.
+     */
+    protected BrowserSessionInfo grabAvailableSession(String browserString, String baseUrl,
+        String extensionJs, BrowserConfigurationOptions browserConfigurations) {
         BrowserSessionInfo sessionInfo = null;
         synchronized (availableSessions) {
-            sessionInfo = lookupInfoByBrowserAndUrl(browserString, baseUrl,
-                    availableSessions);
-            if (null != sessionInfo) {
+            String key = poolKey(browserString, baseUrl, extensionJs, serialize(browserConfigurations));
+            LinkedList<BrowserSessionInfo> sessions = availableByBrowserAndUrl.get(key);
+            if (null != sessions) {
+                sessionInfo = sessions.removeFirst();
+                if (sessions.isEmpty()) {
+                    availableByBrowserAndUrl.remove(key);
+                }
                 availableSessions.remove(sessionInfo);
             }
         }
@@ -310,6 +386,215 @@ public class BrowserSessionFactory {
         return sessionInfo;
     }
 
+    /**
+     * Retrieves an available, unused session from the cache, checking that
+     * its browser is still alive.  Sessions whose browsers are not are shut
+     * down, and the next one is tried.
+     *
+     * @param browserString the necessary browser for a suitable session
+     * @param baseUrl       the necessary baseUrl for a suitable session
+     * @return the session info of the cached session, null if none found.
+     */
+    protected BrowserSessionInfo grabHealthyAvailableSession(String browserString,
+                                                             String baseUrl) {
+        return grabHealthyAvailableSession(browserString, baseUrl, null, null);
+    }
+
+    /**
+     * As {@link #grabHealthyAvailableSession(String, String)}, for sessions
+     * launched with the given user extensions and browser configuration.
+     */
+    protected BrowserSessionInfo grabHealthyAvailableSession(String browserString, String baseUrl,
+        String extensionJs, BrowserConfigurationOptions browserConfigurations) {
+        while (true) {
+            BrowserSessionInfo sessionInfo = grabAvailableSession(browserString, baseUrl,
+                    extensionJs, browserConfigurations);
+            if (null == sessionInfo || isHealthy(sessionInfo)) {
+                return sessionInfo;
+            }
+            LOGGER.warn("Browser session " + sessionInfo.sessionId + " is not responding, replacing it");
+            unhealthySessions.incrementAndGet();
+            activeSessions.remove(sessionInfo);
+            try {
+                shutdownBrowserAndClearSessionData(sessionInfo);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to shut down unresponsive browser session " + sessionInfo.sessionId, e);
+            }
+        }
+    }
+
+    /**
+     * Checks that the browser of a session still answers commands.
+     *
+     * @param sessionInfo the session to check
+     * @return true if the browser answered in time, or if the session has no
+     *         command queues to ask it through.
+     */
+    protected boolean isHealthy(final BrowserSessionInfo sessionInfo) {
+        if (null == sessionInfo.session) {
+            return true;
+        }
+        FutureTask<String> probe = new FutureTask<String>(new Callable<String>() {
+            public String call() throws Exception {
+                return sessionInfo.session.doCommand("getTitle", "", "");
+            }
+        });
+        // If the browser never answers, the probe thread is released when
+        // the session's queues are cleared on shutdown.
+        Thread probeThread = new Thread(probe, "Browser session probe " + sessionInfo.sessionId);
+        probeThread.setDaemon(true);
+        probeThread.start();
+        try {
+            String result = probe.get(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS);
+            return null != result && result.startsWith("OK");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds a session to the available sessions, after any others with the
+     * same browser string, base URL, user extensions and browser configuration.
+     */
+    protected void makeAvailable(BrowserSessionInfo sessionInfo) {
+        synchronized (availableSessions) {
+            if (!availableSessions.add(sessionInfo)) {
+                return;
+            }
+            String key = poolKey(sessionInfo);
+            LinkedList<BrowserSessionInfo> sessions = availableByBrowserAndUrl.get(key);
+            if (null == sessions) {
+                sessions = new LinkedList<BrowserSessionInfo>();
+                availableByBrowserAndUrl.put(key, sessions);
+            }
+            sessions.addLast(sessionInfo);
+        }
+    }
+
+    /**
+     * Removes a session from the available sessions.
+     *
+     * @return true if the session was available.
+     */
+    protected boolean takeAvailable(BrowserSessionInfo sessionInfo) {
+        synchronized (availableSessions) {
+            if (!availableSessions.remove(sessionInfo)) {
+                return false;
+            }
+            String key = poolKey(sessionInfo);
+            LinkedList<BrowserSessionInfo> sessions = availableByBrowserAndUrl.get(key);
+            if (null != sessions) {
+                sessions.remove(sessionInfo);
+                if (sessions.isEmpty()) {
+                    availableByBrowserAndUrl.remove(key);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static String poolKey(BrowserSessionInfo sessionInfo) {
+        return poolKey(sessionInfo.browserString, sessionInfo.baseUrl,
+                sessionInfo.extensionJs, sessionInfo.browserConfiguration);
+    }
+
+    /**
+     * Sessions only share a key if they were launched with the same user
+     * extensions and browser configuration, which can't be changed afterwards.
+     */
+    private static String poolKey(String browserString, String baseUrl,
+        String extensionJs, String browserConfiguration) {
+        return browserString + '\n' + baseUrl + '\n'
+                + (null == extensionJs ? "" : extensionJs) + '\n'
+                + (null == browserConfiguration ? "" : browserConfiguration);
+    }
+
+    private static String serialize(BrowserConfigurationOptions browserConfigurations) {
+        return null == browserConfigurations ? null : browserConfigurations.serialize();
+    }
+
+    /**
+     * Launches enough new sessions in the background to bring the number of
+     * available sessions for this browser string and base URL up to the
+     * configured pool size.
+     */
+    private void warmUpSessions(final String browserString, final String startURL,
+        final String extensionJs, final BrowserConfigurationOptions browserConfiguration,
+        final String requestedConfiguration, final boolean ensureClean,
+        final RemoteControlConfiguration configuration) {
+
+        final String key = poolKey(browserString, startURL, extensionJs, requestedConfiguration);
+        int missing;
+        synchronized (availableSessions) {
+            if (warmUpStopped) {
+                return;
+            }
+            LinkedList<BrowserSessionInfo> sessions = availableByBrowserAndUrl.get(key);
+            Integer pending = pendingWarmUps.get(key);
+            int launching = (null == pending) ? 0 : pending;
+            missing = configuration.getBrowserSessionPoolSize() - launching
+                    - (null == sessions ? 0 : sessions.size());
+            if (missing <= 0) {
+                return;
+            }
+            pendingWarmUps.put(key, launching + missing);
+        }
+
+        for (int i = 0; i < missing; i++) {
+            getWarmUpExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (warmUpStopped) {
+                            return;
+                        }
+                        BrowserSessionInfo sessionInfo = launchNewRemoteSession(browserString,
+                                startURL, extensionJs, browserConfiguration, requestedConfiguration,
+                                configuration, false);
+                        if (warmUpStopped) {
+                            shutdownBrowserAndClearSessionData(sessionInfo);
+                            return;
+                        }
+                        sessionInfo.lastClosedAt = System.currentTimeMillis();
+                        makeAvailable(sessionInfo);
+                        LOGGER.info("Browser session " + sessionInfo.sessionId + " is ready for "
+                                + browserString + " on " + startURL);
+                    } catch (Exception e) {
+                        LOGGER.warn("Failed to launch a " + browserString + " session ahead of demand", e);
+                    } finally {
+                        synchronized (availableSessions) {
+                            Integer pending = pendingWarmUps.get(key);
+                            if (null == pending || pending <= 1) {
+                                pendingWarmUps.remove(key);
+                            } else {
+                                pendingWarmUps.put(key, pending - 1);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized ExecutorService getWarmUpExecutor() {
+        if (null == warmUpExecutor) {
+            warmUpExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Browser session warm-up");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return warmUpExecutor;
+    }
+
+    private synchronized void stopWarmingUp() {
+        warmUpStopped = true;
+        if (null != warmUpExecutor) {
+            warmUpExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Isolated dependency 
      * @param sessionId
@@ -345,11 +630,29 @@ public class BrowserSessionFactory {
     protected BrowserSessionInfo createNewRemoteSession(String browserString, String startURL,
         String extensionJs, BrowserConfigurationOptions browserConfiguration, boolean ensureClean, RemoteControlConfiguration configuration)
         throws RemoteCommandException {
+        return launchNewRemoteSession(browserString, startURL, extensionJs, browserConfiguration,
+                serialize(browserConfiguration), configuration, true);
+    }
+
+    /**
+     * Creates and tries to open a new session.
+     *
+     * @param requestedConfiguration the browser configuration options as they were
+     *                  asked for, before the launcher filled in any defaults
+     * @param forClient true if the session is for the client asking for it, or false
+     *                  if it is being launched ahead of demand, in which case it is
+     *                  not made active.
+     */
+    private BrowserSessionInfo launchNewRemoteSession(String browserString, String startURL,
+        String extensionJs, BrowserConfigurationOptions browserConfiguration,
+        String requestedConfiguration, RemoteControlConfiguration configuration, boolean forClient)
+        throws RemoteCommandException {
 
         final FrameGroupCommandQueueSet queueSet;
         final BrowserSessionInfo sessionInfo;
         final BrowserLauncher launcher;
         final String sessionId;
+        final long launchStartedAt = System.currentTimeMillis();
 
         sessionId = UUID.randomUUID().toString().replace("-", "");
         queueSet = makeQueueSet(sessionId, configuration.getPortDriversShouldContact(), configuration);
@@ -361,12 +664,15 @@ public class BrowserSessionFactory {
         	throw new RemoteCommandException(e.getMessage(), "");
         }
         
-        sessionInfo = new BrowserSessionInfo(sessionId, browserString, startURL, launcher, queueSet);
-        SeleniumDriverResourceHandler.setLastSessionId(sessionId);
+        sessionInfo = new BrowserSessionInfo(sessionId, browserString, startURL, extensionJs,
+                requestedConfiguration, launcher, queueSet);
         LOGGER.info("Allocated session " + sessionId + " for " + startURL + ", launching...");
-                
-        LoggingManager.perSessionLogHandler().setThreadToSessionMapping(Thread.currentThread().getId(), sessionId);
-        LoggingManager.perSessionLogHandler().copyThreadTempLogsToSessionLogs(sessionId, Thread.currentThread().getId());
+
+        if (forClient) {
+            SeleniumDriverResourceHandler.setLastSessionId(sessionId);
+            LoggingManager.perSessionLogHandler().setThreadToSessionMapping(Thread.currentThread().getId(), sessionId);
+            LoggingManager.perSessionLogHandler().copyThreadTempLogsToSessionLogs(sessionId, Thread.currentThread().getId());
+        }
         
         try {
             launcher.launchRemoteSession(startURL);
@@ -377,7 +683,10 @@ public class BrowserSessionFactory {
             FrameGroupCommandQueueSet queue = getQueueSet(sessionId);
             queue.doCommand("setContext", sessionId, "");
 
-            activeSessions.add(sessionInfo);
+            launchLatencies.add(System.currentTimeMillis() - launchStartedAt);
+            if (forClient) {
+                activeSessions.add(sessionInfo);
+            }
             return sessionInfo;
         } catch (Exception e) {
             /*
@@ -466,17 +775,78 @@ public class BrowserSessionFactory {
 
     protected void removeIdleAvailableSessions() {
         long now = System.currentTimeMillis();
+        List<BrowserSessionInfo> idleSessions = new ArrayList<BrowserSessionInfo>();
         synchronized (availableSessions) {
             Iterator<BrowserSessionInfo> iter = availableSessions.iterator();
             while (iter.hasNext()) {
                 BrowserSessionInfo info = iter.next();
                 if (now - info.lastClosedAt > maxIdleSessionTime) {
-                    iter.remove();
+                    idleSessions.add(info);
                 }
             }
+            for (BrowserSessionInfo info : idleSessions) {
+                takeAvailable(info);
+            }
+        }
+        // nothing else will ever close these browsers
+        for (BrowserSessionInfo info : idleSessions) {
+            try {
+                shutdownBrowserAndClearSessionData(info);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to shut down idle browser session " + info.sessionId, e);
+            }
         }
     }
 
+    /**
+     * @return the number of sessions currently in use by clients.
+     */
+    public int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
+    /**
+     * @return the number of launched sessions waiting to be used.
+     */
+    public int getAvailableSessionCount() {
+        return availableSessions.size();
+    }
+
+    /**
+     * @return the number of times an available session was handed out
+     *         instead of launching a new browser.
+     */
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    /**
+     * @return the number of times no available session could be used, and a
+     *         new browser had to be launched for the client.
+     */
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    /**
+     * @return the number of available sessions found not to be responding,
+     *         and replaced.
+     */
+    public long getUnhealthySessionCount() {
+        return unhealthySessions.get();
+    }
+
+    /**
+     * Reports how long launching a browser took, over the most recent launches.
+     *
+     * @param percentile between 0 and 100, e.g. 50 for the median.
+     * @return the launch time in ms at that percentile, or -1 if no browser
+     *         has been launched.
+     */
+    public long getLaunchLatencyPercentile(double percentile) {
+        return launchLatencies.percentile(percentile);
+    }
+
     /**
      * for testing only
      */
@@ -497,7 +867,7 @@ public class BrowserSessionFactory {
      * for testing only
      */
     protected void addToAvailableSessions(BrowserSessionInfo sessionInfo) {
-        availableSessions.add(sessionInfo);
+        makeAvailable(sessionInfo);
     }
 
     /**
@@ -510,9 +880,19 @@ public class BrowserSessionFactory {
         public BrowserSessionInfo(String sessionId, String browserString,
                                   String baseUrl, BrowserLauncher launcher,
                                   FrameGroupCommandQueueSet session) {
+            this(sessionId, browserString, baseUrl, null, null, launcher, session);
+        }
+
+        public BrowserSessionInfo(String sessionId, String browserString,
+                                  String baseUrl, String extensionJs,
+                                  String browserConfiguration,
+                                  BrowserLauncher launcher,
+                                  FrameGroupCommandQueueSet session) {
             this.sessionId = sessionId;
             this.browserString = browserString;
             this.baseUrl = baseUrl;
+            this.extensionJs = extensionJs; // optional field; may be null.
+            this.browserConfiguration = browserConfiguration; // optional field; may be null.
             this.launcher = launcher;
             this.session = session; // optional field; may be null.
             lastClosedAt = 0;
@@ -521,6 +901,8 @@ public class BrowserSessionFactory {
         public final String sessionId;
         public final String browserString;
         public final String baseUrl;
+        public final String extensionJs;
+        public final String browserConfiguration; // as serialized when the session was requested
         public final BrowserLauncher launcher;
         public final FrameGroupCommandQueueSet session;
         public long lastClosedAt;
@@ -542,6 +924,38 @@ public class BrowserSessionFactory {
         }
     }
 
+    /**
+     * The most recent launch times, in a fixed size ring.
+     */
+    private static class LaunchLatencies {
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        LaunchLatencies(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void add(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        synchronized long percentile(double percentile) {
+            if (0 == count) {
+                return -1;
+            }
+            long[] sorted = new long[count];
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
     /**
      * TimerTask that looks for unused sessions in the availableSessions collection.
      *
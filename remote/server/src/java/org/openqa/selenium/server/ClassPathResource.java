@@ -16,38 +16,37 @@
  */
 package org.openqa.selenium.server;
 
-import org.openqa.jetty.util.IO;
 import org.openqa.jetty.util.Resource;
-import static org.openqa.selenium.server.browserlaunchers.LauncherUtils.getSeleniumResourceAsStream;
 
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 
 /**
- * Represents resource file off of the classpath.
+ * Represents resource file off of the classpath.  The content is shared with
+ * every other ClassPathResource for the same path through the
+ * {@link StaticResourceCache}, so it is only read once.
  * 
  * @author Patrick Lightbody (plightbo at gmail dot com)
  */
 public class ClassPathResource extends Resource {
 	String path;
 
-	ByteArrayOutputStream os;
+	StaticResourceCache.Entry entry;
 
 	/**
 	 * Specifies the classpath path containing the resource
 	 */
 	public ClassPathResource(String path) {
 		this.path = path;
-		InputStream is = getSeleniumResourceAsStream(path);
-		if (is != null) {
-			os = new ByteArrayOutputStream();
-			try {
-				IO.copy(is, os);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		entry = StaticResourceCache.getInstance().get(path);
+	}
+
+	/**
+	 * Returns the cached content of the resource, or null if it doesn't exist.
+	 */
+	public StaticResourceCache.Entry getCacheEntry() {
+		return entry;
 	}
 
 	/* ------------------------------------------------------------ */
@@ -59,7 +58,7 @@ public class ClassPathResource extends Resource {
 	}
 
 	public boolean exists() {
-		return os != null;
+		return entry != null;
 	}
 
 	public boolean isDirectory() {
@@ -75,8 +74,8 @@ public class ClassPathResource extends Resource {
 	}
 
 	public long length() {
-		if (os != null) {
-			return os.size();
+		if (entry != null) {
+			return entry.getLength();
 		}
 
 		return 0;
@@ -95,8 +94,8 @@ public class ClassPathResource extends Resource {
 	}
 
 	public InputStream getInputStream() throws IOException {
-		if (os != null) {
-			return new ByteArrayInputStream(os.toByteArray());
+		if (entry != null) {
+			return entry.getInputStream();
 		}
 		return null;
 	}
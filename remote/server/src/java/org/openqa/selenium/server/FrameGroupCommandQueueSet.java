@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -47,8 +49,19 @@ public class FrameGroupCommandQueueSet {
     private static final Log LOGGER = LogFactory.getLog(FrameGroupCommandQueueSet.class);
 
     static private final Map<String, FrameGroupCommandQueueSet> queueSets = new ConcurrentHashMap<String, FrameGroupCommandQueueSet>();
-    static private Lock dataLock = new ReentrantLock(); //
-    static private Condition resultArrivedOnAnyQueue = dataLock.newCondition();
+    /**
+     * Guards frameAddressToJustLoaded and loadWaiters.  Each session has its own lock,
+     * so that waiting for a page load in one session never holds up another.
+     */
+    private final Lock dataLock = new ReentrantLock();
+    /**
+     * Threads in waitForLoad, each with its own condition so that a frame loading only
+     * wakes the threads waiting for a frame with that local address.
+     */
+    private final List<LoadWaiter> loadWaiters = new LinkedList<LoadWaiter>();
+    private final AtomicLong lockAcquisitions = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private final AtomicLong lockHoldNanos = new AtomicLong();
 
     /**
      * JavaScript expression telling where the frame is within the current window (i.e., "local"
@@ -71,6 +84,7 @@ public class FrameGroupCommandQueueSet {
     	
     private final Set<File> tempFilesForSession = Collections.synchronizedSet(new HashSet<File>());
     private Map<String, CommandQueue> uniqueIdToCommandQueue = new ConcurrentHashMap<String, CommandQueue>();
+    private final FrameQueueIndex queueIndex = new FrameQueueIndex();
 
     private Map<String, Boolean> frameAddressToJustLoaded = new ConcurrentHashMap<String, Boolean>();
 
@@ -90,7 +104,8 @@ public class FrameGroupCommandQueueSet {
      * Queues which will not be used anymore, but which cannot be immediately
      * destroyed because their corresponding windows may still be listening.
      */
-    private Set<CommandQueue> orphanedQueues = new HashSet<CommandQueue>();
+    private final Set<CommandQueue> orphanedQueues = Collections.synchronizedSet(new HashSet<CommandQueue>());
+    private final AtomicLong reclaimedQueues = new AtomicLong();
 
     public static final String DEFAULT_LOCAL_FRAME_ADDRESS = "top";
     /**
@@ -153,8 +168,7 @@ public class FrameGroupCommandQueueSet {
             return selectWindowByNameOrVar(seleniumWindowName);
         }
         // no locator prefix; try the default strategies
-        String match = findMatchingFrameAddress(uniqueIdToCommandQueue.keySet(),
-                    seleniumWindowName, DEFAULT_LOCAL_FRAME_ADDRESS);
+        String match = findMatchingFrameAddress(seleniumWindowName, DEFAULT_LOCAL_FRAME_ADDRESS);
         
         // If we didn't find a match, try finding the frame address by window title
         if (match == null) {
@@ -167,8 +181,7 @@ public class FrameGroupCommandQueueSet {
     }
     
     private String selectWindowByNameOrVar(String seleniumWindowName) {
-        String match = findMatchingFrameAddress(uniqueIdToCommandQueue.keySet(),
-                seleniumWindowName, DEFAULT_LOCAL_FRAME_ADDRESS);
+        String match = findMatchingFrameAddress(seleniumWindowName, DEFAULT_LOCAL_FRAME_ADDRESS);
         if (match == null) {
             return "ERROR: could not find window " + seleniumWindowName;
         }
@@ -179,12 +192,19 @@ public class FrameGroupCommandQueueSet {
     private String selectWindowByRemoteTitle(String title) {
         String match = null;
         boolean windowFound = false;
-        for (String uniqueId : uniqueIdToCommandQueue.keySet()) {
+        // Ask the windows last seen with this title first; the title may have
+        // changed since, so each one is still checked with the browser
+        Set<String> uniqueIds = new LinkedHashSet<String>(queueIndex.findByTitle(title));
+        uniqueIds.addAll(uniqueIdToCommandQueue.keySet());
+        for (String uniqueId : uniqueIds) {
             CommandQueue commandQueue = uniqueIdToCommandQueue.get(uniqueId);
+            if (commandQueue == null || commandQueue.isClosed()) {
+                continue;
+            }
         
             String windowName;
             try {
-                windowName = getRemoteWindowTitle(commandQueue);
+                windowName = getRemoteWindowTitle(uniqueId, commandQueue);
             } catch (WindowClosedException e) {
                 // If the window is closed, then it can't be the window we're looking for
                 continue;
@@ -298,6 +318,9 @@ public class FrameGroupCommandQueueSet {
      */
     public String doCommand(String command, String arg, String value) 
         throws RemoteCommandException {
+      if (command.equals(RemoteCommandBatch.COMMAND)) {
+        return doBatch(arg);
+      }
       if (proxyInjectionMode) {
         if (command.equals("selectFrame")) {
           if ("".equals(arg)) {
@@ -310,7 +333,7 @@ public class FrameGroupCommandQueueSet {
           Arrays.sort(ids);
           for (String uniqueId : ids) {
             CommandQueue frameQ = uniqueIdToCommandQueue.get(uniqueId);
-            if (frameQ.isClosed()) {
+            if (frameQ == null || frameQ.isClosed()) {
         	    continue;
             }
             FrameAddress frameAddress = frameQ.getFrameAddress();
@@ -425,6 +448,42 @@ public class FrameGroupCommandQueueSet {
       return getCommandQueue().doCommand(command, arg, value);
     }
     
+    /**
+     * Runs a batch of commands.  Normally the whole batch is sent to the browser at once,
+     * but in proxy injection mode, where the server has to handle some commands itself
+     * and a page load may interrupt the batch, and in slow mode, the commands are run one
+     * at a time here instead.  Either way the result is the same.
+     * 
+     * @param encodedCommands the argument of the batch command
+     * @see RemoteCommandBatch
+     */
+    private String doBatch(String encodedCommands) throws RemoteCommandException {
+      RemoteCommandBatch batch;
+      try {
+        batch = RemoteCommandBatch.parse(encodedCommands);
+      } catch (IllegalArgumentException e) {
+        return "ERROR: " + e.getMessage();
+      }
+      String serverSideCommand = batch.findServerSideCommand();
+      if (serverSideCommand != null) {
+        return "ERROR: " + serverSideCommand + " cannot be run in a batch";
+      }
+      if (!proxyInjectionMode && getCommandQueue().getQueueDelay() == 0) {
+        markWhetherJustLoaded(currentUniqueId, false);
+        return getCommandQueue().doCommand(RemoteCommandBatch.COMMAND, batch.toBrowserTarget(), "");
+      }
+
+      List<String> results = new ArrayList<String>();
+      for (RemoteCommand command : batch.getCommands()) {
+        String result = doCommand(command.getCommand(), command.getField(), command.getValue());
+        if (result == null || !result.startsWith("OK")) {
+          return result;
+        }
+        results.add(result);
+      }
+      return RemoteCommandBatch.combineResults(results);
+    }
+
     /**
      * Generates a CSV string from the given string array.
      * 
@@ -474,12 +533,18 @@ public class FrameGroupCommandQueueSet {
         // Find all window names in the set of frame addresses
         for (String uniqueId : frameAddressSet) {
             CommandQueue q = uniqueIdToCommandQueue.get(uniqueId);
+            if (q == null || q.isClosed()) {
+                continue;
+            }
             String attribute;
             try {
                 attribute = getRemoteString(q, "getEval", "window." + attributeName, "");
             } catch (WindowClosedException e) {
                 continue;
             }
+            if ("document.title".equals(attributeName)) {
+                queueIndex.setTitle(uniqueId, attribute);
+            }
             windowTitles.add(attribute);
         }
         
@@ -494,9 +559,10 @@ public class FrameGroupCommandQueueSet {
      * @return Returns the title if it is found.
      * @throws WindowClosedException 
      */
-    private String getRemoteWindowTitle(CommandQueue queue) throws WindowClosedException {
-        return getRemoteString(queue, "getTitle", "", "");
-    
+    private String getRemoteWindowTitle(String uniqueId, CommandQueue queue) throws WindowClosedException {
+        String title = getRemoteString(queue, "getTitle", "", "");
+        queueIndex.setTitle(uniqueId, title);
+        return title;
     }
 
     private String getRemoteString(CommandQueue queue, String command, String arg1, String arg2)
@@ -538,14 +604,20 @@ public class FrameGroupCommandQueueSet {
     private String waitForLoad(String waitingForThisWindowName, String waitingForThisLocalFrame,
                                int timeoutInSeconds) throws RemoteCommandException {
 
-        for (String matchingFrameAddress = null; timeoutInSeconds >= 0; timeoutInSeconds--) {
-            dataLock.lock();
+        if (waitingForThisLocalFrame == null) {
+            waitingForThisLocalFrame = DEFAULT_LOCAL_FRAME_ADDRESS;
+        }
+        LoadWaiter waiter = new LoadWaiter(waitingForThisLocalFrame, dataLock.newCondition());
+        long deadline = System.currentTimeMillis() + timeoutInSeconds * 1000L;
+
+        while (true) {
+            long lockedAt = lockData();
             try {
                 LOGGER.debug("waiting for window '" + waitingForThisWindowName
                         + "' local frame '" + waitingForThisLocalFrame
                         + "' for " + timeoutInSeconds + " more secs");
 
-                matchingFrameAddress = findMatchingFrameAddress(
+                String matchingFrameAddress = findMatchingFrameAddress(
                         frameAddressToJustLoaded.keySet(),
                         waitingForThisWindowName, waitingForThisLocalFrame);
                 if (null != matchingFrameAddress) {
@@ -560,9 +632,22 @@ public class FrameGroupCommandQueueSet {
                     return matchingFrameAddress;
                 }
 
-                waitUntilSignalOrNumSecondsPassed(resultArrivedOnAnyQueue, 1);
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining < 0) {
+                    break;
+                }
+                timeoutInSeconds = (int) (remaining / 1000);
+                loadWaiters.add(waiter);
+                try {
+                    lockedAt = awaitData(waiter.condition, Math.min(remaining, 1000), lockedAt);
+                } catch (InterruptedException e) {
+                    // Check again, and carry on waiting if nothing has loaded
+                    lockedAt = System.nanoTime();
+                } finally {
+                    loadWaiters.remove(waiter);
+                }
             } finally {
-                dataLock.unlock();
+                unlockData(lockedAt);
             }
         }
         String result = "timed out waiting for window '" + waitingForThisWindowName + "' to appear";
@@ -596,6 +681,61 @@ public class FrameGroupCommandQueueSet {
       return result;
     }
 
+    /**
+     * Acquires the data lock, counting how long it took.
+     *
+     * @return the time at which the lock was acquired, to pass to unlockData
+     */
+    private long lockData() {
+        long start = System.nanoTime();
+        dataLock.lock();
+        long lockedAt = System.nanoTime();
+        lockAcquisitions.incrementAndGet();
+        lockWaitNanos.addAndGet(lockedAt - start);
+        return lockedAt;
+    }
+
+    private void unlockData(long lockedAt) {
+        lockHoldNanos.addAndGet(System.nanoTime() - lockedAt);
+        dataLock.unlock();
+    }
+
+    /**
+     * Waits on a condition of the data lock, which is released while waiting, so the wait
+     * is not counted as holding it.
+     *
+     * @param lockedAt the time the lock was acquired, as returned by lockData
+     * @return the time the lock was acquired again, to pass to unlockData
+     */
+    private long awaitData(Condition condition, long timeoutInMillis, long lockedAt)
+            throws InterruptedException {
+        lockHoldNanos.addAndGet(System.nanoTime() - lockedAt);
+        condition.await(timeoutInMillis, TimeUnit.MILLISECONDS);
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the number of times this session's data lock has been acquired
+     */
+    public long getLockAcquisitions() {
+        return lockAcquisitions.get();
+    }
+
+    /**
+     * @return the total time, in milliseconds, spent waiting to acquire this session's data lock
+     */
+    public long getLockWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.get());
+    }
+
+    /**
+     * @return the total time, in milliseconds, that this session's data lock has been held,
+     * not counting time spent in waitForLoad waiting for a frame to load
+     */
+    public long getLockHoldTime() {
+        return TimeUnit.NANOSECONDS.toMillis(lockHoldNanos.get());
+    }
+
     protected static void sleepForAtLeast(long ms) {
       if (ms > 0) {
         long now = System.currentTimeMillis();
@@ -611,6 +751,25 @@ public class FrameGroupCommandQueueSet {
       }
     }
 
+    /**
+     * Finds a live frame matching 'windowName'/'localFrame' among all of this frame group's
+     * frames.  Only the frames indexed under that name, and those which have just loaded and
+     * so may not know their true identity yet, need to be looked at.
+     */
+    private String findMatchingFrameAddress(String windowName, String localFrame) {
+        String name = windowName;
+        if (name == null || name.equals("null")) {
+            name = DEFAULT_SELENIUM_WINDOW_NAME;
+        }
+        Set<String> candidates = new LinkedHashSet<String>(queueIndex.findByWindowName(name));
+        candidates.addAll(queueIndex.findByJsVariable(name));
+        candidates.addAll(frameAddressToJustLoaded.keySet());
+        if (name.equals("_blank")) {
+            candidates.addAll(uniqueIdToCommandQueue.keySet());
+        }
+        return findMatchingFrameAddress(candidates, windowName, localFrame);
+    }
+
     private String findMatchingFrameAddress(Set<String> uniqueIds, String windowName, String localFrame) {
         for (String uniqueId : uniqueIds) {
             if (matchesFrameAddress(uniqueId, windowName, localFrame)) {
@@ -637,19 +796,19 @@ public class FrameGroupCommandQueueSet {
             localFrame = "top";
         }
         CommandQueue queue = uniqueIdToCommandQueue.get(uniqueId);
-        if (queue.isClosed()) {
+        if (queue == null || queue.isClosed()) {
             return false;
         }
         boolean windowJustLoaded = justLoaded(uniqueId);
         FrameAddress frameAddress = queue.getFrameAddress();
-        if (!frameAddress.getLocalFrameAddress().equals(localFrame)) {
+        if (frameAddress == null || !frameAddress.getLocalFrameAddress().equals(localFrame)) {
             return false;
         }
         // DGF Windows that have just loaded may not know their true identity
         if (windowJustLoaded) {
             String title;
             try {
-                title = getRemoteWindowTitle(queue);
+                title = getRemoteWindowTitle(uniqueId, queue);
             } catch (WindowClosedException e) {
                 return false;
             }
@@ -667,7 +826,7 @@ public class FrameGroupCommandQueueSet {
             // DGF the API automatically changed target="_blank" to target="selenium_blank12345"
             return true;
         }
-        return uniqueIdToCommandQueue.get(uniqueId).isWindowPointedToByJsVariable(windowName);
+        return queue.isWindowPointedToByJsVariable(windowName);
     }
     
     /**
@@ -686,19 +845,27 @@ public class FrameGroupCommandQueueSet {
         String uniqueId, boolean justLoaded, List<?> jsWindowNameVars) {
       CommandQueue queue = getCommandQueue(uniqueId);
       queue.setFrameAddress(incomingFrameAddress);
+      queueIndex.setWindowName(uniqueId, incomingFrameAddress.getWindowName());
       if (jsWindowNameVars!=null) {
         for (Object jsWindowNameVar : jsWindowNameVars) {
           queue.addJsWindowNameVar((String)jsWindowNameVar);                    
+          queueIndex.addJsVariable(uniqueId, (String)jsWindowNameVar);
         }
       }
       
       if (justLoaded) {
+        queueIndex.forgetTitle(uniqueId);
         markWhetherJustLoaded(uniqueId, true);
           commandResult = null;
       }
       
       if (WindowClosedException.WINDOW_CLOSED_ERROR.equals(commandResult)) {
         queue.declareClosed();
+        queueIndex.remove(uniqueId);
+        if (!uniqueId.equals(currentUniqueId)) {
+          // The window has gone, so nothing will use its queue again
+          reclaimClosedQueue(uniqueId);
+        }
         return new DefaultRemoteCommand("testComplete", "", "");
       }
       
@@ -714,6 +881,7 @@ public class FrameGroupCommandQueueSet {
       for (CommandQueue frameQ : uniqueIdToCommandQueue.values()) {
           frameQ.endOfLife();
       }
+      garbageCollectOrphans();
     }
 
     private boolean justLoaded(String uniqueId) {
@@ -727,13 +895,14 @@ public class FrameGroupCommandQueueSet {
     private void markWhetherJustLoaded(String frameAddress, boolean justLoaded) {
       boolean oldState = justLoaded(frameAddress);
       if (oldState!=justLoaded) {
-        dataLock.lock();
+        long lockedAt = lockData();
         try {       
           if (justLoaded) {
             if (LOGGER.isDebugEnabled()) {
               LOGGER.debug(frameAddress + " marked as just loaded");
             }
             frameAddressToJustLoaded.put(frameAddress, true);
+            signalWaitersFor(frameAddress);
           }
           else {
             if (LOGGER.isDebugEnabled()) {
@@ -741,18 +910,49 @@ public class FrameGroupCommandQueueSet {
             }
             frameAddressToJustLoaded.remove(frameAddress);
           }
-          resultArrivedOnAnyQueue.signalAll();
         }
         finally {
-          dataLock.unlock();
+          unlockData(lockedAt);
+        }
+      }
+    }
+
+    /**
+     * Wakes the threads waiting for a frame which the frame identified by uniqueId
+     * might match.  Must be called with the data lock held.
+     */
+    private void signalWaitersFor(String uniqueId) {
+      CommandQueue queue = uniqueIdToCommandQueue.get(uniqueId);
+      FrameAddress frameAddress = queue == null ? null : queue.getFrameAddress();
+      for (LoadWaiter waiter : loadWaiters) {
+        if (frameAddress == null
+            || waiter.localFrame.equals(frameAddress.getLocalFrameAddress())) {
+          waiter.condition.signal();
         }
       }
     }
 
+    private static class LoadWaiter {
+      private final String localFrame;
+      private final Condition condition;
+
+      LoadWaiter(String localFrame, Condition condition) {
+        this.localFrame = localFrame;
+        this.condition = condition;
+      }
+    }
+
     private void setCurrentFrameAddress(String uniqueId) {
       assert uniqueId!=null;
       FrameAddress frameAddress = uniqueIdToCommandQueue.get(uniqueId).getFrameAddress();
+      String previousUniqueId = this.currentUniqueId;
       this.currentUniqueId = uniqueId;
+      if (previousUniqueId != null && !previousUniqueId.equals(uniqueId)) {
+        CommandQueue previous = uniqueIdToCommandQueue.get(previousUniqueId);
+        if (previous != null && previous.isClosed()) {
+          reclaimClosedQueue(previousUniqueId);
+        }
+      }
       this.currentFrameAddress = frameAddress;
       this.currentSeleniumWindowName = frameAddress.getWindowName();
       this.currentLocalFrameAddress = frameAddress.getLocalFrameAddress();
@@ -772,26 +972,62 @@ public class FrameGroupCommandQueueSet {
       return FrameAddress.make(seleniumWindowName, localFrameAddress);
     }
 
-//    /**
-//     * TODO: someone should call this
-//     */
-//    public void garbageCollectOrphans() {
-//        /**
-//         * The list of orphaned queues was assembled in the browser session 
-//         * preceding the current one.  At this point it is safe to get rid 
-//         * of them; their windows must have long since being destroyed.
-//         */
-//        for (CommandQueue q : orphanedQueues) {
-//            q.endOfLife();
-//        }
-//        orphanedQueues.clear();
-//    }
+    /**
+     * Gets rid of the queues orphaned by the previous reset.  Called when the frame group
+     * is reset again, or ends; their windows must have long since been destroyed.
+     */
+    public void garbageCollectOrphans() {
+        synchronized (orphanedQueues) {
+            for (CommandQueue q : orphanedQueues) {
+                q.endOfLife();
+            }
+            reclaimedQueues.addAndGet(orphanedQueues.size());
+            orphanedQueues.clear();
+        }
+    }
+
+    /**
+     * Forgets the queue of a window which has reported that it closed.  Its queue was
+     * emptied when it was declared closed, so nothing is left to wake up.
+     */
+    private void reclaimClosedQueue(String uniqueId) {
+      if (uniqueIdToCommandQueue.remove(uniqueId) != null) {
+        queueIndex.remove(uniqueId);
+        markWhetherJustLoaded(uniqueId, false);
+        reclaimedQueues.incrementAndGet();
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("reclaimed the queue of closed window " + uniqueId);
+        }
+      }
+    }
+
+    /**
+     * @return the number of live command queues in this frame group
+     */
+    public int getQueueCount() {
+      return uniqueIdToCommandQueue.size();
+    }
+
+    /**
+     * @return the number of queues orphaned by the last reset, and not yet reclaimed
+     */
+    public int getOrphanedQueueCount() {
+      return orphanedQueues.size();
+    }
+
+    /**
+     * @return the number of queues reclaimed since this frame group was created
+     */
+    public long getReclaimedQueueCount() {
+      return reclaimedQueues.get();
+    }
 
     public void reset(String baseUrl) {
       LOGGER.debug("resetting frame group");
+      garbageCollectOrphans();
       if (proxyInjectionMode) {
         // shut down all but the primary top level connection
-        List<FrameAddress> newOrphans = new LinkedList<FrameAddress>(); 
+        List<String> newOrphans = new LinkedList<String>(); 
         for (String uniqueId : uniqueIdToCommandQueue.keySet()) {
           CommandQueue q = getCommandQueue(uniqueId);
           FrameAddress frameAddress = q.getFrameAddress();
@@ -810,10 +1046,16 @@ public class FrameGroupCommandQueueSet {
               }
             }
             orphanedQueues.add(q);
-            newOrphans.add(frameAddress);
+            newOrphans.add(uniqueId);
+        }
+        for (String uniqueId : newOrphans) {
+            uniqueIdToCommandQueue.remove(uniqueId);
+            queueIndex.remove(uniqueId);
+            markWhetherJustLoaded(uniqueId, false);
         }
-        for (FrameAddress frameAddress : newOrphans) {
-            uniqueIdToCommandQueue.remove(frameAddress);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("orphaned " + newOrphans.size() + " queues, " 
+                + getQueueCount() + " left");
         }
       }
       removeTemporaryFiles();
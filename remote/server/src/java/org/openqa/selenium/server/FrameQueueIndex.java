@@ -0,0 +1,140 @@
+/*
+ * Copyright 2006 BEA, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.openqa.selenium.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the command queues of a frame group by selenium window name, by the
+ * JavaScript variables which point at their windows, and by their last known
+ * window title, without asking every window in turn.  The index is kept up to
+ * date from the reports the browser sends with each command result.
+ */
+class FrameQueueIndex {
+    private final Map<String, Set<String>> windowNameToUniqueIds = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> jsVariableToUniqueIds = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> titleToUniqueIds = new HashMap<String, Set<String>>();
+
+    private final Map<String, String> uniqueIdToWindowName = new HashMap<String, String>();
+    private final Map<String, Set<String>> uniqueIdToJsVariables = new HashMap<String, Set<String>>();
+    private final Map<String, String> uniqueIdToTitle = new HashMap<String, String>();
+
+    /** Records the selenium window name the browser last reported for the given queue */
+    public synchronized void setWindowName(String uniqueId, String windowName) {
+        String oldWindowName = uniqueIdToWindowName.put(uniqueId, windowName);
+        if (windowName.equals(oldWindowName)) {
+            return;
+        }
+        if (oldWindowName != null) {
+            removeFrom(windowNameToUniqueIds, oldWindowName, uniqueId);
+        }
+        addTo(windowNameToUniqueIds, windowName, uniqueId);
+    }
+
+    public synchronized void addJsVariable(String uniqueId, String jsVariable) {
+        Set<String> jsVariables = uniqueIdToJsVariables.get(uniqueId);
+        if (jsVariables == null) {
+            jsVariables = new HashSet<String>();
+            uniqueIdToJsVariables.put(uniqueId, jsVariables);
+        }
+        if (jsVariables.add(jsVariable)) {
+            addTo(jsVariableToUniqueIds, jsVariable, uniqueId);
+        }
+    }
+
+    /** Remembers the title of the window, as last fetched from the browser */
+    public synchronized void setTitle(String uniqueId, String title) {
+        forgetTitle(uniqueId);
+        uniqueIdToTitle.put(uniqueId, title);
+        addTo(titleToUniqueIds, title, uniqueId);
+    }
+
+    /** Forgets the title of the window, e.g. because a new page has loaded into it */
+    public synchronized void forgetTitle(String uniqueId) {
+        String oldTitle = uniqueIdToTitle.remove(uniqueId);
+        if (oldTitle != null) {
+            removeFrom(titleToUniqueIds, oldTitle, uniqueId);
+        }
+    }
+
+    /** Removes every trace of the queue, which is closed or has been orphaned */
+    public synchronized void remove(String uniqueId) {
+        String windowName = uniqueIdToWindowName.remove(uniqueId);
+        if (windowName != null) {
+            removeFrom(windowNameToUniqueIds, windowName, uniqueId);
+        }
+        Set<String> jsVariables = uniqueIdToJsVariables.remove(uniqueId);
+        if (jsVariables != null) {
+            for (String jsVariable : jsVariables) {
+                removeFrom(jsVariableToUniqueIds, jsVariable, uniqueId);
+            }
+        }
+        forgetTitle(uniqueId);
+    }
+
+    public synchronized List<String> findByWindowName(String windowName) {
+        return copyOf(windowNameToUniqueIds.get(windowName));
+    }
+
+    public synchronized List<String> findByJsVariable(String jsVariable) {
+        return copyOf(jsVariableToUniqueIds.get(jsVariable));
+    }
+
+    public synchronized List<String> findByTitle(String title) {
+        return copyOf(titleToUniqueIds.get(title));
+    }
+
+    public synchronized boolean hasTitle(String uniqueId) {
+        return uniqueIdToTitle.containsKey(uniqueId);
+    }
+
+    public synchronized int size() {
+        return uniqueIdToWindowName.size();
+    }
+
+    private static void addTo(Map<String, Set<String>> index, String key, String uniqueId) {
+        Set<String> uniqueIds = index.get(key);
+        if (uniqueIds == null) {
+            uniqueIds = new HashSet<String>();
+            index.put(key, uniqueIds);
+        }
+        uniqueIds.add(uniqueId);
+    }
+
+    private static void removeFrom(Map<String, Set<String>> index, String key, String uniqueId) {
+        Set<String> uniqueIds = index.get(key);
+        if (uniqueIds != null) {
+            uniqueIds.remove(uniqueId);
+            if (uniqueIds.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<String> copyOf(Set<String> uniqueIds) {
+        if (uniqueIds == null) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(uniqueIds);
+    }
+}
@@ -1,17 +1,32 @@
 package org.openqa.selenium.server;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.logging.Log;
+import org.openqa.jetty.http.HttpFields;
 import org.openqa.jetty.http.HttpRequest;
 import org.openqa.jetty.http.HttpResponse;
 import org.openqa.jetty.log.LogFactory;
@@ -24,10 +39,15 @@ public class InjectionHelper {
     private static boolean INJECT_SCRIPT_TAGS = true;
     private static boolean tryToInjectInHead = false;
     private static String injectionHtml = "/core/scripts/injection.html";
+    private static final int MIN_PREVIEW_LENGTH = 4096;
+    private static final int MAX_PREVIEW_LENGTH = 102400;
+    private static final int MAX_UNBROKEN_TEXT = 65536;
+    private static final byte[] HEAD_TAG = "<head>".getBytes();
+    private static volatile String seleniumJs;
     private static HashMap<String, HashMap<String, String>> jsStateInitializersBySessionId = new HashMap<String, HashMap<String,String>>();
     private static HashMap<String, String> sessionIdToUniqueId = new HashMap<String, String>();
     
-    private static HashMap<String, String> contentTransformations = new HashMap<String, String>();
+    private static Map<String, ContentTransformation> contentTransformations = new LinkedHashMap<String, ContentTransformation>();
     private static List<String> userJsInjectionFiles = new LinkedList<String>();
 
     public static void setBrowserSideLogEnabled(boolean browserSideLogEnabled) {
@@ -95,8 +115,6 @@ public class InjectionHelper {
      * restart the server to see changes.  Once the selenium js is firm, this should change.
      */
     public static void init() {
-        String key = "__SELENIUM_JS__";
-        
         StringBuffer sb = new StringBuffer();
         if (!INJECT_SCRIPT_TAGS) { // DGF experiment with using script tags
             try {
@@ -128,35 +146,36 @@ public class InjectionHelper {
                 log.debug("Ignored exception", e);
             }
         }
-        contentTransformations.put(key, sb.toString());
+        seleniumJs = sb.toString();
     }
     
-    private static void writeScriptTags(OutputStream os) throws IOException {
-    	// DGF script tags are SLOWER than regular injection! (remember, we disable the browser cache entirely)
-        writeScriptTag(os, "/core/scripts/xmlextras.js");
-        writeScriptTag(os, "/core/lib/cssQuery/cssQuery-p.js");
-        writeScriptTag(os, "/core/scripts/htmlutils.js");
-        writeScriptTag(os, "/core/scripts/ui-element.js");
-        writeScriptTag(os, "/core/scripts/selenium-browserdetect.js");
-        writeScriptTag(os, "/core/scripts/selenium-browserbot.js");
-        writeScriptTag(os, "/core/scripts/find_matching_child.js");
-        writeScriptTag(os, "/core/scripts/selenium-api.js");
-        writeScriptTag(os, "/core/scripts/selenium-commandhandlers.js");
-        writeScriptTag(os, "/core/scripts/selenium-executionloop.js");
-        writeScriptTag(os, "/core/scripts/selenium-remoterunner.js");
-        writeScriptTag(os, "/core/scripts/selenium-logging.js");
-        writeScriptTag(os, "/core/xpath/util.js");
-        writeScriptTag(os, "/core/xpath/xmltoken.js");
-        writeScriptTag(os, "/core/xpath/dom.js");
-        writeScriptTag(os, "/core/xpath/xpath.js");
-        writeScriptTag(os, "/core/xpath/javascript-xpath-0.1.11.js");
-        writeScriptTag(os, "/core/scripts/user-extensions.js");
+    private static void writeScriptTags(StringBuilder sb) {
+    	// the tags point at fingerprinted URLs, which the browser may cache; without that, script
+    	// tags are SLOWER than regular injection, as every page would fetch every script again
+        writeScriptTag(sb, "/core/scripts/xmlextras.js");
+        writeScriptTag(sb, "/core/lib/cssQuery/cssQuery-p.js");
+        writeScriptTag(sb, "/core/scripts/htmlutils.js");
+        writeScriptTag(sb, "/core/scripts/ui-element.js");
+        writeScriptTag(sb, "/core/scripts/selenium-browserdetect.js");
+        writeScriptTag(sb, "/core/scripts/selenium-browserbot.js");
+        writeScriptTag(sb, "/core/scripts/find_matching_child.js");
+        writeScriptTag(sb, "/core/scripts/selenium-api.js");
+        writeScriptTag(sb, "/core/scripts/selenium-commandhandlers.js");
+        writeScriptTag(sb, "/core/scripts/selenium-executionloop.js");
+        writeScriptTag(sb, "/core/scripts/selenium-remoterunner.js");
+        writeScriptTag(sb, "/core/scripts/selenium-logging.js");
+        writeScriptTag(sb, "/core/xpath/util.js");
+        writeScriptTag(sb, "/core/xpath/xmltoken.js");
+        writeScriptTag(sb, "/core/xpath/dom.js");
+        writeScriptTag(sb, "/core/xpath/xpath.js");
+        writeScriptTag(sb, "/core/xpath/javascript-xpath-0.1.11.js");
+        writeScriptTag(sb, "/core/scripts/user-extensions.js");
     }
     
-    private static void writeScriptTag(OutputStream os, String url) throws IOException {
-        os.write("<script type=\"text/javascript\" src=\"/selenium-server".getBytes());
-        os.write(url.getBytes());
-        os.write("\"></script>\n".getBytes());
+    private static void writeScriptTag(StringBuilder sb, String url) {
+        sb.append("<script type=\"text/javascript\" src=\"/selenium-server")
+            .append(StaticResourceCache.getInstance().getFingerprintedPath(url))
+            .append("\"></script>\n");
     }
     
 	private static void appendFileContent(StringBuffer sb, String url) throws IOException {
@@ -178,84 +197,180 @@ public class InjectionHelper {
         }
     }
 
+    /**
+     * Copies the page from in to out, injecting Selenium into it if it is HTML.
+     *
+     * <p>The page is streamed through: only as much of its beginning is read ahead as it takes
+     * to tell whether it is HTML (and, with tryToInjectInHead, to find its &lt;head&gt;), and
+     * the rest is copied untouched through the same buffer, or a line at a time through the
+     * user's content transformations if there are any.  A gzipped page is uncompressed on the
+     * way in and compressed again on the way out; one which turns out not to be HTML is sent on
+     * exactly as it came.
+     *
+     * @return the number of bytes read from in
+     */
     public static long injectJavaScript(HttpRequest request, HttpResponse response, InputStream in, OutputStream out, String debugURL) throws IOException {
-	    if (!contentTransformations.containsKey("__SELENIUM_JS__")) {
-	        init();   
-        }
-        
-        int len = 102400;
-        byte[] buf = new byte[len];
-        len = readStream(in, buf, len);
-        if (len == -1) {
-            return -1;
-        }
-        int lengthOfBOM = getBOMLength(buf); 
-        String data = new String(buf, lengthOfBOM, len);
-
-        boolean isKnownToBeHtml = HtmlIdentifier.shouldBeInjected(request.getPath(), response.getContentType(), data);
-
         String url = response.getHttpRequest().getRequestURL().toString();
         if (debugURL.equals(url)) {
             log.info("debug URL seen");
         }
-       
-        if (!isKnownToBeHtml) {
-            out.write(buf, 0, len);
-        }
-//        else if (lengthOfBOM>0) {
-//            out.write(buf, 0, lengthOfBOM);
-//        }
-        String sessionId = SeleniumDriverResourceHandler.getLastSessionId();
-
-        long bytesCopied = len;
-
         if (log.isDebugEnabled()) {
             log.debug(url + " (InjectionHelper looking)");
         }
-        if (!isKnownToBeHtml) {
-            bytesCopied += ModifiedIO.copy(in, out);
+        return injectJavaScript(request.getPath(), response, in, out);
+    }
+
+    static long injectJavaScript(String path, HttpResponse response, InputStream in, OutputStream out) throws IOException {
+	    if (seleniumJs == null) {
+	        init();   
         }
-        else {
-            if (log.isDebugEnabled()) {
-                log.debug("injecting...");
-            }
-            response.removeField("Content-Length"); // added js will make it wrong, lead to page getting truncated
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            if (INJECT_SCRIPT_TAGS) {
-            	writeScriptTags(baos);
+
+        CountingInputStream upstream = new CountingInputStream(in);
+        InputStream page = upstream;
+        String contentEncoding = response.getField(HttpFields.__ContentEncoding);
+        boolean gzipped = "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding);
+        if (gzipped) {
+            upstream.startRecording();
+            try {
+                page = new GZIPInputStream(upstream);
+            } catch (IOException e) {
+                log.debug("Not a gzipped page after all", e);
+                upstream.writeRecordingTo(out);
+                ModifiedIO.copy(upstream, out);
+                return upstream.getCount();
             }
-            InputStream jsIn = new ClassPathResource(InjectionHelper.injectionHtml).getInputStream();
-            contentTransformations.put("@SESSION_ID@", sessionId);
-            
-            writeDataWithUserTransformations("", jsIn, baos);
-            jsIn.close();
-            baos.write(setSomeJsVars(sessionId));
-            for (String filename : userJsInjectionFiles) {
-                jsIn = new FileInputStream(filename);
-                IO.copy(jsIn, baos); 
+        } else if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding)) {
+            // no telling what's in there, so leave it alone
+            return ModifiedIO.copy(in, out);
+        }
+
+        byte[] buf = new byte[MAX_PREVIEW_LENGTH];
+        int len = 0;
+        int limit = MIN_PREVIEW_LENGTH;
+        int lengthOfBOM;
+        boolean isKnownToBeHtml;
+        while (true) {
+            len = readStream(page, buf, len, limit);
+            lengthOfBOM = getBOMLength(buf, len);
+            String data = new String(buf, lengthOfBOM, len - lengthOfBOM);
+            isKnownToBeHtml = HtmlIdentifier.shouldBeInjected(path, response.getContentType(), data);
+            // seeing more of the page can only make it look more like HTML, so once it does there's
+            // no need to read any further; until then, read on as far as we always have
+            if (isKnownToBeHtml || len < limit || limit == buf.length) {
+                break;
             }
+            limit = Math.min(limit * 4, buf.length);
+        }
 
-            int headIndex;
-            if (tryToInjectInHead) {
-                headIndex = data.toLowerCase().indexOf("<head>");
+        if (!isKnownToBeHtml) {
+            if (gzipped) {
+                upstream.writeRecordingTo(out);
             } else {
-                headIndex = -1;
+                out.write(buf, 0, len);
             }
+            copy(upstream, out, buf);
+            return upstream.getCount();
+        }
 
+        if (log.isDebugEnabled()) {
+            log.debug("injecting...");
+        }
+        response.removeField("Content-Length"); // added js will make it wrong, lead to page getting truncated
+        upstream.stopRecording();
+
+        int injectAt = lengthOfBOM;
+        if (tryToInjectInHead) {
+            int headIndex = indexOfHeadTag(buf, lengthOfBOM, len);
+            if (headIndex == -1 && len == limit && len < buf.length) {
+                int searchFrom = Math.max(lengthOfBOM, len - HEAD_TAG.length + 1);
+                len = readStream(page, buf, len, buf.length);
+                headIndex = indexOfHeadTag(buf, searchFrom, len);
+            }
             if (headIndex != -1) {
-                data = data.substring(0, headIndex + 6) + baos.toString() + data.substring(headIndex + 6);
-            } else {
-                data = baos.toString() + data;
+                injectAt = headIndex + HEAD_TAG.length;
+            }
+        }
+
+        String charset = getCharset(response.getContentType());
+        String injection = makeInjection(SeleniumDriverResourceHandler.getLastSessionId());
+        OutputStream pageOut = gzipped ? new GZIPOutputStream(out) : out;
+        if (contentTransformations.isEmpty()) {
+            pageOut.write(buf, lengthOfBOM, injectAt - lengthOfBOM);
+            pageOut.write(injection.getBytes(charset));
+            pageOut.write(buf, injectAt, len - injectAt);
+            copy(page, pageOut, buf);
+        } else {
+            String before = new String(buf, lengthOfBOM, injectAt - lengthOfBOM, charset) + injection;
+            Reader rest = new InputStreamReader(new SequenceInputStream(
+                    new ByteArrayInputStream(buf, injectAt, len - injectAt), page), charset);
+            Writer writer = new OutputStreamWriter(pageOut, charset);
+            writeWithUserTransformations(before, rest, writer);
+            writer.flush();
+        }
+        if (gzipped) {
+            ((GZIPOutputStream) pageOut).finish();
+        }
+        return upstream.getCount();
+    }
+
+    /** @return the charset named in the content type, if Java has it, or else the default charset */
+    private static String getCharset(String contentType) {
+        if (contentType != null) {
+            int i = contentType.toLowerCase().indexOf("charset=");
+            if (i != -1) {
+                String charset = contentType.substring(i + 8).split("[;\\s]", 2)[0].replace("\"", "");
+                try {
+                    if (Charset.isSupported(charset)) {
+                        return charset;
+                    }
+                } catch (IllegalCharsetNameException e) {
+                    // use the default
+                }
             }
+        }
+        return Charset.defaultCharset().name();
+    }
 
-            bytesCopied += writeDataWithUserTransformations(data, in, out);
+    /** @return where the (case-insensitive) &lt;head&gt; tag starts in buf, or -1 if it isn't there */
+    private static int indexOfHeadTag(byte[] buf, int from, int to) {
+        for (int i = from; i <= to - HEAD_TAG.length; i++) {
+            int j = 0;
+            while (j < HEAD_TAG.length && Character.toLowerCase((char) buf[i + j]) == HEAD_TAG[j]) {
+                j++;
+            }
+            if (j == HEAD_TAG.length) {
+                return i;
+            }
         }
+        return -1;
+    }
 
-        return bytesCopied;
+    /** @return everything injected into a page, for the given session */
+    private static String makeInjection(String sessionId) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (INJECT_SCRIPT_TAGS) {
+            writeScriptTags(sb);
+        }
+        String html = IO.toString(new ClassPathResource(InjectionHelper.injectionHtml).getInputStream());
+        html = html.replace("__SELENIUM_JS__", seleniumJs);
+        if (sessionId != null) {
+            html = html.replace("@SESSION_ID@", sessionId);
+        }
+        sb.append(html);
+        sb.append(setSomeJsVars(sessionId));
+        for (String filename : userJsInjectionFiles) {
+            InputStream jsIn = new FileInputStream(filename);
+            try {
+                sb.append(IO.toString(jsIn));
+            } finally {
+                jsIn.close();
+            }
+        }
+        return sb.toString();
     }
 
-    private static int getBOMLength(byte[] buf) {
-        if ((buf!=null) && (buf.length>=3) && (buf[0]==(byte) -17) && (buf[1]==(byte) -69) && (buf[2]==(byte) -65)) {
+    private static int getBOMLength(byte[] buf, int len) {
+        if ((buf!=null) && (len>=3) && (buf[0]==(byte) -17) && (buf[1]==(byte) -69) && (buf[2]==(byte) -65)) {
 // jeez, what was that, you may be asking?  This comparison is quite wacky.  When I look at the same data hexdumped 
 //            from a file on disk, the bytes are EF BB BF,  so I think I could be comparing against 0xef, 0xbb, and 0xbf.
 //            But that doesn't work.  Here are some interesting evaluations from the Display view in my eclipse:
@@ -287,61 +402,71 @@ public class InjectionHelper {
     }
 
     /**
-     * read bufLen bytes into buf (unless EOF is seen first) from in.
+     * read into buf from offset until it holds limit bytes, unless EOF is seen first.
      * @param in
      * @param buf
-     * @param bufLen
-     * @return number of bytes read
+     * @param offset
+     * @param limit
+     * @return number of bytes in buf
      * @throws IOException
      */
-    private static int readStream(InputStream in, byte[] buf, int bufLen) throws IOException {
-        int offset = 0;
-        do {
-            int bytesRead = in.read(buf, offset, bufLen - offset);
+    private static int readStream(InputStream in, byte[] buf, int offset, int limit) throws IOException {
+        while (offset < limit) {
+            int bytesRead = in.read(buf, offset, limit - offset);
             if (bytesRead==-1) {
                 break;
             }
             offset += bytesRead;
-        } while (offset < bufLen);
-        int bytesReadTotal = offset;
-        return bytesReadTotal;
+        }
+        return offset;
     }
 
-    private static long writeDataWithUserTransformations(String data, InputStream in, OutputStream out) throws IOException {
-        long bytesWritten = 0;
-        byte[] buf = new byte[8192];
+    /** Copies in to out through buf until EOF. */
+    private static void copy(InputStream in, OutputStream out, byte[] buf) throws IOException {
         while (true) {
-            for (String beforeRegexp : contentTransformations.keySet()) {
-                String after = contentTransformations.get(beforeRegexp);
-                if (after==null) {
-                    log.warn("no transformation seen for key " + beforeRegexp);
-                }
-                else {
-                    try {
-                        data = data.replaceAll(beforeRegexp, after);
-                    }
-                    catch (IllegalArgumentException e) {
-                        // bad regexp or bad back ref in the 'after'.  
-                        // Do a straight substitution instead.
-                        // (This logic needed for injection.html's __SELENIUM_JS__
-                        // replacement to work.)
-                        data = data.replace(beforeRegexp, after);       
-                    }
-                }
+            int len = in.read(buf);
+            if (len == -1) {
+                break;
+            }
+            out.write(buf, 0, len);
+        }
+    }
+
+    /**
+     * Writes before, and then everything read from in, with the user's content transformations
+     * applied.  The text is transformed as it streams through, up to the last line break seen
+     * so far, so a transformation never sees a line in pieces; a page with lines longer than
+     * MAX_UNBROKEN_TEXT is transformed in pieces of that size.
+     */
+    private static void writeWithUserTransformations(String before, Reader in, Writer out) throws IOException {
+        StringBuilder pending = new StringBuilder(before);
+        char[] buf = new char[8192];
+        while (true) {
+            int end = pending.lastIndexOf("\n") + 1;
+            if (end == 0 && pending.length() >= MAX_UNBROKEN_TEXT) {
+                end = pending.length();
+            }
+            if (end > 0) {
+                out.write(applyUserTransformations(pending.substring(0, end)));
+                pending.delete(0, end);
             }
-            out.write(data.getBytes());
             int len = in.read(buf);
             if (len == -1) {
                 break;
             }
-            bytesWritten += len;
-            data = new String(buf, 0, len);
+            pending.append(buf, 0, len);
         }
+        out.write(applyUserTransformations(pending.toString()));
+    }
 
-        return bytesWritten;
+    private static String applyUserTransformations(String data) {
+        for (ContentTransformation transformation : contentTransformations.values()) {
+            data = transformation.apply(data);
+        }
+        return data;
     }
 
-    private static byte[] setSomeJsVars(String sessionId) {
+    private static String setSomeJsVars(String sessionId) {
         StringBuffer moreJs = new StringBuffer();
         if (InjectionHelper.browserSideLogEnabled) {
             moreJs.append("debugMode = true;\n");
@@ -387,18 +512,26 @@ public class InjectionHelper {
 //        return data;
 //    }
 
-    private static byte[] makeJsChunk(String js) {
+    private static String makeJsChunk(String js) {
         StringBuffer sb = new StringBuffer("\n<script language=\"JavaScript\">\n");
         sb.append(js)
         .append("\n</script>\n");
-        return sb.toString().getBytes();
+        return sb.toString();
     }
 
     public static boolean addUserContentTransformation(String before, String after ) {
-        contentTransformations.put(before, after);
+        if (after == null) {
+            log.warn("no transformation seen for key " + before);
+            return false;
+        }
+        contentTransformations.put(before, new ContentTransformation(before, after));
         return true;
     }
     
+    static void clearUserContentTransformations() {
+        contentTransformations.clear();
+    }
+
     public static boolean addUserJsInjectionFile(String fileName) {
         File f = new File(fileName);
         if (!f.canRead()) {
@@ -424,4 +557,95 @@ public class InjectionHelper {
     public static void setFailOnError(boolean failOnError) {
         InjectionHelper.failOnError = failOnError;
     }
+
+    /**
+     * A user content transformation: a regular expression and its replacement, or, if either
+     * won't do as a regular expression, a literal string and its replacement.
+     */
+    private static class ContentTransformation {
+        private final String before;
+        private final String after;
+        private final Pattern pattern;
+
+        ContentTransformation(String before, String after) {
+            this.before = before;
+            this.after = after;
+            Pattern compiled;
+            try {
+                compiled = Pattern.compile(before);
+            } catch (PatternSyntaxException e) {
+                compiled = null;
+            }
+            this.pattern = compiled;
+        }
+
+        String apply(String data) {
+            if (pattern != null) {
+                try {
+                    return pattern.matcher(data).replaceAll(after);
+                } catch (IllegalArgumentException e) {
+                    // bad back ref in the 'after'.  Do a straight substitution instead.
+                }
+            }
+            return data.replace(before, after);
+        }
+    }
+
+    /** Counts the bytes read through it, and can keep a copy of them to be sent on unchanged. */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+        private ByteArrayOutputStream recording;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+                if (recording != null) {
+                    recording.write(b);
+                }
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                if (recording != null) {
+                    recording.write(b, off, n);
+                }
+            }
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 512)];
+            int len = read(skipped, 0, skipped.length);
+            return len == -1 ? 0 : len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        void startRecording() {
+            recording = new ByteArrayOutputStream();
+        }
+
+        void stopRecording() {
+            recording = null;
+        }
+
+        /** Writes out everything read since recording started, and stops recording. */
+        void writeRecordingTo(OutputStream out) throws IOException {
+            if (recording != null) {
+                recording.writeTo(out);
+                recording = null;
+            }
+        }
+    }
 }
@@ -17,24 +17,40 @@
 package org.openqa.selenium.server;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.X509KeyManager;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import cybervillains.ca.KeyStoreManager;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.logging.Log;
 import org.openqa.jetty.http.HttpConnection;
 import org.openqa.jetty.http.HttpContext;
@@ -64,8 +80,9 @@ import org.openqa.selenium.server.commands.CaptureNetworkTrafficCommand;
 /* ------------------------------------------------------------ */
 
 /**
- * Proxy request handler. A HTTP/1.1 Proxy. This implementation uses the JVMs URL implementation to
- * make proxy requests.
+ * Proxy request handler. A HTTP/1.1 Proxy. This implementation sends http requests, and https ones when
+ * all certificates are trusted, through a pool of kept-alive connections (see {@link UpstreamHttpClient}),
+ * and uses the JVMs URL implementation to make any other proxy requests.
  * <p/>
  * The HttpTunnel mechanism is also used to implement the CONNECT method.
  *
@@ -75,13 +92,23 @@ import org.openqa.selenium.server.commands.CaptureNetworkTrafficCommand;
  */
 public class ProxyHandler extends AbstractHttpHandler {
     private static Log log = LogFactory.getLog(ProxyHandler.class);
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 60 * 1000;
+    // how long a connection to a server may sit unused in the pool before it is closed
+    private static final long IDLE_CONNECTION_TIMEOUT_IN_MILLIS = 30 * 1000;
 
     protected Set<String> _proxyHostsWhiteList;
     protected Set<String> _proxyHostsBlackList;
     protected int _tunnelTimeoutMs = 250;
     private boolean _anonymous = false;
     private transient boolean _chained = false;
-    private final Map<String,SslRelay> _sslMap = new LinkedHashMap<String, SslRelay>();
+    // the number of RSA key pairs kept generated ahead of need for new HTTPS hosts
+    private static final int SPARE_KEY_PAIRS = 8;
+    private final Object _sslRelayLock = new Object();
+    private SslRelay _sslRelay;
+    private KeyStoreManager _keyStoreManager;
+    private final Map<String, KeyStore.PrivateKeyEntry> _remoteServiceCertificates = new HashMap<String, KeyStore.PrivateKeyEntry>();
     @SuppressWarnings("unused")
     private String sslKeystorePath;
     private boolean useCyberVillains = true;
@@ -91,6 +118,11 @@ public class ProxyHandler extends AbstractHttpHandler {
     private final boolean proxyInjectionMode;
     private final boolean forceProxyChain;
     private boolean fakeCertsGenerated;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int connectTimeoutInMillis = DEFAULT_CONNECT_TIMEOUT_IN_MILLIS;
+    private int readTimeoutInMillis = 0;
+    private volatile UpstreamHttpClient upstreamClient;
 
     // see docs for the lock object on SeleniumServer for information on this and why it is IMPORTANT!
     private Object shutdownLock;
@@ -173,6 +205,53 @@ public class ProxyHandler extends AbstractHttpHandler {
     public void start() throws Exception {
         _chained = System.getProperty("http.proxyHost") != null || forceProxyChain;
         super.start();
+        upstreamClient = new UpstreamHttpClient(maxConnectionsPerHost, maxConnections, connectTimeoutInMillis, readTimeoutInMillis,
+                IDLE_CONNECTION_TIMEOUT_IN_MILLIS, trustAllSSLCertificates);
+    }
+
+    /* ------------------------------------------------------------ */
+    public void stop() throws InterruptedException {
+        super.stop();
+        UpstreamHttpClient client = upstreamClient;
+        upstreamClient = null;
+        if (client != null)
+            client.shutdown();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the limits of the pool of connections to servers; only takes effect when the handler is started.
+     * Requests finding the pool full aren't made to wait, but open connections of their own.
+     *
+     * @param maxConnectionsPerHost The most connections kept open to any one server.
+     * @param maxConnections The most connections kept open altogether.
+     */
+    public void setConnectionLimits(int maxConnectionsPerHost, int maxConnections) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxConnections = maxConnections;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Set the timeouts of requests to servers; the pooled ones only take the new values when the
+     * handler is started.
+     *
+     * @param connectTimeoutInMillis How long to wait for a connection to open, or 0 to wait for ever.
+     * @param readTimeoutInMillis How long to wait for a server to send anything, or 0 to wait for ever.
+     */
+    public void setTimeouts(int connectTimeoutInMillis, int readTimeoutInMillis) {
+        this.connectTimeoutInMillis = connectTimeoutInMillis;
+        this.readTimeoutInMillis = readTimeoutInMillis;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The connections open to servers and in use, and how often one could be reused,
+     *         or null if the handler isn't started.
+     */
+    public String getConnectionStatistics() {
+        UpstreamHttpClient client = upstreamClient;
+        return client == null ? null : client.getStatistics();
     }
 
     /* ------------------------------------------------------------ */
@@ -331,19 +410,54 @@ public class ProxyHandler extends AbstractHttpHandler {
     }
 
     protected long proxyPlainTextRequest(URL url, String pathInContext, String pathParams, HttpRequest request, HttpResponse response) throws IOException {
-        CaptureNetworkTrafficCommand.Entry entry = new CaptureNetworkTrafficCommand.Entry(request.getMethod(), url.toString());
-        entry.addRequestHeaders(request);
+        CaptureNetworkTrafficCommand.Entry entry = null;
+        if (CaptureNetworkTrafficCommand.shouldCapture()) {
+            entry = new CaptureNetworkTrafficCommand.Entry(request.getMethod(), url.toString());
+            entry.addRequestHeaders(request);
+        }
 
         if (log.isDebugEnabled())
             log.debug("PROXY URL=" + url);
 
-        URLConnection connection = url.openConnection();
-        connection.setAllowUserInteraction(false);
-
+        boolean noCaching = false;
         if (proxyInjectionMode) {
-            adjustRequestForProxyInjection(request, connection);
+            noCaching = adjustRequestForProxyInjection(request);
+        }
+
+        // a little bit of cache control
+        String cache_control = request.getField(HttpFields.__CacheControl);
+        if (cache_control != null && (cache_control.indexOf("no-cache") >= 0 || cache_control.indexOf("no-store") >= 0))
+            noCaching = true;
+
+        List<String[]> headers = new ArrayList<String[]>();
+        boolean hasContent = getHeadersToProxy(request, headers, entry);
+
+        UpstreamHttpClient client = upstreamClient;
+        HttpMethod method = null;
+        if (client != null) {
+            method = client.prepare(url, request.getMethod(), headers, hasContent ? request.getInputStream() : null, request.getContentLength());
+        }
+        if (method != null) {
+            // customize Method
+            customizeMethod(pathInContext, pathParams, request, method);
+
+            try {
+                method = client.execute(url, method);
+            } catch (SSLHandshakeException e) {
+                throw new RuntimeException("Couldn't establish SSL handshake.  Try using trustAllSSLCertificates.\n"+e.getLocalizedMessage(), e);
+            }
+            if (method != null) {
+                return proxyResponse(method, request, response, entry);
+            }
         }
 
+        URLConnection connection = url.openConnection();
+        connection.setAllowUserInteraction(false);
+        connection.setConnectTimeout(connectTimeoutInMillis);
+        connection.setReadTimeout(readTimeoutInMillis);
+        if (noCaching)
+            connection.setUseCaches(false);
+
         // Set method
         HttpURLConnection http = null;
         if (connection instanceof HttpURLConnection) {
@@ -355,64 +469,10 @@ public class ProxyHandler extends AbstractHttpHandler {
             }
         }
 
-        // check connection header
-        String connectionHdr = request.getField(HttpFields.__Connection);
-        if (connectionHdr != null && (connectionHdr.equalsIgnoreCase(HttpFields.__KeepAlive) || connectionHdr.equalsIgnoreCase(HttpFields.__Close)))
-            connectionHdr = null;
-
-        // copy headers
-        boolean xForwardedFor = false;
-        boolean isGet = "GET".equals(request.getMethod());
-        boolean hasContent = false;
-        Enumeration enm = request.getFieldNames();
-        while (enm.hasMoreElements()) {
-            // TODO could be better than this!
-            String hdr = (String) enm.nextElement();
-
-            if (_DontProxyHeaders.containsKey(hdr) || !_chained && _ProxyAuthHeaders.containsKey(hdr))
-                continue;
-            if (connectionHdr != null && connectionHdr.indexOf(hdr) >= 0)
-                continue;
-
-            if (!isGet && HttpFields.__ContentType.equals(hdr))
-                hasContent = true;
-
-            Enumeration vals = request.getFieldValues(hdr);
-            while (vals.hasMoreElements()) {
-                String val = (String) vals.nextElement();
-                if (val != null) {
-                    // don't proxy Referer headers if the referer is Selenium!
-                    if ("Referer".equals(hdr) && (-1 != val.indexOf("/selenium-server/"))) {
-                        continue;
-                    }
-                    if (!isGet && HttpFields.__ContentLength.equals(hdr) && Integer.parseInt(val) > 0) {
-                        hasContent = true;
-                    }
-
-                    connection.addRequestProperty(hdr, val);
-                    xForwardedFor |= HttpFields.__XForwardedFor.equalsIgnoreCase(hdr);
-                }
-            }
-        }
-
-        // add any custom request headers that the user asked for
-        Map<String, String> customRequestHeaders = AddCustomRequestHeaderCommand.getHeaders();
-        for (Map.Entry<String, String> e : customRequestHeaders.entrySet()) {
-            connection.addRequestProperty(e.getKey(), e.getValue());
-            entry.addRequestHeader(e.getKey(), e.getValue());
+        for (String[] header : headers) {
+            connection.addRequestProperty(header[0], header[1]);
         }
 
-        // Proxy headers
-        if (!_anonymous)
-            connection.setRequestProperty("Via", "1.1 (jetty)");
-        if (!xForwardedFor)
-            connection.addRequestProperty(HttpFields.__XForwardedFor, request.getRemoteAddr());
-
-        // a little bit of cache control
-        String cache_control = request.getField(HttpFields.__CacheControl);
-        if (cache_control != null && (cache_control.indexOf("no-cache") >= 0 || cache_control.indexOf("no-store") >= 0))
-            connection.setUseCaches(false);
-
         // customize Connection
         customizeConnection(pathInContext, pathParams, request, connection);
 
@@ -473,24 +533,148 @@ public class ProxyHandler extends AbstractHttpHandler {
         String hdr = connection.getHeaderFieldKey(h);
         String val = connection.getHeaderField(h);
         while (hdr != null || val != null) {
-            if (hdr != null && val != null && !_DontProxyHeaders.containsKey(hdr) && (_chained || !_ProxyAuthHeaders.containsKey(hdr)))
-                response.addField(hdr, val);
+            if (hdr != null && val != null)
+                addProxiedResponseHeader(response, hdr, val);
             h++;
             hdr = connection.getHeaderFieldKey(h);
             val = connection.getHeaderField(h);
         }
+
+        try {
+            return sendProxiedResponse(request, response, code, proxy_in, entry);
+        } finally {
+            // closing the stream, rather than just reading it to the end, is what lets the JVM keep the connection alive
+            if (proxy_in != null)
+                proxy_in.close();
+        }
+    }
+
+    /**
+     * Sends the response to a request sent through the connection pool, streaming its body, and
+     * gives the connection back to the pool; a connection whose response couldn't be sent to the
+     * end is closed instead.
+     */
+    private long proxyResponse(HttpMethod method, HttpRequest request, HttpResponse response, CaptureNetworkTrafficCommand.Entry entry) throws IOException {
+        boolean sent = false;
+        try {
+            int code = method.getStatusCode();
+            response.setStatus(code);
+            response.setReason(method.getStatusText());
+
+            // clear response defaults.
+            response.removeField(HttpFields.__Date);
+            response.removeField(HttpFields.__Server);
+
+            // set response headers
+            for (Header header : method.getResponseHeaders()) {
+                addProxiedResponseHeader(response, header.getName(), header.getValue());
+            }
+
+            long bytesCopied = sendProxiedResponse(request, response, code, method.getResponseBodyAsStream(), entry);
+            sent = true;
+            return bytesCopied;
+        } finally {
+            if (!sent)
+                method.abort();
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Collects the headers of the request which are to be sent on to the server, along with any
+     * the user asked for and our own proxy headers.
+     *
+     * @param headers - the list the headers are added to, as name and value pairs
+     * @return whether the request has content to send on
+     */
+    private boolean getHeadersToProxy(HttpRequest request, List<String[]> headers, CaptureNetworkTrafficCommand.Entry entry) {
+        // check connection header
+        String connectionHdr = request.getField(HttpFields.__Connection);
+        if (connectionHdr != null && (connectionHdr.equalsIgnoreCase(HttpFields.__KeepAlive) || connectionHdr.equalsIgnoreCase(HttpFields.__Close)))
+            connectionHdr = null;
+
+        // copy headers
+        boolean xForwardedFor = false;
+        boolean isGet = "GET".equals(request.getMethod());
+        boolean hasContent = false;
+        Enumeration enm = request.getFieldNames();
+        while (enm.hasMoreElements()) {
+            // TODO could be better than this!
+            String hdr = (String) enm.nextElement();
+
+            if (_DontProxyHeaders.containsKey(hdr) || !_chained && _ProxyAuthHeaders.containsKey(hdr))
+                continue;
+            if (connectionHdr != null && connectionHdr.indexOf(hdr) >= 0)
+                continue;
+            if (!_anonymous && "Via".equalsIgnoreCase(hdr))
+                continue;
+
+            if (!isGet && HttpFields.__ContentType.equals(hdr))
+                hasContent = true;
+
+            Enumeration vals = request.getFieldValues(hdr);
+            while (vals.hasMoreElements()) {
+                String val = (String) vals.nextElement();
+                if (val != null) {
+                    // don't proxy Referer headers if the referer is Selenium!
+                    if ("Referer".equals(hdr) && (-1 != val.indexOf("/selenium-server/"))) {
+                        continue;
+                    }
+                    if (!isGet && HttpFields.__ContentLength.equals(hdr) && Integer.parseInt(val) > 0) {
+                        hasContent = true;
+                    }
+
+                    headers.add(new String[] {hdr, val});
+                    xForwardedFor |= HttpFields.__XForwardedFor.equalsIgnoreCase(hdr);
+                }
+            }
+        }
+
+        // add any custom request headers that the user asked for
+        Map<String, String> customRequestHeaders = AddCustomRequestHeaderCommand.getHeaders();
+        for (Map.Entry<String, String> e : customRequestHeaders.entrySet()) {
+            headers.add(new String[] {e.getKey(), e.getValue()});
+            if (entry != null) {
+                entry.addRequestHeader(e.getKey(), e.getValue());
+            }
+        }
+
+        // Proxy headers
         if (!_anonymous)
-            response.setField("Via", "1.1 (jetty)");
+            headers.add(new String[] {"Via", "1.1 (jetty)"});
+        if (!xForwardedFor)
+            headers.add(new String[] {HttpFields.__XForwardedFor, request.getRemoteAddr()});
+
+        return hasContent;
+    }
 
-        response.removeField(HttpFields.__ETag); // possible cksum?  Stop caching...
-        response.removeField(HttpFields.__LastModified); // Stop caching...
+    private void addProxiedResponseHeader(HttpResponse response, String hdr, String val) {
+        if (_DontProxyHeaders.containsKey(hdr) || !_chained && _ProxyAuthHeaders.containsKey(hdr))
+            return;
+        if (!_anonymous && "Via".equalsIgnoreCase(hdr))
+            return;
+        // possible cksum?  Stop caching...
+        if (HttpFields.__ETag.equalsIgnoreCase(hdr) || HttpFields.__LastModified.equalsIgnoreCase(hdr))
+            return;
+        response.addField(hdr, val);
+    }
+
+    /**
+     * Sends the body of the server's response, injecting Selenium into it in proxy injection mode.
+     *
+     * @param proxy_in - the body, or null if there is none
+     * @return the number of bytes read from the server, or -1 if there was no body
+     */
+    private long sendProxiedResponse(HttpRequest request, HttpResponse response, int code, InputStream proxy_in, CaptureNetworkTrafficCommand.Entry entry) throws IOException {
+        if (!_anonymous)
+            response.setField("Via", "1.1 (jetty)");
 
         // Handled
         long bytesCopied = -1;
         request.setHandled(true);
         if (proxy_in != null) {
-            boolean injectableResponse = http.getResponseCode() == HttpURLConnection.HTTP_OK ||
-                    (http.getResponseCode() >= 400 && http.getResponseCode() < 600);
+            boolean injectableResponse = code == HttpURLConnection.HTTP_OK ||
+                    (code >= 400 && code < 600);
             if (proxyInjectionMode && injectableResponse) {
                 // check if we should proxy this path based on the dontProxyRegex that can be user-specified
                 if (shouldInject(request.getPath())) {
@@ -504,10 +688,12 @@ public class ProxyHandler extends AbstractHttpHandler {
             }
         }
 
-        entry.finish(code, bytesCopied);
-        entry.addResponseHeader(response);
+        if (entry != null) {
+            entry.finish(code, bytesCopied);
+            entry.addResponseHeader(response);
 
-        CaptureNetworkTrafficCommand.capture(entry);
+            CaptureNetworkTrafficCommand.capture(request.getRemoteAddr(), entry);
+        }
 
         return bytesCopied;
     }
@@ -520,17 +706,20 @@ public class ProxyHandler extends AbstractHttpHandler {
         return !path.matches(dontInjectRegex);
     }
 
-    private void adjustRequestForProxyInjection(HttpRequest request, URLConnection connection) {
+    /** @return whether caching has to be defeated for this request */
+    private boolean adjustRequestForProxyInjection(HttpRequest request) {
+		boolean noCaching = false;
 		request.setState(HttpMessage.__MSG_EDITABLE);
 		if (request.containsField("If-Modified-Since")) {
 			// TODO: still need to disable caching?  I want to prevent 304s during this development phase where 
 			// I'm often changing the injection, and so need HTML caching to be absolutely defeated 
 			request.removeField("If-Modified-Since");
 			request.removeField("If-None-Match");            	
-			connection.setUseCaches(false);  // maybe I don't need the stuff above?
+			noCaching = true;  // maybe I don't need the stuff above?
 		}
 		request.removeField("Accept-Encoding");	// js injection is hard w/ gzip'd data, so try to prevent it ahead of time
 		request.setState(HttpMessage.__MSG_RECEIVED);
+		return noCaching;
 	}
 
     public static void main(String[] args) throws Exception {
@@ -549,13 +738,19 @@ public class ProxyHandler extends AbstractHttpHandler {
 
     public synchronized void generateSSLCertsForLoggingHosts(HttpServer server) {
         if (fakeCertsGenerated) return;
-        log.info("Creating 16 fake SSL servers for browser side logging");
+        log.info("Creating certificates for 16 fake SSL servers for browser side logging");
+        try {
+            getSslRelayOrCreateNew(server);
+        } catch (Exception e) {
+            log.error("Could not pre-create the SSL relay", e);
+            return;
+        }
         for (int i = 1; i <= 16; i++) {
-            String uri = i + ".selenium.doesnotexist:443";
+            String host = i + ".selenium.doesnotexist";
             try {
-                getSslRelayOrCreateNew(new URI(uri), new InetAddrPort(443), server);
+                getCertificateForHost(host);
             } catch (Exception e) {
-                log.error("Could not pre-create logging SSL relay for " + uri, e);
+                log.error("Could not pre-create logging SSL certificate for " + host, e);
             }
         }
         fakeCertsGenerated = true;
@@ -586,8 +781,11 @@ public class ProxyHandler extends AbstractHttpHandler {
 
                 HttpServer server = http_connection.getHttpServer();
 
-                SslRelay listener = getSslRelayOrCreateNew(uri, addrPort, server);
-                                                     
+                SslRelay listener = getSslRelayOrCreateNew(server);
+                // we do this because the URI above doesn't actually have the host broken up (it returns null on getHost())
+                String host = new URL("https://" + uri.toString()).getHost();
+                KeyStore.PrivateKeyEntry certificate = getCertificateForHost(host);
+
                 int port = listener.getPort();
 
                 // Get the timeout
@@ -602,6 +800,10 @@ public class ProxyHandler extends AbstractHttpHandler {
                 HttpTunnel tunnel = newHttpTunnel(request, response, InetAddress.getLocalHost(), port, timeoutMs);
 
                 if (tunnel != null) {
+                    // a chained proxy tunnels straight to the host, not through the relay
+                    if (System.getProperty("http.proxyHost") == null) {
+                        listener.addTarget(tunnel.getSocket(), addrPort, certificate);
+                    }
                     // TODO - need to setup semi-busy loop for IE.
                     if (_tunnelTimeoutMs > 0) {
                         tunnel.getSocket().setSoTimeout(_tunnelTimeoutMs);
@@ -626,25 +828,17 @@ public class ProxyHandler extends AbstractHttpHandler {
         }
     }
 
-    protected SslRelay getSslRelayOrCreateNew(URI uri, InetAddrPort addrPort, HttpServer server) throws Exception {
+    /**
+     * Returns the SSL relay that the tunnels of all CONNECT requests lead to, starting it
+     * the first time.
+     */
+    protected SslRelay getSslRelayOrCreateNew(HttpServer server) throws Exception {
         SslRelay listener;
-        synchronized(_sslMap) {
-            listener = _sslMap.get(uri.toString());
+        synchronized(_sslRelayLock) {
+            listener = _sslRelay;
             if (listener==null)
             {
-                // we do this because the URI above doesn't actually have the host broken up (it returns null on getHost())
-                String host = new URL("https://" + uri.toString()).getHost();
-
-                listener = new SslRelay(addrPort);
-
-                if (useCyberVillains) {
-                    wireUpSslWithCyberVilliansCA(host, listener);
-                } else {
-                    wireUpSslWithRemoteService(host, listener);
-                }
-
-                listener.setPassword("password");
-                listener.setKeyPassword("password");
+                listener = new SslRelay();
                 server.addListener(listener);
 
                 synchronized (shutdownLock) {
@@ -662,55 +856,96 @@ public class ProxyHandler extends AbstractHttpHandler {
                         throw e;
                     }
                 }
-                _sslMap.put(uri.toString(),listener);
+                _sslRelay = listener;
             }
         }
         return listener;
     }
 
-    protected void wireUpSslWithRemoteService(String host, SslRelay listener) throws IOException {
-        // grab a keystore that has been signed by a CA cert that has already been imported in to the browser
-        // note: this logic assumes the tester is using *custom and has imported the CA cert in to IE/Firefox/etc
-        // the CA cert can be found at http://dangerous-certificate-authority.openqa.org
-        File keystore = File.createTempFile("selenium-rc-" + host, "keystore");
-        String urlString = "http://dangerous-certificate-authority.openqa.org/genkey.jsp?padding=" + _sslMap.size() + "&domain=" + host;
-
-        URL url = new URL(urlString);
-        URLConnection conn = url.openConnection();
-        conn.connect();
-        InputStream is = conn.getInputStream();
-        byte[] buffer = new byte[1024];
-        int length;
-        FileOutputStream fos = new FileOutputStream(keystore);
-        while ((length = is.read(buffer)) != -1) {
-            fos.write(buffer, 0, length);
+    /**
+     * Returns the certificate, with its private key, that the SSL relay presents for a host.
+     */
+    protected KeyStore.PrivateKeyEntry getCertificateForHost(String host) throws Exception {
+        if (useCyberVillains) {
+            return getKeyStoreManager().getCachedCertificateForHostname(host);
         }
-        fos.close();
-        is.close();
-
-        listener.setKeystore(keystore.getAbsolutePath());
-        //listener.setKeystore("c:\\" + (_sslMap.size() + 1) + ".keystore");
-        listener.setNukeDirOrFile(keystore);
+        return getCertificateFromRemoteService(host);
     }
 
-    protected void wireUpSslWithCyberVilliansCA(String host, SslRelay listener) {
-        try {
-            File root = File.createTempFile("seleniumSslSupport", host);
-            root.delete();
-            root.mkdirs();
-
-            ResourceExtractor.extractResourcePath(getClass(), "/sslSupport", root);
-
+    protected KeyStore.PrivateKeyEntry getCertificateFromRemoteService(String host) throws Exception {
+        synchronized (_remoteServiceCertificates) {
+            KeyStore.PrivateKeyEntry certificate = _remoteServiceCertificates.get(host);
+            if (certificate != null) {
+                return certificate;
+            }
 
-            KeyStoreManager mgr = new KeyStoreManager(root);
-            mgr.getCertificateByHostname(host);
-            mgr.getKeyStore().deleteEntry(KeyStoreManager._caPrivKeyAlias);
-            mgr.persist();
+            // grab a keystore that has been signed by a CA cert that has already been imported in to the browser
+            // note: this logic assumes the tester is using *custom and has imported the CA cert in to IE/Firefox/etc
+            // the CA cert can be found at http://dangerous-certificate-authority.openqa.org
+            File keystore = File.createTempFile("selenium-rc-" + host, "keystore");
+            try {
+                String urlString = "http://dangerous-certificate-authority.openqa.org/genkey.jsp?padding=" + _remoteServiceCertificates.size() + "&domain=" + host;
+
+                URL url = new URL(urlString);
+                URLConnection conn = url.openConnection();
+                conn.connect();
+                InputStream is = conn.getInputStream();
+                byte[] buffer = new byte[1024];
+                int length;
+                FileOutputStream fos = new FileOutputStream(keystore);
+                while ((length = is.read(buffer)) != -1) {
+                    fos.write(buffer, 0, length);
+                }
+                fos.close();
+                is.close();
+
+                KeyStore keyStore = KeyStore.getInstance("JKS");
+                InputStream in = new FileInputStream(keystore);
+                try {
+                    keyStore.load(in, "password".toCharArray());
+                } finally {
+                    in.close();
+                }
+                Enumeration<String> aliases = keyStore.aliases();
+                while (certificate == null && aliases.hasMoreElements()) {
+                    String alias = aliases.nextElement();
+                    if (keyStore.isKeyEntry(alias)) {
+                        certificate = (KeyStore.PrivateKeyEntry) keyStore.getEntry(alias,
+                                new KeyStore.PasswordProtection("password".toCharArray()));
+                    }
+                }
+            } finally {
+                keystore.delete();
+            }
+            if (certificate == null) {
+                throw new IOException("No private key in the keystore for " + host);
+            }
+            _remoteServiceCertificates.put(host, certificate);
+            return certificate;
+        }
+    }
 
-            listener.setKeystore(new File(root, "cybervillainsCA.jks").getAbsolutePath());
-            listener.setNukeDirOrFile(root);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Returns the Cybervillains CA, which signs the certificates for all hosts.  The CA is
+     * only read from disk once; the certificates are generated and kept in memory.
+     */
+    private KeyStoreManager getKeyStoreManager() throws IOException {
+        synchronized (_sslRelayLock) {
+            if (_keyStoreManager == null) {
+                File root = File.createTempFile("seleniumSslSupport", "");
+                root.delete();
+                root.mkdirs();
+                try {
+                    ResourceExtractor.extractResourcePath(getClass(), "/sslSupport", root);
+                    KeyStoreManager mgr = new KeyStoreManager(root);
+                    mgr.setPersistImmediately(false);
+                    mgr.setSpareRSAKeyPairs(SPARE_KEY_PAIRS);
+                    _keyStoreManager = mgr;
+                } finally {
+                    LauncherUtils.recursivelyDeleteDir(root);
+                }
+            }
+            return _keyStoreManager;
         }
     }
 
@@ -796,12 +1031,23 @@ public class ProxyHandler extends AbstractHttpHandler {
 
     /**
      * Customize proxy URL connection. Method to allow derived handlers to customize the connection.
+     * Requests sent through the pool of kept-alive connections don't have one, and are customized
+     * by {@link #customizeMethod} instead.
      */
     protected void customizeConnection(String pathInContext, String pathParams, HttpRequest request, URLConnection connection) {
     }
 
     /* ------------------------------------------------------------ */
 
+    /**
+     * Customize proxy request sent through the pool of kept-alive connections, which takes the place
+     * of the URL connection for those requests. Method to allow derived handlers to customize the method.
+     */
+    protected void customizeMethod(String pathInContext, String pathParams, HttpRequest request, HttpMethod method) {
+    }
+
+    /* ------------------------------------------------------------ */
+
     /**
      * Is URL Proxied. Method to allow derived handlers to select which URIs are proxied and to
      * where.
@@ -911,40 +1157,163 @@ public class ProxyHandler extends AbstractHttpHandler {
         this.shutdownLock = shutdownLock;
     }
 
+    /**
+     * The SSL listener that the tunnels of all CONNECT requests lead to.  Each tunnel is added
+     * as a target, with the address and certificate of the host it was opened for, under the
+     * local port of its socket; that is the remote port of the connection the relay accepts
+     * from it, which is how the relay knows which certificate to present, and where to send
+     * the requests, on each connection.
+     */
     public static class SslRelay extends SslListener
     {
-        InetAddrPort _addr;
-        File nukeDirOrFile;
+        private final Map<Integer, Target> _targets = new HashMap<Integer, Target>();
 
-        SslRelay(InetAddrPort addr)
+        SslRelay()
         {
-            _addr=addr;
         }
 
-        public void setNukeDirOrFile(File nukeDirOrFile) {
-            this.nukeDirOrFile = nukeDirOrFile;
+        /**
+         * Adds the host a tunnel to this relay was opened for.
+         *
+         * @param tunnelSocket the tunnel's socket, connected to this relay
+         * @param addr the host's address, where requests through the tunnel are sent
+         * @param certificate the certificate to present for the host, with its private key
+         */
+        public void addTarget(Socket tunnelSocket, InetAddrPort addr, KeyStore.PrivateKeyEntry certificate)
+        {
+            synchronized (_targets) {
+                _targets.put(tunnelSocket.getLocalPort(), new Target(addr, certificate));
+            }
+        }
+
+        private Target getTarget(Socket socket)
+        {
+            synchronized (_targets) {
+                return _targets.get(socket.getPort());
+            }
+        }
+
+        private Target getTarget(String alias)
+        {
+            try {
+                synchronized (_targets) {
+                    return _targets.get(Integer.valueOf(alias));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        protected SSLServerSocketFactory createFactory() throws Exception
+        {
+            SSLContext context;
+            if (getProvider() == null) {
+                context = SSLContext.getInstance(getProtocol());
+            } else {
+                context = SSLContext.getInstance(getProtocol(), getProvider());
+            }
+            context.init(new KeyManager[] {new TargetKeyManager()}, null, new SecureRandom());
+            return context.getServerSocketFactory();
+        }
+
+        protected Socket accept(ServerSocket serverSocket) throws IOException
+        {
+            // the handshake is left to the thread handling the connection, so that a slow
+            // one does not hold up the connections for every other host
+            Socket socket = serverSocket.accept();
+            if (getMaxIdleTimeMs() > 0) {
+                socket.setSoTimeout(getMaxIdleTimeMs());
+            }
+            return socket;
+        }
+
+        public void handleConnection(Socket socket) throws IOException
+        {
+            try {
+                super.handleConnection(socket);
+            } finally {
+                synchronized (_targets) {
+                    _targets.remove(socket.getPort());
+                }
+            }
         }
 
         protected void customizeRequest(Socket socket, HttpRequest request)
         {
             super.customizeRequest(socket,request);
             URI uri=request.getURI();
+            Target target = getTarget(socket);
+            if (target == null) {
+                log.warn("No CONNECT request for the SSL connection from port " + socket.getPort());
+                return;
+            }
 
             // Convert the URI to a proxy URL
             uri.setScheme("https");
-            uri.setHost(_addr.getHost());
-            uri.setPort(_addr.getPort());
+            uri.setHost(target.addr.getHost());
+            uri.setPort(target.addr.getPort());
         }
 
-        public void stop() throws InterruptedException {
-            super.stop();
+        private static class Target
+        {
+            final InetAddrPort addr;
+            final KeyStore.PrivateKeyEntry certificate;
 
-            if (nukeDirOrFile != null) {
-                if (nukeDirOrFile.isDirectory()) {
-                    LauncherUtils.recursivelyDeleteDir(nukeDirOrFile);
-                } else {
-                    nukeDirOrFile.delete();
+            Target(InetAddrPort addr, KeyStore.PrivateKeyEntry certificate)
+            {
+                this.addr = addr;
+                this.certificate = certificate;
+            }
+        }
+
+        /**
+         * Presents the certificate of the target a connection came through.  The alias of a
+         * connection's certificate is the connection's remote port.
+         */
+        private class TargetKeyManager implements X509KeyManager
+        {
+            public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket)
+            {
+                Target target = getTarget(socket);
+                if (target == null || !target.certificate.getPrivateKey().getAlgorithm().equals(keyType)) {
+                    return null;
+                }
+                return Integer.toString(socket.getPort());
+            }
+
+            public X509Certificate[] getCertificateChain(String alias)
+            {
+                Target target = getTarget(alias);
+                if (target == null) {
+                    return null;
+                }
+                Certificate[] chain = target.certificate.getCertificateChain();
+                X509Certificate[] x509Chain = new X509Certificate[chain.length];
+                for (int i = 0; i < chain.length; i++) {
+                    x509Chain[i] = (X509Certificate) chain[i];
                 }
+                return x509Chain;
+            }
+
+            public PrivateKey getPrivateKey(String alias)
+            {
+                Target target = getTarget(alias);
+                return target == null ? null : target.certificate.getPrivateKey();
+            }
+
+            public String[] getServerAliases(String keyType, Principal[] issuers)
+            {
+                return null;
+            }
+
+            public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket)
+            {
+                return null;
+            }
+
+            public String[] getClientAliases(String keyType, Principal[] issuers)
+            {
+                return null;
             }
         }
     }
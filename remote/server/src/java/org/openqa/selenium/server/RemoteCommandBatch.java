@@ -0,0 +1,150 @@
+/*
+ * Copyright 2006 ThoughtWorks, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.openqa.selenium.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence of Selenese commands sent by the client as the single argument of the
+ * <code>batch</code> command.  Each line of the argument is one command, in the same
+ * <code>cmd=...&amp;1=...&amp;2=...</code> form as a normal driver request.
+ *
+ * <p>The whole batch is handed to the browser as one command, which runs the commands
+ * in order and posts all of their results back at once.  The result of the batch is
+ * <code>OK,</code> followed by the comma separated, backslash escaped result of each
+ * command.  The batch stops at the first command that fails, and the result of the batch
+ * is then the failure of that command, exactly as if it had been sent on its own.
+ */
+public class RemoteCommandBatch {
+    public static final String COMMAND = "batch";
+
+    private final List<RemoteCommand> commands;
+
+    public RemoteCommandBatch(List<RemoteCommand> commands) {
+        this.commands = Collections.unmodifiableList(new ArrayList<RemoteCommand>(commands));
+    }
+
+    /**
+     * Factory method to create a batch from the argument of the <code>batch</code> command
+     *
+     * @throws IllegalArgumentException if a line has no command, or there are no commands at all
+     */
+    public static RemoteCommandBatch parse(String encodedCommands) {
+        List<RemoteCommand> commands = new ArrayList<RemoteCommand>();
+        for (String line : encodedCommands.split("\n")) {
+            line = line.trim();
+            if (line.length() > 0) {
+                commands.add(parseCommand(line));
+            }
+        }
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("batch has no commands");
+        }
+        return new RemoteCommandBatch(commands);
+    }
+
+    private static RemoteCommand parseCommand(String line) {
+        String command = null;
+        String field = "";
+        String value = "";
+        for (String pair : line.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals == -1) {
+                throw new IllegalArgumentException("invalid command in batch: " + line);
+            }
+            String name = pair.substring(0, equals);
+            String decoded = decode(pair.substring(equals + 1));
+            if ("cmd".equals(name)) {
+                command = decoded;
+            } else if ("1".equals(name)) {
+                field = decoded;
+            } else if ("2".equals(name)) {
+                value = decoded;
+            }
+        }
+        if (command == null || command.length() == 0) {
+            throw new IllegalArgumentException("missing cmd in batch: " + line);
+        }
+        return new DefaultRemoteCommand(command, field, value);
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<RemoteCommand> getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return the first command which is handled by the server rather than the browser,
+     * and so cannot be part of a batch, or null if there is none
+     */
+    public String findServerSideCommand() {
+        for (RemoteCommand command : commands) {
+            String name = command.getCommand();
+            if (COMMAND.equals(name)) {
+                return name;
+            }
+            SpecialCommand special = SpecialCommand.getValue(name);
+            if (special != SpecialCommand.nonSpecial && special != SpecialCommand.open) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /** @return the commands in the form the browser reads them, one per line */
+    public String toBrowserTarget() {
+        StringBuffer sb = new StringBuffer();
+        for (RemoteCommand command : commands) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(command.getCommandURLString());
+        }
+        return sb.toString();
+    }
+
+    /** @return the result of a batch whose commands all returned the given results */
+    public static String combineResults(List<String> results) {
+        StringBuffer sb = new StringBuffer("OK,");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String result = results.get(i);
+            for (int j = 0; j < result.length(); j++) {
+                char c = result.charAt(j);
+                if (c == ',' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
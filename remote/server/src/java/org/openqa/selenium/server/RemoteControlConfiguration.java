@@ -43,6 +43,8 @@ public class RemoteControlConfiguration {
     private String dontInjectRegex;
     private File firefoxProfileTemplate;
     private boolean reuseBrowserSessions;
+    private int browserSessionPoolSize;
+    private int htmlSuiteShards = 1;
     private String logOutFileName;
     private String forcedBrowserMode;
     private boolean honorSystemProxy;
@@ -55,6 +57,11 @@ public class RemoteControlConfiguration {
     private boolean debugMode;
     private boolean browserSideLogEnabled;
     private int jettyThreads = SeleniumServer.DEFAULT_JETTY_THREADS;
+    private boolean nioListener;
+    private int proxyMaxConnectionsPerHost = ProxyHandler.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int proxyMaxConnections = ProxyHandler.DEFAULT_MAX_CONNECTIONS;
+    private int proxyConnectTimeoutInSeconds = ProxyHandler.DEFAULT_CONNECT_TIMEOUT_IN_MILLIS / 1000;
+    private int proxyReadTimeoutInSeconds = 0;
     private SeleniumServer server;
     private boolean singleWindow;
     
@@ -212,6 +219,27 @@ public class RemoteControlConfiguration {
         return reuseBrowserSessions;
     }
 
+    /**
+     * @return the number of idle browsers to keep launched ahead of demand for each
+     * browser string and base URL, or 0 to launch browsers only when asked for
+     */
+    public int getBrowserSessionPoolSize() {
+        return browserSessionPoolSize;
+    }
+
+    public void setBrowserSessionPoolSize(int browserSessionPoolSize) {
+        this.browserSessionPoolSize = browserSessionPoolSize;
+    }
+
+    /** @return the number of browsers an HTML suite's tests are shared between */
+    public int getHTMLSuiteShards() {
+        return htmlSuiteShards;
+    }
+
+    public void setHTMLSuiteShards(int htmlSuiteShards) {
+        this.htmlSuiteShards = htmlSuiteShards;
+    }
+
     public void setLogOutFileName(String newLogOutFileName) {
         logOutFileName = newLogOutFileName;
     }
@@ -336,6 +364,57 @@ public class RemoteControlConfiguration {
         this.jettyThreads = jettyThreads;
     }
 
+    /** @return whether the server listens with the selector based listener, which only gives a connection a thread while it has a request to handle */
+    public boolean isNioListener() {
+        return nioListener;
+    }
+
+    public void setNioListener(boolean nioListener) {
+        this.nioListener = nioListener;
+    }
+
+    /** @return the most connections the proxy keeps open to any one server */
+    public int getProxyMaxConnectionsPerHost() {
+        return proxyMaxConnectionsPerHost;
+    }
+
+    public void setProxyMaxConnectionsPerHost(int proxyMaxConnectionsPerHost) {
+        if (proxyMaxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("The proxy must be allowed at least one connection per host");
+        }
+        this.proxyMaxConnectionsPerHost = proxyMaxConnectionsPerHost;
+    }
+
+    /** @return the most connections the proxy keeps open to all servers together */
+    public int getProxyMaxConnections() {
+        return proxyMaxConnections;
+    }
+
+    public void setProxyMaxConnections(int proxyMaxConnections) {
+        if (proxyMaxConnections < 1) {
+            throw new IllegalArgumentException("The proxy must be allowed at least one connection");
+        }
+        this.proxyMaxConnections = proxyMaxConnections;
+    }
+
+    /** @return how long the proxy waits to connect to a server, or 0 to wait for ever */
+    public int getProxyConnectTimeoutInSeconds() {
+        return proxyConnectTimeoutInSeconds;
+    }
+
+    public void setProxyConnectTimeoutInSeconds(int proxyConnectTimeoutInSeconds) {
+        this.proxyConnectTimeoutInSeconds = proxyConnectTimeoutInSeconds;
+    }
+
+    /** @return how long the proxy waits for a server to send anything, or 0 to wait for ever */
+    public int getProxyReadTimeoutInSeconds() {
+        return proxyReadTimeoutInSeconds;
+    }
+
+    public void setProxyReadTimeoutInSeconds(int proxyReadTimeoutInSeconds) {
+        this.proxyReadTimeoutInSeconds = proxyReadTimeoutInSeconds;
+    }
+
     public SeleniumServer getSeleniumServer() {
         return server;
     }
@@ -41,18 +41,14 @@ import org.openqa.selenium.server.log.LoggingManager;
 import org.openqa.selenium.server.log.PerSessionLogHandler;
 
 import java.awt.*;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLDecoder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,6 +68,22 @@ import java.util.Vector;
 public class SeleniumDriverResourceHandler extends ResourceHandler {
     static final Log LOGGER = LogFactory.getLog(SeleniumDriverResourceHandler.class);
     static Log browserSideLog = LogFactory.getLog(SeleniumDriverResourceHandler.class.getName()+".browserSideLog");
+
+    /** Responses to the browser are padded to this many bytes, not counting the final CRLF */
+    private static final int RESPONSE_PADDING = 998;
+    private static final byte[] PADDING = new byte[RESPONSE_PADDING];
+    static {
+        Arrays.fill(PADDING, (byte) ' ');
+    }
+    private static final byte[] POSTED_DATA_KEY = {'p', 'o', 's', 't', 'e', 'd', 'D', 'a', 't', 'a', '='};
+    /** Buffers bigger than this are not kept for the next request on the same thread */
+    private static final int MAX_REUSED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<byte[]> postedDataBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[4096];
+        }
+    };
     
     private SeleniumServer remoteControl;
     private static String lastSessionId = null;
@@ -128,6 +140,7 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
             if (cmd != null) {
                 handleCommandRequest(req, res, cmd, sessionId);
             } else if ("POST".equalsIgnoreCase(method) || justLoaded || logging) {
+                CaptureNetworkTrafficCommand.associate(req.getRemoteAddr(), sessionId);
                 handleBrowserResponse(req, res, sessionId, logging, jsState,
                         justLoaded, retrying, closing);
             } else if (-1 != req.getRequestURL().indexOf("selenium-server/core/scripts/user-extensions.js") 
@@ -212,23 +225,32 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
     }
 
     private void respond(HttpResponse res, RemoteCommand sc, String uniqueId) throws IOException {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream(1000);
-        Writer writer = new OutputStreamWriter(buf, StringUtil.__UTF_8);
+        String command = "";
         if (sc!=null) {
-            writer.write(sc.toString());
+            command = sc.toString();
             LOGGER.debug("res to " + uniqueId +
-                    ": " + sc.toString());
+                    ": " + command);
         } else {
             LOGGER.debug("res empty");
         }
-        for (int pad = 998 - buf.size(); pad-- > 0;) {
-            writer.write(" ");
-        }
-        writer.write("\015\012");
-        writer.close();
         OutputStream out = res.getOutputStream();
-        buf.writeTo(out);
+        out.write(padResponse(command));
+    }
 
+    /**
+     * Encodes a response to the browser, padded with spaces to at least 1000 bytes and ending
+     * with a CRLF, because some browsers will not hand a response to the page until they have
+     * received that much of it.
+     */
+    static byte[] padResponse(String command) throws IOException {
+        byte[] encoded = command.getBytes(StringUtil.__UTF_8);
+        int padding = Math.max(0, RESPONSE_PADDING - encoded.length);
+        byte[] response = new byte[encoded.length + padding + 2];
+        System.arraycopy(encoded, 0, response, 0, encoded.length);
+        System.arraycopy(PADDING, 0, response, encoded.length, padding);
+        response[response.length - 2] = '\015';
+        response[response.length - 1] = '\012';
+        return response;
     }
 
     /**
@@ -249,15 +271,28 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
             return req.getParameter("postedData");
         }
 
-        InputStream is = req.getInputStream();
-        StringBuffer sb = new StringBuffer();
-        InputStreamReader r = new InputStreamReader(is, "UTF-8");
-        int c;
-        while ((c = r.read()) != -1) {
-            sb.append((char) c);
-        }
+        return decodePostedData(req.getInputStream());
+    }
 
-        String postedData = sb.toString();
+    /**
+     * Reads a posted body in bulk, and decodes it from UTF-8, URL-decoding it first if it is
+     * a "postedData" form parameter.  The buffer used is kept for the next request handled by
+     * the same thread.
+     */
+    static String decodePostedData(InputStream is) throws IOException {
+        byte[] buffer = postedDataBuffers.get();
+        int length = 0;
+        for (int read; (read = is.read(buffer, length, buffer.length - length)) != -1; ) {
+            length += read;
+            if (length == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, length);
+                buffer = bigger;
+            }
+        }
+        if (buffer.length <= MAX_REUSED_BUFFER) {
+            postedDataBuffers.set(buffer);
+        }
 
         // we check here because, depending on the Selenium Core version you have, specifically the selenium-testrunner.js,
         // the data could be sent back directly or as URL-encoded for the parameter "postedData" (see above). Because
@@ -265,12 +300,51 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
         // to decode the data ourselves. Also, we check for the string starting with the key because in the rare case
         // someone has an outdated version selenium-testrunner.js, which, until today (3/25/2007) sent back the data
         // *un*-encoded, we'd like to be as flexible as possible.
-        if (postedData.startsWith("postedData=")) {
-            postedData = postedData.substring(11);
-            postedData = URLDecoder.decode(postedData, "UTF-8");
+        if (startsWith(buffer, length, POSTED_DATA_KEY)) {
+            int decodedLength = urlDecodeInPlace(buffer, POSTED_DATA_KEY.length, length);
+            return new String(buffer, POSTED_DATA_KEY.length, decodedLength, "UTF-8");
+        }
+
+        return new String(buffer, 0, length, "UTF-8");
+    }
+
+    private static boolean startsWith(byte[] buffer, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[i] != prefix[i]) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return postedData;
+    /**
+     * URL-decodes the bytes from start to end, as URLDecoder would, writing the result back
+     * over them from start.
+     *
+     * @return the number of decoded bytes
+     */
+    private static int urlDecodeInPlace(byte[] buffer, int start, int end) {
+        int out = start;
+        for (int in = start; in < end; in++) {
+            byte b = buffer[in];
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                int high = in + 2 < end ? Character.digit(buffer[in + 1], 16) : -1;
+                int low = in + 2 < end ? Character.digit(buffer[in + 2], 16) : -1;
+                if (high == -1 || low == -1) {
+                    throw new IllegalArgumentException(
+                        "URLDecoder: Illegal hex characters in escape (%) pattern");
+                }
+                b = (byte) ((high << 4) + low);
+                in += 2;
+            }
+            buffer[out++] = b;
+        }
+        return out - start;
     }
 
     private void handleLogMessages(String s) {
@@ -408,9 +482,6 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
             } catch (RuntimeException rte) {
                   results = "Failed to start new browser session: " + rte.getMessage();
             } 
-            // clear out any network traffic captured but never pulled back by the last client (this feature only works with one concurrent browser, similar to PI mode)
-            CaptureNetworkTrafficCommand.clear();
-
             break;
         case testComplete:  
         	browserSessionFactory.endBrowserSession(sessionId, remoteControl.getConfiguration());
@@ -444,11 +515,14 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
         	results = new CaptureScreenshotToStringCommand().execute();
         	break;
         case captureNetworkTraffic:
-        	results = new CaptureNetworkTrafficCommand(values.get(0)).execute();
+        	results = new CaptureNetworkTrafficCommand(values.get(0), sessionId).execute();
         	break;
         case addCustomRequestHeader:
         	results = new AddCustomRequestHeaderCommand(values.get(0), values.get(1)).execute();
         	break;
+        case getProxyConnectionStatistics:
+        	results = new GetProxyConnectionStatisticsCommand(remoteControl.getProxyHandler()).execute();
+        	break;
         case keyDownNative:
         	try {
                 RobotRetriever.getRobot().keyPress(Integer.parseInt(values.get(0)));
@@ -829,6 +903,10 @@ public class SeleniumDriverResourceHandler extends ResourceHandler {
         return browserLauncherFactory;
     }
 
+    public BrowserSessionFactory getBrowserSessionFactory() {
+        return browserSessionFactory;
+    }
+
     public void setBrowserLauncherFactory(
             BrowserLauncherFactory browserLauncherFactory) {
         this.browserLauncherFactory = browserLauncherFactory;
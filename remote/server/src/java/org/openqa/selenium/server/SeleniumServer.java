@@ -33,6 +33,7 @@ import org.openqa.jetty.http.HashUserRealm;
 import org.openqa.jetty.http.HttpContext;
 import org.openqa.jetty.http.SecurityConstraint;
 import org.openqa.jetty.http.SocketListener;
+import org.openqa.jetty.http.nio.SocketChannelListener;
 import org.openqa.jetty.http.handler.SecurityHandler;
 import org.openqa.jetty.jetty.Server;
 import org.openqa.jetty.jetty.servlet.ServletHandler;
@@ -245,14 +246,21 @@ public class SeleniumServer {
     }
 
     protected void createJettyServer(boolean slowResources) {
-        final SocketListener socketListener;
-
         server = new Server();
-        socketListener = new SocketListener();
-        socketListener.setMaxIdleTimeMs(60000);
-        socketListener.setMaxThreads(jettyThreads);
-        socketListener.setPort(getPort());
-        server.addListener(socketListener);
+        if (configuration.isNioListener()) {
+            // kept-alive connections wait on a selector between requests instead of each holding a thread
+            final SocketChannelListener channelListener = new SocketChannelListener();
+            channelListener.setMaxIdleTimeMs(60000);
+            channelListener.setMaxThreads(jettyThreads);
+            channelListener.setPort(getPort());
+            server.addListener(channelListener);
+        } else {
+            final SocketListener socketListener = new SocketListener();
+            socketListener.setMaxIdleTimeMs(60000);
+            socketListener.setMaxThreads(jettyThreads);
+            socketListener.setPort(getPort());
+            server.addListener(socketListener);
+        }
         assembleHandlers(slowResources, configuration);
     }
 
@@ -370,6 +378,8 @@ public class SeleniumServer {
         } else {
             proxyHandler = customProxyHandler;
         }
+        proxyHandler.setConnectionLimits(configuration.getProxyMaxConnectionsPerHost(), configuration.getProxyMaxConnections());
+        proxyHandler.setTimeouts(configuration.getProxyConnectTimeoutInSeconds() * 1000, configuration.getProxyReadTimeoutInSeconds() * 1000);
         return proxyHandler;
     }
 
@@ -385,6 +395,10 @@ public class SeleniumServer {
         postResultsHandler.addListener(listener);
     }
 
+    public void stopHandlingHTMLRunnerResults(HTMLResultsListener listener) {
+        postResultsHandler.removeListener(listener);
+    }
+
     /**
      * Starts the Jetty server
      * 
@@ -406,6 +420,13 @@ public class SeleniumServer {
         Runtime.getRuntime().addShutdownHook(shutDownHook);
     }
 
+    /**
+     * @return the handler proxying the browser's requests
+     */
+    public ProxyHandler getProxyHandler() {
+        return proxyHandler;
+    }
+
     /**
      * Used for implementations that invoke SeleniumServer programmatically and require additional logic
      * when proxying data.
@@ -543,7 +564,7 @@ public class SeleniumServer {
             }
 
             result = launcher.runHTMLSuite(getRequiredSystemProperty("htmlSuite.browserString"), startURL, suiteFile, resultFile,
-                    configuration.getTimeoutInSeconds(), (!configuration.isSingleWindow()));
+                    configuration.getTimeoutInSeconds(), (!configuration.isSingleWindow()), configuration.getHTMLSuiteShards());
 
             if (!"PASSED".equals(result)) {
                 System.err.println("Tests failed, see result file for details: " + resultFile.getAbsolutePath());
@@ -674,6 +695,10 @@ public class SeleniumServer {
         if (configuration.reuseBrowserSessions()) {
             LOGGER.info("Will recycle browser sessions when possible.");
         }
+        if (configuration.getBrowserSessionPoolSize() > 0) {
+            LOGGER.info("Will keep " + configuration.getBrowserSessionPoolSize()
+                    + " idle browsers launched for each browser and start URL.");
+        }
         if (null != configuration.getForcedBrowserMode()) {
             LOGGER.info("\"" + configuration.getForcedBrowserMode() + "\" will be used as the browser " +
                     "mode for all sessions, no matter what is passed to getNewBrowserSession.");
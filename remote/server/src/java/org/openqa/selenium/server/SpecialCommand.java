@@ -24,6 +24,7 @@ public enum SpecialCommand {
 	slowResources,
 	open,
 	getLog,
+	getProxyConnectionStatistics,
 	nonSpecial;
 	
 	public static SpecialCommand getValue(final String command) {
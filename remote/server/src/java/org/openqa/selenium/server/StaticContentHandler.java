@@ -13,6 +13,7 @@ public class StaticContentHandler extends ResourceHandler {
 	private static boolean slowResources;
     private List<ResourceLocator> resourceLocators = new ArrayList<ResourceLocator>();
     public static final int SERVER_DELAY = 1000;
+    private static final long FINGERPRINTED_MAX_AGE_SECONDS = 3600L * 24 * 365;
     private final String debugURL;
     private final boolean proxyInjectionMode;
 
@@ -30,9 +31,14 @@ public class StaticContentHandler extends ResourceHandler {
             pathInContext = pathInContext.replaceFirst("/core/RemoteRunner.html",
                     "/core/InjectedRemoteRunner.html");
         }
+        Resource resource = getResource(pathInContext);
+        if (resource instanceof ClassPathResource
+                && sendCachedResource(httpRequest, httpResponse, resource, ((ClassPathResource) resource).getCacheEntry())) {
+            return;
+        }
         callSuperHandle(pathInContext, pathParams, httpRequest, httpResponse);
 
-        String resourceName = getResource(pathInContext).getName();
+        String resourceName = resource.getName();
         if (resourceName.endsWith("MISSING RESOURCE")) {
         	httpResponse.setAttribute("NotFound", "True");
         }
@@ -60,6 +66,84 @@ public class StaticContentHandler extends ResourceHandler {
         }
     }
     
+    /**
+     * Answers a GET or HEAD for a resource off the classpath straight from the
+     * {@link StaticResourceCache}: gzipped if the browser takes gzip, "304 Not Modified" if
+     * the browser already has it, and cacheable for a year if it was asked for by its
+     * fingerprinted URL.  Anything else is not answered, and is left to the ResourceHandler;
+     * that includes range requests, and pages which are to have JavaScript injected into them.
+     *
+     * @return true if the request was answered
+     */
+    private boolean sendCachedResource(HttpRequest req, HttpResponse res, Resource resource, StaticResourceCache.Entry entry)
+            throws IOException {
+        String method = req.getMethod();
+        if (entry == null
+                || !(HttpRequest.__GET.equals(method) || HttpRequest.__HEAD.equals(method))
+                || req.getField(HttpFields.__Range) != null) {
+            return false;
+        }
+        ResourceCache.ResourceMetaData metaData = (ResourceCache.ResourceMetaData) resource.getAssociate();
+        String mimeType = metaData == null ? null : metaData.getMimeType();
+        if (proxyInjectionMode && (mimeType == null || mimeType.startsWith("text/html"))) {
+            return false;
+        }
+
+        StaticResourceCache cache = StaticResourceCache.getInstance();
+        String etag = entry.getETag();
+        res.setField(HttpFields.__ETag, etag);
+        if (entry.getFingerprint().equals(req.getParameter(StaticResourceCache.FINGERPRINT_PARAMETER))) {
+            // the URL changes whenever the content does, so the browser need never ask again
+            res.setField(HttpFields.__CacheControl, "public, max-age=" + FINGERPRINTED_MAX_AGE_SECONDS);
+            res.removeField(HttpFields.__Pragma);
+            res.setDateField(HttpFields.__Expires, System.currentTimeMillis() + FINGERPRINTED_MAX_AGE_SECONDS * 1000);
+        }
+        if (entry.hasGzipped()) {
+            res.setField(HttpFields.__Vary, HttpFields.__AcceptEncoding);
+        }
+        if (matchesETag(req.getField(HttpFields.__IfNoneMatch), etag)) {
+            res.setStatus(HttpResponse.__304_Not_Modified);
+            cache.addBytesSaved(entry.getLength());
+            req.setHandled(true);
+            return true;
+        }
+
+        String accept = req.getField(HttpFields.__AcceptEncoding);
+        boolean gzip = entry.hasGzipped() && accept != null && accept.indexOf("gzip") >= 0;
+        if (mimeType != null) {
+            res.setContentType(mimeType);
+        }
+        if (gzip) {
+            res.setField(HttpFields.__ContentEncoding, "gzip");
+            res.setContentLength(entry.getGzippedLength());
+            cache.addBytesSaved(entry.getLength() - entry.getGzippedLength());
+        } else {
+            res.setContentLength(entry.getLength());
+        }
+        req.setHandled(true);
+        if (!HttpRequest.__HEAD.equals(method)) {
+            entry.writeTo(res.getOutputStream(), gzip);
+        }
+        return true;
+    }
+
+    /** @return whether the If-None-Match header names the given entity tag */
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Sets all the don't-cache headers on the HttpResponse */
     private void setNoCacheHeaders(HttpResponse res) {
         res.setField(HttpFields.__CacheControl, "no-cache");
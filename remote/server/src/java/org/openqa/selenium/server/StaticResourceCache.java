@@ -0,0 +1,216 @@
+package org.openqa.selenium.server;
+
+import static org.openqa.selenium.server.browserlaunchers.LauncherUtils.getSeleniumResourceAsStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.openqa.jetty.log.LogFactory;
+import org.openqa.jetty.util.IO;
+
+/**
+ * Selenium's own static resources, read off the classpath once and then served from memory.
+ *
+ * <p>The resources in the server jar can't change while the server is running, so each one is
+ * read the first time it is asked for and kept as an immutable byte array, along with a gzipped
+ * copy if it is text, and a fingerprint of its content which serves as its strong ETag.  Later
+ * requests are answered from those arrays without reading or copying anything.  Paths which
+ * aren't on the classpath are not remembered, since they are usually found in a directory given
+ * on the command line instead.
+ *
+ * <p>A resource requested with its fingerprint in the query, as {@link #getFingerprintedPath}
+ * gives it, may be cached by the browser for good: new content has a new fingerprint, and so a
+ * new URL.
+ */
+public class StaticResourceCache {
+    static Log log = LogFactory.getLog(StaticResourceCache.class);
+    public static final String FINGERPRINT_PARAMETER = "v";
+    private static final String[] COMPRESSIBLE_EXTENSIONS = {".js", ".html", ".htm", ".hta", ".css", ".xml", ".xul", ".txt"};
+    private static final StaticResourceCache INSTANCE = new StaticResourceCache();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public static StaticResourceCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the resource at the given classpath path, read in the first time it is asked for,
+     * or null if there is no such resource
+     */
+    public Entry get(String path) {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        byte[] content = read(path);
+        if (content == null) {
+            return null;
+        }
+        entry = new Entry(path, content);
+        Entry existing = entries.putIfAbsent(path, entry);
+        return existing != null ? existing : entry;
+    }
+
+    /**
+     * @return the path with the fingerprint of the resource's content in its query, or the path
+     * unchanged if the resource isn't on the classpath
+     */
+    public String getFingerprintedPath(String path) {
+        Entry entry = get(path);
+        if (entry == null) {
+            return path;
+        }
+        return path + "?" + FINGERPRINT_PARAMETER + "=" + entry.getFingerprint();
+    }
+
+    /** @return how many requests were answered with a resource already in memory */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return how many requests had to look for their resource on the classpath */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return how many bytes were not sent thanks to gzip and to "304 Not Modified" answers */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public void addBytesSaved(long bytes) {
+        bytesSaved.addAndGet(bytes);
+    }
+
+    public String getStatistics() {
+        return entries.size() + " resources, " + hits + " hits, " + misses + " misses, " + bytesSaved + " bytes saved";
+    }
+
+    private static byte[] read(String path) {
+        InputStream in = getSeleniumResourceAsStream(path);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IO.copy(in, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            log.warn("Couldn't read " + path + " off the classpath", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /** One resource, as it was when it was read; nothing about it ever changes. */
+    public static class Entry {
+        private final String path;
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String fingerprint;
+
+        Entry(String path, byte[] content) {
+            this.path = path;
+            this.content = content;
+            this.gzipped = isCompressible(path) ? gzip(content) : null;
+            this.fingerprint = fingerprint(content);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getLength() {
+            return content.length;
+        }
+
+        /** @return whether there is a gzipped copy, which there is for text that got smaller */
+        public boolean hasGzipped() {
+            return gzipped != null;
+        }
+
+        public int getGzippedLength() {
+            return gzipped != null ? gzipped.length : -1;
+        }
+
+        /** @return the hex MD5 of the content */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /** @return the fingerprint as a strong entity tag, quotes and all */
+        public String getETag() {
+            return "\"" + fingerprint + "\"";
+        }
+
+        /** @return a stream over the content itself, not over a copy of it */
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        /**
+         * Writes the content, or its gzipped copy, to the stream.
+         * @param gzip - whether to write the gzipped copy; there must be one
+         */
+        public void writeTo(OutputStream out, boolean gzip) throws IOException {
+            out.write(gzip ? gzipped : content);
+        }
+
+        private static boolean isCompressible(String path) {
+            String lowerCasePath = path.toLowerCase();
+            for (String extension : COMPRESSIBLE_EXTENSIONS) {
+                if (lowerCasePath.endsWith(extension)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] gzip(byte[] content) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+                gzipOut.write(content);
+                gzipOut.close();
+                return out.size() < content.length ? out.toByteArray() : null;
+            } catch (IOException e) {
+                // can't happen writing to memory
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static String fingerprint(byte[] content) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+                StringBuilder sb = new StringBuilder(digest.length * 2);
+                for (byte b : digest) {
+                    sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                    sb.append(Character.forDigit(b & 0xf, 16));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.openqa.selenium.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
+import org.openqa.selenium.remote.internal.PooledConnectionManager;
+
+/**
+ * The client the {@link ProxyHandler} sends browser requests on to their servers with.
+ *
+ * <p>Connections are kept alive and pooled per host, up to a limit for each host and a limit
+ * overall, so that the many requests of a page, and of the pages after it, don't each open and
+ * tear down a connection of their own.  Connections left idle for longer than the idle timeout
+ * are closed.  A request finding its server's connections all in use, or the overall limit reached,
+ * isn't made to wait for one: it is refused with a null, like the requests described below, and
+ * left to {@link java.net.URLConnection}.  Cookies are never kept: the browser's own Cookie headers are sent as they are, and
+ * Set-Cookie headers go back to the browser untouched.
+ *
+ * <p>Only http requests, and https requests when all certificates are trusted, are sent through
+ * the pool, and only when they go straight to the server or through an HTTP proxy.  Anything else
+ * (ftp, a SOCKS proxy, or https whose certificates have to be checked, since this client doesn't
+ * check host names against them) is refused with a null, and left to {@link java.net.URLConnection}.
+ */
+public class UpstreamHttpClient {
+    private static final Protocol TRUSTING_HTTPS = new Protocol("https", (ProtocolSocketFactory) new TrustingSocketFactory(), 443);
+    // how long to wait for a pooled connection before leaving the request to URLConnection; 0 would wait for ever
+    private static final long POOL_WAIT_IN_MILLIS = 1;
+
+    private final PooledConnectionManager connectionManager;
+    private final HttpClient client;
+    private final boolean trustAllSSLCertificates;
+    private final AtomicLong poolExhausted = new AtomicLong();
+
+    /**
+     * @param connectTimeoutInMillis - how long to wait for a new connection to open; 0 waits for ever
+     * @param readTimeoutInMillis - how long to wait for the server to send anything; 0 waits for ever
+     */
+    public UpstreamHttpClient(int maxConnectionsPerHost, int maxConnections, int connectTimeoutInMillis, int readTimeoutInMillis, long idleTimeoutInMillis, boolean trustAllSSLCertificates) {
+        this.trustAllSSLCertificates = trustAllSSLCertificates;
+        connectionManager = new PooledConnectionManager(maxConnectionsPerHost, maxConnections, idleTimeoutInMillis);
+        connectionManager.getParams().setConnectionTimeout(connectTimeoutInMillis);
+        connectionManager.getParams().setSoTimeout(readTimeoutInMillis);
+        client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(POOL_WAIT_IN_MILLIS);
+        client.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
+    }
+
+    /**
+     * Sends a request, if it is one this client can send, and reads the status line and the
+     * headers of its response.  The body is left to be streamed from the method.
+     *
+     * @param headers - the request headers, as name and value pairs, in the order to send them
+     * @param content - the request body, or null if there is none
+     * @param contentLength - the length of the body, or -1 if it isn't known
+     * @return the executed method, whose connection the caller must release, or null if the
+     * request has to be sent some other way, including when there is no connection to spare
+     */
+    public HttpMethod execute(URL url, String methodName, List<String[]> headers, InputStream content, long contentLength) throws IOException {
+        HttpMethod method = prepare(url, methodName, headers, content, contentLength);
+        if (method == null) {
+            return null;
+        }
+        return execute(url, method);
+    }
+
+    /**
+     * Builds a request, if it is one this client can send, to be changed as need be and then
+     * passed to {@link #execute(URL, HttpMethod)}.
+     *
+     * @param headers - the request headers, as name and value pairs, in the order to send them
+     * @param content - the request body, or null if there is none
+     * @param contentLength - the length of the body, or -1 if it isn't known
+     * @return the method, or null if the request has to be sent some other way
+     */
+    public HttpMethod prepare(URL url, String methodName, List<String[]> headers, InputStream content, long contentLength) {
+        if (getHostConfiguration(url) == null) {
+            return null;
+        }
+
+        HttpMethod method = newMethod(methodName, content, contentLength);
+        // the path and query are sent exactly as the browser sent them, which they can only be if they are
+        // relative; an absolute URI would also replace our host configuration with one of its own
+        method.setPath(url.getPath().length() == 0 ? "/" : url.getPath());
+        method.setQueryString(url.getQuery());
+        method.setFollowRedirects(false);
+        for (String[] header : headers) {
+            method.addRequestHeader(header[0], header[1]);
+        }
+        return method;
+    }
+
+    /**
+     * Sends a request built by {@link #prepare}, and reads the status line and the headers of its
+     * response.  The body is left to be streamed from the method.
+     *
+     * @return the executed method, whose connection the caller must release, or null if there is
+     * no connection to spare and the request has to be sent some other way
+     */
+    public HttpMethod execute(URL url, HttpMethod method) throws IOException {
+        HostConfiguration hostConfiguration = getHostConfiguration(url);
+        if (hostConfiguration == null) {
+            return null;
+        }
+
+        boolean executed = false;
+        try {
+            client.executeMethod(hostConfiguration, method);
+            executed = true;
+            return method;
+        } catch (ConnectionPoolTimeoutException e) {
+            // nothing has been sent yet, so the request can still go some other way
+            poolExhausted.incrementAndGet();
+            return null;
+        } finally {
+            if (!executed) {
+                method.releaseConnection();
+            }
+        }
+    }
+
+    public PooledConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /** @return the number of requests left to URLConnection because there was no connection to spare */
+    public long getPoolExhaustedCount() {
+        return poolExhausted.get();
+    }
+
+    /** @return the connections open and in use, how often one could be reused, and how often there were none to spare */
+    public String getStatistics() {
+        return connectionManager.toString() + " [" + getPoolExhaustedCount() + " requests not pooled]";
+    }
+
+    /** Closes every pooled connection; the client can't be used afterwards. */
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    private HostConfiguration getHostConfiguration(URL url) {
+        Protocol protocol;
+        if ("http".equalsIgnoreCase(url.getProtocol())) {
+            protocol = Protocol.getProtocol("http");
+        } else if ("https".equalsIgnoreCase(url.getProtocol()) && trustAllSSLCertificates) {
+            protocol = TRUSTING_HTTPS;
+        } else {
+            return null;
+        }
+
+        Proxy proxy = selectProxy(url);
+        if (proxy == null) {
+            return null;
+        }
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost(url.getHost(), url.getPort() == -1 ? url.getDefaultPort() : url.getPort(), protocol);
+        if (proxy.type() == Proxy.Type.HTTP) {
+            InetSocketAddress address = (InetSocketAddress) proxy.address();
+            hostConfiguration.setProxy(address.getHostName(), address.getPort());
+        }
+        return hostConfiguration;
+    }
+
+    /** @return the proxy URLConnection would have used, if it is one this client can use too, or null */
+    private static Proxy selectProxy(URL url) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return Proxy.NO_PROXY;
+        }
+        List<Proxy> proxies;
+        try {
+            proxies = selector.select(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        if (proxies == null || proxies.isEmpty()) {
+            return Proxy.NO_PROXY;
+        }
+        Proxy proxy = proxies.get(0);
+        if (proxy.type() == Proxy.Type.DIRECT || proxy.type() == Proxy.Type.HTTP) {
+            return proxy;
+        }
+        return null;
+    }
+
+    private static HttpMethod newMethod(final String methodName, InputStream content, long contentLength) {
+        if (content != null) {
+            EntityEnclosingMethod method = new EntityEnclosingMethod() {
+                public String getName() {
+                    return methodName;
+                }
+            };
+            method.setRequestEntity(new InputStreamRequestEntity(content, contentLength));
+            return method;
+        }
+        if ("HEAD".equals(methodName)) {
+            return new HeadMethod();
+        }
+        return new HttpMethodBase() {
+            public String getName() {
+                return methodName;
+            }
+        };
+    }
+
+    /** Opens SSL sockets which trust every certificate, within the connection timeout. */
+    private static class TrustingSocketFactory implements SecureProtocolSocketFactory {
+        private static SSLSocketFactory getFactory() {
+            return TrustEverythingSSLTrustManager.getTrustingSSLSocketFactory();
+        }
+
+        public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+            return getFactory().createSocket(host, port, localAddress, localPort);
+        }
+
+        public Socket createSocket(String host, int port, InetAddress localAddress, int localPort, HttpConnectionParams params) throws IOException {
+            int timeout = params.getConnectionTimeout();
+            if (timeout == 0) {
+                return createSocket(host, port, localAddress, localPort);
+            }
+            Socket socket = getFactory().createSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            return socket;
+        }
+
+        public Socket createSocket(String host, int port) throws IOException {
+            return getFactory().createSocket(host, port);
+        }
+
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return getFactory().createSocket(socket, host, port, autoClose);
+        }
+    }
+}
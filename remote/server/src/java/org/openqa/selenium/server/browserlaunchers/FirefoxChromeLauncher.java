@@ -128,10 +128,9 @@ public class FirefoxChromeLauncher extends AbstractBrowserLauncher {
     customProfileDir = LauncherUtils.createCustomProfileDir(sessionId);
   }
 
-  protected void copyDirectory(File sourceDir, File destDir) {
-    LauncherUtils.copyDirectory(sourceDir, destDir);
-  }
-
+  /**
+   * @return the profile template directory asked for, if any
+   */
   protected File initProfileTemplate() {
     File firefoxProfileTemplate = null;
 
@@ -153,16 +152,16 @@ public class FirefoxChromeLauncher extends AbstractBrowserLauncher {
       firefoxProfileTemplate = browserConfigurationOptions.getFile("firefoxProfileTemplate");
     }
 
-    if (firefoxProfileTemplate != null) {
-      copyDirectory(firefoxProfileTemplate, customProfileDir);
-    }
-
     return firefoxProfileTemplate;
   }
 
-  protected void extractProfileFromJar() throws IOException {
-    ResourceExtractor.extractResourcePath(getClass(), "/customProfileDirCUSTFFCHROME",
-        customProfileDir);
+  /**
+   * Copies the profile template, if any, with our own profile files over it, into the
+   * custom profile directory.
+   */
+  protected void copyProfileImage(File firefoxProfileTemplate) throws IOException {
+    ProfileImageCache.getInstance().copyImage(getClass(), "/customProfileDirCUSTFFCHROME",
+        firefoxProfileTemplate, customProfileDir);
   }
 
   protected void copySingleFileWithOverwrite(File sourceFile, File destFile) {
@@ -201,7 +200,7 @@ public class FirefoxChromeLauncher extends AbstractBrowserLauncher {
 
     File firefoxProfileTemplate = initProfileTemplate();
 
-    extractProfileFromJar();
+    copyProfileImage(firefoxProfileTemplate);
 
     copyCert8db(firefoxProfileTemplate);
 
@@ -294,39 +293,14 @@ public class FirefoxChromeLauncher extends AbstractBrowserLauncher {
    */
   private void waitForFileLockToGoAway(long timeout, long timeToWait)
       throws FileLockRemainedException {
+    // When initializing the profile, Firefox rapidly starts, stops, restarts and
+    // stops again; we need to wait a bit to make sure the file lock is really gone.
     File lock = new File(customProfileDir, "parent.lock");
-    for (long start = System.currentTimeMillis(); System.currentTimeMillis() < start + timeout;) {
-      AsyncExecute.sleepTight(500);
-      if (!lock.exists() && makeSureFileLockRemainsGone(lock, timeToWait)) {
-        return;
-      }
-    }
-    if (lock.exists()) {
+    if (!LauncherUtils.waitForFileToStayGone(lock, timeout, timeToWait)) {
       throw new FileLockRemainedException("Lock file still present! " + lock.getAbsolutePath());
     }
   }
 
-  /**
-   * When initializing the profile, Firefox rapidly starts, stops, restarts and
-   * stops again; we need to wait a bit to make sure the file lock is really gone.
-   *
-   * @param lock       the parent.lock file in the profile directory
-   * @param timeToWait minimum time to wait to see if the file shows back
-   *                   up again. This is not a timeout; we will always wait this amount of time or more.
-   * @return true if the file stayed gone for the entire timeToWait; false if the
-   *         file exists (or came back)
-   */
-  private boolean makeSureFileLockRemainsGone(File lock, long timeToWait) {
-    for (long start = System.currentTimeMillis();
-         System.currentTimeMillis() < start + timeToWait;) {
-      AsyncExecute.sleepTight(500);
-      if (lock.exists()) {
-        return false;
-      }
-    }
-    return !lock.exists();
-  }
-
   /**
    * Wait for one of the Firefox-generated files to come into existence, then wait
    * for Firefox to exit
@@ -337,14 +311,7 @@ public class FirefoxChromeLauncher extends AbstractBrowserLauncher {
     // This will be a characteristic file in the profile
     File testFile = new File(customProfileDir, "extensions.ini");
     long start = System.currentTimeMillis();
-    for (; System.currentTimeMillis() < start + timeout;) {
-
-      AsyncExecute.sleepTight(500);
-      if (testFile.exists()) {
-        break;
-      }
-    }
-    if (!testFile.exists()) {
+    if (!LauncherUtils.waitForFileToExist(testFile, timeout)) {
       throw new RuntimeException("Timed out waiting for profile to be created!");
     }
     // wait the rest of the timeout for the file lock to go away
@@ -98,10 +98,7 @@ public class FirefoxCustomProfileLauncher extends AbstractBrowserLauncher {
 
     private void makeCustomProfile(File customProfileDirectory) throws IOException {
         File firefoxProfileTemplate = browserConfigurationOptions.getFile("firefoxProfileTemplate");
-        if (firefoxProfileTemplate != null) {
-            LauncherUtils.copyDirectory(firefoxProfileTemplate, customProfileDir);
-        }
-        ResourceExtractor.extractResourcePath(getClass(), "/customProfileDirCUSTFF", customProfileDir);
+        ProfileImageCache.getInstance().copyImage(getClass(), "/customProfileDirCUSTFF", firefoxProfileTemplate, customProfileDir);
 
         // Make sure that cert8.db of firefoxProfileTemplate is stored into customProfileDir 
         if (firefoxProfileTemplate != null) {
@@ -188,30 +185,12 @@ public class FirefoxCustomProfileLauncher extends AbstractBrowserLauncher {
      * @throws FileLockRemainedException Wehn the lock file is still present.
      */
     private void waitForFileLockToGoAway(long timeout, long timeToWait) throws FileLockRemainedException {
+        // When initializing the profile, Firefox rapidly starts, stops, restarts and
+        // stops again; we need to wait a bit to make sure the file lock is really gone.
         File lock = new File(customProfileDir(), "parent.lock");
-        for (long start = System.currentTimeMillis(); System.currentTimeMillis() < start + timeout;) {
-            AsyncExecute.sleepTight(500);
-            if (!lock.exists() && makeSureFileLockRemainsGone(lock, timeToWait)) return;
-        }
-        if (lock.exists()) throw new FileLockRemainedException("Lock file still present! " + lock.getAbsolutePath());
-    }
-
-    /**
-     * When initializing the profile, Firefox rapidly starts, stops, restarts and
-     * stops again; we need to wait a bit to make sure the file lock is really gone.
-     *
-     * @param lock       the parent.lock file in the profile directory
-     * @param timeToWait minimum time to wait to see if the file shows back
-     *                   up again. This is not a timeout; we will always wait this amount of time or more.
-     * @return true if the file stayed gone for the entire timeToWait; false if the
-     *         file exists (or came back)
-     */
-    private boolean makeSureFileLockRemainsGone(File lock, long timeToWait) {
-        for (long start = System.currentTimeMillis(); System.currentTimeMillis() < start + timeToWait;) {
-            AsyncExecute.sleepTight(500);
-            if (lock.exists()) return false;
+        if (!LauncherUtils.waitForFileToStayGone(lock, timeout, timeToWait)) {
+            throw new FileLockRemainedException("Lock file still present! " + lock.getAbsolutePath());
         }
-        return !lock.exists();
     }
 
     /**
@@ -224,12 +203,7 @@ public class FirefoxCustomProfileLauncher extends AbstractBrowserLauncher {
         // This will be a characteristic file in the profile
         File testFile = new File(customProfileDir(), "extensions.ini");
         long start = System.currentTimeMillis();
-        for (; System.currentTimeMillis() < start + timeout;) {
-
-            AsyncExecute.sleepTight(500);
-            if (testFile.exists()) break;
-        }
-        if (!testFile.exists()) throw new RuntimeException("Timed out waiting for profile to be created!");
+        if (!LauncherUtils.waitForFileToExist(testFile, timeout)) throw new RuntimeException("Timed out waiting for profile to be created!");
         // wait the rest of the timeout for the file lock to go away
         long subTimeout = timeout - (System.currentTimeMillis() - start);
         try {
@@ -90,6 +90,58 @@ public class LauncherUtils {
 		}
 	}
 
+    // how often to look at a file we're waiting on; there is no way to be told when files change
+    private static final long FILE_POLL_INTERVAL = 50;
+
+    /**
+     * Wait for a file to come into existence
+     *
+     * @param timeout the maximum time to wait
+     * @return true if the file exists, false if it still didn't when the timeout ran out
+     */
+    public static boolean waitForFileToExist(File file, long timeout) {
+        for (long deadline = System.currentTimeMillis() + timeout; !file.exists(); ) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            AsyncExecute.sleepTight(FILE_POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    /**
+     * Wait for a file to go away, and to stay gone for a while, as a browser's lock file
+     * may come back when the browser restarts itself.
+     *
+     * @param timeout the maximum time to wait for the file to go away; with 0, only whether
+     *                the file is there now is checked
+     * @param timeToStayGone how long the file must then stay gone; this is not a timeout, since
+     *                we always wait at least this long for a file which was gone
+     * @return true if the file went away and stayed gone, false if it was still there when the
+     *         timeout ran out
+     */
+    public static boolean waitForFileToStayGone(File file, long timeout, long timeToStayGone) {
+        if (timeout <= 0) {
+            return !file.exists();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        long goneSince = -1;
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (file.exists()) {
+                goneSince = -1;
+                if (now >= deadline) {
+                    return false;
+                }
+            } else if (goneSince == -1) {
+                goneSince = now;
+            } else if (now - goneSince >= timeToStayGone) {
+                return true;
+            }
+            AsyncExecute.sleepTight(FILE_POLL_INTERVAL);
+        }
+    }
+
   protected static File makeProxyPAC(File parentDir, int port, BrowserConfigurationOptions options) throws FileNotFoundException {
     return makeProxyPAC(parentDir, port, true, options);
   }
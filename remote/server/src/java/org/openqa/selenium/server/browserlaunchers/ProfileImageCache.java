@@ -0,0 +1,213 @@
+package org.openqa.selenium.server.browserlaunchers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.openqa.jetty.log.LogFactory;
+import org.openqa.selenium.internal.FileHandler;
+
+/**
+ * Prepared browser profile images, each built once and then copied into every new profile
+ * directory that needs it.
+ *
+ * <p>An image is the profile template directory, if there is one, overlaid with the profile
+ * resources shipped in the server jar.  Building one means copying the whole template and
+ * extracting the resources from the jar, which involves reading through every entry of the jar;
+ * copying a built image is a plain file-by-file copy.  The template is checked for changes each
+ * time its image is asked for, and a new image is built if it changed.
+ *
+ * <p>Profiles are copies rather than links to the image, since the browser rewrites some of its
+ * files, such as its certificate and history databases, in place.  An image which is out of date
+ * is deleted as soon as no profile is being copied from it, and the rest are deleted when the
+ * server exits.  Images of different templates and resources are built and copied independently
+ * of each other.
+ */
+public class ProfileImageCache {
+    static Log log = LogFactory.getLog(ProfileImageCache.class);
+    private static final ProfileImageCache INSTANCE = new ProfileImageCache();
+
+    private final Map<String, ImageSlot> slots = new HashMap<String, ImageSlot>();
+    private final List<File> imageDirs = new ArrayList<File>();
+
+    ProfileImageCache() {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                deleteImages();
+            }
+        });
+    }
+
+    public static ProfileImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Copies the image of a template and profile resources into a profile directory, leaving
+     * out any lock files.  The image is built first if there is none yet, or the template has
+     * changed since it was built.
+     *
+     * @param cl - the class to find the resources with
+     * @param resourcePath - the directory of profile resources, as in
+     * {@link ResourceExtractor#extractResourcePath(Class, String, File)}
+     * @param template - the profile template directory, or null if there is none
+     * @param profileDir - the profile directory to copy the image into
+     */
+    public void copyImage(Class<?> cl, String resourcePath, File template, File profileDir) throws IOException {
+        Image image = acquireImage(cl, resourcePath, template);
+        try {
+            copy(image.dir, profileDir);
+        } finally {
+            image.release();
+        }
+    }
+
+    void copy(File image, File profileDir) throws IOException {
+        FileHandler.copy(image, profileDir);
+    }
+
+    /** @return the directory holding the current image, which must not be changed */
+    File getImage(Class<?> cl, String resourcePath, File template) throws IOException {
+        Image image = acquireImage(cl, resourcePath, template);
+        image.release();
+        return image.dir;
+    }
+
+    /**
+     * Finds the current image, building it if need be, and counts one more copy in progress
+     * from it, so that it is not deleted before {@link Image#release()} is called.  Only one
+     * thread at a time looks after the image of a given template and resources.
+     */
+    private Image acquireImage(Class<?> cl, String resourcePath, File template) throws IOException {
+        String key = resourcePath + File.pathSeparator + (template == null ? "" : template.getAbsolutePath());
+        ImageSlot slot;
+        synchronized (slots) {
+            slot = slots.get(key);
+            if (slot == null) {
+                slot = new ImageSlot();
+                slots.put(key, slot);
+            }
+        }
+
+        synchronized (slot) {
+            String fingerprint = template == null ? "" : fingerprint(template);
+            Image image = slot.current;
+            if (image == null || !image.fingerprint.equals(fingerprint) || !image.dir.isDirectory()) {
+                if (image != null) {
+                    slot.current = null;
+                    image.outOfDate();
+                }
+                image = buildImage(cl, resourcePath, template, fingerprint);
+                slot.current = image;
+            }
+            image.acquire();
+            return image;
+        }
+    }
+
+    private Image buildImage(Class<?> cl, String resourcePath, File template, String fingerprint) throws IOException {
+        File dir = createImageDir();
+        synchronized (imageDirs) {
+            imageDirs.add(dir);
+        }
+        log.debug("Preparing profile image of " + resourcePath + (template == null ? "" : " and " + template) + " in " + dir);
+        if (template != null) {
+            LauncherUtils.copyDirectory(template, dir);
+        }
+        ResourceExtractor.extractResourcePath(cl, resourcePath, dir);
+        return new Image(dir, fingerprint);
+    }
+
+    private void deleteImage(File dir) {
+        log.debug("Deleting out of date profile image " + dir);
+        FileHandler.delete(dir);
+        synchronized (imageDirs) {
+            imageDirs.remove(dir);
+        }
+    }
+
+    private static File createImageDir() throws IOException {
+        File dir = File.createTempFile("seleniumProfileImage", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Couldn't create a profile image directory at " + dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    /** @return a summary of the names, sizes and modification times of every file under the directory */
+    static String fingerprint(File dir) {
+        long[] summary = new long[3];
+        summarize(dir, "", summary);
+        return summary[0] + ":" + Long.toHexString(summary[1]) + ":" + Long.toHexString(summary[2]);
+    }
+
+    private static void summarize(File file, String relativePath, long[] summary) {
+        summary[0]++;
+        summary[1] = 31 * summary[1] + relativePath.hashCode();
+        summary[2] = 31 * summary[2] + file.length() * 1000003 + file.lastModified();
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                summarize(child, relativePath + "/" + child.getName(), summary);
+            }
+        }
+    }
+
+    private void deleteImages() {
+        synchronized (imageDirs) {
+            for (File dir : imageDirs) {
+                FileHandler.delete(dir);
+            }
+            imageDirs.clear();
+        }
+    }
+
+    /** The current image of one template and set of resources */
+    private static class ImageSlot {
+        Image current;
+    }
+
+    private class Image {
+        final File dir;
+        final String fingerprint;
+        private int copies;
+        private boolean outOfDate;
+
+        Image(File dir, String fingerprint) {
+            this.dir = dir;
+            this.fingerprint = fingerprint;
+        }
+
+        synchronized void acquire() {
+            copies++;
+        }
+
+        /** Marks the end of a copy from this image */
+        void release() {
+            synchronized (this) {
+                copies--;
+                if (!outOfDate || copies > 0) {
+                    return;
+                }
+            }
+            deleteImage(dir);
+        }
+
+        /** Marks this image as replaced, to be deleted once no profile is being copied from it */
+        void outOfDate() {
+            synchronized (this) {
+                outOfDate = true;
+                if (copies > 0) {
+                    return;
+                }
+            }
+            deleteImage(dir);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.openqa.selenium.server.cli;
 import org.openqa.selenium.server.RemoteControlConfiguration;
 import org.openqa.selenium.server.SeleniumServer;
 import org.openqa.selenium.server.InjectionHelper;
+import org.openqa.selenium.server.ProxyHandler;
 
 import java.io.File;
 
@@ -29,14 +30,21 @@ public class RemoteControlLauncher {
         printWrappedErrorLine(INDENT, "-forcedBrowserModeRestOfLine <browser>: sets the browser mode to all the remaining tokens on the line (e.g. \"*custom /some/random/place/iexplore.exe\") for all sessions, no matter what is passed to getNewBrowserSession");
         printWrappedErrorLine(INDENT, "-userExtensions <file>: indicates a JavaScript file that will be loaded into selenium");
         printWrappedErrorLine(INDENT, "-browserSessionReuse: stops re-initialization and spawning of the browser between tests");
+        printWrappedErrorLine(INDENT, "-browserSessionPoolSize <n>: keeps n idle browsers launched ahead of demand for each browser and start URL that has been asked for, so that new sessions do not have to wait for a browser to start");
         printWrappedErrorLine(INDENT, "-avoidProxy: By default, we proxy every browser request; set this flag to make the browser use our proxy only for URLs containing '/selenium-server'");
         printWrappedErrorLine(INDENT, "-firefoxProfileTemplate <dir>: normally, we generate a fresh empty Firefox profile every time we launch.  You can specify a directory to make us copy your profile directory instead.");
         printWrappedErrorLine(INDENT, "-debug: puts you into debug mode, with more trace information and diagnostics on the console");
         printWrappedErrorLine(INDENT, "-browserSideLog: enables logging on the browser side; logging messages will be transmitted to the server.  This can affect performance.");
         printWrappedErrorLine(INDENT, "-ensureCleanSession: If the browser does not have user profiles, make sure every new session has no artifacts from previous sessions.  For example, enabling this option will cause all user cookies to be archived before launching IE, and restored after IE is closed.");
         printWrappedErrorLine(INDENT, "-trustAllSSLCertificates: Forces the Selenium proxy to trust all SSL certificates.  This doesn't work in browsers that don't use the Selenium proxy.");
+        printWrappedErrorLine(INDENT, "-nioListener: listens with a selector instead of a thread per connection, so that kept-alive connections sitting idle between requests do not each hold one of the -jettyThreads.  Every request being handled, including a browser's long poll waiting for its next command, still holds a thread, so this does not let more browsers run at once.");
+        printWrappedErrorLine(INDENT, "-proxyMaxConnectionsPerHost <n>: the most connections the proxy keeps open, and reuses, to any one server; requests beyond it each open a connection of their own rather than wait (default " + ProxyHandler.DEFAULT_MAX_CONNECTIONS_PER_HOST + ")");
+        printWrappedErrorLine(INDENT, "-proxyMaxConnections <n>: the most connections the proxy keeps open to all servers together; requests beyond it each open a connection of their own rather than wait (default " + ProxyHandler.DEFAULT_MAX_CONNECTIONS + ")");
+        printWrappedErrorLine(INDENT, "-proxyConnectTimeout <nnnn>: an integer number of seconds the proxy waits to connect to a server, or 0 to wait for ever (default " + ProxyHandler.DEFAULT_CONNECT_TIMEOUT_IN_MILLIS / 1000 + ")");
+        printWrappedErrorLine(INDENT, "-proxyReadTimeout <nnnn>: an integer number of seconds the proxy waits for a server to send anything, or 0 to wait for ever (the default)");
         printWrappedErrorLine(INDENT, "-log <logFileName>: writes lots of debug information out to a log file");
         printWrappedErrorLine(INDENT, "-htmlSuite <browser> <startURL> <suiteFile> <resultFile>: Run a single HTML Selenese (Selenium Core) suite and then exit immediately, using the specified browser (e.g. \"*firefox\") on the specified URL (e.g. \"http://www.google.com\").  You need to specify the absolute path to the HTML test suite as well as the path to the HTML results file we'll generate.");
+        printWrappedErrorLine(INDENT, "-htmlSuiteShards <n>: shares the tests of the -htmlSuite between n browsers running at the same time, and merges their results into the one results file.  The time each test takes is remembered next to the results file, so that later runs can share the tests out evenly.");
         printWrappedErrorLine(INDENT, "-proxyInjectionMode: puts you into proxy injection mode, a mode where the selenium server acts as a proxy server " +
                 "for all content going to the test application.  Under this mode, multiple domains can be visited, and the " +
                 "following additional flags are supported:\n");
@@ -102,6 +110,8 @@ public class RemoteControlLauncher {
                 configuration.setReuseBrowserSessions(false);
             } else if ("-browserSessionReuse".equalsIgnoreCase(arg)) {
                 configuration.setReuseBrowserSessions(true);
+            } else if ("-browserSessionPoolSize".equalsIgnoreCase(arg)) {
+                configuration.setBrowserSessionPoolSize(Integer.parseInt(getArg(args, ++i)));
             } else if ("-firefoxProfileTemplate".equalsIgnoreCase(arg)) {
                 configuration.setFirefoxProfileTemplate(new File(getArg(args, ++i)));
                 if (!configuration.getFirefoxProfileTemplate().exists()) {
@@ -125,6 +135,16 @@ public class RemoteControlLauncher {
 
                 // Set the number of jetty threads before we construct the instance
                 configuration.setJettyThreads(jettyThreadsCount);
+            } else if ("-nioListener".equalsIgnoreCase(arg)) {
+                configuration.setNioListener(true);
+            } else if ("-proxyMaxConnectionsPerHost".equalsIgnoreCase(arg)) {
+                configuration.setProxyMaxConnectionsPerHost(Integer.parseInt(getArg(args, ++i)));
+            } else if ("-proxyMaxConnections".equalsIgnoreCase(arg)) {
+                configuration.setProxyMaxConnections(Integer.parseInt(getArg(args, ++i)));
+            } else if ("-proxyConnectTimeout".equalsIgnoreCase(arg)) {
+                configuration.setProxyConnectTimeoutInSeconds(Integer.parseInt(getArg(args, ++i)));
+            } else if ("-proxyReadTimeout".equalsIgnoreCase(arg)) {
+                configuration.setProxyReadTimeoutInSeconds(Integer.parseInt(getArg(args, ++i)));
             } else if ("-trustAllSSLCertificates".equalsIgnoreCase(arg)) {
                 configuration.setTrustAllSSLCertificates(true);
             } else if ("-userJsInjection".equalsIgnoreCase(arg)) {
@@ -168,6 +188,8 @@ public class RemoteControlLauncher {
                     System.exit(1);
                 }
                 configuration.setHTMLSuite(true);
+            } else if ("-htmlSuiteShards".equalsIgnoreCase(arg)) {
+                configuration.setHTMLSuiteShards(Integer.parseInt(getArg(args, ++i)));
             } else if ("-interactive".equalsIgnoreCase(arg)) {
                 configuration.setTimeoutInSeconds(Integer.MAX_VALUE);
                 configuration.setInteractive(true);
@@ -1,33 +1,181 @@
 package org.openqa.selenium.server.commands;
 
+import org.json.JSONObject;
 import org.openqa.jetty.http.HttpRequest;
 import org.openqa.jetty.http.HttpResponse;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.text.SimpleDateFormat;
 
+/**
+ * Reports the network traffic that has passed through the proxy for a session since the last
+ * report.
+ *
+ * <p>Traffic is attributed to a session by the address of the browser that made the request,
+ * which is learnt from the browser's own requests to the driver.  Requests from an address
+ * used by more than one session, or made before the browser has been seen, are attributed to
+ * the only session if there is just one, and are otherwise kept in a shared buffer which is
+ * included in every session's report.
+ *
+ * <p>Each session keeps at most "selenium.captureNetworkTraffic.bufferSize" entries (5000 by
+ * default), dropping the oldest once full.  Setting "selenium.captureNetworkTraffic.sampleEvery"
+ * to n captures only one request in every n.
+ */
 public class CaptureNetworkTrafficCommand extends Command {
-    private static List<Entry> entries = new ArrayList<Entry>();
+    private static final int BUFFER_SIZE =
+        Integer.getInteger("selenium.captureNetworkTraffic.bufferSize", 5000);
+    private static final int SAMPLE_EVERY =
+        Integer.getInteger("selenium.captureNetworkTraffic.sampleEvery", 1);
+
+    private static final ConcurrentMap<String, NetworkTrafficBuffer> sessionBuffers =
+        new ConcurrentHashMap<String, NetworkTrafficBuffer>();
+    private static final ConcurrentMap<String, ConcurrentMap<String, Boolean>> clientSessions =
+        new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+    private static final NetworkTrafficBuffer unattributed = new NetworkTrafficBuffer(BUFFER_SIZE);
+
+    private static final AtomicLong seen = new AtomicLong();
+    private static final AtomicLong captured = new AtomicLong();
+    private static final AtomicLong droppedFromEndedSessions = new AtomicLong();
 
     public static void clear() {
-        entries.clear();
+        for (NetworkTrafficBuffer buffer : sessionBuffers.values()) {
+            buffer.clear();
+        }
+        unattributed.clear();
+    }
+
+    /**
+     * @return whether the next request should be captured, given the sampling rate
+     */
+    public static boolean shouldCapture() {
+        return SAMPLE_EVERY <= 1 || seen.getAndIncrement() % SAMPLE_EVERY == 0;
     }
 
     public static void capture(Entry entry) {
-        entries.add(entry);
+        capture(null, entry);
     }
 
-    private String type; // ie: XML, JSON, plain text, etc
+    /**
+     * @param clientAddress the address of the browser that made the request, or null if unknown
+     * @param entry the finished request
+     */
+    public static void capture(String clientAddress, Entry entry) {
+        captured.incrementAndGet();
+        bufferFor(clientAddress).add(entry);
+    }
+
+    /**
+     * Records that the browser at the given address belongs to the given session.
+     */
+    public static void associate(String clientAddress, String sessionId) {
+        if (clientAddress == null || sessionId == null) {
+            return;
+        }
+
+        ConcurrentMap<String, Boolean> sessions = clientSessions.get(clientAddress);
+        if (sessions == null) {
+            clientSessions.putIfAbsent(clientAddress, new ConcurrentHashMap<String, Boolean>());
+            sessions = clientSessions.get(clientAddress);
+        }
+        if (sessions.putIfAbsent(sessionId, Boolean.TRUE) == null) {
+            sessionBuffers.putIfAbsent(sessionId, new NetworkTrafficBuffer(BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Discards the traffic captured for a session which has ended.
+     */
+    public static void endSession(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+
+        NetworkTrafficBuffer buffer = sessionBuffers.remove(sessionId);
+        if (buffer != null) {
+            droppedFromEndedSessions.addAndGet(buffer.getDroppedCount());
+        }
+        for (Map.Entry<String, ConcurrentMap<String, Boolean>> client : clientSessions.entrySet()) {
+            client.getValue().remove(sessionId);
+            if (client.getValue().isEmpty()) {
+                clientSessions.remove(client.getKey(), client.getValue());
+            }
+        }
+        if (sessionBuffers.isEmpty()) {
+            unattributed.clear();
+        }
+    }
+
+    /**
+     * @return the number of requests captured since the server started
+     */
+    public static long getCapturedCount() {
+        return captured.get();
+    }
+
+    /**
+     * @return the number of captured requests which were overwritten before being reported
+     */
+    public static long getDroppedCount() {
+        long dropped = droppedFromEndedSessions.get() + unattributed.getDroppedCount();
+        for (NetworkTrafficBuffer buffer : sessionBuffers.values()) {
+            dropped += buffer.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    private static NetworkTrafficBuffer bufferFor(String clientAddress) {
+        String sessionId = null;
+        Map<String, Boolean> sessions = clientAddress == null ? null : clientSessions.get(clientAddress);
+        if (sessions != null && sessions.size() == 1) {
+            sessionId = sessions.keySet().iterator().next();
+        } else if (sessionBuffers.size() == 1) {
+            sessionId = sessionBuffers.keySet().iterator().next();
+        }
+
+        NetworkTrafficBuffer buffer = sessionId == null ? null : sessionBuffers.get(sessionId);
+        return buffer == null ? unattributed : buffer;
+    }
+
+    private String type; // ie: XML, JSON, HAR, plain text, etc
+    private final String sessionId;
 
     public CaptureNetworkTrafficCommand(String type) {
+        this(type, null);
+    }
+
+    public CaptureNetworkTrafficCommand(String type, String sessionId) {
         this.type = type;
+        this.sessionId = sessionId;
     }
 
     public String execute() {
-        StringBuilder sb = new StringBuilder();
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            // Cannot happen when writing to a string
+            throw new RuntimeException(e);
+        }
+        return "OK," + writer.toString();
+    }
+
+    /**
+     * Writes the report to the given writer one entry at a time, removing each entry from the
+     * session's buffer as it is written.
+     */
+    public void writeTo(Writer out) throws IOException {
+        Iterator<Entry> entries = new DrainingIterator(sessionId == null ? null : sessionBuffers.get(sessionId));
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 
-        if ("json".equalsIgnoreCase(type)) {
+        if ("har".equalsIgnoreCase(type)) {
+            writeHar(out, entries, sdf);
+        } else if ("json".equalsIgnoreCase(type)) {
             /*
 
             [{
@@ -52,9 +200,10 @@ public class CaptureNetworkTrafficCommand extends Command {
 
 
              */
-            sb.append("[");
-            for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext();) {
+            out.write("[");
+            for (Iterator<Entry> iterator = entries; iterator.hasNext();) {
                 Entry entry = iterator.next();
+                StringBuilder sb = new StringBuilder();
                 sb.append("{\n");
 
                 sb.append("    statusCode: ").append(entry.statusCode).append(",\n");
@@ -78,8 +227,9 @@ public class CaptureNetworkTrafficCommand extends Command {
                 if (iterator.hasNext()) {
                     sb.append(",");
                 }
+                out.write(sb.toString());
             }
-            sb.append("]\n");
+            out.write("]\n");
         } else if ("xml".equalsIgnoreCase(type)) {
             /*
             <traffic>
@@ -93,8 +243,10 @@ public class CaptureNetworkTrafficCommand extends Command {
              </entry>
             </traffic>
              */
-            sb.append("<traffic>\n");
-            for (Entry entry : entries) {
+            out.write("<traffic>\n");
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                StringBuilder sb = new StringBuilder();
                 sb.append("<entry ");
 
                 sb.append("statusCode=\"").append(entry.statusCode).append("\" ");
@@ -115,8 +267,9 @@ public class CaptureNetworkTrafficCommand extends Command {
 
 
                 sb.append("</entry>\n");
+                out.write(sb.toString());
             }
-            sb.append("</traffic>\n");
+            out.write("</traffic>\n");
         } else {
             /*
              200 GET http://foo.com/index.html
@@ -132,7 +285,9 @@ public class CaptureNetworkTrafficCommand extends Command {
              */
 
 
-            for (Entry entry : entries) {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                StringBuilder sb = new StringBuilder();
                 sb.append(entry.statusCode).append(" ").append(entry.method).append(" ").append(entry.url).append("\n");
                 sb.append(entry.bytes).append(" bytes\n");
                 sb.append(entry.end.getTime() - entry.start.getTime()).append("ms (").append(sdf.format(entry.start)).append(" - ").append(sdf.format(entry.end)).append("\n");
@@ -147,12 +302,77 @@ public class CaptureNetworkTrafficCommand extends Command {
                 }
                 sb.append("================================================================\n");
                 sb.append("\n");
+                out.write(sb.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the entries as the "log" of an HTTP Archive (HAR) 1.2 document.
+     */
+    private void writeHar(Writer out, Iterator<Entry> entries, SimpleDateFormat sdf) throws IOException {
+        out.write("{\"log\":{\"version\":\"1.2\",");
+        out.write("\"creator\":{\"name\":\"Selenium RC\",\"version\":\"\"},");
+        out.write("\"entries\":[");
+        for (boolean first = true; entries.hasNext(); first = false) {
+            Entry entry = entries.next();
+            long time = entry.end.getTime() - entry.start.getTime();
+            StringBuilder sb = new StringBuilder();
+            if (!first) {
+                sb.append(",");
+            }
+            sb.append("\n{\"startedDateTime\":").append(JSONObject.quote(isoDate(sdf, entry.start)));
+            sb.append(",\"time\":").append(time);
+
+            sb.append(",\"request\":{\"method\":").append(JSONObject.quote(entry.method));
+            sb.append(",\"url\":").append(JSONObject.quote(entry.url));
+            sb.append(",\"httpVersion\":\"HTTP/1.1\",\"cookies\":[],\"headers\":");
+            harHeaders(sb, entry.requestHeaders);
+            sb.append(",\"queryString\":[],\"headersSize\":-1,\"bodySize\":-1}");
+
+            sb.append(",\"response\":{\"status\":").append(entry.statusCode);
+            sb.append(",\"statusText\":\"\",\"httpVersion\":\"HTTP/1.1\",\"cookies\":[],\"headers\":");
+            harHeaders(sb, entry.responseHeaders);
+            sb.append(",\"content\":{\"size\":").append(entry.bytes);
+            sb.append(",\"mimeType\":").append(JSONObject.quote(contentType(entry.responseHeaders)));
+            sb.append("},\"redirectURL\":\"\",\"headersSize\":-1,\"bodySize\":").append(entry.bytes).append("}");
+
+            sb.append(",\"cache\":{},\"timings\":{\"send\":0,\"wait\":").append(time);
+            sb.append(",\"receive\":0}}");
+            out.write(sb.toString());
+        }
+        out.write("]}}\n");
+    }
+
+    private void harHeaders(StringBuilder sb, List<Header> headers) {
+        sb.append("[");
+        for (Iterator<Header> headItr = headers.iterator(); headItr.hasNext();) {
+            Header header = headItr.next();
+            sb.append("{\"name\":").append(JSONObject.quote(header.name));
+            sb.append(",\"value\":").append(JSONObject.quote(header.value)).append("}");
+            if (headItr.hasNext()) {
+                sb.append(",");
             }
         }
+        sb.append("]");
+    }
 
-        clear();
+    private String contentType(List<Header> headers) {
+        for (Header header : headers) {
+            if ("Content-Type".equalsIgnoreCase(header.name) && header.value != null) {
+                return header.value;
+            }
+        }
+        return "";
+    }
 
-        return "OK," + sb.toString();
+    /**
+     * HAR wants ISO 8601 dates, which have a colon in the time zone offset
+     */
+    private String isoDate(SimpleDateFormat sdf, Date date) {
+        String formatted = sdf.format(date);
+        int offset = formatted.length() - 2;
+        return formatted.substring(0, offset) + ":" + formatted.substring(offset);
     }
 
     private void xmlHeaders(StringBuilder sb, List<Header> headers) {
@@ -251,6 +471,45 @@ public class CaptureNetworkTrafficCommand extends Command {
         }
     }
 
+    /**
+     * Takes entries from the session's buffer, and then from the shared buffer, as they are
+     * iterated over.
+     */
+    private static class DrainingIterator implements Iterator<Entry> {
+        private final NetworkTrafficBuffer[] buffers;
+        private int current;
+        private Entry next;
+
+        DrainingIterator(NetworkTrafficBuffer sessionBuffer) {
+            buffers = sessionBuffer == null
+                ? new NetworkTrafficBuffer[] {unattributed}
+                : new NetworkTrafficBuffer[] {sessionBuffer, unattributed};
+        }
+
+        public boolean hasNext() {
+            while (next == null && current < buffers.length) {
+                next = buffers[current].poll();
+                if (next == null) {
+                    current++;
+                }
+            }
+            return next != null;
+        }
+
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     public static class Header {
         private String name;
         private String value;
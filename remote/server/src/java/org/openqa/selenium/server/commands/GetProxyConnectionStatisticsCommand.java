@@ -0,0 +1,23 @@
+package org.openqa.selenium.server.commands;
+
+import org.openqa.selenium.server.ProxyHandler;
+
+/**
+ * Report how the proxy's pool of connections to servers is doing: how many connections are open
+ * and in use, and how often one could be reused.
+ */
+public class GetProxyConnectionStatisticsCommand extends Command {
+    private final ProxyHandler proxyHandler;
+
+    public GetProxyConnectionStatisticsCommand(ProxyHandler proxyHandler) {
+        this.proxyHandler = proxyHandler;
+    }
+
+    public String execute() {
+        String statistics = proxyHandler == null ? null : proxyHandler.getConnectionStatistics();
+        if (statistics == null) {
+            return "ERROR: the proxy is not running";
+        }
+        return "OK," + statistics;
+    }
+}
@@ -0,0 +1,60 @@
+package org.openqa.selenium.server.commands;
+
+/**
+ * A fixed size ring buffer of captured network traffic which may be written to and read from
+ * by many threads.  Once the buffer is full, each new entry overwrites the oldest unread one,
+ * which is counted as dropped.
+ *
+ * <p>Adding and polling only touch a slot and two indexes, so each holds the buffer's lock
+ * for a few instructions; the indexes and the slot must change together or a reader could take
+ * a slot a writer has claimed but not yet filled.
+ */
+class NetworkTrafficBuffer {
+    private final CaptureNetworkTrafficCommand.Entry[] slots;
+    private long written;
+    private long read;
+    private long dropped;
+
+    NetworkTrafficBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.slots = new CaptureNetworkTrafficCommand.Entry[capacity];
+    }
+
+    synchronized void add(CaptureNetworkTrafficCommand.Entry entry) {
+        if (written - read == slots.length) {
+            // Overwrite the oldest unread entry
+            read++;
+            dropped++;
+        }
+        slots[slot(written++)] = entry;
+    }
+
+    /**
+     * @return the oldest unread entry, or null if there are none
+     */
+    synchronized CaptureNetworkTrafficCommand.Entry poll() {
+        if (read == written) {
+            return null;
+        }
+        int slot = slot(read++);
+        CaptureNetworkTrafficCommand.Entry entry = slots[slot];
+        slots[slot] = null;
+        return entry;
+    }
+
+    synchronized void clear() {
+        while (read < written) {
+            slots[slot(read++)] = null;
+        }
+    }
+
+    synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    private int slot(long index) {
+        return (int) (index % slots.length);
+    }
+}
@@ -19,6 +19,8 @@ import org.openqa.selenium.server.browserlaunchers.LauncherUtils;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Runs HTML Selenium test suites.
@@ -66,6 +68,14 @@ public class HTMLLauncher implements HTMLResultsListener {
         }
     }
     
+    /** Waits until every shard has posted its results, or the time is up */
+    protected void waitForShards(ShardedHTMLSuite suite, long timeoutInMs) {
+        long start = System.currentTimeMillis();
+        while (!suite.isFinished() && System.currentTimeMillis() - start < timeoutInMs) {
+            AsyncExecute.sleepTight(500);
+        }
+    }
+    
     protected FileWriter getFileWriter(File outputFile) throws IOException {
     	return new FileWriter(outputFile);
     }
@@ -147,6 +157,117 @@ public class HTMLLauncher implements HTMLResultsListener {
      * @throws IOException if we can't write the output file
      */
     public String runHTMLSuite(String browser, String browserURL, File suiteFile, File outputFile, int timeoutInSeconds, boolean multiWindow) throws IOException {
+        checkSuiteFile(browser, suiteFile);
+    	remoteControl.addNewStaticContent(suiteFile.getParentFile());
+        
+        String suiteURL = getSuiteURL(browser, browserURL, suiteFile.getName());
+    	return runHTMLSuite(browser, browserURL, suiteURL, outputFile, timeoutInSeconds, multiWindow, "info");
+    }
+    
+    /** Launches a single HTML Selenium test suite, split between several browsers which
+     * run their share of its tests at the same time.  The results of all the browsers
+     * are merged into one report.  How long each test took is remembered in a
+     * <code>.durations</code> file next to the output file, so that the next run can
+     * share the tests out more evenly.
+     * 
+     * @param browser - the browserString ("*firefox", "*iexplore" or an executable path)
+     * @param browserURL - the start URL for the browser
+     * @param suiteFile - a file containing the HTML suite to run
+     * @param outputFile - The file to which we'll output the HTML results
+     * @param timeoutInSeconds - the amount of time (in seconds) to wait for all the browsers to finish
+     * @param multiWindow - whether to run the browser in multiWindow or else framed mode
+     * @param shards - how many browsers to run the suite in; 1 runs it in a single browser as usual
+     * @return PASSED or FAIL
+     * @throws IOException if we can't write the output file
+     */
+    public String runHTMLSuite(String browser, String browserURL, File suiteFile, File outputFile, int timeoutInSeconds, boolean multiWindow, int shards) throws IOException {
+        if (shards <= 1) {
+            return runHTMLSuite(browser, browserURL, suiteFile, outputFile, timeoutInSeconds, multiWindow);
+        }
+        checkSuiteFile(browser, suiteFile);
+        outputFile.createNewFile();
+        if (!outputFile.canWrite()) {
+        	throw new IOException("Can't write to outputFile: " + outputFile.getAbsolutePath());
+        }
+    	long timeoutInMs = 1000l * timeoutInSeconds;
+        if (timeoutInMs < 0) {
+            log.warn("Looks like the timeout overflowed, so resetting it to the maximum.");
+            timeoutInMs = Long.MAX_VALUE;
+        }
+    	remoteControl.addNewStaticContent(suiteFile.getParentFile());
+        
+        String runId = Long.toString(System.currentTimeMillis() % 1000000);
+        File historyFile = new File(outputFile.getAbsoluteFile().getParentFile(), suiteFile.getName() + ".durations");
+        ShardedHTMLSuite suite = ShardedHTMLSuite.split(suiteFile, shards, historyFile, runId);
+        
+        // the shard suites are served from the same path as the original suite, so that its relative links still work
+        File shardDirectory = File.createTempFile("htmlSuiteShards", "");
+        shardDirectory.delete();
+        shardDirectory.mkdirs();
+        shardDirectory.deleteOnExit();
+        suite.writeSuites(shardDirectory, suiteFile.getName());
+        remoteControl.addNewStaticContent(shardDirectory);
+        
+        RemoteControlConfiguration configuration = remoteControl.getConfiguration();
+        List<BrowserSessionInfo> sessions = new ArrayList<BrowserSessionInfo>();
+        long start = System.currentTimeMillis();
+        try {
+            for (HTMLSuiteShard shard : suite.getShards()) {
+                remoteControl.handleHTMLRunnerResults(shard);
+                
+                String sessionId = runId + "-" + shard.getNumber();
+                BrowserConfigurationOptions browserOptions = new BrowserConfigurationOptions();
+                configuration.copySettingsIntoBrowserOptions(browserOptions);
+                browserOptions.setSingleWindow(!multiWindow);
+                
+                BrowserLauncher launcher = getBrowserLauncher(browser, sessionId, configuration, browserOptions);
+                BrowserSessionInfo sessionInfo = new BrowserSessionInfo(sessionId, 
+                    browser, browserURL, launcher, null);
+                remoteControl.registerBrowserSession(sessionInfo);
+                sessions.add(sessionInfo);
+                
+                log.info("Launching " + shard.getHrefs().size() + " tests of " + suiteFile.getName() + " as " + shard.getId());
+                shard.started();
+                launcher.launchHTMLSuite(getSuiteURL(browser, browserURL, shard.getSuiteFileName(suiteFile.getName())), browserURL);
+            }
+            
+            waitForShards(suite, timeoutInMs);
+        } finally {
+            // a shard which timed out never posts its results, so would otherwise be listened for forever
+            for (HTMLSuiteShard shard : suite.getShards()) {
+                remoteControl.stopHandlingHTMLRunnerResults(shard);
+            }
+            for (BrowserSessionInfo sessionInfo : sessions) {
+                sessionInfo.launcher.close();
+                remoteControl.deregisterBrowserSession(sessionInfo);
+            }
+            File[] shardFiles = shardDirectory.listFiles();
+            if (shardFiles != null) {
+                for (File shardFile : shardFiles) {
+                    shardFile.delete();
+                }
+            }
+            shardDirectory.delete();
+        }
+        
+        log.info("Shard timings for " + suiteFile.getName() + ":\n" + suite.describeTimings());
+        if (!suite.isFinished()) {
+            throw new SeleniumCommandTimedOutException();
+        }
+        
+        results = suite.mergeResults(System.currentTimeMillis() - start);
+        try {
+            suite.recordDurations();
+        } catch (IOException e) {
+            log.warn("Couldn't record test durations in " + historyFile.getAbsolutePath(), e);
+        }
+        
+        writeResults(outputFile);
+        
+        return results.getResult().toUpperCase();
+    }
+    
+    private void checkSuiteFile(String browser, File suiteFile) throws IOException {
         if (browser == null) throw new IllegalArgumentException("browser may not be null");
         if (!suiteFile.exists()) {
     		throw new IOException("Can't find HTML Suite file:" + suiteFile.getAbsolutePath());
@@ -154,16 +275,14 @@ public class HTMLLauncher implements HTMLResultsListener {
     	if (!suiteFile.canRead()) {
     		throw new IOException("Can't read HTML Suite file: " + suiteFile.getAbsolutePath());
     	}
-    	remoteControl.addNewStaticContent(suiteFile.getParentFile());
-        
+    }
+    
+    private String getSuiteURL(String browser, String browserURL, String suiteFileName) {
         // DGF this is a hack, but I can't find a better place to put it
-        String suiteURL;
         if (browser.startsWith("*chrome") || browser.startsWith("*firefox") || browser.startsWith("*iehta")  || browser.startsWith("*iexplore") ) {
-            suiteURL = "http://localhost:" + remoteControl.getConfiguration().getPortDriversShouldContact() + "/selenium-server/tests/" + suiteFile.getName();
-        } else {
-            suiteURL = LauncherUtils.stripStartURL(browserURL) + "/selenium-server/tests/" + suiteFile.getName();
+            return "http://localhost:" + remoteControl.getConfiguration().getPortDriversShouldContact() + "/selenium-server/tests/" + suiteFileName;
         }
-    	return runHTMLSuite(browser, browserURL, suiteURL, outputFile, timeoutInSeconds, multiWindow, "info");
+        return LauncherUtils.stripStartURL(browserURL) + "/selenium-server/tests/" + suiteFileName;
     }
     
     
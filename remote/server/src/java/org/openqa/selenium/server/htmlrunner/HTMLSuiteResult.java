@@ -14,12 +14,14 @@ import javax.swing.text.html.HTMLEditorKit.*;
 
 public class HTMLSuiteResult {
 
-    //private final String originalSuite;
+    private final String originalSuite;
     private final String updatedSuite;
     private final List<String> hrefs;
+    private final List<String> linkTexts;
+    private final String title;
     
     public HTMLSuiteResult(String originalSuite) {
-        //this.originalSuite = originalSuite;
+        this.originalSuite = originalSuite;
         StringReader s = new StringReader(originalSuite);
         HTMLEditorKit k = new HTMLEditorKit();
         HTMLDocument doc = (HTMLDocument) k.createDefaultDocument();
@@ -33,6 +35,8 @@ public class HTMLSuiteResult {
             throw new RuntimeException(e);
         }
         hrefs = p.hrefList;
+        linkTexts = p.linkTextList;
+        title = p.title.toString().trim();
         StringBuilder sb = new StringBuilder();
         int previousPosition = originalSuite.length();
         for (int i = p.tagPositions.size()-1; i >= 0; i--) {
@@ -61,6 +65,20 @@ public class HTMLSuiteResult {
         return this.updatedSuite;
     }
     
+    public String getOriginalSuite() {
+        return this.originalSuite;
+    }
+    
+    /** @return the text of each link in the suite, in the same order as the hrefs */
+    public List<String> getLinkTexts() {
+        return this.linkTexts;
+    }
+    
+    /** @return the contents of the suite's title element, or "" if it has none */
+    public String getTitle() {
+        return this.title;
+    }
+    
     private class HrefConverter extends ParserCallback {
         public HrefConverter(String foo) {
             this.foo = foo;
@@ -68,14 +86,40 @@ public class HTMLSuiteResult {
         String foo;
         public List<String> hrefList = new ArrayList<String>();
         public List<Integer> tagPositions = new ArrayList<Integer>();
+        public List<String> linkTextList = new ArrayList<String>();
+        public StringBuilder title = new StringBuilder();
+        private int currentLink = -1;
+        private boolean inTitle;
         @Override 
         public void handleStartTag(Tag tag, MutableAttributeSet attributes, int pos) {
             if (Tag.A.equals(tag)) {
                 String href = (String) attributes.getAttribute(HTML.Attribute.HREF);
                 hrefList.add(href);
                 tagPositions.add(pos);
+                linkTextList.add("");
+                currentLink = linkTextList.size() - 1;
+            } else if (Tag.TITLE.equals(tag)) {
+                inTitle = true;
             }
         };
+        @Override
+        public void handleEndTag(Tag tag, int pos) {
+            if (Tag.A.equals(tag) && currentLink != -1) {
+                linkTextList.set(currentLink, linkTextList.get(currentLink).trim());
+                currentLink = -1;
+            } else if (Tag.TITLE.equals(tag)) {
+                inTitle = false;
+            }
+        }
+        @Override
+        public void handleText(char[] data, int pos) {
+            if (currentLink != -1) {
+                linkTextList.set(currentLink, linkTextList.get(currentLink) + new String(data));
+            }
+            if (inTitle) {
+                title.append(data);
+            }
+        }
     }
 
 }
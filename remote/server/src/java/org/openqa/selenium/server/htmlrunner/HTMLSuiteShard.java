@@ -0,0 +1,163 @@
+/*
+ * Copyright 2006 ThoughtWorks, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.openqa.selenium.server.htmlrunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One part of a {@link ShardedHTMLSuite}: a suite of its own, made of some of the tests
+ * of the original suite, which runs in its own browser.
+ *
+ * <p>The title row of the shard's suite carries an id unique to the shard, which the
+ * TestRunner posts back with the results; that is how the shard recognises its own
+ * results among those of the other shards.
+ */
+public class HTMLSuiteShard implements SelectiveHTMLResultsListener {
+
+    private static final String SUITE_HTML_HEADER = "<html>\n<head>\n" +
+            "<meta content=\"text/html; charset=UTF-8\" http-equiv=\"content-type\" />\n" +
+            "<title>{0}</title>\n</head>\n<body>\n" +
+            "<table id=\"suiteTable\" cellpadding=\"1\" cellspacing=\"1\" border=\"1\" class=\"selenium\"><tbody>\n" +
+            "<tr id=\"{1}\"><td><b>{0}</b></td></tr>\n";
+    private static final String SUITE_HTML_TEST = "<tr><td><a href=\"{0}\">{1}</a></td></tr>\n";
+    private static final String SUITE_HTML_FOOTER = "</tbody></table>\n</body>\n</html>\n";
+
+    private final String id;
+    private final int number;
+    private final int count;
+    private final List<String> hrefs = new ArrayList<String>();
+    private final List<String> linkTexts = new ArrayList<String>();
+    private final List<Double> testExpectedSeconds = new ArrayList<Double>();
+    private double expectedSeconds;
+    private long startedAt;
+    private long finishedAt;
+    private volatile HTMLTestResults results;
+
+    /**
+     * @param runId - identifies the run, so that two runs of the same suite at once don't
+     * mix up their results
+     * @param number - the number of this shard, counting from 1
+     * @param count - the number of shards in the run
+     */
+    public HTMLSuiteShard(String runId, int number, int count) {
+        this.id = "shard-" + runId + "-" + number + "-of-" + count;
+        this.number = number;
+        this.count = count;
+    }
+
+    void addTest(String href, String linkText, double expectedSeconds) {
+        hrefs.add(href);
+        linkTexts.add(linkText);
+        testExpectedSeconds.add(expectedSeconds);
+        this.expectedSeconds += expectedSeconds;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public List<String> getHrefs() {
+        return hrefs;
+    }
+
+    /** @return how long, judging by earlier runs, this shard's tests should take */
+    public double getExpectedSeconds() {
+        return expectedSeconds;
+    }
+
+    /** @return how long, judging by earlier runs, the shard's i'th test should take */
+    public double getExpectedSeconds(int i) {
+        return testExpectedSeconds.get(i);
+    }
+
+    /** @return the name of the file {@link #writeSuite} writes the shard's suite to */
+    public String getSuiteFileName(String originalSuiteName) {
+        return id + "-" + originalSuiteName;
+    }
+
+    public void writeSuite(File suiteFile, String title) throws IOException {
+        String shardTitle = HTMLTestResults.quoteCharacters(
+                title + " (shard " + number + " of " + count + ")");
+        Writer out = new OutputStreamWriter(new FileOutputStream(suiteFile), "UTF-8");
+        try {
+            out.write(MessageFormat.format(SUITE_HTML_HEADER, shardTitle, id));
+            for (int i = 0; i < hrefs.size(); i++) {
+                out.write(MessageFormat.format(SUITE_HTML_TEST,
+                        HTMLTestResults.quoteCharacters(hrefs.get(i)),
+                        HTMLTestResults.quoteCharacters(linkTexts.get(i))));
+            }
+            out.write(SUITE_HTML_FOOTER);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Notes that the shard's browser has been asked to run the suite */
+    public void started() {
+        startedAt = System.currentTimeMillis();
+    }
+
+    public boolean accepts(HTMLTestResults resultsParm) {
+        return resultsParm.getSuite().getOriginalSuite().indexOf(id) != -1;
+    }
+
+    public void processResults(HTMLTestResults resultsParm) {
+        finishedAt = System.currentTimeMillis();
+        this.results = resultsParm;
+    }
+
+    public HTMLTestResults getResults() {
+        return results;
+    }
+
+    public boolean isFinished() {
+        return results != null;
+    }
+
+    /** @return how long the shard took, from launching the browser to posting its results */
+    public long getElapsedMillis() {
+        if (!isFinished()) {
+            return System.currentTimeMillis() - startedAt;
+        }
+        return finishedAt - startedAt;
+    }
+
+    /** @return the shard's timing, for the log and the merged report */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("shard ").append(number).append(" of ").append(count).append(": ");
+        sb.append(hrefs.size()).append(" tests, ");
+        if (isFinished()) {
+            sb.append(results.getResult()).append(" in ").append(getElapsedMillis() / 1000).append("s");
+        } else {
+            sb.append("did not finish after ").append(getElapsedMillis() / 1000).append("s");
+        }
+        sb.append(" (expected ").append(Math.round(expectedSeconds)).append("s)");
+        return sb.toString();
+    }
+}
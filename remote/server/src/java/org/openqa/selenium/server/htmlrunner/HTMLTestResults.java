@@ -154,6 +154,21 @@ public class HTMLTestResults {
     public int getNumTotalTests() {
         return Integer.parseInt(numTestPasses) + Integer.parseInt(numTestFailures);
     }
+    public String getNumTestTotal() {
+        return numTestTotal;
+    }
+    public String getSeleniumVersion() {
+        return seleniumVersion;
+    }
+    public String getSeleniumRevision() {
+        return seleniumRevision;
+    }
+    public String getLog() {
+        return log;
+    }
+    public HTMLSuiteResult getSuite() {
+        return suite;
+    }
 
     public void write(Writer out) throws IOException {
         out.write(HEADER);
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2006 ThoughtWorks, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.openqa.selenium.server.htmlrunner;
+
+/**
+ * A listener which is only interested in the results of one particular suite, so that
+ * several suites can post their results to the same server at once.  Results it does
+ * not accept are left for the other listeners, and it stays registered until results
+ * it accepts arrive.
+ */
+public interface SelectiveHTMLResultsListener extends HTMLResultsListener {
+    public boolean accepts(HTMLTestResults results);
+}
@@ -46,6 +46,10 @@ public class SeleniumHTMLRunnerResultsHandler implements HttpHandler {
         listeners.add(listener);
     }
     
+    public void removeListener(HTMLResultsListener listener) {
+        listeners.remove(listener);
+    }
+    
     public void handle(String pathInContext, String pathParams, HttpRequest request, HttpResponse res) throws HttpException, IOException {
         if (!"/postResults".equals(pathInContext)) return;
         request.setHandled(true);
@@ -75,10 +79,16 @@ public class SeleniumHTMLRunnerResultsHandler implements HttpHandler {
                 result, totalTime, numTestTotal,
                 numTestPasses, numTestFailures, numCommandPasses, numCommandFailures, numCommandErrors, suite, testTables, postedLog);
         
-        for (Iterator<HTMLResultsListener> i = listeners.iterator(); i.hasNext();) {
-            HTMLResultsListener listener = i.next();
-            listener.processResults(results);
-            i.remove();
+        synchronized (listeners) {
+            for (Iterator<HTMLResultsListener> i = listeners.iterator(); i.hasNext();) {
+                HTMLResultsListener listener = i.next();
+                if (listener instanceof SelectiveHTMLResultsListener
+                        && !((SelectiveHTMLResultsListener) listener).accepts(results)) {
+                    continue;
+                }
+                listener.processResults(results);
+                i.remove();
+            }
         }
         processResults(results, res);
     }
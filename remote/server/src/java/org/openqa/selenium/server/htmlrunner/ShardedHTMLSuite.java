@@ -0,0 +1,283 @@
+/*
+ * Copyright 2006 ThoughtWorks, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.openqa.selenium.server.htmlrunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Splits an HTML suite into several smaller suites, so that its tests can be run by
+ * several browsers at once, and merges their results back into one report.
+ *
+ * <p>Tests are dealt out to the shards by how long they took in earlier runs, longest
+ * first, each to the shard with the least work so far, so that the shards finish at
+ * about the same time.  Those durations are kept in a history file, which is updated
+ * after each run.  Tests that have never been timed are assumed to take the average
+ * time.  Within a shard the tests keep their order from the original suite.
+ */
+public class ShardedHTMLSuite {
+
+    private static final double DEFAULT_TEST_SECONDS = 1.0;
+
+    private final String title;
+    private final File historyFile;
+    private final Properties history;
+    private final List<HTMLSuiteShard> shards = new ArrayList<HTMLSuiteShard>();
+
+    /**
+     * @param suite - the parsed original suite
+     * @param title - the title of the original suite
+     * @param shardCount - the most shards to split the suite into; there are never more
+     * shards than tests
+     * @param historyFile - where the durations of earlier runs are kept; it need not exist yet
+     * @param runId - identifies this run among any others running on the server
+     */
+    public ShardedHTMLSuite(HTMLSuiteResult suite, String title, int shardCount, File historyFile, String runId) throws IOException {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be at least 1");
+        this.title = title;
+        this.historyFile = historyFile;
+        this.history = loadHistory(historyFile);
+
+        final List<String> hrefs = suite.getHrefs();
+        List<String> linkTexts = suite.getLinkTexts();
+        final double[] expected = expectedSeconds(hrefs);
+
+        List<Integer> longestFirst = new ArrayList<Integer>();
+        for (int i = 0; i < hrefs.size(); i++) {
+            longestFirst.add(i);
+        }
+        Collections.sort(longestFirst, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(expected[b], expected[a]);
+            }
+        });
+
+        int count = Math.max(1, Math.min(shardCount, hrefs.size()));
+        int[] shardOfTest = new int[hrefs.size()];
+        double[] load = new double[count];
+        for (int test : longestFirst) {
+            int lightest = 0;
+            for (int s = 1; s < count; s++) {
+                if (load[s] < load[lightest]) {
+                    lightest = s;
+                }
+            }
+            shardOfTest[test] = lightest;
+            load[lightest] += expected[test];
+        }
+
+        for (int s = 0; s < count; s++) {
+            shards.add(new HTMLSuiteShard(runId, s + 1, count));
+        }
+        for (int i = 0; i < hrefs.size(); i++) {
+            String linkText = i < linkTexts.size() ? linkTexts.get(i) : hrefs.get(i);
+            shards.get(shardOfTest[i]).addTest(hrefs.get(i), linkText, expected[i]);
+        }
+    }
+
+    /** Factory method to split the suite in the given file */
+    public static ShardedHTMLSuite split(File suiteFile, int shardCount, File historyFile, String runId) throws IOException {
+        HTMLSuiteResult suite = new HTMLSuiteResult(readFile(suiteFile));
+        String title = suite.getTitle();
+        if (title.length() == 0) {
+            title = suiteFile.getName();
+        }
+        return new ShardedHTMLSuite(suite, title, shardCount, historyFile, runId);
+    }
+
+    /** @return the shards, the one expected to take longest first */
+    public List<HTMLSuiteShard> getShards() {
+        List<HTMLSuiteShard> longestFirst = new ArrayList<HTMLSuiteShard>(shards);
+        Collections.sort(longestFirst, new Comparator<HTMLSuiteShard>() {
+            public int compare(HTMLSuiteShard a, HTMLSuiteShard b) {
+                return Double.compare(b.getExpectedSeconds(), a.getExpectedSeconds());
+            }
+        });
+        return longestFirst;
+    }
+
+    /** Writes each shard's suite into the given directory */
+    public void writeSuites(File directory, String originalSuiteName) throws IOException {
+        for (HTMLSuiteShard shard : shards) {
+            File suiteFile = new File(directory, shard.getSuiteFileName(originalSuiteName));
+            suiteFile.deleteOnExit();
+            shard.writeSuite(suiteFile, title);
+        }
+    }
+
+    public boolean isFinished() {
+        for (HTMLSuiteShard shard : shards) {
+            if (!shard.isFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the results of all the shards, which must all have finished, into one
+     * report.  The report's suite is the suites of the shards one after the other, and
+     * the time each shard took is given at the top of the log.
+     *
+     * @param elapsedMillis - how long the whole run took
+     */
+    public HTMLTestResults mergeResults(long elapsedMillis) {
+        boolean passed = true;
+        int numTestTotal = 0;
+        int numTestPasses = 0;
+        int numTestFailures = 0;
+        int numCommandPasses = 0;
+        int numCommandFailures = 0;
+        int numCommandErrors = 0;
+        StringBuilder suite = new StringBuilder();
+        List<String> testTables = new ArrayList<String>();
+        StringBuilder log = new StringBuilder(describeTimings());
+        String seleniumVersion = null;
+        String seleniumRevision = null;
+
+        for (HTMLSuiteShard shard : shards) {
+            HTMLTestResults results = shard.getResults();
+            if (seleniumVersion == null) {
+                seleniumVersion = results.getSeleniumVersion();
+                seleniumRevision = results.getSeleniumRevision();
+            }
+            passed &= "passed".equalsIgnoreCase(results.getResult());
+            numTestTotal += toInt(results.getNumTestTotal());
+            numTestPasses += toInt(results.getNumTestPasses());
+            numTestFailures += toInt(results.getNumTestFailures());
+            numCommandPasses += toInt(results.getNumCommandPasses());
+            numCommandFailures += toInt(results.getNumCommandFailures());
+            numCommandErrors += toInt(results.getNumCommandErrors());
+            suite.append(results.getSuite().getOriginalSuite()).append("\n");
+            for (Object table : results.getTestTables()) {
+                testTables.add((String) table);
+            }
+            if (results.getLog() != null) {
+                log.append("\n--- ").append(shard.describe()).append(" ---\n").append(results.getLog());
+            }
+        }
+
+        return new HTMLTestResults(seleniumVersion, seleniumRevision,
+                passed ? "passed" : "failed", Long.toString(elapsedMillis / 1000),
+                Integer.toString(numTestTotal), Integer.toString(numTestPasses),
+                Integer.toString(numTestFailures), Integer.toString(numCommandPasses),
+                Integer.toString(numCommandFailures), Integer.toString(numCommandErrors),
+                suite.toString(), testTables, log.toString());
+    }
+
+    /** @return one line per shard, saying how long it took compared to how long it should have */
+    public String describeTimings() {
+        StringBuilder sb = new StringBuilder();
+        for (HTMLSuiteShard shard : getShards()) {
+            sb.append(shard.describe()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Records how long the tests of each finished shard took, for the next run to plan by.
+     * The TestRunner only reports how long a whole suite took, so each test of a shard is
+     * taken to have its share of the shard's time, in proportion to what it was expected
+     * to take.
+     */
+    public void recordDurations() throws IOException {
+        for (HTMLSuiteShard shard : shards) {
+            if (!shard.isFinished()) {
+                continue;
+            }
+            List<String> hrefs = shard.getHrefs();
+            double seconds = shard.getElapsedMillis() / 1000.0;
+            double expectedTotal = shard.getExpectedSeconds();
+            for (int i = 0; i < hrefs.size(); i++) {
+                double share = expectedTotal > 0 ? shard.getExpectedSeconds(i) / expectedTotal : 1.0 / hrefs.size();
+                double measured = seconds * share;
+                String previous = history.getProperty(hrefs.get(i));
+                if (previous != null) {
+                    measured = (measured + Double.parseDouble(previous)) / 2;
+                }
+                history.setProperty(hrefs.get(i), Double.toString(measured));
+            }
+        }
+        OutputStream out = new FileOutputStream(historyFile);
+        try {
+            history.store(out, "Seconds taken by each test of " + title + ", used to balance the shards of the next run");
+        } finally {
+            out.close();
+        }
+    }
+
+    private double[] expectedSeconds(List<String> hrefs) {
+        double known = 0;
+        int knownCount = 0;
+        for (Object value : history.values()) {
+            known += Double.parseDouble((String) value);
+            knownCount++;
+        }
+        double unknown = knownCount > 0 ? known / knownCount : DEFAULT_TEST_SECONDS;
+        double[] expected = new double[hrefs.size()];
+        for (int i = 0; i < expected.length; i++) {
+            String seconds = history.getProperty(hrefs.get(i));
+            expected[i] = seconds != null ? Double.parseDouble(seconds) : unknown;
+        }
+        return expected;
+    }
+
+    private static Properties loadHistory(File historyFile) throws IOException {
+        Properties history = new Properties();
+        if (historyFile.exists()) {
+            InputStream in = new FileInputStream(historyFile);
+            try {
+                history.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return history;
+    }
+
+    private static int toInt(String number) {
+        if (number == null || number.length() == 0) {
+            return 0;
+        }
+        return Integer.parseInt(number);
+    }
+
+    private static String readFile(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                sb.append(buffer, 0, read);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -2,10 +2,17 @@ package org.openqa.selenium.server.log;
 
 import java.io.IOException;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.Writer;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -13,23 +20,28 @@ import java.util.logging.LogRecord;
 /**
  * Handler which keeps in memory the log records per session so that users can
  * retrieve logs per session.
+ *
+ * <p>Publishing a record never blocks: records are added to a lock-free queue for
+ * their session. Once a session has more than the handler's capacity of records
+ * in memory, a background thread formats them and appends them to the session's
+ * log file.
  */
 public class PerSessionLogHandler extends java.util.logging.Handler {
 
-    private final Map<String, List<LogRecord>> perSessionRecords;
+    private final ConcurrentMap<String, SessionLog> perSessionRecords;
 
     // Used to store log records that doesnt have associated session.
     // These records get mapped to session id once the session gets created
     // Useful for commands like: getNewBrowseSession() which doesnt have session
     // associated till the session gets created.
-    private final Map<Long, List<LogRecord>> perThreadTempRecords;
+    private final Map<Long, SessionLog> perThreadTempRecords;
     private final Formatter formatter;
     private int minimumLevel;
-    private int currentIndex;
     private Map<Long, String> threadToSessionMap;
     private Map<String, Long> sessionToThreadMap;
     private SessionLogsToFileRepository logFileRepository;
     private int capacity;
+    private final ExecutorService logWriter;
 
     /**
      * New handler keeping track of log records per session.
@@ -45,45 +57,81 @@ public class PerSessionLogHandler extends java.util.logging.Handler {
         this.capacity = capacity;
         this.formatter = formatter;
         this.minimumLevel = minimumLevel.intValue();
-        this.perSessionRecords = new HashMap<String, List<LogRecord>>();
-        this.perThreadTempRecords = new HashMap<Long, List<LogRecord>>();
-        this.currentIndex = 0;
-        this.threadToSessionMap = new HashMap<Long, String>();
-        this.sessionToThreadMap = new HashMap<String, Long>();
+        this.perSessionRecords = new ConcurrentHashMap<String, SessionLog>();
+        this.perThreadTempRecords = new ConcurrentHashMap<Long, SessionLog>();
+        this.threadToSessionMap = new ConcurrentHashMap<Long, String>();
+        this.sessionToThreadMap = new ConcurrentHashMap<String, Long>();
         this.logFileRepository = new SessionLogsToFileRepository();
-        
+        this.logWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Selenium session log writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
     
     @Override
-    synchronized public void publish(LogRecord record) {
+    public void publish(LogRecord record) {
         long threadId = Thread.currentThread().getId();
         String sessionId = threadToSessionMap.get(threadId);
 
         if (sessionId != null) {
-            List<LogRecord> records = perSessionRecords.get(sessionId);
-            if (records == null) {
-                records = new ArrayList<LogRecord>();
+            SessionLog log = sessionLog(sessionId);
+            if (log.add(record) > capacity) {
+                scheduleFlush(sessionId, log);
             }
-            records.add(record);
-            perSessionRecords.put(sessionId, records);
-            if (records.size() > capacity) {
-                // flush records to file;
-                try {
-                    logFileRepository.flushRecordsToLogFile(sessionId, records);
-                    // clear in memory session records
-                    records.clear();
-                    perSessionRecords.put(sessionId, records);
-                } catch (IOException ex) {
-                    ex.printStackTrace();
+        } else {
+            SessionLog log = perThreadTempRecords.get(threadId);
+            if (log == null) {
+                log = new SessionLog();
+                perThreadTempRecords.put(threadId, log);
+            }
+            log.add(record);
+        }
+    }
+
+    private SessionLog sessionLog(String sessionId) {
+        SessionLog log = perSessionRecords.get(sessionId);
+        if (log == null) {
+            perSessionRecords.putIfAbsent(sessionId, new SessionLog());
+            log = perSessionRecords.get(sessionId);
+        }
+        return log;
+    }
+
+    private void scheduleFlush(final String sessionId, final SessionLog log) {
+        if (!log.flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            logWriter.execute(new Runnable() {
+                public void run() {
+                    log.flushScheduled.set(false);
+                    flushToFile(sessionId, log);
                 }
+            });
+        } catch (RuntimeException e) {
+            // The handler has been closed; keep the records in memory
+            log.flushScheduled.set(false);
+        }
+    }
+
+    private void flushToFile(String sessionId, SessionLog log) {
+        synchronized (log) {
+            if (perSessionRecords.get(sessionId) != log) {
+                // The session's logs have been cleared
+                return;
             }
-        } else {
-            List<LogRecord> records = perThreadTempRecords.get(threadId);
-            if (records == null) {
-                records = new ArrayList<LogRecord>();
+            StringBuilder formatted = new StringBuilder();
+            for (LogRecord record = log.poll(); record != null; record = log.poll()) {
+                formatted.append(formatter.format(record));
+            }
+            try {
+                logFileRepository.appendToLogFile(sessionId, formatted.toString());
+            } catch (IOException ex) {
+                ex.printStackTrace();
             }
-            records.add(record);
-            perThreadTempRecords.put(threadId, records);
         }
     }
 
@@ -92,24 +140,35 @@ public class PerSessionLogHandler extends java.util.logging.Handler {
     }
     
     public void close() throws SecurityException {
+        logWriter.shutdownNow();
         perSessionRecords.clear();
         perThreadTempRecords.clear();
     }
 
-    public LogRecord[] records(String sessionId) throws IOException {
-        List<LogRecord> logFileRecords = logFileRepository.getLogRecords(sessionId);
-        List<LogRecord> records = perSessionRecords.get(sessionId);
-        logFileRecords.addAll(records);
-        return logFileRecords.toArray(new LogRecord[0]);
+    /**
+     * Writes the formatted log records of a session to the given writer, starting
+     * with those which have been moved to the session's log file.
+     */
+    public void writeFormattedRecords(String sessionId, Writer out) throws IOException {
+        SessionLog log = perSessionRecords.get(sessionId);
+        if (log == null) {
+            logFileRepository.writeLogTo(sessionId, out);
+            return;
+        }
+        // Hold the session's log so that no records are between memory and file
+        synchronized (log) {
+            logFileRepository.writeLogTo(sessionId, out);
+            for (LogRecord record : log.records) {
+                out.write(formatter.format(record));
+            }
+        }
     }
 
     public String formattedRecords(String sessionId) throws IOException {
         final StringWriter writer;
 
         writer = new StringWriter();
-        for (LogRecord record : records(sessionId)) {
-            writer.append(formatter.format(record));
-        }
+        writeFormattedRecords(sessionId, writer);
         return writer.toString();
     }
 
@@ -131,22 +190,26 @@ public class PerSessionLogHandler extends java.util.logging.Handler {
     
     public void clearSessionLogRecords(String sessionId) throws IOException {
         Long threadId = sessionToThreadMap.get(sessionId);
-        String sessionIdForThread = threadToSessionMap.get(threadId);
+        String sessionIdForThread = threadId == null ? null : threadToSessionMap.get(threadId);
         if (threadId != null && sessionIdForThread != null && sessionIdForThread.equals(sessionId)) {
             threadToSessionMap.remove(threadId);
             sessionToThreadMap.remove(sessionId);
         }
-        perSessionRecords.remove(sessionId);
-        logFileRepository.removeLogFile(sessionId);
+        SessionLog log = perSessionRecords.remove(sessionId);
+        if (log == null) {
+            logFileRepository.removeLogFile(sessionId);
+            return;
+        }
+        synchronized (log) {
+            logFileRepository.removeLogFile(sessionId);
+        }
     }
 
     public void copyThreadTempLogsToSessionLogs(String sessionId, long threadId) {
-        List<LogRecord> records = perThreadTempRecords.get(threadId);
-        List<LogRecord> sessionRecords = new ArrayList<LogRecord>();
+        SessionLog records = perThreadTempRecords.get(threadId);
 
         if (perSessionRecords.get(sessionId) == null && records != null) {
-            sessionRecords.addAll(records);
-            perSessionRecords.put(sessionId, sessionRecords);
+            perSessionRecords.put(sessionId, records);
             perThreadTempRecords.remove(threadId);
         }
     }
@@ -164,4 +227,29 @@ public class PerSessionLogHandler extends java.util.logging.Handler {
                 + "\n</RC_Logs>\n";
         return logs;
     }
+
+    /**
+     * The records of one session which have not yet been written to its log file.
+     */
+    private static class SessionLog {
+        private final Queue<LogRecord> records = new ConcurrentLinkedQueue<LogRecord>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+        /**
+         * @return the number of records held after adding this one
+         */
+        int add(LogRecord record) {
+            records.add(record);
+            return size.incrementAndGet();
+        }
+
+        LogRecord poll() {
+            LogRecord record = records.poll();
+            if (record != null) {
+                size.decrementAndGet();
+            }
+            return record;
+        }
+    }
 }
@@ -1,153 +1,147 @@
 package org.openqa.selenium.server.log;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Map;
-import java.util.logging.LogRecord;
+import java.util.concurrent.ConcurrentHashMap;
 
 class LogFile {
+    private static final String ENCODING = "UTF-8";
+
     private String logName;
-    private ObjectOutputStream logWriter;
-    private ObjectInputStream logReader;
+    private Writer logWriter;
 
     public LogFile(String logName) {
         this.logName = logName;
     }
-   
+
+    /**
+     * Opens the file for appending, if it is not already open.  The file is kept open until
+     * it is removed, rather than being reopened for every write.
+     */
     public void openLogWriter() throws IOException {
-        logWriter = new ObjectOutputStream(new FileOutputStream(logName));
+        if (logWriter == null) {
+            logWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(logName, true), ENCODING));
+        }
     }
-    
+
     public void closeLogWriter() throws IOException {
         if (logWriter != null) {
             logWriter.close();
-        }
-    }
-    
-    public void openLogReader() throws IOException {
-        logReader = new ObjectInputStream(new FileInputStream(logName));
-    }
-    
-    public void closeLogReader() throws IOException {
-        if (logReader != null) {
-            logReader.close();
+            logWriter = null;
         }
     }
 
-    public ObjectOutputStream getLogWriter() {
+    public Writer getLogWriter() {
         return logWriter;
     }
 
-    public ObjectInputStream getLogReader() {
-        return logReader;
+    public Reader openLogReader() throws IOException {
+        if (logWriter != null) {
+            logWriter.flush();
+        }
+        return new InputStreamReader(new FileInputStream(logName), ENCODING);
     }
-    public void removeLogFile() throws IOException {        
+
+    public void removeLogFile() throws IOException {
         if (logName != null) {
-            closeLogReader();
             closeLogWriter();
             new File(logName).delete();
         }
     }
 }
 
+/**
+ * Keeps the formatted log output of each session in an append-only temporary file.
+ */
 public class SessionLogsToFileRepository {
     private Map<String, LogFile> sessionToLogFileMap;
 
     public SessionLogsToFileRepository() {
-        sessionToLogFileMap = new HashMap<String, LogFile>();
+        sessionToLogFileMap = new ConcurrentHashMap<String, LogFile>();
     }
 
     /**
-     * This creates log file object which represents logs in file form. This
-     * opens ObjectOutputStream which is used to write logRecords to log file
-     * and opens a ObjectInputStream which is used to read logRecords from the
-     * file.
-     * 
+     * This creates log file object which represents logs in file form.
+     *
      * @param sessionId
      *            session-id for the log file entry needs to be created.
      * @throws IOException
      */
-    private void createLogFileAndAddToMap(String sessionId) throws IOException {
+    private LogFile createLogFileAndAddToMap(String sessionId) throws IOException {
         File rcLogFile;
         // create logFile;
         rcLogFile = File.createTempFile(sessionId, ".rclog");
         rcLogFile.deleteOnExit();
         LogFile logFile = new LogFile(rcLogFile.getAbsolutePath());
         sessionToLogFileMap.put(sessionId, logFile);
+        return logFile;
     }
 
     /**
      * This creates a mapping between session and file representation of logs if
-     * doesnt exist already. Writes the log records to the log file. This does
-     * *NOT* flush the logs to file. This does *NOT* clear the records after
-     * writing to file.
-     * 
+     * doesnt exist already, and appends the formatted log output to the end of
+     * the log file.
+     *
      * @param sessionId
-     *            session-id to which the log records belong
-     * @param records
-     *            logRecords that need to be stored
-     * @throws IOException 
+     *            session-id to which the log output belongs
+     * @param formattedRecords
+     *            formatted log records that need to be stored
+     * @throws IOException
      */
-    synchronized public void flushRecordsToLogFile(String sessionId,
-            List<LogRecord> records) throws IOException {
+    synchronized public void appendToLogFile(String sessionId, String formattedRecords)
+            throws IOException {
         LogFile logFile = sessionToLogFileMap.get(sessionId);
 
         if (logFile == null) {
-            createLogFileAndAddToMap(sessionId);
-            logFile = sessionToLogFileMap.get(sessionId);
+            logFile = createLogFileAndAddToMap(sessionId);
         }
-        
+
         logFile.openLogWriter();
-        for (LogRecord record : records) {
-            logFile.getLogWriter().writeObject(record);
-        }
-        logFile.closeLogWriter();
+        logFile.getLogWriter().write(formattedRecords);
     }
 
     /**
-     * This returns the log records storied in the corresponding log file. This
-     * does *NOT* clear the log records in the file.
-     * 
+     * This copies the log output stored in the corresponding log file to the
+     * given writer, without loading the whole file into memory. This does
+     * *NOT* clear the log file.
+     *
      * @param sessionId
      *            session-id for which the file logs needs to be returned.
-     * @return
-     * @throws IOException 
+     * @param out
+     *            where to write the log output
+     * @throws IOException
      */
-    public List<LogRecord> getLogRecords(String sessionId) throws IOException {
+    public void writeLogTo(String sessionId, Writer out) throws IOException {
         LogFile logFile = sessionToLogFileMap.get(sessionId);
         if (logFile == null) {
-            return new ArrayList<LogRecord>();
+            return;
+        }
+
+        Reader reader;
+        synchronized (this) {
+            reader = logFile.openLogReader();
         }
-        logFile.openLogReader();
-        ObjectInputStream logObjInStream = logFile.getLogReader();
-        List<LogRecord> logRecords = new ArrayList<LogRecord>();
         try {
-            LogRecord tmpLogRecord;
-            while (null != (tmpLogRecord = (LogRecord) logObjInStream
-                    .readObject())) {
-                logRecords.add(tmpLogRecord);
+            char[] buffer = new char[8192];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                out.write(buffer, 0, read);
             }
-        } catch (IOException ex) {
-            logFile.closeLogReader();
-            return logRecords;
-        } catch (ClassNotFoundException e) {
-            logFile.closeLogReader();
-            return logRecords;
+        } finally {
+            reader.close();
         }
-        logFile.closeLogReader();
-        return logRecords;
     }
 
-    public void removeLogFile(String sessionId) throws IOException {
-        LogFile logFile = sessionToLogFileMap.get(sessionId);
-        sessionToLogFileMap.remove(sessionId);
+    synchronized public void removeLogFile(String sessionId) throws IOException {
+        LogFile logFile = sessionToLogFileMap.remove(sessionId);
         if (logFile == null) {
             return;
         }
@@ -0,0 +1,75 @@
+package org.openqa.jetty.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import org.openqa.jetty.util.GatheringOutput;
+
+public class ChunkingOutputStreamUnitTest extends TestCase {
+
+    public void testLargeWriteIsSentAsOneGatheredChunk() throws Exception {
+        GatheringStream gathering = new GatheringStream();
+        String content = chunkOfContent();
+
+        writeAndClose(gathering, content);
+
+        assertEquals("c8\r\n" + content + "\r\n0\r\n\r\n", gathering.toString("ISO-8859-1"));
+        assertEquals(1, gathering.gathers);
+    }
+
+    public void testGatheredChunksAreFramedLikeUngatheredOnes() throws Exception {
+        GatheringStream gathering = new GatheringStream();
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        String content = chunkOfContent();
+
+        writeAndClose(gathering, content);
+        writeAndClose(plain, content);
+
+        assertEquals(plain.toString("ISO-8859-1"), gathering.toString("ISO-8859-1"));
+    }
+
+    public void testUnchunkedLargeWriteIsNotFramed() throws Exception {
+        GatheringStream gathering = new GatheringStream();
+        ChunkingOutputStream out = new ChunkingOutputStream(gathering, 64, 0, false);
+        String content = chunkOfContent();
+
+        out.flush();
+        out.write(content.getBytes("ISO-8859-1"));
+        out.close();
+
+        assertEquals(content, gathering.toString("ISO-8859-1"));
+        assertEquals(0, gathering.gathers);
+    }
+
+    private static void writeAndClose(ByteArrayOutputStream to, String content) throws IOException {
+        ChunkingOutputStream out = new ChunkingOutputStream(to, 64, 0);
+        // committing the stream lets large writes bypass its buffer
+        out.flush();
+        out.write(content.getBytes("ISO-8859-1"));
+        out.close();
+    }
+
+    /** @return more content than fits in the stream's buffer, 200 (0xc8) bytes of it */
+    private static String chunkOfContent() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        return content.toString();
+    }
+
+    private static class GatheringStream extends ByteArrayOutputStream implements GatheringOutput {
+        int gathers;
+
+        public void write(ByteBuffer[] buffers) {
+            gathers++;
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    write(buffer.get());
+                }
+            }
+        }
+    }
+}
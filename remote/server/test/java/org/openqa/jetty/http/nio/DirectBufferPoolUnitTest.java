@@ -0,0 +1,51 @@
+package org.openqa.jetty.http.nio;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class DirectBufferPoolUnitTest extends TestCase {
+
+    public void testReturnedBufferIsReusedCleared() {
+        DirectBufferPool pool = new DirectBufferPool(16, 2);
+        ByteBuffer buffer = pool.getBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(16, buffer.capacity());
+        buffer.put((byte) 1).flip();
+
+        pool.returnBuffer(buffer);
+        assertEquals(1, pool.getIdleBuffers());
+
+        ByteBuffer reused = pool.getBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(16, reused.limit());
+        assertEquals(0, pool.getIdleBuffers());
+        assertEquals(1, pool.getExhaustions());
+    }
+
+    public void testNoMoreThanThePoolSizeIsKept() {
+        DirectBufferPool pool = new DirectBufferPool(16, 2);
+        ByteBuffer[] buffers = {pool.getBuffer(), pool.getBuffer(), pool.getBuffer()};
+        assertEquals(3, pool.getExhaustions());
+
+        for (ByteBuffer buffer : buffers) {
+            pool.returnBuffer(buffer);
+        }
+        assertEquals(2, pool.getIdleBuffers());
+
+        pool.getBuffer();
+        pool.getBuffer();
+        assertEquals(3, pool.getExhaustions());
+        pool.getBuffer();
+        assertEquals(4, pool.getExhaustions());
+    }
+
+    public void testBuffersOfTheWrongKindAreNotKept() {
+        DirectBufferPool pool = new DirectBufferPool(16, 2);
+        pool.returnBuffer(null);
+        pool.returnBuffer(ByteBuffer.allocate(16));
+        pool.returnBuffer(ByteBuffer.allocateDirect(32));
+        assertEquals(0, pool.getIdleBuffers());
+    }
+}
@@ -0,0 +1,135 @@
+package org.openqa.jetty.http.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SocketChannelOutputStreamUnitTest extends TestCase {
+    private ServerSocketChannel server;
+    private SocketChannel channel;
+    private Reader reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+        channel = SocketChannel.open();
+        // a small send buffer, so that big writes only go out a part at a time
+        channel.socket().setSendBufferSize(1024);
+        channel.connect(new InetSocketAddress("localhost", server.socket().getLocalPort()));
+        channel.configureBlocking(false);
+        reader = new Reader(server.accept());
+        reader.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.close();
+        server.close();
+    }
+
+    public void testSmallGatheredBuffersAreCopiedThroughThePooledBuffer() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(64, 1);
+        SocketChannelOutputStream out = new SocketChannelOutputStream(channel, pool);
+
+        out.write(new ByteBuffer[] {wrap("4\r\n"), wrap("data"), wrap("\r\n")});
+        out.destroy();
+
+        assertEquals("4\r\ndata\r\n", new String(reader.readAll(), "ISO-8859-1"));
+        assertEquals(9, pool.getBytesBuffered());
+        assertEquals(0, pool.getSpills());
+        assertEquals(1, pool.getIdleBuffers());
+    }
+
+    public void testLargeGatheredBuffersAreWrittenInFullAcrossPartialWrites() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(64, 1);
+        SocketChannelOutputStream out = new SocketChannelOutputStream(channel, pool);
+        // far more than the socket can take in one write
+        byte[] content = bytes(4 * 1024 * 1024);
+
+        out.write(new ByteBuffer[] {wrap("400000\r\n"), ByteBuffer.wrap(content), wrap("\r\n")});
+        out.write(new ByteBuffer[] {wrap("0\r\n\r\n")});
+        out.destroy();
+
+        byte[] expected = concat(bytes("400000\r\n"), content, bytes("\r\n0\r\n\r\n"));
+        assertTrue(Arrays.equals(expected, reader.readAll()));
+        assertEquals(1, pool.getSpills());
+    }
+
+    public void testLargeWritesAreWrittenInFullAcrossPartialWrites() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(64, 1);
+        SocketChannelOutputStream out = new SocketChannelOutputStream(channel, pool);
+        byte[] content = bytes(4 * 1024 * 1024);
+
+        out.write(content, 0, content.length);
+        out.destroy();
+
+        assertTrue(Arrays.equals(content, reader.readAll()));
+        assertEquals(1, pool.getSpills());
+    }
+
+    private static ByteBuffer wrap(String s) throws IOException {
+        return ByteBuffer.wrap(bytes(s));
+    }
+
+    private static byte[] bytes(String s) throws IOException {
+        return s.getBytes("ISO-8859-1");
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Reads everything sent down the connection, a little at a time, until the writer closes it. */
+    private class Reader extends Thread {
+        private final SocketChannel accepted;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Reader(SocketChannel accepted) {
+            this.accepted = accepted;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                InputStream in = accepted.socket().getInputStream();
+                byte[] buffer = new byte[512];
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    synchronized (received) {
+                        received.write(buffer, 0, read);
+                    }
+                }
+                accepted.close();
+            } catch (IOException e) {
+                // the test fails on what was received
+            }
+        }
+
+        byte[] readAll() throws Exception {
+            channel.close();
+            join(10000);
+            synchronized (received) {
+                return received.toByteArray();
+            }
+        }
+    }
+}
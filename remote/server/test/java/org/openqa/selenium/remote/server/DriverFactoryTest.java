@@ -17,13 +17,21 @@ limitations under the License.
 
 package org.openqa.selenium.remote.server;
 
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
 import org.openqa.selenium.Platform;
+import org.openqa.selenium.Speed;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.Capabilities;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
 import junit.framework.TestCase;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 public class DriverFactoryTest extends TestCase {
   private DriverFactory factory;
 
@@ -103,6 +111,147 @@ public class DriverFactoryTest extends TestCase {
     assertEquals(DriverTwo.class, factory.getBestMatchFor(javascript));
   }
   
+  public void testShouldHandOutAPooledDriverAndQuitItWhenReleased() throws Exception {
+    DriverFactory pooling = new DriverFactory(1);
+    Capabilities capabilities = DesiredCapabilities.htmlUnit();
+    pooling.registerDriver(capabilities, PoolableDriver.class);
+
+    PoolableDriver first = (PoolableDriver) pooling.newInstance(capabilities);
+    assertEquals(1, pooling.getPoolMisses());
+    waitForPoolDepth(pooling, 1);
+
+    PoolableDriver.failToStart = true;
+    try {
+      PoolableDriver second = (PoolableDriver) pooling.newInstance(capabilities);
+      assertEquals(1, pooling.getPoolHits());
+      assertEquals(0, pooling.getPoolDepth());
+
+      // A used driver may carry state from its session, so it never goes back in
+      pooling.release(second);
+      assertTrue(second.quit);
+      assertEquals(0, pooling.getPoolDepth());
+
+      pooling.release(first);
+      assertTrue(first.quit);
+      assertEquals(0, pooling.getPoolDepth());
+    } finally {
+      PoolableDriver.failToStart = false;
+    }
+  }
+
+  public void testShouldNotPoolDriversByDefault() {
+    factory.registerDriver(DesiredCapabilities.htmlUnit(), PoolableDriver.class);
+
+    PoolableDriver driver = (PoolableDriver) factory.newInstance(DesiredCapabilities.htmlUnit());
+    factory.release(driver);
+
+    assertTrue(driver.quit);
+    assertEquals(0, factory.getPoolDepth());
+  }
+
+  private void waitForPoolDepth(DriverFactory pooling, int depth) throws InterruptedException {
+    long end = System.currentTimeMillis() + 5000;
+    while (pooling.getPoolDepth() != depth && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    assertEquals(depth, pooling.getPoolDepth());
+  }
+
   public static abstract class DriverOne implements WebDriver {}
   public static abstract class DriverTwo implements WebDriver {}
+
+  public static class PoolableDriver implements WebDriver {
+    static volatile boolean failToStart;
+
+    volatile boolean quit;
+    volatile String url;
+
+    public PoolableDriver() {
+      if (failToStart) {
+        throw new IllegalStateException("Not starting");
+      }
+    }
+
+    public void get(String url) {
+      this.url = url;
+    }
+
+    public String getCurrentUrl() {
+      return url;
+    }
+
+    public String getTitle() {
+      return "";
+    }
+
+    public List<WebElement> findElements(By by) {
+      return Collections.emptyList();
+    }
+
+    public WebElement findElement(By by) {
+      return null;
+    }
+
+    public String getPageSource() {
+      return "";
+    }
+
+    public void close() {
+    }
+
+    public void quit() {
+      quit = true;
+    }
+
+    public Set<String> getWindowHandles() {
+      return Collections.singleton("main");
+    }
+
+    public String getWindowHandle() {
+      return "main";
+    }
+
+    public TargetLocator switchTo() {
+      return null;
+    }
+
+    public Navigation navigate() {
+      return null;
+    }
+
+    public Options manage() {
+      return new Options() {
+        public void addCookie(Cookie cookie) {
+        }
+
+        public void deleteCookieNamed(String name) {
+        }
+
+        public void deleteCookie(Cookie cookie) {
+        }
+
+        public void deleteAllCookies() {
+        }
+
+        public Set<Cookie> getCookies() {
+          return Collections.emptySet();
+        }
+
+        public Cookie getCookieNamed(String name) {
+          return null;
+        }
+
+        public Speed getSpeed() {
+          return null;
+        }
+
+        public void setSpeed(Speed speed) {
+        }
+
+        public Timeouts timeouts() {
+          return null;
+        }
+      };
+    }
+  }
 }
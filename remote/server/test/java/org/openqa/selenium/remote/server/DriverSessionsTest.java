@@ -0,0 +1,114 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server;
+
+import org.jmock.Expectations;
+import org.jmock.integration.junit3.MockObjectTestCase;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Capabilities;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.SessionId;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DriverSessionsTest extends MockObjectTestCase {
+
+  public void testShouldGiveEachSessionADistinctId() throws Exception {
+    DriverSessions sessions = newSessions(0, 0);
+
+    SessionId first = sessions.newSession(DesiredCapabilities.htmlUnit());
+    SessionId second = sessions.newSession(DesiredCapabilities.htmlUnit());
+
+    assertFalse(first.equals(second));
+    assertEquals(2, sessions.getLiveSessionCount());
+    sessions.shutdown();
+  }
+
+  public void testShouldRejectSessionsBeyondTheLimitForABrowser() throws Exception {
+    DriverSessions sessions = newSessions(1, 0);
+    SessionId first = sessions.newSession(DesiredCapabilities.htmlUnit());
+
+    try {
+      sessions.newSession(DesiredCapabilities.htmlUnit());
+      fail("Expected the second session to be rejected");
+    } catch (WebDriverException e) {
+      // Expected
+    }
+    assertEquals(1, sessions.getRejectedSessionCount());
+
+    // Other browsers have their own limit
+    sessions.newSession(DesiredCapabilities.firefox());
+
+    sessions.deleteSession(first);
+    sessions.newSession(DesiredCapabilities.htmlUnit());
+    assertEquals(2, sessions.getLiveSessionCount());
+    sessions.shutdown();
+  }
+
+  public void testShouldQuitTheBrowserOfAnIdleSession() throws Exception {
+    DriverSessions sessions = newSessions(0, 1);
+    SessionId sessionId = sessions.newSession(DesiredCapabilities.htmlUnit());
+
+    Thread.sleep(20);
+    sessions.reapIdleSessions();
+
+    assertNull(sessions.get(sessionId));
+    assertEquals(0, sessions.getLiveSessionCount());
+    assertEquals(1, sessions.getReapedSessionCount());
+    sessions.shutdown();
+  }
+
+  public void testShouldOnlyCaptureAScreenshotWhenItIsAskedFor() throws Exception {
+    DriverSessions sessions = newSessions(0, 0);
+    Session session = sessions.get(sessions.newSession(DesiredCapabilities.htmlUnit()));
+    final AtomicInteger captures = new AtomicInteger();
+    Callable<byte[]> capture = new Callable<byte[]>() {
+      public byte[] call() {
+        captures.incrementAndGet();
+        return new byte[] {1, 2, 3};
+      }
+    };
+
+    session.attachScreenshot(capture);
+    session.attachScreenshot(capture);
+    assertEquals(0, captures.get());
+
+    assertEquals(3, session.getAndClearScreenshot().length);
+    assertEquals(1, captures.get());
+    assertNull(session.getAndClearScreenshot());
+    sessions.shutdown();
+  }
+
+  private DriverSessions newSessions(int maxSessions, long idleTimeout) {
+    final WebDriver driver = mock(WebDriver.class);
+    checking(new Expectations() {{
+      allowing(driver).quit();
+    }});
+
+    DriverFactory factory = new DriverFactory() {
+      @Override
+      public WebDriver newInstance(Capabilities capabilities) {
+        return driver;
+      }
+    };
+    return new DriverSessions(Platform.getCurrent(), factory, maxSessions, 0, idleTimeout);
+  }
+}
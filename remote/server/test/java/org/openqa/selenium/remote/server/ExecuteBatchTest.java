@@ -0,0 +1,192 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.ImmutableMap;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.server.handler.ExecuteBatch;
+import org.openqa.selenium.remote.server.handler.WebDriverHandler;
+import org.openqa.selenium.remote.server.rest.ResultConfig;
+import org.openqa.selenium.remote.server.rest.ResultType;
+import org.openqa.selenium.remote.server.rest.Router;
+import org.openqa.selenium.remote.server.rest.UrlMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ExecuteBatchTest extends TestCase {
+  private UrlMapper getMapper;
+  private UrlMapper postMapper;
+
+  @Override
+  protected void setUp() throws Exception {
+    DriverSessions sessions = new DriverSessions();
+    Router router = new Router() {
+      public ResultConfig getConfig(String httpMethod, String url) throws Exception {
+        return "GET".equals(httpMethod) ? getMapper.getConfig(url) : postMapper.getConfig(url);
+      }
+    };
+    getMapper = new UrlMapper(sessions, new NullLogTo(), router);
+    postMapper = new UrlMapper(sessions, new NullLogTo(), router);
+
+    postMapper.bind("/session/:sessionId/batch", ExecuteBatch.class);
+    postMapper.bind("/session/:sessionId/element", FindOne.class);
+    postMapper.bind("/session/:sessionId/elements", FindMany.class);
+    getMapper.bind("/session/:sessionId/element/:id/text", EchoId.class);
+    getMapper.bind("/session/:sessionId/missing", AlwaysFails.class);
+  }
+
+  public void testShouldRunEachCommandInOrder() throws Exception {
+    List<Response> responses = runBatch(
+        command("POST", "/session/1234/element", null),
+        command("GET", "/session/1234/element/7/text", null));
+
+    assertEquals(2, responses.size());
+    assertEquals(ImmutableMap.of("ELEMENT", "42"), responses.get(0).getValue());
+    assertEquals("7", responses.get(1).getValue());
+  }
+
+  public void testShouldResolveReferencesToEarlierElementsInPathsAndParameters() throws Exception {
+    List<Response> responses = runBatch(
+        command("POST", "/session/1234/element", null),
+        command("POST", "/session/1234/elements", null),
+        command("GET", "/session/1234/element/%240/text", null),
+        command("GET", "/session/1234/element/$1.1/text", null),
+        command("POST", "/session/1234/element", ImmutableMap.<String, Object>of("id", "$1.0")));
+
+    assertEquals("42", responses.get(2).getValue());
+    assertEquals("2", responses.get(3).getValue());
+    assertEquals(ImmutableMap.of("ELEMENT", "1"), responses.get(4).getValue());
+  }
+
+  public void testShouldStopAtTheFirstFailure() throws Exception {
+    List<Response> responses = runBatch(
+        command("GET", "/session/1234/missing", null),
+        command("POST", "/session/1234/element", null));
+
+    assertEquals(1, responses.size());
+    assertEquals(ErrorCodes.NO_SUCH_ELEMENT, responses.get(0).getStatus());
+  }
+
+  public void testShouldRefuseToRunCommandsForAnotherSession() throws Exception {
+    List<Response> responses = runBatch(command("POST", "/session/5678/element", null));
+
+    assertEquals(ErrorCodes.UNHANDLED_ERROR, responses.get(0).getStatus());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Response> runBatch(Map<String, Object>... commands) throws Exception {
+    String path = "/session/1234/batch";
+    ExecuteBatch batch = (ExecuteBatch) postMapper.getConfig(path).getHandler(path);
+    batch.setJsonParameters(ImmutableMap.<String, Object>of(
+        "commands", new ArrayList<Map<String, Object>>(Arrays.asList(commands))));
+
+    assertEquals(ResultType.SUCCESS, batch.call());
+    return (List<Response>) batch.getResponse().getValue();
+  }
+
+  private Map<String, Object> command(String method, String path, Map<String, Object> parameters) {
+    Map<String, Object> command = new HashMap<String, Object>();
+    command.put("method", method);
+    command.put("path", path);
+    command.put("parameters", parameters);
+    return command;
+  }
+
+  public static class FindOne extends WebDriverHandler implements JsonParametersAware {
+    private Response response;
+    private Object id;
+
+    public FindOne(DriverSessions sessions) {
+      super(sessions);
+    }
+
+    public void setJsonParameters(Map<String, Object> allParameters) {
+      id = allParameters.get("id");
+    }
+
+    public ResultType call() {
+      response = newResponse();
+      response.setValue(ImmutableMap.of("ELEMENT", id == null ? "42" : id));
+      return ResultType.SUCCESS;
+    }
+
+    public Response getResponse() {
+      return response;
+    }
+  }
+
+  public static class FindMany extends WebDriverHandler {
+    private Response response;
+
+    public FindMany(DriverSessions sessions) {
+      super(sessions);
+    }
+
+    public ResultType call() {
+      response = newResponse();
+      response.setValue(Arrays.asList(
+          ImmutableMap.of("ELEMENT", "1"), ImmutableMap.of("ELEMENT", "2")));
+      return ResultType.SUCCESS;
+    }
+
+    public Response getResponse() {
+      return response;
+    }
+  }
+
+  public static class EchoId extends WebDriverHandler {
+    private Response response;
+    private String id;
+
+    public EchoId(DriverSessions sessions) {
+      super(sessions);
+    }
+
+    public void setId(String id) {
+      this.id = id;
+    }
+
+    public ResultType call() {
+      response = newResponse();
+      response.setValue(id);
+      return ResultType.SUCCESS;
+    }
+
+    public Response getResponse() {
+      return response;
+    }
+  }
+
+  public static class AlwaysFails extends WebDriverHandler {
+    public AlwaysFails(DriverSessions sessions) {
+      super(sessions);
+    }
+
+    public ResultType call() {
+      throw new NoSuchElementException("Not here");
+    }
+  }
+}
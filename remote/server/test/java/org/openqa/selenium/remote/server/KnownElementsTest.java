@@ -0,0 +1,92 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server;
+
+import org.jmock.Expectations;
+import org.jmock.integration.junit3.MockObjectTestCase;
+import org.openqa.selenium.RenderedWebElement;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+
+public class KnownElementsTest extends MockObjectTestCase {
+
+  public void testShouldWrapElementsWithoutChangingTheirInterfaces() {
+    KnownElements known = new KnownElements();
+    final WebElement plain = mock(WebElement.class, "plain");
+    RenderedWebElement rendered = mock(RenderedWebElement.class, "rendered");
+
+    checking(new Expectations() {{
+      one(plain).getText(); will(returnValue("cheese"));
+    }});
+
+    WebElement first = known.get(known.add(plain));
+    WebElement second = known.get(known.add(rendered));
+
+    assertFalse(first instanceof RenderedWebElement);
+    assertTrue(second instanceof RenderedWebElement);
+    assertEquals("cheese", first.getText());
+    assertSame(plain, ((KnownElements.ProxiedElement) first).getWrappedElement());
+    assertEquals("1", ((KnownElements.ProxiedElement) second).getId());
+  }
+
+  public void testShouldEvictTheLeastRecentlyUsedElementWhenFull() {
+    KnownElements known = new KnownElements(2);
+    String first = known.add(mock(WebElement.class, "first"));
+    String second = known.add(mock(WebElement.class, "second"));
+
+    known.get(first);
+    String third = known.add(mock(WebElement.class, "third"));
+
+    assertNotNull(known.get(first));
+    assertNotNull(known.get(third));
+    assertStale(known, second);
+    assertEquals(2, known.getLiveCount());
+    assertEquals(1, known.getEvictedCount());
+    assertEquals(1, known.getStaleLookupCount());
+  }
+
+  public void testShouldTreatElementsFromAnEarlierPageAsStale() {
+    KnownElements known = new KnownElements();
+    String before = known.add(mock(WebElement.class, "before"));
+
+    known.pageChanged();
+    String after = known.add(mock(WebElement.class, "after"));
+
+    assertStale(known, before);
+    assertNotNull(known.get(after));
+    assertEquals(1, known.getInvalidatedCount());
+  }
+
+  public void testShouldReturnNullForAnIdThatWasNeverHandedOut() {
+    KnownElements known = new KnownElements();
+    known.add(mock(WebElement.class));
+
+    assertNull(known.get("7"));
+    assertNull(known.get("cheese"));
+    assertEquals(0, known.getStaleLookupCount());
+  }
+
+  private void assertStale(KnownElements known, String id) {
+    try {
+      known.get(id);
+      fail("Expected element " + id + " to be stale");
+    } catch (StaleElementReferenceException e) {
+      // Expected
+    }
+  }
+}
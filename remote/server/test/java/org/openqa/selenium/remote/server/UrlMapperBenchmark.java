@@ -0,0 +1,90 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.remote.server;
+
+import org.openqa.selenium.remote.server.rest.UrlMapper;
+
+/**
+ * Measures how long it takes to route a request through the full route table
+ * of the {@link DriverServlet}. Run it from the command line with the test
+ * classpath; it is not part of any suite.
+ */
+public class UrlMapperBenchmark {
+
+  private static final String[][] REQUESTS = {
+      {"POST", "/session"},
+      {"GET", "/session/1234"},
+      {"DELETE", "/session/1234"},
+      {"GET", "/session/1234/window_handle"},
+      {"POST", "/session/1234/url"},
+      {"GET", "/session/1234/url"},
+      {"POST", "/session/1234/execute"},
+      {"GET", "/session/1234/source"},
+      {"GET", "/session/1234/title"},
+      {"POST", "/session/1234/element"},
+      {"POST", "/session/1234/elements"},
+      {"POST", "/session/1234/element/active"},
+      {"GET", "/session/1234/element/5"},
+      {"POST", "/session/1234/element/5/elements"},
+      {"POST", "/session/1234/element/5/click"},
+      {"GET", "/session/1234/element/5/text"},
+      {"POST", "/session/1234/element/5/value"},
+      {"GET", "/session/1234/element/5/displayed"},
+      {"GET", "/session/1234/element/5/css/color"},
+      {"GET", "/session/1234/element/5/attribute/href"},
+      {"GET", "/session/1234/element/5/equals/6"},
+      {"DELETE", "/session/1234/cookie/foo"},
+      {"POST", "/session/1234/timeouts/implicit_wait"},
+      {"GET", "/session/1234/no/such/url"},
+  };
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+    DriverServlet servlet = new DriverServlet();
+    servlet.init();
+
+    UrlMapper[] mappers = new UrlMapper[REQUESTS.length];
+    for (int i = 0; i < REQUESTS.length; i++) {
+      mappers[i] = servlet.getMapper(REQUESTS[i][0]);
+    }
+
+    // Warm up so that the JIT has compiled the routing code
+    route(mappers, iterations / 10);
+
+    long start = System.nanoTime();
+    int matched = route(mappers, iterations);
+    long duration = System.nanoTime() - start;
+
+    long routed = (long) iterations * REQUESTS.length;
+    System.out.println(String.format("Routed %d requests (%d matched) in %dms: %.1fns per request",
+        routed, matched, duration / 1000000, (double) duration / routed));
+  }
+
+  private static int route(UrlMapper[] mappers, int iterations) throws Exception {
+    int matched = 0;
+    for (int i = 0; i < iterations; i++) {
+      for (int j = 0; j < REQUESTS.length; j++) {
+        if (mappers[j].getConfig(REQUESTS[j][1]) != null) {
+          matched++;
+        }
+      }
+    }
+    return matched;
+  }
+}
@@ -22,6 +22,7 @@ import junit.framework.TestCase;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import org.openqa.selenium.remote.server.rest.Handler;
 import org.openqa.selenium.remote.server.rest.ResultConfig;
 import org.openqa.selenium.remote.server.rest.ResultType;
@@ -50,6 +51,31 @@ public class UrlMapperTest extends TestCase {
     assertThat(handler.getSessions(), is(notNullValue()));
   }
 
+  public void testShouldPreferALiteralSegmentToAPlaceholder() throws Exception {
+    UrlMapper mapper = new UrlMapper(new DriverSessions(), new NullLogTo());
+    ResultConfig byId = mapper.bind("/element/:id", StubHandler.class);
+    ResultConfig active = mapper.bind("/element/active", StubHandler.class);
+
+    assertThat(mapper.getConfig("/element/active"), is(active));
+    assertThat(mapper.getConfig("/element/5"), is(byId));
+  }
+
+  public void testShouldFallBackToAPlaceholderWhenTheLiteralBranchDoesNotMatch() throws Exception {
+    UrlMapper mapper = new UrlMapper(new DriverSessions(), new NullLogTo());
+    mapper.bind("/session/active/window", StubHandler.class);
+    ResultConfig title = mapper.bind("/session/:sessionId/title", StubHandler.class);
+
+    assertThat(mapper.getConfig("/session/active/title"), is(title));
+  }
+
+  public void testShouldReturnNullForAnUnknownUrl() throws Exception {
+    UrlMapper mapper = new UrlMapper(new DriverSessions(), new NullLogTo());
+    mapper.bind("/session/:sessionId", StubHandler.class);
+
+    assertThat(mapper.getConfig("/session"), is(nullValue()));
+    assertThat(mapper.getConfig("/session/1/cheese"), is(nullValue()));
+  }
+
   public static class SessionHandler implements Handler {
 
     private final DriverSessions sessions;
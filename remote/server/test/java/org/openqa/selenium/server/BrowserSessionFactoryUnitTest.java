@@ -3,6 +3,7 @@ package org.openqa.selenium.server;
 import org.openqa.selenium.server.BrowserSessionFactory.BrowserSessionInfo;
 import org.openqa.selenium.server.browserlaunchers.BrowserLauncherFactory;
 import org.openqa.selenium.server.browserlaunchers.DummyLauncher;
+import org.openqa.selenium.server.commands.CaptureNetworkTrafficCommand;
 import org.openqa.selenium.server.log.LoggingManager;
 import org.openqa.selenium.server.log.StdOutHandler;
 import org.openqa.selenium.server.log.TerseFormatter;
@@ -207,6 +208,91 @@ public class BrowserSessionFactoryUnitTest extends TestCase {
         assertFalse(factory.hasAvailableSession(SESSION_ID_1));
     }
 
+    public void testRemoveIdleAvailableSessionsClosesTheirBrowsers() {
+        BrowserSessionFactory factory = getTestSessionFactory();
+        final boolean[] closed = new boolean[1];
+        factory.addToAvailableSessions(new BrowserSessionInfo(
+                SESSION_ID_1, BROWSER_1, BASEURL1, new DummyLauncher() {
+                    @Override
+                    public void close() {
+                        closed[0] = true;
+                    }
+                }, null));
+        factory.removeIdleAvailableSessions();
+        assertTrue(closed[0]);
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1));
+    }
+
+    public void testRemoveIdleAvailableSessionsDiscardsTheirNetworkTraffic() {
+        BrowserSessionFactory factory = getTestSessionFactory();
+        factory.addToAvailableSessions(getTestSession1());
+        CaptureNetworkTrafficCommand.associate("127.0.0.1", SESSION_ID_1);
+        CaptureNetworkTrafficCommand.Entry entry =
+                new CaptureNetworkTrafficCommand.Entry("GET", "http://www.google.com/idle");
+        entry.finish(200, 0);
+        CaptureNetworkTrafficCommand.capture("127.0.0.1", entry);
+
+        factory.removeIdleAvailableSessions();
+
+        String traffic = new CaptureNetworkTrafficCommand("plain", SESSION_ID_1).execute();
+        assertFalse(traffic, traffic.contains("/idle"));
+    }
+
+    public void testGrabAvailableSessionIgnoresSessionsForOtherUrls() {
+        BrowserSessionFactory factory = getTestSessionFactory();
+        factory.addToAvailableSessions(getTestSession2());
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1));
+        assertEquals(SESSION_ID_2, factory.grabAvailableSession(BROWSER2, BASEURL2).sessionId);
+        assertNull(factory.grabAvailableSession(BROWSER2, BASEURL2));
+    }
+
+    public void testGrabAvailableSessionIgnoresSessionsLaunchedWithOtherOptions() {
+        BrowserSessionFactory factory = getTestSessionFactory();
+        BrowserConfigurationOptions options = new BrowserConfigurationOptions("profile=one");
+        factory.addToAvailableSessions(new BrowserSessionInfo(SESSION_ID_1, BROWSER_1, BASEURL1,
+                "extension();", options.serialize(), new DummyLauncher(), null));
+
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1));
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1, "other();", options));
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1, "extension();",
+                new BrowserConfigurationOptions("profile=two")));
+        assertEquals(SESSION_ID_1, factory.grabAvailableSession(BROWSER_1, BASEURL1, "extension();",
+                new BrowserConfigurationOptions("profile=one")).sessionId);
+    }
+
+    public void testEndedAvailableSessionCannotBeGrabbed() {
+        BrowserSessionFactory factory = getTestSessionFactory();
+        factory.addToAvailableSessions(getTestSession1());
+        factory.endBrowserSession(true, SESSION_ID_1, new RemoteControlConfiguration());
+        assertFalse(factory.hasAvailableSession(SESSION_ID_1));
+        assertNull(factory.grabAvailableSession(BROWSER_1, BASEURL1));
+    }
+
+    public void testUnhealthyAvailableSessionsAreReplaced() {
+        BrowserSessionFactory factory = new BrowserSessionFactory(null, 0, 0, false) {
+            @Override
+            protected boolean isHealthy(BrowserSessionInfo sessionInfo) {
+                return !SESSION_ID_1.equals(sessionInfo.sessionId);
+            }
+        };
+        factory.addToAvailableSessions(getTestSession1());
+        factory.addToAvailableSessions(new BrowserSessionInfo(
+                SESSION_ID_2, BROWSER_1, BASEURL1, new DummyLauncher(), null));
+
+        BrowserSessionInfo result = factory.grabHealthyAvailableSession(BROWSER_1, BASEURL1);
+
+        assertEquals(SESSION_ID_2, result.sessionId);
+        assertEquals(1, factory.getUnhealthySessionCount());
+        assertFalse(factory.hasActiveSession(SESSION_ID_1));
+        assertFalse(factory.hasAvailableSession(SESSION_ID_1));
+        assertEquals(1, factory.getActiveSessionCount());
+        assertEquals(0, factory.getAvailableSessionCount());
+    }
+
+    public void testLaunchLatencyIsUnknownBeforeAnyLaunch() {
+        assertEquals(-1, getTestSessionFactory().getLaunchLatencyPercentile(50));
+    }
+
     public void disable_testRemoveIdleAvailableSessionsViaCleanup() {
         BrowserSessionFactory factory = new BrowserSessionFactory(null, 5, 0, true);
         BrowserSessionInfo info1 = getTestSession1();
@@ -60,4 +60,44 @@ public class FrameGroupCommandQueueUnitTest extends TestCase {
     FrameGroupCommandQueueSet.clearQueueSet(firstSessionId);
   }
 
+  public void testWaitingForALoadOnlyTakesThatSessionsLock() throws Exception {
+    FrameGroupCommandQueueSet session1 = 
+      FrameGroupCommandQueueSet.makeQueueSet(firstSessionId, RemoteControlConfiguration.DEFAULT_PORT, new RemoteControlConfiguration());
+    FrameGroupCommandQueueSet session2 = 
+      FrameGroupCommandQueueSet.makeQueueSet(secondSessionId, RemoteControlConfiguration.DEFAULT_PORT, new RemoteControlConfiguration());
+    session1.getCommandQueue(firstQueueId);
+
+    try {
+      session1.waitForLoad(1000);
+      fail("Nothing was loaded, so the wait should have timed out");
+    } catch (RemoteCommandException expected) {
+      // Expected
+    }
+
+    assertTrue(session1.getLockAcquisitions() > 0);
+    // The lock is released while waiting for the load
+    assertTrue("Held for " + session1.getLockHoldTime() + "ms", session1.getLockHoldTime() < 500);
+    assertEquals(0, session2.getLockAcquisitions());
+
+    FrameGroupCommandQueueSet.clearQueueSet(firstSessionId);
+    FrameGroupCommandQueueSet.clearQueueSet(secondSessionId);
+  }
+
+  public void testTheQueueOfAClosedWindowIsReclaimed() {
+    FrameGroupCommandQueueSet session1 = 
+      FrameGroupCommandQueueSet.makeQueueSet(firstSessionId, RemoteControlConfiguration.DEFAULT_PORT, new RemoteControlConfiguration());
+    session1.getCommandQueue(firstQueueId);
+    session1.getCommandQueue("popup queue");
+    assertEquals(2, session1.getQueueCount());
+
+    RemoteCommand next = session1.handleCommandResult(WindowClosedException.WINDOW_CLOSED_ERROR,
+        FrameGroupCommandQueueSet.makeFrameAddress("popup", "top"), "popup queue", false, null);
+
+    assertEquals("testComplete", next.getCommand());
+    assertEquals(1, session1.getQueueCount());
+    assertEquals(1, session1.getReclaimedQueueCount());
+
+    FrameGroupCommandQueueSet.clearQueueSet(firstSessionId);
+  }
+
 }
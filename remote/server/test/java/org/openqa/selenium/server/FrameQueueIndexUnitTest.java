@@ -0,0 +1,58 @@
+package org.openqa.selenium.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class FrameQueueIndexUnitTest extends TestCase {
+
+    private FrameQueueIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        index = new FrameQueueIndex();
+    }
+
+    public void testFindsQueuesByTheirLatestWindowName() {
+        index.setWindowName("1", "main");
+        index.setWindowName("2", "popup");
+        index.setWindowName("1", "renamed");
+
+        assertEquals(Collections.emptyList(), index.findByWindowName("main"));
+        assertEquals(Arrays.asList("1"), index.findByWindowName("renamed"));
+        assertEquals(Arrays.asList("2"), index.findByWindowName("popup"));
+    }
+
+    public void testFindsQueuesByJsVariable() {
+        index.setWindowName("1", "main");
+        index.addJsVariable("1", "myPopup");
+        index.addJsVariable("1", "myPopup");
+
+        assertEquals(Arrays.asList("1"), index.findByJsVariable("myPopup"));
+    }
+
+    public void testForgetsTheTitleOfAWindow() {
+        index.setTitle("1", "Home");
+        assertTrue(index.hasTitle("1"));
+        assertEquals(Arrays.asList("1"), index.findByTitle("Home"));
+
+        index.forgetTitle("1");
+
+        assertFalse(index.hasTitle("1"));
+        assertEquals(Collections.emptyList(), index.findByTitle("Home"));
+    }
+
+    public void testRemovesEveryTraceOfAQueue() {
+        index.setWindowName("1", "main");
+        index.addJsVariable("1", "myPopup");
+        index.setTitle("1", "Home");
+
+        index.remove("1");
+
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), index.findByWindowName("main"));
+        assertEquals(Collections.emptyList(), index.findByJsVariable("myPopup"));
+        assertEquals(Collections.emptyList(), index.findByTitle("Home"));
+    }
+}
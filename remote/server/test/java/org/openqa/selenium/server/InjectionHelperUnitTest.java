@@ -0,0 +1,167 @@
+package org.openqa.selenium.server;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openqa.jetty.http.HttpResponse;
+import org.openqa.jetty.util.IO;
+
+public class InjectionHelperUnitTest extends TestCase {
+    private static final String PAGE = "<html><head><title>page</title></head><body>hello</body></html>";
+
+    private HttpResponse response;
+
+    public void setUp() {
+        response = new HttpResponse();
+    }
+
+    public void tearDown() {
+        InjectionHelper.setTryToInjectInHead(false);
+        InjectionHelper.clearUserContentTransformations();
+    }
+
+    public void testShouldInjectSeleniumAtTheStartOfAnHtmlPage() throws Exception {
+        response.setContentType("text/html");
+        response.setField("Content-Length", Integer.toString(PAGE.length()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytesRead = InjectionHelper.injectJavaScript("/page.html", response, new ByteArrayInputStream(PAGE.getBytes()), out);
+
+        String injected = out.toString();
+        assertEquals(PAGE.length(), bytesRead);
+        assertTrue(injected.indexOf("injectedSessionId") < injected.indexOf(PAGE));
+        assertTrue(injected.endsWith(PAGE));
+        assertNull(response.getField("Content-Length"));
+    }
+
+    public void testShouldInjectSeleniumIntoTheHeadIfAsked() throws Exception {
+        InjectionHelper.setTryToInjectInHead(true);
+        response.setContentType("text/html");
+
+        String injected = inject("/page.html", PAGE);
+
+        assertTrue(injected.startsWith("<html><head>"));
+        assertTrue(injected.indexOf("injectedSessionId") < injected.indexOf("<title>"));
+        assertTrue(injected.endsWith("<title>page</title></head><body>hello</body></html>"));
+    }
+
+    public void testShouldPassAnythingButHtmlThroughUntouched() throws Exception {
+        byte[] script = new byte[300000];
+        Arrays.fill(script, (byte) 'x');
+        response.setContentType("application/x-javascript");
+        response.setField("Content-Length", Integer.toString(script.length));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytesRead = InjectionHelper.injectJavaScript("/script.js", response, new ByteArrayInputStream(script), out);
+
+        assertEquals(script.length, bytesRead);
+        assertTrue(Arrays.equals(script, out.toByteArray()));
+        assertEquals(Integer.toString(script.length), response.getField("Content-Length"));
+    }
+
+    public void testShouldStartSendingAnHtmlPageWithoutReadingAllOfIt() throws Exception {
+        byte[] body = new byte[300000];
+        Arrays.fill(body, (byte) 'x');
+        final ByteArrayInputStream in = new ByteArrayInputStream(concat(PAGE.getBytes(), body));
+        final int[] availableAtFirstWrite = {-1};
+        OutputStream out = new ByteArrayOutputStream() {
+            public synchronized void write(byte[] b, int off, int len) {
+                if (availableAtFirstWrite[0] == -1) {
+                    availableAtFirstWrite[0] = in.available();
+                }
+                super.write(b, off, len);
+            }
+        };
+        response.setContentType("text/html");
+
+        InjectionHelper.injectJavaScript("/page.html", response, in, out);
+
+        assertTrue(PAGE.length() + body.length - availableAtFirstWrite[0] <= 4096);
+    }
+
+    public void testShouldInjectIntoGzippedPagesAndKeepThemGzipped() throws Exception {
+        response.setContentType("text/html");
+        response.setField("Content-Encoding", "gzip");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InjectionHelper.injectJavaScript("/page.html", response, new ByteArrayInputStream(gzip(PAGE.getBytes())), out);
+
+        String injected = new String(gunzip(out.toByteArray()));
+        assertTrue(injected.indexOf("injectedSessionId") < injected.indexOf(PAGE));
+        assertTrue(injected.endsWith(PAGE));
+        assertEquals("gzip", response.getField("Content-Encoding"));
+    }
+
+    public void testShouldPassGzippedContentWhichIsNotHtmlThroughExactlyAsItCame() throws Exception {
+        byte[] script = new byte[300000];
+        Arrays.fill(script, (byte) 'x');
+        byte[] gzipped = gzip(script);
+        response.setContentType("application/x-javascript");
+        response.setField("Content-Encoding", "gzip");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytesRead = InjectionHelper.injectJavaScript("/script.js", response, new ByteArrayInputStream(gzipped), out);
+
+        assertEquals(gzipped.length, bytesRead);
+        assertTrue(Arrays.equals(gzipped, out.toByteArray()));
+    }
+
+    public void testShouldApplyUserContentTransformationsToTheWholePage() throws Exception {
+        InjectionHelper.addUserContentTransformation("h(e)llo", "j$1llo");
+        StringBuilder page = new StringBuilder("<html><body>\n");
+        for (int i = 0; i < 20000; i++) {
+            page.append("hello world\n");
+        }
+        page.append("</body></html>");
+        response.setContentType("text/html; charset=UTF-8");
+
+        String injected = inject("/page.html", page.toString());
+
+        assertTrue(injected.endsWith(page.toString().replace("hello", "jello")));
+    }
+
+    public void testShouldFallBackToPlainReplacementWhenATransformationIsNotARegularExpression() throws Exception {
+        InjectionHelper.addUserContentTransformation("hello(", "bye$");
+        response.setContentType("text/html");
+
+        String injected = inject("/page.html", "<html><body>hello(</body></html>");
+
+        assertTrue(injected.endsWith("<html><body>bye$</body></html>"));
+    }
+
+    private String inject(String path, String page) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InjectionHelper.injectJavaScript(path, response, new ByteArrayInputStream(page.getBytes("UTF-8")), out);
+        return out.toString("UTF-8");
+    }
+
+    private byte[] concat(byte[] a, byte[] b) {
+        byte[] both = new byte[a.length + b.length];
+        System.arraycopy(a, 0, both, 0, a.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+        gzipOut.write(content);
+        gzipOut.close();
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] gzipped) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO.copy(in, out);
+        return out.toByteArray();
+    }
+}
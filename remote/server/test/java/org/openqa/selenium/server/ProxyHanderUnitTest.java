@@ -1,10 +1,26 @@
 package org.openqa.selenium.server;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
 import junit.framework.TestCase;
+import org.apache.commons.httpclient.HttpMethod;
 import static org.easymock.classextension.EasyMock.createMock;
 import static org.easymock.classextension.EasyMock.expectLastCall;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
+import org.openqa.jetty.http.HttpListener;
 import org.openqa.jetty.http.HttpRequest;
 import org.openqa.jetty.http.HttpResponse;
 
@@ -41,4 +57,214 @@ public class ProxyHanderUnitTest extends TestCase {
 		assertNull(httpResponse.getAttribute("NotFound"));
 		verify(proxyHandlerMock);
 	}
+
+	public void testConnectTunnelsToOneRelayWhichPresentsACertificateForEachHost() throws Exception {
+		SeleniumServer server = new SeleniumServer(new RemoteControlConfiguration());
+		server.start();
+		try {
+			assertEquals("1.selenium.doesnotexist", connectAndGetCommonName(server, "1.selenium.doesnotexist"));
+			assertEquals("2.selenium.doesnotexist", connectAndGetCommonName(server, "2.selenium.doesnotexist"));
+			assertEquals("1.selenium.doesnotexist", connectAndGetCommonName(server, "1.selenium.doesnotexist"));
+
+			int relays = 0;
+			for (HttpListener listener : server.getServer().getListeners()) {
+				if (listener instanceof ProxyHandler.SslRelay) {
+					relays++;
+				}
+			}
+			assertEquals(1, relays);
+		} finally {
+			server.stop();
+		}
+	}
+
+	public void testRequestsToTheSameServerShareOneKeptAliveConnection() throws Exception {
+		KeepAliveServer upstream = new KeepAliveServer();
+		upstream.start();
+		SeleniumServer server = new SeleniumServer(new RemoteControlConfiguration());
+		server.start();
+		try {
+			String url = "http://localhost:" + upstream.getPort() + "/page";
+			for (int i = 0; i < 3; i++) {
+				String response = proxyGet(server, url);
+				assertTrue(response, response.startsWith("HTTP/1.1 200"));
+				assertTrue(response, response.endsWith("\r\n\r\nhello"));
+			}
+
+			assertEquals(1, upstream.getConnections());
+			String statistics = server.getProxyHandler().getConnectionStatistics();
+			assertTrue(statistics, statistics.indexOf("2 hits, 1 misses") != -1);
+		} finally {
+			server.stop();
+			upstream.close();
+		}
+	}
+
+	public void testCustomProxyHandlersCanChangeThePooledRequests() throws Exception {
+		KeepAliveServer upstream = new KeepAliveServer();
+		upstream.start();
+		SeleniumServer.setCustomProxyHandler(new ProxyHandler(false, "", "", false, false) {
+			protected void customizeMethod(String pathInContext, String pathParams, HttpRequest request, HttpMethod method) {
+				method.setRequestHeader("X-Custom", "customized");
+			}
+		});
+		SeleniumServer server;
+		try {
+			server = new SeleniumServer(new RemoteControlConfiguration());
+		} finally {
+			SeleniumServer.setCustomProxyHandler(null);
+		}
+		server.start();
+		try {
+			String response = proxyGet(server, "http://localhost:" + upstream.getPort() + "/page");
+			assertTrue(response, response.startsWith("HTTP/1.1 200"));
+
+			String request = upstream.getLastRequest();
+			assertTrue(request, request.indexOf("\r\nX-Custom: customized\r\n") != -1);
+		} finally {
+			server.stop();
+			upstream.close();
+		}
+	}
+
+	public void testRequestsFindingNoConnectionToSpareAreNotPooled() throws Exception {
+		KeepAliveServer upstream = new KeepAliveServer();
+		upstream.start();
+		UpstreamHttpClient client = new UpstreamHttpClient(1, 10, 5000, 5000, 0, false);
+		try {
+			URL url = new URL("http://localhost:" + upstream.getPort() + "/page");
+			List<String[]> headers = new ArrayList<String[]>();
+			HttpMethod first = client.execute(url, "GET", headers, null, -1);
+			assertNotNull(first);
+
+			// The only connection to the server is still in use, so this one isn't made to wait for it
+			long start = System.currentTimeMillis();
+			assertNull(client.execute(url, "GET", headers, null, -1));
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			assertEquals(1, client.getPoolExhaustedCount());
+
+			first.releaseConnection();
+			HttpMethod second = client.execute(url, "GET", headers, null, -1);
+			assertNotNull(second);
+			second.releaseConnection();
+		} finally {
+			client.shutdown();
+			upstream.close();
+		}
+	}
+
+	private String proxyGet(SeleniumServer server, String url) throws IOException {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.getOutputStream().write(("GET " + url + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+			InputStream in = socket.getInputStream();
+			StringBuilder response = new StringBuilder();
+			for (int b = in.read(); b != -1; b = in.read()) {
+				response.append((char) b);
+			}
+			return response.toString();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private String connectAndGetCommonName(SeleniumServer server, String host) throws Exception {
+		Socket socket = new Socket("localhost", server.getPort());
+		try {
+			socket.getOutputStream().write(("CONNECT " + host + ":443 HTTP/1.1\r\nHost: " + host + ":443\r\n\r\n").getBytes("ISO-8859-1"));
+			String response = readHeaders(socket.getInputStream());
+			assertTrue(response, response.startsWith("HTTP/1.1 200"));
+
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(null, new TrustManager[] {new TrustEverything()}, null);
+			SSLSocket sslSocket = (SSLSocket) context.getSocketFactory().createSocket(socket, host, 443, false);
+			sslSocket.startHandshake();
+			X509Certificate certificate = (X509Certificate) sslSocket.getSession().getPeerCertificates()[0];
+			String subject = certificate.getSubjectX500Principal().getName();
+			return subject.substring("CN=".length(), subject.indexOf(','));
+		} finally {
+			socket.close();
+		}
+	}
+
+	private String readHeaders(InputStream in) throws IOException {
+		StringBuilder headers = new StringBuilder();
+		while (headers.indexOf("\r\n\r\n") == -1) {
+			int b = in.read();
+			if (b == -1) {
+				break;
+			}
+			headers.append((char) b);
+		}
+		return headers.toString();
+	}
+
+	/** Answers every request on a connection with "hello", and counts the connections. */
+	private class KeepAliveServer extends Thread {
+		private final ServerSocket serverSocket;
+		private int connections;
+		private String lastRequest;
+
+		public KeepAliveServer() throws IOException {
+			serverSocket = new ServerSocket(0);
+			setDaemon(true);
+		}
+
+		public int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		public synchronized int getConnections() {
+			return connections;
+		}
+
+		/** @return the request line and headers of the last request answered */
+		public synchronized String getLastRequest() {
+			return lastRequest;
+		}
+
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final Socket socket = serverSocket.accept();
+					synchronized (this) {
+						connections++;
+					}
+					Thread answerer = new Thread() {
+						public void run() {
+							try {
+								for (String request = readHeaders(socket.getInputStream()); request.length() > 0; request = readHeaders(socket.getInputStream())) {
+									synchronized (KeepAliveServer.this) {
+										lastRequest = request;
+									}
+									socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n\r\nhello".getBytes("ISO-8859-1"));
+								}
+								socket.close();
+							} catch (IOException e) {
+							}
+						}
+					};
+					answerer.setDaemon(true);
+					answerer.start();
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static class TrustEverything implements X509TrustManager {
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
 }
@@ -0,0 +1,58 @@
+package org.openqa.selenium.server;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class RemoteCommandBatchUnitTest extends TestCase {
+
+    public void testParsesOneCommandPerLine() {
+        RemoteCommandBatch batch = RemoteCommandBatch.parse(
+                "cmd=type&1=q&2=hello+world%2C+%26+more\ncmd=click&1=btnG\n");
+
+        assertEquals(Arrays.asList(
+                new DefaultRemoteCommand("type", "q", "hello world, & more"),
+                new DefaultRemoteCommand("click", "btnG", "")),
+                batch.getCommands());
+    }
+
+    public void testRejectsALineWithoutACommand() {
+        try {
+            RemoteCommandBatch.parse("cmd=click&1=btnG\n1=q&2=hello");
+            fail("Should have rejected the second line");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testRejectsABatchWithoutCommands() {
+        try {
+            RemoteCommandBatch.parse("\n \n");
+            fail("Should have rejected the empty batch");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("batch has no commands", expected.getMessage());
+        }
+    }
+
+    public void testSendsTheCommandsToTheBrowserInTheirUsualForm() {
+        RemoteCommandBatch batch = new RemoteCommandBatch(Arrays.<RemoteCommand>asList(
+                new DefaultRemoteCommand("type", "q", "a\nb"),
+                new DefaultRemoteCommand("click", "btnG", "")));
+
+        String target = batch.toBrowserTarget();
+
+        assertEquals(2, target.split("\n").length);
+        assertEquals(batch.getCommands(), RemoteCommandBatch.parse(target).getCommands());
+    }
+
+    public void testFindsCommandsOnlyTheServerCanRun() {
+        assertNull(RemoteCommandBatch.parse("cmd=open&1=/\ncmd=click&1=btnG").findServerSideCommand());
+        assertEquals("captureScreenshot", RemoteCommandBatch.parse(
+                "cmd=click&1=btnG\ncmd=captureScreenshot&1=/tmp/a.png").findServerSideCommand());
+        assertEquals("batch", RemoteCommandBatch.parse("cmd=batch&1=x").findServerSideCommand());
+    }
+
+    public void testEscapesEachResultLikeAStringArray() {
+        assertEquals("OK,OK,OK\\,a\\\\\\,b",
+                RemoteCommandBatch.combineResults(Arrays.asList("OK", "OK,a\\,b")));
+    }
+}
@@ -17,9 +17,11 @@ import org.openqa.selenium.server.commands.CaptureEntirePageScreenshotToStringCo
 import org.openqa.selenium.server.commands.SeleniumCoreCommand;
 import org.openqa.selenium.server.commands.RetrieveLastRemoteControlLogsCommand;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.util.Vector;
 
 
@@ -208,4 +210,32 @@ public class SeleniumDriverResourceHandlerUnitTest {
                            "a very very very very very very very very very  long result"));
   }
 
+  @Test
+  public void decodesRawPostedDataAsUtf8() throws Exception {
+    String posted = "OK,caf\u00e9 %41+b";
+    assertEquals(posted, SeleniumDriverResourceHandler.decodePostedData(
+        new ByteArrayInputStream(posted.getBytes("UTF-8"))));
+  }
+
+  @Test
+  public void urlDecodesPostedDataSentAsAFormParameter() throws Exception {
+    String posted = "OK,caf\u00e9 & a \"long\" result " + new String(new char[10000]).replace('\0', 'x');
+    String body = "postedData=" + URLEncoder.encode(posted, "UTF-8");
+    assertEquals(posted, SeleniumDriverResourceHandler.decodePostedData(
+        new ByteArrayInputStream(body.getBytes("UTF-8"))));
+  }
+
+  @Test
+  public void padsResponsesToAThousandBytes() throws Exception {
+    byte[] response = SeleniumDriverResourceHandler.padResponse("cmd=open");
+    assertEquals(1000, response.length);
+    assertEquals("cmd=open", new String(response, 0, 8, "UTF-8"));
+    assertEquals("", new String(response, 8, 990, "UTF-8").trim());
+    assertEquals('\r', response[998]);
+    assertEquals('\n', response[999]);
+
+    String longCommand = new String(new char[2000]).replace('\0', 'x');
+    assertEquals(2002, SeleniumDriverResourceHandler.padResponse(longCommand).length);
+  }
+
 }
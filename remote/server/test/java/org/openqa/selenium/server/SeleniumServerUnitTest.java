@@ -2,6 +2,13 @@ package org.openqa.selenium.server;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Test;
 
@@ -50,6 +57,66 @@ public class SeleniumServerUnitTest {
 				positiveJettyThreads, server.getJettyThreads());
 	}
 
+	/**
+	 * Opens many kept-alive connections and leaves them idle between requests,
+	 * and checks that the NIO listener does not keep a thread for each of them.
+	 * This is all the listener saves: a request being handled, such as a
+	 * browser's long poll, still holds a thread.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNioListenerParksIdleConnectionsWithoutAThreadEach() throws Exception {
+		final int connectionCount = 50;
+		RemoteControlConfiguration configuration = new RemoteControlConfiguration();
+		configuration.setNioListener(true);
+		server = new SeleniumServer(configuration);
+		server.start();
+
+		List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			Socket first = new Socket("localhost", server.getPort());
+			sockets.add(first);
+			assertTrue(request(first).startsWith("HTTP/1.1 "));
+			Thread.sleep(500);
+			int threadsBefore = Thread.activeCount();
+
+			for (int i = 1; i < connectionCount; i++) {
+				Socket socket = new Socket("localhost", server.getPort());
+				sockets.add(socket);
+				assertTrue(request(socket).startsWith("HTTP/1.1 "));
+			}
+			Thread.sleep(500);
+			int threadsAfter = Thread.activeCount();
+
+			assertTrue("threads grew from " + threadsBefore + " to " + threadsAfter + " for "
+					+ connectionCount + " idle kept-alive connections", threadsAfter - threadsBefore < 10);
+			// the parked connections are still served
+			assertTrue(request(first).startsWith("HTTP/1.1 "));
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	/** Sends a keep-alive request and reads the response's headers */
+	private String request(Socket socket) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(("HEAD /selenium-server/core/Blank.html HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("ISO-8859-1"));
+		out.flush();
+		InputStream in = socket.getInputStream();
+		StringBuilder headers = new StringBuilder();
+		while (headers.indexOf("\r\n\r\n") == -1) {
+			int b = in.read();
+			if (b == -1) {
+				break;
+			}
+			headers.append((char) b);
+		}
+		return headers.toString();
+	}
+
 //	/**
 //	 * Test for a positive result when passing a positive argument for
 //	 * -jettyThreads.
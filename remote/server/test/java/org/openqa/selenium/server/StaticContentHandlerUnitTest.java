@@ -103,6 +103,69 @@ public class StaticContentHandlerUnitTest extends TestCase {
     	assertEquals(HttpResponse.__200_OK, httpResponse.getStatus());
     	verify(mock);
     }
+
+    public void testShouldServeClasspathResourcesFromMemoryWithAStrongETag() throws Exception {
+        serveFromClasspath();
+        HttpRequest request = headRequest("/StaticContentHandlerUnitTest.class");
+        HttpResponse response = new HttpResponse();
+
+        handler.handle("StaticContentHandlerUnitTest.class", "", request, response);
+
+        StaticResourceCache.Entry entry = StaticResourceCache.getInstance().get("StaticContentHandlerUnitTest.class");
+        assertTrue(request.isHandled());
+        assertEquals(entry.getETag(), response.getField("ETag"));
+        assertEquals(entry.getLength(), response.getContentLength());
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", response.getField("Expires"));
+    }
+
+    public void testShouldAnswerNotModifiedWhenTheBrowserHasTheSameResource() throws Exception {
+        serveFromClasspath();
+        StaticResourceCache cache = StaticResourceCache.getInstance();
+        StaticResourceCache.Entry entry = cache.get("StaticContentHandlerUnitTest.class");
+        long bytesSaved = cache.getBytesSaved();
+        HttpRequest request = headRequest("/StaticContentHandlerUnitTest.class");
+        request.setField("If-None-Match", entry.getETag());
+        HttpResponse response = new HttpResponse();
+
+        handler.handle("StaticContentHandlerUnitTest.class", "", request, response);
+
+        assertEquals(HttpResponse.__304_Not_Modified, response.getStatus());
+        assertEquals(bytesSaved + entry.getLength(), cache.getBytesSaved());
+    }
+
+    public void testShouldLetTheBrowserKeepResourcesRequestedByFingerprint() throws Exception {
+        serveFromClasspath();
+        String path = StaticResourceCache.getInstance().getFingerprintedPath("StaticContentHandlerUnitTest.class");
+        HttpRequest request = headRequest("/" + path);
+        HttpResponse response = new HttpResponse();
+
+        handler.handle("StaticContentHandlerUnitTest.class", "", request, response);
+
+        assertTrue(response.getField("Cache-Control").startsWith("public, max-age="));
+        assertNull(response.getField("Pragma"));
+    }
+
+    public void testShouldNotLetTheBrowserKeepResourcesRequestedByAnOldFingerprint() throws Exception {
+        serveFromClasspath();
+        HttpRequest request = headRequest("/StaticContentHandlerUnitTest.class?v=0123456789abcdef0123456789abcdef");
+        HttpResponse response = new HttpResponse();
+
+        handler.handle("StaticContentHandlerUnitTest.class", "", request, response);
+
+        assertEquals("no-cache", response.getField("Cache-Control"));
+    }
+
+    private void serveFromClasspath() {
+        new HttpContext().addHandler(handler);
+        handler.addStaticContent(new ClasspathResourceLocator());
+    }
+
+    private HttpRequest headRequest(String uri) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod(HttpRequest.__HEAD);
+        request.setPath(uri);
+        return request;
+    }
     
 
 }
@@ -0,0 +1,75 @@
+package org.openqa.selenium.server;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.openqa.jetty.util.IO;
+
+public class StaticResourceCacheUnitTest extends TestCase {
+    private static final String PATH = "StaticResourceCacheUnitTest.class";
+    private StaticResourceCache cache = StaticResourceCache.getInstance();
+
+    public void testShouldReadEachResourceOnlyOnce() throws Exception {
+        StaticResourceCache.Entry first = cache.get(PATH);
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        assertSame(first, cache.get(PATH));
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(misses, cache.getMisses());
+    }
+
+    public void testShouldReturnNullForMissingResourcesAndKeepLookingForThem() throws Exception {
+        long misses = cache.getMisses();
+        assertNull(cache.get("not_exists"));
+        assertNull(cache.get("not_exists"));
+        assertEquals(misses + 2, cache.getMisses());
+        assertEquals("not_exists", cache.getFingerprintedPath("not_exists"));
+    }
+
+    public void testShouldPutTheFingerprintInTheQueryOfTheFingerprintedPath() throws Exception {
+        StaticResourceCache.Entry entry = cache.get(PATH);
+        assertEquals(32, entry.getFingerprint().length());
+        assertEquals("\"" + entry.getFingerprint() + "\"", entry.getETag());
+        assertEquals(PATH + "?v=" + entry.getFingerprint(), cache.getFingerprintedPath(PATH));
+    }
+
+    public void testShouldServeTheSameContentToEveryReader() throws Exception {
+        StaticResourceCache.Entry entry = cache.get(PATH);
+        byte[] first = readBytes(entry.getInputStream());
+        byte[] second = readBytes(entry.getInputStream());
+        assertEquals(entry.getLength(), first.length);
+        assertTrue(Arrays.equals(first, second));
+    }
+
+    public void testShouldKeepAGzippedCopyOfTextOnly() throws Exception {
+        byte[] content = new byte[4096];
+        Arrays.fill(content, (byte) 'a');
+
+        StaticResourceCache.Entry script = new StaticResourceCache.Entry("/core/scripts/test.js", content);
+        assertTrue(script.hasGzipped());
+        assertTrue(script.getGzippedLength() < content.length);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        script.writeTo(gzipped, true);
+        byte[] gunzipped = readBytes(new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray())));
+        assertTrue(Arrays.equals(content, gunzipped));
+
+        assertFalse(new StaticResourceCache.Entry("/core/images/test.png", content).hasGzipped());
+    }
+
+    public void testShouldNotKeepAGzippedCopyThatIsNoSmaller() throws Exception {
+        assertFalse(new StaticResourceCache.Entry("/core/scripts/test.js", "a".getBytes()).hasGzipped());
+    }
+
+    private byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO.copy(in, out);
+        return out.toByteArray();
+    }
+}
@@ -1,6 +1,8 @@
 package org.openqa.selenium.server.browserlaunchers;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -9,6 +11,7 @@ import static org.junit.Assert.*;
 
 import static org.easymock.classextension.EasyMock.*;
 
+import org.openqa.selenium.internal.FileHandler;
 import org.openqa.selenium.server.BrowserConfigurationOptions;
 import org.openqa.selenium.server.RemoteControlConfiguration;
 
@@ -126,11 +129,7 @@ public class FirefoxChromeLauncherUnitTest {
 
     	final BrowserInstallation browserInstallation = createMock(BrowserInstallation.class);
     	
-    	FirefoxChromeLauncher launcher = new FirefoxChromeLauncher(browserOptions, configuration, "session", browserInstallation) {
-    		@Override
-    		protected void copyDirectory(File sourceDir, File destDir) {
-    		}
-    	};
+    	FirefoxChromeLauncher launcher = new FirefoxChromeLauncher(browserOptions, configuration, "session", browserInstallation);
     	
     	browserOptions.set("firefoxProfileTemplate", "profileTemplate");
     	
@@ -147,10 +146,6 @@ public class FirefoxChromeLauncherUnitTest {
     	final File profileTemplate = createMock(File.class);
     	
     	FirefoxChromeLauncher launcher = new FirefoxChromeLauncher(browserOptions, configuration, "session", browserInstallation) {
-    		@Override
-    		protected void copyDirectory(File sourceDir, File destDir) {
-    		}
-    		
     		@Override
     		protected File getFileFromParent(File parent, String child) {
     			return profileTemplate;
@@ -169,6 +164,35 @@ public class FirefoxChromeLauncherUnitTest {
     	
     }    
     
+    @Test
+    public void copyProfileImage_copiesTheTemplateAndOurProfileFilesIntoTheCustomProfileDir() throws Exception {
+    	File profileTemplate = createTempDir("template");
+    	File customProfileDir = createTempDir("profile");
+    	try {
+    		FileWriter writer = new FileWriter(new File(profileTemplate, "prefs.js"));
+    		writer.write("user_pref('a', 1);");
+    		writer.close();
+    		
+    		FirefoxChromeLauncher launcher = new FirefoxChromeLauncher(browserOptions, configuration, "session", createMock(BrowserInstallation.class));
+    		launcher.setCustomProfileDir(customProfileDir);
+    		
+    		launcher.copyProfileImage(profileTemplate);
+    		
+    		assertTrue(new File(customProfileDir, "prefs.js").exists());
+    		assertTrue(new File(customProfileDir, "extensions/readystate@openqa.org/install.rdf").exists());
+    	} finally {
+    		FileHandler.delete(profileTemplate);
+    		FileHandler.delete(customProfileDir);
+    	}
+    }
+    
+    private File createTempDir(String name) throws IOException {
+    	File dir = File.createTempFile("FirefoxChromeLauncherUnitTest", name);
+    	assertTrue(dir.delete());
+    	assertTrue(dir.mkdir());
+    	return dir;
+    }
+    
     public static class FirefoxChromeLauncherStubbedForShutdown extends FirefoxChromeLauncher {
 
       private boolean killFirefoxProcessCalled = false;
@@ -89,6 +89,50 @@ public class LauncherUtilsUnitTest extends TestCase {
         assertFalse(destDir.exists());
     }
 
+    public void testWaitForFileToStayGoneOnlyLooksOnceWithoutATimeout() throws IOException {
+        File lock = File.createTempFile("LauncherUtilsUnitTest", "lock");
+        lock.deleteOnExit();
+        assertFalse(LauncherUtils.waitForFileToStayGone(lock, 0, 500));
+        assertTrue(lock.delete());
+        assertTrue(LauncherUtils.waitForFileToStayGone(lock, 0, 500));
+    }
+
+    public void testWaitForFileToStayGoneWaitsForTheFileToBeDeleted() throws IOException {
+        final File lock = File.createTempFile("LauncherUtilsUnitTest", "lock");
+        lock.deleteOnExit();
+        new Thread() {
+            public void run() {
+                AsyncExecute.sleepTight(100);
+                lock.delete();
+            }
+        }.start();
+        assertTrue(LauncherUtils.waitForFileToStayGone(lock, 5000, 100));
+        assertFalse(lock.exists());
+    }
+
+    public void testWaitForFileToStayGoneGivesUpOnAFileThatStays() throws IOException {
+        File lock = File.createTempFile("LauncherUtilsUnitTest", "lock");
+        lock.deleteOnExit();
+        assertFalse(LauncherUtils.waitForFileToStayGone(lock, 100, 100));
+    }
+
+    public void testWaitForFileToExist() throws IOException {
+        final File file = File.createTempFile("LauncherUtilsUnitTest", "ini");
+        assertTrue(file.delete());
+        file.deleteOnExit();
+        assertFalse(LauncherUtils.waitForFileToExist(file, 100));
+        new Thread() {
+            public void run() {
+                AsyncExecute.sleepTight(100);
+                try {
+                    file.createNewFile();
+                } catch (IOException e) {
+                }
+            }
+        }.start();
+        assertTrue(LauncherUtils.waitForFileToExist(file, 5000));
+    }
+
     public void testProxyPacMaking() {
         doProxyPacTest(true, null, "448", "confProxy", true, 999, "function FindProxyForURL(url, host) {\n"
             + "  if (shExpMatch(url, '*/selenium-server/*')) { return 'PROXY localhost:999; PROXY confProxy:448'; }\n"
@@ -0,0 +1,101 @@
+package org.openqa.selenium.server.browserlaunchers;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.openqa.selenium.internal.FileHandler;
+
+public class ProfileImageCacheUnitTest extends TestCase {
+    private static final String RESOURCES = "/customProfileDirCUSTFF";
+
+    private ProfileImageCache cache = new ProfileImageCache();
+    private File template;
+    private File profile;
+
+    public void setUp() throws IOException {
+        template = createTempDir("template");
+        profile = createTempDir("profile");
+    }
+
+    public void tearDown() {
+        FileHandler.delete(template);
+        FileHandler.delete(profile);
+    }
+
+    public void testShouldBuildTheImageOfATemplateOnlyOnce() throws Exception {
+        write(new File(template, "prefs.js"), "user_pref('a', 1);");
+
+        File image = cache.getImage(getClass(), RESOURCES, template);
+
+        assertTrue(new File(image, "prefs.js").exists());
+        assertTrue(new File(image, "extensions").isDirectory());
+        assertSame(image, cache.getImage(getClass(), RESOURCES, template));
+    }
+
+    public void testShouldBuildANewImageWhenTheTemplateChanges() throws Exception {
+        File image = cache.getImage(getClass(), RESOURCES, template);
+        write(new File(template, "prefs.js"), "user_pref('a', 1);");
+
+        File newImage = cache.getImage(getClass(), RESOURCES, template);
+
+        assertFalse(image.equals(newImage));
+        assertTrue(new File(newImage, "prefs.js").exists());
+        assertFalse(image.exists());
+    }
+
+    public void testShouldKeepAnOutOfDateImageUntilNoProfileIsBeingCopiedFromIt() throws Exception {
+        final File[] images = new File[2];
+        cache = new ProfileImageCache() {
+            @Override
+            void copy(File image, File profileDir) throws IOException {
+                images[0] = image;
+                write(new File(template, "prefs.js"), "user_pref('a', 1);");
+                images[1] = getImage(ProfileImageCacheUnitTest.class, RESOURCES, template);
+                assertTrue(image.isDirectory());
+                super.copy(image, profileDir);
+            }
+        };
+
+        cache.copyImage(getClass(), RESOURCES, template, profile);
+
+        assertTrue(new File(profile, "extensions").isDirectory());
+        assertFalse(new File(profile, "prefs.js").exists());
+        assertFalse(images[0].exists());
+        assertTrue(new File(images[1], "prefs.js").exists());
+    }
+
+    public void testShouldKeepTheImagesOfEachTemplateApart() throws Exception {
+        File image = cache.getImage(getClass(), RESOURCES, null);
+        File templateImage = cache.getImage(getClass(), RESOURCES, template);
+
+        assertFalse(image.equals(templateImage));
+        assertSame(image, cache.getImage(getClass(), RESOURCES, null));
+    }
+
+    public void testShouldCopyTheImageWithoutItsLockFiles() throws Exception {
+        write(new File(template, "prefs.js"), "user_pref('a', 1);");
+        write(new File(template, "parent.lock"), "");
+
+        cache.copyImage(getClass(), RESOURCES, template, profile);
+
+        assertTrue(new File(profile, "prefs.js").exists());
+        assertTrue(new File(profile, "extensions").isDirectory());
+        assertFalse(new File(profile, "parent.lock").exists());
+    }
+
+    private File createTempDir(String name) throws IOException {
+        File dir = File.createTempFile("ProfileImageCacheUnitTest", name);
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+}
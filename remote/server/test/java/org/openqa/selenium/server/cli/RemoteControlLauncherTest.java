@@ -22,4 +22,33 @@ public class RemoteControlLauncherTest extends TestCase {
         assertFalse(configuration.honorSystemProxy());
     }
 
+    public void testBrowserSessionPoolSizeIsSetWhenProvidedAsAnOption() {
+        final RemoteControlConfiguration configuration;
+
+        configuration = RemoteControlLauncher.parseLauncherOptions(new String[]{"-browserSessionPoolSize", "2"});
+        assertEquals(2, configuration.getBrowserSessionPoolSize());
+    }
+
+    public void testHTMLSuiteShardsIsSetWhenProvidedAsAnOption() {
+        final RemoteControlConfiguration configuration;
+
+        configuration = RemoteControlLauncher.parseLauncherOptions(new String[]{"-htmlSuiteShards", "4"});
+        assertEquals(4, configuration.getHTMLSuiteShards());
+    }
+
+    public void testHTMLSuitesRunInOneBrowserByDefault() {
+        assertEquals(1, new RemoteControlConfiguration().getHTMLSuiteShards());
+    }
+
+    public void testNioListenerIsSetWhenProvidedAsAnOption() {
+        final RemoteControlConfiguration configuration;
+
+        configuration = RemoteControlLauncher.parseLauncherOptions(new String[]{"-nioListener"});
+        assertTrue(configuration.isNioListener());
+    }
+
+    public void testNioListenerIsFalseWhenNotProvidedAsAnOption() {
+        assertFalse(new RemoteControlConfiguration().isNioListener());
+    }
+
 }
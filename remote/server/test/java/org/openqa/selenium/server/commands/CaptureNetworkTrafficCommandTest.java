@@ -1,6 +1,8 @@
 package org.openqa.selenium.server.commands;
 
 import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.openqa.jetty.http.HttpRequest;
 import org.openqa.jetty.http.HttpResponse;
 import org.openqa.selenium.server.ModifiedIO;
@@ -32,6 +34,54 @@ public class CaptureNetworkTrafficCommandTest extends TestCase {
         check("plain", "plain.txt");
     }
 
+    public void testHar() throws Exception {
+        prepare();
+        String result = new CaptureNetworkTrafficCommand("har").execute();
+        assertTrue(result.startsWith("OK,"));
+
+        JSONObject log = new JSONObject(result.substring(3)).getJSONObject("log");
+        assertEquals("1.2", log.getString("version"));
+        JSONArray entries = log.getJSONArray("entries");
+        assertEquals(3, entries.length());
+
+        JSONObject first = entries.getJSONObject(0);
+        assertEquals(102, first.getInt("time"));
+        assertEquals("http://example.com/index.html", first.getJSONObject("request").getString("url"));
+        assertEquals(404, first.getJSONObject("response").getInt("status"));
+        assertEquals(1234, first.getJSONObject("response").getJSONObject("content").getInt("size"));
+        assertEquals(2, first.getJSONObject("request").getJSONArray("headers").length());
+
+        JSONObject last = entries.getJSONObject(2);
+        assertEquals("http://example.com/index3.html?foo='bar'", last.getJSONObject("request").getString("url"));
+    }
+
+    public void testShouldOnlyReportTrafficFromTheSessionsOwnBrowser() {
+        CaptureNetworkTrafficCommand.clear();
+        CaptureNetworkTrafficCommand.associate("10.0.0.1", "session one");
+        CaptureNetworkTrafficCommand.associate("10.0.0.2", "session two");
+        try {
+            CaptureNetworkTrafficCommand.capture("10.0.0.1", finished("http://example.com/one.html"));
+            CaptureNetworkTrafficCommand.capture("10.0.0.2", finished("http://example.com/two.html"));
+
+            String one = new CaptureNetworkTrafficCommand("plain", "session one").execute();
+            assertTrue(one.contains("one.html"));
+            assertFalse(one.contains("two.html"));
+
+            String two = new CaptureNetworkTrafficCommand("plain", "session two").execute();
+            assertTrue(two.contains("two.html"));
+            assertFalse(two.contains("one.html"));
+        } finally {
+            CaptureNetworkTrafficCommand.endSession("session one");
+            CaptureNetworkTrafficCommand.endSession("session two");
+        }
+    }
+
+    private CaptureNetworkTrafficCommand.Entry finished(String url) {
+        CaptureNetworkTrafficCommand.Entry entry = new CaptureNetworkTrafficCommand.Entry("GET", url);
+        entry.finish(200, 10);
+        return entry;
+    }
+
     private void check(String type, String file) throws IOException {
         CaptureNetworkTrafficCommand c = new CaptureNetworkTrafficCommand(type);
 
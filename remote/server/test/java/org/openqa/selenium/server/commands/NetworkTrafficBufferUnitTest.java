@@ -0,0 +1,95 @@
+package org.openqa.selenium.server.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class NetworkTrafficBufferUnitTest extends TestCase {
+
+    public void testPollReturnsEntriesInOrder() {
+        NetworkTrafficBuffer buffer = new NetworkTrafficBuffer(3);
+        buffer.add(entry("a"));
+        buffer.add(entry("b"));
+
+        assertEquals("a", url(buffer.poll()));
+        assertEquals("b", url(buffer.poll()));
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    public void testFullBufferOverwritesTheOldestEntries() {
+        NetworkTrafficBuffer buffer = new NetworkTrafficBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(entry("" + i));
+        }
+
+        assertEquals("2", url(buffer.poll()));
+        assertEquals("3", url(buffer.poll()));
+        assertEquals("4", url(buffer.poll()));
+        assertNull(buffer.poll());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    public void testClearDiscardsUnreadEntries() {
+        NetworkTrafficBuffer buffer = new NetworkTrafficBuffer(3);
+        buffer.add(entry("a"));
+        buffer.add(entry("b"));
+        buffer.clear();
+
+        assertNull(buffer.poll());
+        buffer.add(entry("c"));
+        assertEquals("c", url(buffer.poll()));
+    }
+
+    public void testNoEntryIsLostOrReorderedWithManyWriters() throws Exception {
+        final int writers = 8;
+        final int entriesPerWriter = 5000;
+        final NetworkTrafficBuffer buffer = new NetworkTrafficBuffer(writers * entriesPerWriter);
+
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            final int writer = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < entriesPerWriter; j++) {
+                        buffer.add(entry(writer + "/" + j));
+                    }
+                }
+            };
+        }
+
+        List<String> polled = new ArrayList<String>();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        boolean writing = true;
+        while (writing) {
+            writing = false;
+            for (Thread thread : threads) {
+                writing |= thread.isAlive();
+            }
+            CaptureNetworkTrafficCommand.Entry entry;
+            while ((entry = buffer.poll()) != null) {
+                polled.add(url(entry));
+            }
+        }
+
+        assertEquals(writers * entriesPerWriter, polled.size());
+        assertEquals(0, buffer.getDroppedCount());
+        int[] nextFromWriter = new int[writers];
+        for (String url : polled) {
+            String[] parts = url.split("/");
+            int writer = Integer.parseInt(parts[0]);
+            assertEquals(url, nextFromWriter[writer]++, Integer.parseInt(parts[1]));
+        }
+    }
+
+    private static CaptureNetworkTrafficCommand.Entry entry(String url) {
+        return new CaptureNetworkTrafficCommand.Entry("GET", url);
+    }
+
+    private static String url(CaptureNetworkTrafficCommand.Entry entry) {
+        return entry.toString().split("\\|")[2];
+    }
+}
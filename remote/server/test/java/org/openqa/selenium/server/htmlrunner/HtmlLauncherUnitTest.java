@@ -8,16 +8,20 @@ import static org.easymock.classextension.EasyMock.expect;
 import static org.easymock.classextension.EasyMock.expectLastCall;
 import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 import org.openqa.selenium.server.BrowserConfigurationOptions;
 import org.openqa.selenium.server.RemoteControlConfiguration;
+import org.openqa.selenium.server.SeleniumCommandTimedOutException;
 import org.openqa.selenium.server.SeleniumServer;
 import org.openqa.selenium.server.browserlaunchers.BrowserLauncher;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 public class HtmlLauncherUnitTest {
 	
@@ -117,6 +121,53 @@ public class HtmlLauncherUnitTest {
 		
 	}
 	
+	@Test
+	public void runHTMLSuite_stopsListeningForShardsWhichTimedOut() throws Exception {
+		File suiteFile = File.createTempFile("suite", ".html");
+		File outputFile = File.createTempFile("results", ".html");
+		try {
+			OutputStream out = new FileOutputStream(suiteFile);
+			out.write(("<html><body><table>\n" +
+					"<tr><td><a href=\"./TestA.html\">Test A</a></td></tr>\n" +
+					"<tr><td><a href=\"./TestB.html\">Test B</a></td></tr>\n" +
+					"</table></body></html>").getBytes("UTF-8"));
+			out.close();
+			
+			launcher = new HTMLLauncher(remoteControl) {
+				final BrowserLauncher browserLauncher = createNiceMock(BrowserLauncher.class);
+				
+				@Override
+				protected BrowserLauncher getBrowserLauncher(String browser, String sessionId, RemoteControlConfiguration configuration, BrowserConfigurationOptions browserOptions) {
+					return browserLauncher;
+				}
+				
+				@Override
+				protected void waitForShards(ShardedHTMLSuite suite, long timeoutInMs) {
+				}
+				
+			};
+			
+			// Expect both shards to be listened for, and then no longer
+			remoteControl.handleHTMLRunnerResults((HTMLResultsListener)anyObject());
+			expectLastCall().times(2);
+			remoteControl.stopHandlingHTMLRunnerResults((HTMLResultsListener)anyObject());
+			expectLastCall().times(2);
+			replay(configuration);
+			replay(remoteControl);
+			
+			try {
+				launcher.runHTMLSuite("*custom", "http://localhost:4444", suiteFile, outputFile, 5, true, 2);
+				fail("The shards should have timed out");
+			} catch (SeleniumCommandTimedOutException expected) {
+			}
+			
+			verify(remoteControl);
+		} finally {
+			suiteFile.delete();
+			outputFile.delete();
+		}
+	}
+	
 	private void executeAndVerify() throws Exception {
 		
 		expect(results.getResult()).andReturn("");
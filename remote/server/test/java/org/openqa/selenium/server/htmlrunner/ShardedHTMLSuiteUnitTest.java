@@ -0,0 +1,148 @@
+package org.openqa.selenium.server.htmlrunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class ShardedHTMLSuiteUnitTest extends TestCase {
+
+    private static final String SUITE = "<html><head><title>My Suite</title></head><body>\n" +
+            "<table id=\"suiteTable\"><tbody>\n" +
+            "<tr><td><b>My Suite</b></td></tr>\n" +
+            "<tr><td><a href=\"./TestA.html\">Test A</a></td></tr>\n" +
+            "<tr><td><a href=\"./TestB.html\">Test B</a></td></tr>\n" +
+            "<tr><td><a href=\"./TestC.html\">Test C</a></td></tr>\n" +
+            "<tr><td><a href=\"./TestD.html\">Test D</a></td></tr>\n" +
+            "</tbody></table></body></html>";
+
+    private File historyFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        historyFile = File.createTempFile("suite", ".durations");
+        historyFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        historyFile.delete();
+    }
+
+    public void testReadsTheTitleAndLinkTextsOfTheSuite() {
+        HTMLSuiteResult suite = new HTMLSuiteResult(SUITE);
+
+        assertEquals("My Suite", suite.getTitle());
+        assertEquals(Arrays.asList("Test A", "Test B", "Test C", "Test D"), suite.getLinkTexts());
+    }
+
+    public void testSharesTheTestsOutByHowLongTheyTookLastTime() throws IOException {
+        Properties history = new Properties();
+        history.setProperty("./TestA.html", "10");
+        history.setProperty("./TestB.html", "1");
+        history.setProperty("./TestC.html", "1");
+        history.setProperty("./TestD.html", "8");
+        storeHistory(history);
+
+        List<HTMLSuiteShard> shards = split(2).getShards();
+
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("./TestA.html"), shards.get(0).getHrefs());
+        assertEquals(Arrays.asList("./TestB.html", "./TestC.html", "./TestD.html"), shards.get(1).getHrefs());
+    }
+
+    public void testStartsTheLongestShardFirst() throws IOException {
+        Properties history = new Properties();
+        history.setProperty("./TestA.html", "1");
+        history.setProperty("./TestB.html", "1");
+        history.setProperty("./TestC.html", "1");
+        history.setProperty("./TestD.html", "5");
+        storeHistory(history);
+
+        List<HTMLSuiteShard> shards = split(3).getShards();
+
+        assertEquals(Arrays.asList("./TestD.html"), shards.get(0).getHrefs());
+        assertEquals(3, shards.get(2).getNumber());
+    }
+
+    public void testNeverMakesMoreShardsThanTests() throws IOException {
+        assertEquals(4, split(10).getShards().size());
+    }
+
+    public void testEachShardOnlyAcceptsItsOwnResults() throws IOException {
+        ShardedHTMLSuite suite = split(2);
+        HTMLSuiteShard first = suite.getShards().get(0);
+        HTMLSuiteShard second = suite.getShards().get(1);
+        HTMLTestResults results = resultsFor(first, "passed", 1, 0);
+
+        assertTrue(first.accepts(results));
+        assertFalse(second.accepts(results));
+    }
+
+    public void testMergesTheResultsOfAllShardsAndRemembersHowLongTheyTook() throws IOException {
+        ShardedHTMLSuite suite = split(2);
+        for (HTMLSuiteShard shard : suite.getShards()) {
+            shard.started();
+            assertFalse(suite.isFinished());
+            shard.processResults(resultsFor(shard, shard.getNumber() == 1 ? "passed" : "failed", 3 - shard.getNumber(), shard.getNumber() - 1));
+        }
+        assertTrue(suite.isFinished());
+
+        HTMLTestResults merged = suite.mergeResults(3000);
+        assertEquals("failed", merged.getResult());
+        assertEquals("3", merged.getTotalTime());
+        assertEquals("4", merged.getNumTestTotal());
+        assertEquals("3", merged.getNumTestPasses());
+        assertEquals("1", merged.getNumTestFailures());
+        assertEquals(4, merged.getTestTables().size());
+        assertEquals(4, merged.getSuite().getHrefs().size());
+        assertTrue(merged.getLog().startsWith("shard "));
+
+        suite.recordDurations();
+        assertEquals(4, loadHistory().size());
+    }
+
+    private ShardedHTMLSuite split(int shardCount) throws IOException {
+        return new ShardedHTMLSuite(new HTMLSuiteResult(SUITE), "My Suite", shardCount, historyFile, "1234");
+    }
+
+    private HTMLTestResults resultsFor(HTMLSuiteShard shard, String result, int passes, int failures) {
+        StringBuilder suite = new StringBuilder("<table id=\"suiteTable\"><tbody><tr class=\"title\" id=\"" + shard.getId() + "\"><td><b>My Suite</b></td></tr>");
+        String[] testTables = new String[shard.getHrefs().size()];
+        for (int i = 0; i < testTables.length; i++) {
+            suite.append("<tr><td><a href=\"").append(shard.getHrefs().get(i)).append("\">test</a></td></tr>");
+            testTables[i] = "<table><tr><td>" + shard.getHrefs().get(i) + "</td></tr></table>";
+        }
+        suite.append("</tbody></table>");
+        return new HTMLTestResults("1.0", "123", result, "1", Integer.toString(testTables.length),
+                Integer.toString(passes), Integer.toString(failures), "5", "0", "0",
+                suite.toString(), Arrays.asList(testTables), "log of " + shard.getId());
+    }
+
+    private void storeHistory(Properties history) throws IOException {
+        OutputStream out = new FileOutputStream(historyFile);
+        try {
+            history.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Properties loadHistory() throws IOException {
+        Properties history = new Properties();
+        InputStream in = new FileInputStream(historyFile);
+        try {
+            history.load(in);
+        } finally {
+            in.close();
+        }
+        return history;
+    }
+}
@@ -118,4 +118,31 @@ public class PerSessionLogHandlerUnitTest extends TestCase {
                 .getLog("session-two"));
     }
 
+    public void testRecordsWrittenToTheLogFileAreReturnedInOrder() throws IOException {
+        final PerSessionLogHandler handler;
+        final Formatter formatter;
+
+        formatter = new Formatter() {
+            public String format(LogRecord record) {
+                return record.getMessage() + ";";
+            }
+        };
+
+        handler = new PerSessionLogHandler(CAPACITY, Level.INFO, formatter);
+        handler.setThreadToSessionMapping(Thread.currentThread().getId(), "session-many");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+            expected.append("record ").append(i).append(";");
+        }
+
+        try {
+            assertEquals("\n<RC_Logs RC_Session_ID=session-many>\n" + expected + "\n</RC_Logs>\n",
+                    handler.getLog("session-many"));
+        } finally {
+            handler.clearSessionLogRecords("session-many");
+            handler.close();
+        }
+    }
+
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2006 ThoughtWorks, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.thoughtworks.selenium;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Collects a sequence of commands and sends them to the Selenium Server as a single
+ * <code>batch</code> command, which the browser runs in one round trip instead of one
+ * per command.  Only commands which do not depend on each other's results should be
+ * batched, e.g. a run of <code>type</code> and <code>click</code> commands:
+ *
+ * <pre>
+ * String[] results = new SeleneseBatch(commandProcessor)
+ *     .add("type", "q", "selenium")
+ *     .add("click", "btnG")
+ *     .execute();
+ * </pre>
+ */
+public class SeleneseBatch {
+
+    private final CommandProcessor commandProcessor;
+    private final StringBuffer commands = new StringBuffer();
+    private int size;
+
+    public SeleneseBatch(CommandProcessor commandProcessor) {
+        this.commandProcessor = commandProcessor;
+    }
+
+    /** Adds a command, with up to two arguments, to the end of the batch */
+    public SeleneseBatch add(String command, String... args) {
+        if (args.length > 2) {
+            throw new IllegalArgumentException("Selenese commands take at most two arguments: " + command);
+        }
+        if (size > 0) {
+            commands.append('\n');
+        }
+        commands.append("cmd=").append(urlEncode(command));
+        for (int i = 0; i < args.length; i++) {
+            commands.append('&').append(i + 1).append('=').append(urlEncode(args[i]));
+        }
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sends the batch to the server.
+     *
+     * @return the result of each command, in the order they were added, e.g. "OK" or
+     * "OK,some value"
+     * @throws SeleniumException the failure of the first command which failed; the commands
+     * before it have been run, and the commands after it have not
+     */
+    public String[] execute() {
+        if (size == 0) {
+            return new String[0];
+        }
+        return commandProcessor.getStringArray("batch", new String[] {commands.toString()});
+    }
+
+    private static String urlEncode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -24,39 +24,52 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
+/**
+ * Calls functions in the javascript libraries that are embedded in this
+ * package. Each library is read from the classpath once and shared.
+ *
+ * <p>By default the whole library is sent with every call. When created with
+ * {@code installOnce} set, or when the "webdriver.selenium.install_library"
+ * system property is "true", the library is instead installed on the page's
+ * window by the first call, and later calls only send a short stub that uses
+ * it. A call that finds the library missing, because the page has changed
+ * since it was installed, installs it again.
+ */
 public class JavascriptLibrary {
   private static final String injectableSelenium =
       "/org/openqa/selenium/internal/seleniumemulation/injectableSelenium.js";
   private static final String htmlUtils =
       "/org/openqa/selenium/internal/seleniumemulation/htmlutils.js";
 
-  public void callEmbeddedSelenium(WebDriver driver, String functionName,
-                                    WebElement element, Object... values) {
-    StringBuilder builder = new StringBuilder(readScript(injectableSelenium));
-    builder.append("return browserbot.").append(functionName).append(".apply(browserbot, arguments);");
+  // Returned by the stub when the library is not installed on the page
+  private static final String NOT_INSTALLED = "__webdriver_library_not_installed__";
 
-    List<Object> args = new ArrayList<Object>();
-    args.add(element);
-    args.addAll(Arrays.asList(values));
+  private static final Map<String, String> scripts = new ConcurrentHashMap<String, String>();
 
-    ((JavascriptExecutor) driver).executeScript(builder.toString(), args.toArray());
-  }
+  private final boolean installOnce;
 
-  public Object callEmbeddedHtmlUtils(WebDriver driver, String functionName, WebElement element, Object... values) {
-    StringBuilder builder = new StringBuilder(readScript(htmlUtils));
+  public JavascriptLibrary() {
+    this(Boolean.getBoolean("webdriver.selenium.install_library"));
+  }
 
-    builder.append("return htmlutils.").append(functionName).append(".apply(htmlutils, arguments);");
+  public JavascriptLibrary(boolean installOnce) {
+    this.installOnce = installOnce;
+  }
 
-    List<Object> args = new ArrayList<Object>();
-    args.add(element);
-    args.addAll(Arrays.asList(values));
+  public void callEmbeddedSelenium(WebDriver driver, String functionName,
+                                    WebElement element, Object... values) {
+    callEmbedded(driver, injectableSelenium, "browserbot", functionName, element, values);
+  }
 
-    return ((JavascriptExecutor) driver).executeScript(builder.toString(), args.toArray());
+  public Object callEmbeddedHtmlUtils(WebDriver driver, String functionName, WebElement element, Object... values) {
+    return callEmbedded(driver, htmlUtils, "htmlutils", functionName, element, values);
   }
 
   public Object executeScript(WebDriver driver, String script, Object... args) {
@@ -68,7 +81,47 @@ public class JavascriptLibrary {
         "The underlying WebDriver instance does not support executing javascript");
   }
 
+  private Object callEmbedded(WebDriver driver, String library, String name,
+      String functionName, WebElement element, Object... values) {
+    List<Object> args = new ArrayList<Object>();
+    args.add(element);
+    args.addAll(Arrays.asList(values));
+    Object[] arguments = args.toArray();
+
+    JavascriptExecutor executor = (JavascriptExecutor) driver;
+    String global = "window.__webdriver_" + name;
+    if (installOnce) {
+      String stub = "var " + name + " = " + global + ";\n"
+          + "if (!" + name + ") { return '" + NOT_INSTALLED + "'; }\n"
+          + call(name, functionName);
+      Object result = executor.executeScript(stub, arguments);
+      if (!NOT_INSTALLED.equals(result)) {
+        return result;
+      }
+    }
+
+    StringBuilder builder = new StringBuilder(readScript(library));
+    if (installOnce) {
+      builder.append(global).append(" = ").append(name).append(";\n");
+    }
+    builder.append(call(name, functionName));
+    return executor.executeScript(builder.toString(), arguments);
+  }
+
+  private String call(String name, String functionName) {
+    return "return " + name + "." + functionName + ".apply(" + name + ", arguments);";
+  }
+
   private String readScript(String script) {
+    String cached = scripts.get(script);
+    if (cached == null) {
+      cached = loadScript(script);
+      scripts.put(script, cached);
+    }
+    return cached;
+  }
+
+  private String loadScript(String script) {
     InputStream raw = getClass().getResourceAsStream(script);
     if (raw == null) {
       throw new RuntimeException("Cannot locate the embedded selenium instance");
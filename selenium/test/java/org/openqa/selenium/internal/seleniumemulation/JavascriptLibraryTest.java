@@ -0,0 +1,101 @@
+/*
+Copyright 2007-2009 WebDriver committers
+Copyright 2007-2009 Google Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.openqa.selenium.internal.seleniumemulation;
+
+import junit.framework.TestCase;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JavascriptLibraryTest extends TestCase {
+
+  private FakePage page;
+  private WebDriver driver;
+
+  @Override
+  protected void setUp() throws Exception {
+    page = new FakePage();
+    driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[] {WebDriver.class, JavascriptExecutor.class}, page);
+  }
+
+  public void testShouldSendTheWholeLibraryWithEveryCallByDefault() {
+    JavascriptLibrary library = new JavascriptLibrary(false);
+
+    library.callEmbeddedHtmlUtils(driver, "highlight", null);
+    library.callEmbeddedHtmlUtils(driver, "highlight", null);
+
+    assertEquals(2, page.scripts.size());
+    for (String script : page.scripts) {
+      assertTrue(script.startsWith("var htmlutils = {"));
+    }
+    assertFalse(page.installed);
+  }
+
+  public void testShouldOnlySendTheStubOnceTheLibraryIsInstalled() {
+    JavascriptLibrary library = new JavascriptLibrary(true);
+
+    assertEquals("called", library.callEmbeddedHtmlUtils(driver, "highlight", null));
+    assertEquals("called", library.callEmbeddedHtmlUtils(driver, "highlight", null));
+
+    // Stub, full library, then just the stub
+    assertEquals(3, page.scripts.size());
+    assertTrue(page.scripts.get(1).startsWith("var htmlutils = {"));
+    assertTrue(page.scripts.get(2).length() < 200);
+  }
+
+  public void testShouldReinstallTheLibraryAfterThePageChanges() {
+    JavascriptLibrary library = new JavascriptLibrary(true);
+
+    library.callEmbeddedHtmlUtils(driver, "highlight", null);
+    page.installed = false;
+    page.scripts.clear();
+    library.callEmbeddedHtmlUtils(driver, "highlight", null);
+
+    assertEquals(2, page.scripts.size());
+    assertTrue(page.scripts.get(1).startsWith("var htmlutils = {"));
+    assertTrue(page.installed);
+  }
+
+  private static class FakePage implements InvocationHandler {
+    private final List<String> scripts = new ArrayList<String>();
+    private boolean installed;
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (!"executeScript".equals(method.getName())) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+
+      String script = (String) args[0];
+      scripts.add(script);
+      if (script.startsWith("var htmlutils = {")) {
+        if (script.contains("window.__webdriver_htmlutils = htmlutils")) {
+          installed = true;
+        }
+        return "called";
+      }
+      return installed ? "called" : "__webdriver_library_not_installed__";
+    }
+  }
+}